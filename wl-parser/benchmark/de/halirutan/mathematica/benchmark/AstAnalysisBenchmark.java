@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.benchmark;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.impl.source.tree.CompositeElement;
+import com.intellij.psi.impl.source.tree.FileElement;
+import de.halirutan.mathematica.filetypes.SourceFile;
+import de.halirutan.mathematica.parsing.ast.AstDefinitionCollector;
+import de.halirutan.mathematica.parsing.ast.AstFullFormCreator;
+import de.halirutan.mathematica.parsing.ast.AstMetrics;
+import de.halirutan.mathematica.parsing.psi.MathematicaRecursiveVisitor;
+import de.halirutan.mathematica.parsing.psi.api.FunctionCall;
+import de.halirutan.mathematica.parsing.psi.api.MathematicaPsiFile;
+import de.halirutan.mathematica.parsing.psi.api.Symbol;
+import de.halirutan.mathematica.parsing.psi.util.FullFormCreator;
+import de.halirutan.mathematica.parsing.psi.util.GlobalDefinitionCollector;
+import de.halirutan.mathematica.parsing.psi.util.GlobalDefinitionCollector.AssignmentProperty;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Compares the analyses of the <code >ast</code> package with their PSI counterparts. Every file is parsed again before
+ * it is analysed, so the PSI path has to create the PSI elements like it would for a file that was just opened. The
+ * time of parsing alone is reported as well, so that the cost of the analyses can be told apart. Before measuring, the
+ * benchmark checks that both paths create the same FullForm, find the same definitions and count the same metrics.
+ * <p/>
+ * Usage: <code >AstAnalysisBenchmark [file.m ...]</code>
+ */
+public class AstAnalysisBenchmark {
+
+  private static int ourSink;
+
+  public static void main(String[] args) throws IOException {
+    final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+    final List<SourceFile> sources = BenchmarkEnvironment.loadSources(args, 50);
+    int mismatches = 0;
+    for (SourceFile source : sources) {
+      final MathematicaPsiFile file = environment.parse(source.getName(), source.getText());
+      final FileElement fileNode = (FileElement) file.getNode();
+      final String astFullForm = AstFullFormCreator.createFullForm(fileNode);
+      final List<String> astDefinitions = describe(new AstDefinitionCollector(fileNode));
+      final String astMetrics = AstMetrics.compute(fileNode).toString();
+      if (!astFullForm.equals(FullFormCreator.createFullForm(file))) {
+        System.out.println("FullForm differs for " + source.getName());
+        mismatches++;
+      }
+      if (!astDefinitions.equals(describe(new GlobalDefinitionCollector(file)))) {
+        System.out.println("Definitions differ for " + source.getName());
+        mismatches++;
+      }
+      if (!astMetrics.equals(PsiMetrics.compute(file))) {
+        System.out.println("Metrics differ for " + source.getName() + ": " + astMetrics + " / " + PsiMetrics.compute(file));
+        mismatches++;
+      }
+    }
+    System.out.println(sources.size() + " files, " + mismatches + " mismatches");
+
+    final double parse = BenchmarkEnvironment.measure("parse only", 3, 10, new Runnable() {
+      @Override
+      public void run() {
+        for (SourceFile source : sources) {
+          ourSink += environment.parse(source.getName(), source.getText()).getNode().getTextLength();
+        }
+      }
+    });
+    final double psi = BenchmarkEnvironment.measure("parse + PSI analyses", 3, 10, new Runnable() {
+      @Override
+      public void run() {
+        for (SourceFile source : sources) {
+          final MathematicaPsiFile file = environment.parse(source.getName(), source.getText());
+          ourSink += FullFormCreator.createFullForm(file).length();
+          ourSink += new GlobalDefinitionCollector(file).getAssignments().size();
+          ourSink += PsiMetrics.compute(file).length();
+        }
+      }
+    });
+    final double ast = BenchmarkEnvironment.measure("parse + AST analyses", 3, 10, new Runnable() {
+      @Override
+      public void run() {
+        for (SourceFile source : sources) {
+          final FileElement fileNode = (FileElement) environment.parse(source.getName(), source.getText()).getNode();
+          ourSink += AstFullFormCreator.createFullForm(fileNode).length();
+          ourSink += new AstDefinitionCollector(fileNode).getDefinitions().size();
+          ourSink += AstMetrics.compute(fileNode).getExpressionCount();
+        }
+      }
+    });
+    System.out.println(String.format("analyses alone: PSI %.1f ms, AST %.1f ms (%.1fx)", psi - parse, ast - parse,
+        (psi - parse) / (ast - parse)));
+
+    final List<MathematicaPsiFile> kept = new ArrayList<MathematicaPsiFile>();
+    final long before = BenchmarkEnvironment.usedHeap();
+    for (SourceFile source : sources) {
+      final MathematicaPsiFile file = environment.parse(source.getName(), source.getText());
+      ourSink += new AstDefinitionCollector(file.getNode()).getDefinitions().size();
+      kept.add(file);
+    }
+    final long afterAst = BenchmarkEnvironment.usedHeap();
+    for (MathematicaPsiFile file : kept) {
+      ourSink += new GlobalDefinitionCollector(file).getAssignments().size();
+    }
+    final long afterPsi = BenchmarkEnvironment.usedHeap();
+    System.out.println(String.format("heap of the parsed files: %.1f MB, PSI elements and caches add %.1f MB",
+        (afterAst - before) / 1e6, (afterPsi - afterAst) / 1e6));
+    System.out.println("(" + (ourSink + kept.size()) + ")");
+  }
+
+  /**
+   * Describes every definition by symbol name, offsets and type so that the results of both collectors can be
+   * compared.
+   */
+  private static List<String> describe(AstDefinitionCollector collector) {
+    final List<String> result = new ArrayList<String>();
+    for (Map.Entry<String, List<AstDefinitionCollector.AstDefinition>> entry : collector.getDefinitions().entrySet()) {
+      for (AstDefinitionCollector.AstDefinition definition : entry.getValue()) {
+        result.add(entry.getKey() + "@" + definition.getSymbol().getStartOffset() + "/" +
+            definition.getLhs().getStartOffset() + " " + definition.getType());
+      }
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+  private static List<String> describe(GlobalDefinitionCollector collector) {
+    final List<String> result = new ArrayList<String>();
+    for (Map.Entry<String, HashSet<AssignmentProperty>> entry : collector.getAssignments().entrySet()) {
+      for (AssignmentProperty property : entry.getValue()) {
+        result.add(entry.getKey() + "@" + property.myAssignmentSymbol.getTextOffset() + "/" +
+            property.myLhsOfAssignment.getTextOffset() + " " + property.myAssignmentType);
+      }
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+  /**
+   * The metrics of {@link AstMetrics} computed on the PSI tree.
+   */
+  private static class PsiMetrics extends MathematicaRecursiveVisitor {
+    private final Set<String> mySymbolNames = new HashSet<String>();
+    private int myExpressions;
+    private int mySymbols;
+    private int myFunctionCalls;
+    private int myDepth;
+    private int myMaxDepth;
+
+    static String compute(MathematicaPsiFile file) {
+      final PsiMetrics metrics = new PsiMetrics();
+      file.accept(metrics);
+      return "expressions: " + metrics.myExpressions + ", symbols: " + metrics.mySymbols + " (" +
+          metrics.mySymbolNames.size() + " distinct), function calls: " + metrics.myFunctionCalls + ", max depth: " +
+          metrics.myMaxDepth;
+    }
+
+    @Override
+    public void visitElement(PsiElement element) {
+      if (element instanceof MathematicaPsiFile) {
+        super.visitElement(element);
+        return;
+      }
+      if (element.getNode() instanceof CompositeElement) {
+        myExpressions++;
+        if (element instanceof Symbol) {
+          mySymbols++;
+          mySymbolNames.add(((Symbol) element).getName());
+        } else if (element instanceof FunctionCall) {
+          myFunctionCalls++;
+        }
+        myMaxDepth = Math.max(myMaxDepth, ++myDepth);
+        super.visitElement(element);
+      }
+    }
+
+    @Override
+    public void visitSymbol(Symbol symbol) {
+      visitElement(symbol);
+    }
+
+    @Override
+    public void visitFunctionCall(FunctionCall functionCall) {
+      visitElement(functionCall);
+    }
+
+    @Override
+    protected void elementFinished(PsiElement element) {
+      if (element.getNode() instanceof CompositeElement) {
+        myDepth--;
+      }
+    }
+  }
+}
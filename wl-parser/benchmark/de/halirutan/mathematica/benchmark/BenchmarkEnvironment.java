@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.benchmark;
+
+import com.intellij.mock.MockProject;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.PsiFileFactory;
+import de.halirutan.mathematica.MathematicaCoreApplicationEnvironment;
+import de.halirutan.mathematica.MathematicaCoreProjectEnvironment;
+import de.halirutan.mathematica.filetypes.MathematicaFileType;
+import de.halirutan.mathematica.filetypes.SourceFile;
+import de.halirutan.mathematica.parsing.psi.api.MathematicaPsiFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Shared setup for the benchmarks in this package. It creates the same mock project environment as {@link
+ * de.halirutan.mathematica.Main}, parses sources into {@link MathematicaPsiFile}s and provides a simple way to time a
+ * piece of code after warming it up.
+ * <p/>
+ * The benchmarks are plain main classes. When they are called with file names as arguments, these files are used as
+ * input; otherwise a synthetic corpus from {@link SyntheticSources} is generated.
+ */
+public class BenchmarkEnvironment {
+
+  private final PsiFileFactory myFileFactory;
+  private final MockProject myProject;
+
+  public BenchmarkEnvironment() {
+    final Disposable disposable = new Disposable() {
+      @Override
+      public void dispose() {
+      }
+    };
+    MathematicaCoreProjectEnvironment environment =
+        new MathematicaCoreProjectEnvironment(disposable, new MathematicaCoreApplicationEnvironment(disposable));
+    myProject = environment.getProject();
+    myFileFactory = PsiFileFactory.getInstance(myProject);
+  }
+
+  @NotNull
+  public MockProject getProject() {
+    return myProject;
+  }
+
+  @NotNull
+  public MathematicaPsiFile parse(@NotNull String name, @NotNull CharSequence source) {
+    return (MathematicaPsiFile) myFileFactory.createFileFromText(name, MathematicaFileType.INSTANCE, source);
+  }
+
+  /**
+   * Loads the files given on the command line or creates a synthetic corpus if no files are given.
+   *
+   * @param args
+   *     Command line arguments of the benchmark
+   * @param syntheticFiles
+   *     Number of files to create if no arguments are given
+   * @return The files with their content
+   */
+  @NotNull
+  public static List<SourceFile> loadSources(String[] args, int syntheticFiles) throws IOException {
+    if (args.length == 0) {
+      return SyntheticSources.createCorpus(syntheticFiles);
+    }
+    final List<SourceFile> sources = new java.util.ArrayList<SourceFile>(args.length);
+    for (String arg : args) {
+      final File file = new File(arg);
+      sources.add(new SourceFile(file.getName(), FileUtil.loadFile(file)));
+    }
+    return sources;
+  }
+
+  /**
+   * Runs a task several times to warm up the JVM and then reports the average time of the measured runs.
+   *
+   * @param name
+   *     Name that is printed with the result
+   * @param warmUp
+   *     Number of runs that are not measured
+   * @param runs
+   *     Number of measured runs
+   * @param task
+   *     The code to measure
+   * @return Average time per run in milliseconds
+   */
+  public static double measure(String name, int warmUp, int runs, Runnable task) {
+    for (int i = 0; i < warmUp; i++) {
+      task.run();
+    }
+    final long start = System.nanoTime();
+    for (int i = 0; i < runs; i++) {
+      task.run();
+    }
+    final double millis = (System.nanoTime() - start) / 1e6 / runs;
+    System.out.println(String.format("%-50s %10.3f ms", name, millis));
+    return millis;
+  }
+
+  /**
+   * Returns the used heap after running the garbage collector a few times. The minimum of several measurements is taken
+   * because a single call to <code >System.gc()</code> does not guarantee a full collection.
+   *
+   * @return Used heap in bytes
+   */
+  public static long usedHeap() {
+    final Runtime runtime = Runtime.getRuntime();
+    long used = Long.MAX_VALUE;
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException ignored) {
+      }
+      used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+    }
+    return used;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.benchmark;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.ResolveState;
+import com.intellij.psi.util.PsiTreeUtil;
+import de.halirutan.mathematica.filetypes.SourceFile;
+import de.halirutan.mathematica.parsing.psi.api.MathematicaPsiFile;
+import de.halirutan.mathematica.parsing.psi.api.Symbol;
+import de.halirutan.mathematica.parsing.psi.util.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Stress check for the frozen PSI mode described in {@link FrozenPsi}. All files are analysed once on a single thread
+ * and then by several threads at the same time, where each thread works through all files in its own random order.
+ * Every result of a concurrent run has to be equal to the single threaded one. The analyses are FullForm creation,
+ * collection of global definitions and resolving every symbol locally and globally.
+ * <p/>
+ * Usage: <code >ConcurrentReadBenchmark [-threads n] [file.m ...]</code>. The exit code is 1 if a result differed.
+ */
+public class ConcurrentReadBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int threads = Runtime.getRuntime().availableProcessors() * 2;
+    List<String> files = new ArrayList<String>(Arrays.asList(args));
+    if (files.size() >= 2 && files.get(0).equals("-threads")) {
+      threads = Integer.parseInt(files.get(1));
+      files = files.subList(2, files.size());
+    }
+
+    final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+    final List<MathematicaPsiFile> psiFiles = new ArrayList<MathematicaPsiFile>();
+    for (SourceFile source : BenchmarkEnvironment.loadSources(files.toArray(new String[files.size()]), 4)) {
+      psiFiles.add(FrozenPsi.freeze(environment.parse(source.getName(), source.getText())));
+    }
+
+    long start = System.nanoTime();
+    final List<String> expected = new ArrayList<String>(psiFiles.size());
+    for (MathematicaPsiFile file : psiFiles) {
+      expected.add(analyse(file));
+    }
+    final double singleMillis = (System.nanoTime() - start) / 1e6;
+
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final List<Future<Integer>> results = new ArrayList<Future<Integer>>(threads);
+    start = System.nanoTime();
+    for (int t = 0; t < threads; t++) {
+      final Random random = new Random(t);
+      results.add(executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          final List<Integer> order = new ArrayList<Integer>(psiFiles.size());
+          for (int i = 0; i < psiFiles.size(); i++) {
+            order.add(i);
+          }
+          Collections.shuffle(order, random);
+          int mismatches = 0;
+          for (Integer i : order) {
+            if (!expected.get(i).equals(analyse(psiFiles.get(i)))) {
+              System.out.println("Result differs for " + psiFiles.get(i).getName());
+              mismatches++;
+            }
+          }
+          return mismatches;
+        }
+      }));
+    }
+    int mismatches = 0;
+    for (Future<Integer> result : results) {
+      mismatches += result.get();
+    }
+    final double concurrentMillis = (System.nanoTime() - start) / 1e6;
+    executor.shutdown();
+
+    System.out.println(String.format("%d files, single thread %.1f ms, %d threads each analysing all files %.1f ms",
+        psiFiles.size(), singleMillis, threads, concurrentMillis));
+    System.out.println(mismatches == 0 ? "all concurrent results are equal" : mismatches + " results differ");
+    System.exit(mismatches == 0 ? 0 : 1);
+  }
+
+  private static String analyse(MathematicaPsiFile file) {
+    final StringBuilder result = new StringBuilder();
+    result.append(FullFormCreator.createFullForm(file)).append('\n');
+
+    final TreeMap<String, Integer> definitions = new TreeMap<String, Integer>();
+    for (Map.Entry<String, HashSet<GlobalDefinitionCollector.AssignmentProperty>> entry :
+        new GlobalDefinitionCollector(file).getAssignments().entrySet()) {
+      definitions.put(entry.getKey(), entry.getValue().size());
+    }
+    result.append(definitions).append('\n');
+
+    for (Symbol symbol : PsiTreeUtil.findChildrenOfType(file, Symbol.class)) {
+      final LocalDefinitionResolveProcessor local = new LocalDefinitionResolveProcessor(symbol);
+      PsiTreeUtil.treeWalkUp(local, symbol, file, ResolveState.initial());
+      final GlobalDefinitionResolveProcessor global = new GlobalDefinitionResolveProcessor(symbol);
+      global.processFile(file);
+      result.append(symbol.getName()).append(' ').append(offset(local.getMyReferringSymbol())).append(' ')
+          .append(local.getMyLocalization()).append(' ').append(offset(global.getMyReferringSymbol())).append('\n');
+    }
+    return result.toString();
+  }
+
+  private static int offset(PsiElement element) {
+    return element == null ? -1 : element.getTextOffset();
+  }
+}
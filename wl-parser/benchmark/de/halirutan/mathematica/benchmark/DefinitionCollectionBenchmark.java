@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.benchmark;
+
+import com.intellij.psi.util.PsiTreeUtil;
+import de.halirutan.mathematica.filetypes.SourceFile;
+import de.halirutan.mathematica.parsing.psi.api.FunctionCall;
+import de.halirutan.mathematica.parsing.psi.api.MathematicaPsiFile;
+import de.halirutan.mathematica.parsing.psi.api.Symbol;
+import de.halirutan.mathematica.parsing.psi.util.GlobalDefinitionCollector;
+import de.halirutan.mathematica.parsing.psi.util.GlobalDefinitionResolveProcessor;
+import de.halirutan.mathematica.parsing.psi.util.HeadMatcher;
+import de.halirutan.mathematica.parsing.psi.util.MathematicaElementIndex;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the collection of global definitions with {@link GlobalDefinitionCollector} and compares the matching of
+ * function heads through regular expressions with {@link HeadMatcher}. The search for global definitions of symbols
+ * is measured once by walking through the whole file and once through the {@link MathematicaElementIndex}.
+ * <p/>
+ * Usage: <code >DefinitionCollectionBenchmark [file.m ...]</code>
+ */
+public class DefinitionCollectionBenchmark {
+
+  private static final String[] REGEX_HEADS = {"Set|SetDelayed", "TagSet|TagSetDelayed", "UpSet|UpSetDelayed",
+      "SetAttributes", "SetOptions", "Module|With"};
+  private static final HeadMatcher[] MATCHER_HEADS = {HeadMatcher.of("Set", "SetDelayed"),
+      HeadMatcher.of("TagSet", "TagSetDelayed"), HeadMatcher.of("UpSet", "UpSetDelayed"),
+      HeadMatcher.of("SetAttributes"), HeadMatcher.of("SetOptions"), HeadMatcher.of("Module", "With")};
+
+  private static final int RESOLVED_SYMBOLS_PER_FILE = 20;
+
+  private static int ourSink;
+
+  public static void main(String[] args) throws IOException {
+    final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+    final List<MathematicaPsiFile> files = new ArrayList<MathematicaPsiFile>();
+    for (SourceFile source : BenchmarkEnvironment.loadSources(args, 50)) {
+      files.add(environment.parse(source.getName(), source.getText()));
+    }
+    final List<FunctionCall> calls = new ArrayList<FunctionCall>();
+    for (MathematicaPsiFile file : files) {
+      calls.addAll(PsiTreeUtil.findChildrenOfType(file, FunctionCall.class));
+    }
+    System.out.println(files.size() + " files, " + calls.size() + " function calls");
+
+    BenchmarkEnvironment.measure("GlobalDefinitionCollector on all files", 5, 20, new Runnable() {
+      @Override
+      public void run() {
+        for (MathematicaPsiFile file : files) {
+          ourSink += new GlobalDefinitionCollector(file).getAssignments().size();
+        }
+      }
+    });
+
+    BenchmarkEnvironment.measure("matchesHead(String) on all calls", 5, 20, new Runnable() {
+      @Override
+      public void run() {
+        for (FunctionCall call : calls) {
+          for (String head : REGEX_HEADS) {
+            if (call.matchesHead(head)) ourSink++;
+          }
+        }
+      }
+    });
+
+    BenchmarkEnvironment.measure("matchesHead(HeadMatcher) on all calls", 5, 20, new Runnable() {
+      @Override
+      public void run() {
+        for (FunctionCall call : calls) {
+          for (HeadMatcher head : MATCHER_HEADS) {
+            if (call.matchesHead(head)) ourSink++;
+          }
+        }
+      }
+    });
+    final List<List<Symbol>> symbols = new ArrayList<List<Symbol>>();
+    for (MathematicaPsiFile file : files) {
+      final List<Symbol> fileSymbols = new ArrayList<Symbol>(PsiTreeUtil.findChildrenOfType(file, Symbol.class));
+      symbols.add(fileSymbols.subList(0, Math.min(RESOLVED_SYMBOLS_PER_FILE, fileSymbols.size())));
+    }
+
+    BenchmarkEnvironment.measure("MathematicaElementIndex.build on all files", 5, 20, new Runnable() {
+      @Override
+      public void run() {
+        for (MathematicaPsiFile file : files) {
+          ourSink += MathematicaElementIndex.build(file).size();
+        }
+      }
+    });
+
+    BenchmarkEnvironment.measure("global resolve, walking the files", 2, 5, new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < files.size(); i++) {
+          for (Symbol symbol : symbols.get(i)) {
+            final GlobalDefinitionResolveProcessor processor = new GlobalDefinitionResolveProcessor(symbol);
+            PsiTreeUtil.processElements(files.get(i), processor);
+            if (processor.getMyReferringSymbol() != null) ourSink++;
+          }
+        }
+      }
+    });
+
+    BenchmarkEnvironment.measure("global resolve, using the element index", 2, 5, new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < files.size(); i++) {
+          for (Symbol symbol : symbols.get(i)) {
+            final GlobalDefinitionResolveProcessor processor = new GlobalDefinitionResolveProcessor(symbol);
+            processor.processFile(files.get(i));
+            if (processor.getMyReferringSymbol() != null) ourSink++;
+          }
+        }
+      }
+    });
+    System.out.println("(" + ourSink + ")");
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.benchmark;
+
+import com.intellij.openapi.util.io.FileUtil;
+import de.halirutan.mathematica.parsing.psi.api.MathematicaPsiFile;
+import de.halirutan.mathematica.parsing.psi.api.Symbol;
+import de.halirutan.mathematica.parsing.psi.stubs.DefinitionStub;
+import de.halirutan.mathematica.parsing.psi.stubs.MathematicaDefinitionIndex;
+import de.halirutan.mathematica.parsing.psi.stubs.MathematicaDefinitionIndex.Definition;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the {@link MathematicaDefinitionIndex} on a synthetic project that is written to a temporary directory:
+ * building the index from scratch, saving and loading it, updating it when nothing or one percent of the files changed
+ * and looking up definitions by their qualified name. While the index is built, another thread keeps querying it and
+ * the longest time a query had to wait is reported. The loaded index is compared with the built one, and the
+ * definitions found for a sample of names are checked against the parsed files.
+ * <p/>
+ * Usage: <code >DefinitionIndexBenchmark [numberOfFiles]</code>, the default is 5000 files.
+ */
+public class DefinitionIndexBenchmark {
+
+  private static final int DEFINITIONS = 12;
+  private static final int QUERIES = 100000;
+
+  public static void main(String[] args) throws IOException {
+    final int fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+    final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+    final File directory = FileUtil.createTempDirectory("definitionIndex", null);
+    try {
+      final List<File> files = new ArrayList<File>(fileCount);
+      long characters = 0;
+      for (int i = 0; i < fileCount; i++) {
+        final String source = SyntheticSources.createPackage(i, DEFINITIONS);
+        final File file = new File(directory, "Package" + i + ".m");
+        FileUtil.writeToFile(file, source);
+        files.add(file);
+        characters += source.length();
+      }
+      System.out.println(String.format("%d files, %.1f MB source", fileCount, characters / (1024.0 * 1024.0)));
+
+      final MathematicaDefinitionIndex index = new MathematicaDefinitionIndex(environment.getProject());
+      final QueryProbe probe = new QueryProbe(index);
+      probe.start();
+      long start = System.nanoTime();
+      int parsed = index.update(files);
+      report("build", start, parsed);
+      probe.finish();
+      System.out.println(String.format("%-28s %10.1f ms longest, %d queries", "queries during build",
+          probe.myLongest / 1e6, probe.myQueries));
+
+      final File indexFile = new File(directory, "definitions.index");
+      start = System.nanoTime();
+      index.save(indexFile);
+      System.out.println(String.format("%-28s %10.1f ms, %.1f KB", "save", millis(start), indexFile.length() / 1024.0));
+
+      start = System.nanoTime();
+      final MathematicaDefinitionIndex loaded = MathematicaDefinitionIndex.load(environment.getProject(), indexFile);
+      System.out.println(String.format("%-28s %10.1f ms", "load", millis(start)));
+      boolean correct = sameContent(index, loaded);
+
+      start = System.nanoTime();
+      parsed = loaded.update(files);
+      report("update, nothing changed", start, parsed);
+      correct &= parsed == 0;
+
+      final Random random = new Random(42);
+      final int changes = Math.max(1, fileCount / 100);
+      int changed = 0;
+      for (int i = 0; i < changes; i++) {
+        changed = random.nextInt(fileCount);
+        final File file = files.get(changed);
+        FileUtil.writeToFile(file, FileUtil.loadFile(file) + "\nlateDefinition" + changed + "[x_] := x;\n");
+      }
+      start = System.nanoTime();
+      parsed = loaded.update(files);
+      report("update, 1% changed", start, parsed);
+      correct &= !loaded.getDefinitions("Global`lateDefinition" + changed).isEmpty();
+
+      final String[] names = new String[QUERIES];
+      for (int i = 0; i < QUERIES; i++) {
+        final int file = random.nextInt(fileCount);
+        names[i] = "Package" + file + "`func" + file + "x" + random.nextInt(DEFINITIONS);
+      }
+      int found = 0;
+      start = System.nanoTime();
+      for (String name : names) {
+        found += loaded.getDefinitions(name).size();
+      }
+      final double queryMillis = millis(start);
+      System.out.println(String.format("%-28s %10.4f ms per query (%d definitions for %d names)", "go to definition",
+          queryMillis / QUERIES, found, QUERIES));
+      correct &= found >= QUERIES;
+
+      correct &= checkOffsets(environment, loaded, names, 200);
+      System.out.println("index is correct: " + correct);
+      System.exit(correct ? 0 : 1);
+    } finally {
+      FileUtil.delete(directory);
+    }
+  }
+
+  private static double millis(long start) {
+    return (System.nanoTime() - start) / 1e6;
+  }
+
+  private static void report(String name, long start, int parsed) {
+    final double millis = millis(start);
+    System.out.println(String.format("%-28s %10.1f ms, %d files parsed", name, millis, parsed));
+  }
+
+  private static boolean sameContent(MathematicaDefinitionIndex first, MathematicaDefinitionIndex second) {
+    if (!first.getFiles().equals(second.getFiles()) || !first.getQualifiedNames().equals(second.getQualifiedNames())) {
+      return false;
+    }
+    for (String name : first.getQualifiedNames()) {
+      final List<Definition> expected = first.getDefinitions(name);
+      final List<Definition> actual = second.getDefinitions(name);
+      if (expected.size() != actual.size()) {
+        return false;
+      }
+      for (int i = 0; i < expected.size(); i++) {
+        if (!expected.get(i).toString().equals(actual.get(i).toString()) ||
+            expected.get(i).getStub().getLhsOffset() != actual.get(i).getStub().getLhsOffset()) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Parses the files of some definitions and checks that the defined symbol is found at the stored offset.
+   */
+  private static boolean checkOffsets(BenchmarkEnvironment environment, MathematicaDefinitionIndex index,
+                                      String[] names, int samples) throws IOException {
+    for (int i = 0; i < samples; i++) {
+      for (Definition definition : index.getDefinitions(names[i])) {
+        final File file = new File(definition.getPath());
+        final MathematicaPsiFile psiFile = environment.parse(file.getName(), FileUtil.loadFile(file));
+        final DefinitionStub stub = definition.getStub();
+        final Symbol symbol = stub.findSymbol(psiFile);
+        if (symbol == null || !names[i].equals(stub.getQualifiedName())) {
+          System.out.println("wrong definition " + definition);
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Queries the index in a loop until it is finished and records how long the slowest query took.
+   */
+  private static class QueryProbe extends Thread {
+    private final MathematicaDefinitionIndex myIndex;
+    private volatile boolean myFinished = false;
+    private long myLongest = 0;
+    private int myQueries = 0;
+
+    private QueryProbe(MathematicaDefinitionIndex index) {
+      myIndex = index;
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      while (!myFinished) {
+        final long start = System.nanoTime();
+        myIndex.getDefinitions("Package0`func0x0");
+        myLongest = Math.max(myLongest, System.nanoTime() - start);
+        myQueries++;
+        Thread.yield();
+      }
+    }
+
+    private void finish() {
+      myFinished = true;
+      try {
+        join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.benchmark;
+
+import com.intellij.psi.PsiElement;
+import de.halirutan.mathematica.parsing.psi.api.Expression;
+import de.halirutan.mathematica.parsing.psi.api.FunctionCall;
+import de.halirutan.mathematica.parsing.psi.api.Symbol;
+import de.halirutan.mathematica.parsing.psi.util.MathematicaPsiElementFactory;
+
+/**
+ * Compares the creation of elements through {@link MathematicaPsiElementFactory} with parsing a dummy file for every
+ * element, which is how the factory worked before. Before measuring, the created elements are checked to have the same
+ * text and tree structure as the parsed ones.
+ * <p/>
+ * Usage: <code >ElementFactoryBenchmark</code>
+ */
+public class ElementFactoryBenchmark {
+
+  private static final int ELEMENTS = 10000;
+
+  private static int ourSink;
+
+  public static void main(String[] args) {
+    final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+    final MathematicaPsiElementFactory factory = MathematicaPsiElementFactory.getInstance(environment.getProject());
+
+    final FunctionCall call = factory.createFunctionCall("Module", factory.createExpressionFromText("{x = 1}"),
+        factory.createSymbol("x"), factory.createNumber("2.5"), factory.createString("text"));
+    final boolean same = sameTree(call, factory.createDummyFile("Module[{x = 1}, x, 2.5, \"text\"]").getFirstChild()) &&
+        sameTree(factory.createSymbol("Global`x$1"), factory.createDummyFile("Global`x$1").getFirstChild());
+    System.out.println("created elements match parsed elements: " + same);
+
+    BenchmarkEnvironment.measure(ELEMENTS + " symbols from dummy files", 3, 10, new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < ELEMENTS; i++) {
+          ourSink += factory.createDummyFile("symbol" + i).getFirstChild().getTextLength();
+        }
+      }
+    });
+    BenchmarkEnvironment.measure(ELEMENTS + " symbols from createSymbol", 3, 10, new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < ELEMENTS; i++) {
+          ourSink += factory.createSymbol("symbol" + i).getTextLength();
+        }
+      }
+    });
+
+    final Expression argument = factory.createExpressionFromText("a + b");
+    BenchmarkEnvironment.measure(ELEMENTS + " calls f[a + b, 1] from dummy files", 3, 10, new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < ELEMENTS; i++) {
+          ourSink += factory.createDummyFile("f" + i + "[a + b, 1]").getFirstChild().getTextLength();
+        }
+      }
+    });
+    BenchmarkEnvironment.measure(ELEMENTS + " calls f[a + b, 1] from createFunctionCall", 3, 10, new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < ELEMENTS; i++) {
+          final Symbol symbol = factory.createSymbol("f" + i);
+          ourSink += factory.createFunctionCall(symbol.getName(), argument, factory.createNumber("1")).getTextLength();
+        }
+      }
+    });
+
+    final String template = "Module[{x = 1, y}, If[x > 0, y = x^2, y = -x]; y]";
+    BenchmarkEnvironment.measure(ELEMENTS + " module expressions from dummy files", 3, 10, new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < ELEMENTS; i++) {
+          ourSink += factory.createDummyFile(template).getFirstChild().getTextLength();
+        }
+      }
+    });
+    BenchmarkEnvironment.measure(ELEMENTS + " module expressions from cached template", 3, 10, new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < ELEMENTS; i++) {
+          ourSink += factory.createExpressionFromText(template).getTextLength();
+        }
+      }
+    });
+    System.out.println("(" + ourSink + ")");
+    System.exit(same ? 0 : 1);
+  }
+
+  private static boolean sameTree(PsiElement created, PsiElement parsed) {
+    if (created.getClass() != parsed.getClass() || !created.getText().equals(parsed.getText())) {
+      return false;
+    }
+    PsiElement createdChild = created.getFirstChild();
+    PsiElement parsedChild = parsed.getFirstChild();
+    while (createdChild != null && parsedChild != null) {
+      if (!sameTree(createdChild, parsedChild)) {
+        return false;
+      }
+      createdChild = createdChild.getNextSibling();
+      parsedChild = parsedChild.getNextSibling();
+    }
+    return createdChild == null && parsedChild == null;
+  }
+}
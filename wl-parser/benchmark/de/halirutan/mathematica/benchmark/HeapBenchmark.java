@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.benchmark;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.tree.IElementType;
+import de.halirutan.mathematica.filetypes.SourceFile;
+import de.halirutan.mathematica.parsing.psi.api.FunctionCall;
+import de.halirutan.mathematica.parsing.psi.api.MathematicaPsiFile;
+import de.halirutan.mathematica.parsing.psi.api.Symbol;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Reports the memory that parsed files keep alive. Two numbers are given:
+ * <ul >
+ *   <li >the retained heap per KB of source, measured as the difference of the used heap after garbage collection
+ *   before and after the corpus was parsed and all PSI wrappers and their caches were created,</li>
+ *   <li >a table per node type with the number of nodes and the estimated shallow size of one AST node plus its PSI
+ *   wrapper. The estimate assumes a 64 bit JVM with compressed references (12 byte headers, 4 byte references, 8 byte
+ *   alignment) and does not include shared objects like interned names.</li>
+ * </ul>
+ * Usage: <code >HeapBenchmark [file.m ...]</code>
+ */
+public class HeapBenchmark {
+
+  private static final Map<Class<?>, Integer> ourShallowSizes = new HashMap<Class<?>, Integer>();
+
+  public static void main(String[] args) throws IOException {
+    final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+    final List<SourceFile> sources = BenchmarkEnvironment.loadSources(args, 200);
+    long sourceBytes = 0;
+    for (SourceFile source : sources) {
+      sourceBytes += source.getText().length();
+    }
+
+    final long before = BenchmarkEnvironment.usedHeap();
+    final List<MathematicaPsiFile> files = new ArrayList<MathematicaPsiFile>(sources.size());
+    final Map<IElementType, NodeTypeStatistics> statistics = new HashMap<IElementType, NodeTypeStatistics>();
+    int nodes = 0;
+    for (SourceFile source : sources) {
+      final MathematicaPsiFile file = environment.parse(source.getName(), source.getText());
+      files.add(file);
+      nodes += visit(file, statistics);
+    }
+    final long after = BenchmarkEnvironment.usedHeap();
+    final double retained = after - before;
+
+    System.out.println(String.format("%d files, %.1f KB source, %d nodes", files.size(), sourceBytes / 1024.0, nodes));
+    System.out.println(String.format("retained heap: %.1f KB, %.1f KB per source KB, %.1f bytes per node",
+        retained / 1024, retained / sourceBytes, retained / nodes));
+    System.out.println();
+    System.out.println(String.format("%-32s %-28s %10s %8s %12s", "node type", "psi class", "count", "bytes", "total KB"));
+
+    final List<NodeTypeStatistics> sorted = new ArrayList<NodeTypeStatistics>(statistics.values());
+    Collections.sort(sorted, new Comparator<NodeTypeStatistics>() {
+      @Override
+      public int compare(NodeTypeStatistics o1, NodeTypeStatistics o2) {
+        final long t1 = (long) o1.myCount * o1.myBytesPerNode;
+        final long t2 = (long) o2.myCount * o2.myBytesPerNode;
+        return t1 < t2 ? 1 : t1 == t2 ? 0 : -1;
+      }
+    });
+    for (NodeTypeStatistics s : sorted) {
+      System.out.println(String.format("%-32s %-28s %10d %8d %12.1f", s.myType, s.myPsiClass, s.myCount,
+          s.myBytesPerNode, (double) s.myCount * s.myBytesPerNode / 1024));
+    }
+    // keep the files reachable until the measurement is done
+    System.out.println(files.size() == sources.size() ? "" : "?");
+  }
+
+  /**
+   * Creates the PSI for every node, fills the caches that analyses usually fill and counts the nodes per type.
+   */
+  private static int visit(PsiElement element, Map<IElementType, NodeTypeStatistics> statistics) {
+    int count = 1;
+    final ASTNode node = element.getNode();
+    if (node != null) {
+      final IElementType type = node.getElementType();
+      NodeTypeStatistics s = statistics.get(type);
+      if (s == null) {
+        s = new NodeTypeStatistics(type, element.getClass(), shallowSize(node.getClass()) +
+            (element != node ? shallowSize(element.getClass()) : 0));
+        statistics.put(type, s);
+      }
+      s.myCount++;
+    }
+    if (element instanceof Symbol) {
+      ((Symbol) element).getSymbolName();
+    } else if (element instanceof FunctionCall) {
+      ((FunctionCall) element).argumentCount();
+      ((FunctionCall) element).isScopingConstruct();
+    }
+    for (PsiElement child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+      count += visit(child, statistics);
+    }
+    return count;
+  }
+
+  private static int shallowSize(Class<?> clazz) {
+    Integer size = ourShallowSizes.get(clazz);
+    if (size == null) {
+      int bytes = 12;
+      for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          if (Modifier.isStatic(field.getModifiers())) continue;
+          final Class<?> type = field.getType();
+          if (type == long.class || type == double.class) {
+            bytes += 8;
+          } else if (type == short.class || type == char.class) {
+            bytes += 2;
+          } else if (type == byte.class || type == boolean.class) {
+            bytes += 1;
+          } else {
+            bytes += 4;
+          }
+        }
+      }
+      size = (bytes + 7) & ~7;
+      ourShallowSizes.put(clazz, size);
+    }
+    return size;
+  }
+
+  private static class NodeTypeStatistics {
+    private final IElementType myType;
+    private final String myPsiClass;
+    private final int myBytesPerNode;
+    private int myCount;
+
+    private NodeTypeStatistics(IElementType type, Class<?> psiClass, int bytesPerNode) {
+      myType = type;
+      myPsiClass = psiClass.getSimpleName();
+      myBytesPerNode = bytesPerNode;
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.benchmark;
+
+import com.intellij.psi.ResolveState;
+import com.intellij.psi.util.PsiTreeUtil;
+import de.halirutan.mathematica.filetypes.SourceFile;
+import de.halirutan.mathematica.parsing.psi.api.MathematicaPsiFile;
+import de.halirutan.mathematica.parsing.psi.api.Symbol;
+import de.halirutan.mathematica.parsing.psi.util.LocalDefinitionBatchResolver;
+import de.halirutan.mathematica.parsing.psi.util.LocalDefinitionResolveProcessor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Compares resolving every symbol of a file with its own {@link LocalDefinitionResolveProcessor} walk against one walk
+ * of {@link LocalDefinitionBatchResolver}. Besides the corpus, a large package, a file with deeply nested
+ * <code >Module</code>s and a <code >Module</code> with many variables are measured, where the cost of the single walks
+ * grows with the number of top-level expressions, with the depth and with the number of variables. All results of the batch resolver are checked against the single walks first.
+ * <p/>
+ * Usage: <code >LocalResolveBenchmark [file.m ...]</code>
+ */
+public class LocalResolveBenchmark {
+
+  private static final int NESTING_DEPTH = 120;
+  private static final int MODULE_VARIABLES = 2000;
+
+  private static int ourSink;
+
+  public static void main(String[] args) throws IOException {
+    final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+    final List<MathematicaPsiFile> corpus = new ArrayList<MathematicaPsiFile>();
+    for (SourceFile source : BenchmarkEnvironment.loadSources(args, 50)) {
+      corpus.add(environment.parse(source.getName(), source.getText()));
+    }
+    final List<MathematicaPsiFile> large = new ArrayList<MathematicaPsiFile>();
+    large.add(environment.parse("Large.m", SyntheticSources.createPackage(1, 1500)));
+    final List<MathematicaPsiFile> nested = new ArrayList<MathematicaPsiFile>();
+    nested.add(environment.parse("Nested.m", createNestedModules(NESTING_DEPTH)));
+    final List<MathematicaPsiFile> longModule = new ArrayList<MathematicaPsiFile>();
+    longModule.add(environment.parse("LongModule.m", createLongModule(MODULE_VARIABLES)));
+
+    final List<MathematicaPsiFile> all = new ArrayList<MathematicaPsiFile>(corpus);
+    all.addAll(large);
+    all.addAll(nested);
+    all.addAll(longModule);
+    int mismatches = 0;
+    for (MathematicaPsiFile file : all) {
+      mismatches += check(file);
+    }
+    System.out.println(all.size() + " files, " + mismatches + " mismatches");
+
+    compare("corpus", corpus);
+    compare("large package", large);
+    compare("nested modules, depth " + NESTING_DEPTH, nested);
+    compare("module with " + MODULE_VARIABLES + " variables", longModule);
+    System.out.println("(" + ourSink + ")");
+  }
+
+  private static void compare(String name, final List<MathematicaPsiFile> files) {
+    final List<Collection<Symbol>> symbols = new ArrayList<Collection<Symbol>>();
+    int count = 0;
+    for (MathematicaPsiFile file : files) {
+      final Collection<Symbol> fileSymbols = PsiTreeUtil.findChildrenOfType(file, Symbol.class);
+      symbols.add(fileSymbols);
+      count += fileSymbols.size();
+    }
+    System.out.println(name + ": " + count + " symbols");
+    final double single = BenchmarkEnvironment.measure("  walk up from every symbol", 2, 5, new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < files.size(); i++) {
+          for (Symbol symbol : symbols.get(i)) {
+            final LocalDefinitionResolveProcessor processor = new LocalDefinitionResolveProcessor(symbol);
+            PsiTreeUtil.treeWalkUp(processor, symbol, files.get(i), ResolveState.initial());
+            if (processor.getMyReferringSymbol() != null) ourSink++;
+          }
+        }
+      }
+    });
+    final double batch = BenchmarkEnvironment.measure("  LocalDefinitionBatchResolver", 2, 5, new Runnable() {
+      @Override
+      public void run() {
+        for (MathematicaPsiFile file : files) {
+          ourSink += LocalDefinitionBatchResolver.resolveFile(file).getLocalSymbolCount();
+        }
+      }
+    });
+    System.out.println(String.format("  speedup %.1fx", single / batch));
+  }
+
+  /**
+   * Resolves a file with the batch resolver and compares the cached result of every symbol with a single walk.
+   *
+   * @return The number of symbols with a different result
+   */
+  private static int check(MathematicaPsiFile file) {
+    LocalDefinitionBatchResolver.resolveFile(file);
+    int mismatches = 0;
+    for (Symbol symbol : PsiTreeUtil.findChildrenOfType(file, Symbol.class)) {
+      final LocalDefinitionResolveProcessor processor = new LocalDefinitionResolveProcessor(symbol);
+      PsiTreeUtil.treeWalkUp(processor, symbol, file, ResolveState.initial());
+      if (!symbol.cachedResolve() || symbol.getResolveElement() != processor.getMyReferringSymbol() ||
+          symbol.getLocalizationConstruct() != processor.getMyLocalization()) {
+        if (mismatches++ < 5) {
+          System.out.println("Mismatch in " + file.getName() + " at " + symbol.getTextOffset() + ": " +
+              symbol.getText() + " " + symbol.getLocalizationConstruct() + " / " + processor.getMyLocalization());
+        }
+      }
+    }
+    return mismatches;
+  }
+
+  /**
+   * Creates <code >Module</code>s nested into each other where every level uses the variables of all outer levels.
+   */
+  private static String createNestedModules(int depth) {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("f[x_] := ");
+    for (int i = 0; i < depth; i++) {
+      sb.append("Module[{v").append(i).append(" = x + ").append(i).append("},\n");
+      sb.append("  g[v").append(i).append(", v").append(i / 2).append(", x, #] & /@ {v0, y};\n");
+    }
+    sb.append("  x");
+    for (int i = 0; i < depth; i++) {
+      sb.append("]");
+    }
+    sb.append(";\n");
+    return sb.toString();
+  }
+
+  /**
+   * Creates one <code >Module</code> with many variables which are all used in its body.
+   */
+  private static String createLongModule(int variables) {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("Module[{");
+    for (int i = 0; i < variables; i++) {
+      if (i > 0) sb.append(", ");
+      sb.append("v").append(i);
+    }
+    sb.append("},\n");
+    for (int i = 0; i < variables; i++) {
+      sb.append("  v").append(i).append(" = v").append(i / 2).append(" + 1;\n");
+    }
+    sb.append("  v0\n];\n");
+    return sb.toString();
+  }
+}
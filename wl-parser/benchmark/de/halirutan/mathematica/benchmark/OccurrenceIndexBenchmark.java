@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.benchmark;
+
+import com.intellij.openapi.util.io.FileUtil;
+import de.halirutan.mathematica.index.OccurrenceKind;
+import de.halirutan.mathematica.index.SymbolOccurrence;
+import de.halirutan.mathematica.index.SymbolOccurrenceIndex;
+import de.halirutan.mathematica.parsing.psi.stubs.DefinitionStub;
+import de.halirutan.mathematica.parsing.psi.stubs.MathematicaStubBuilder;
+import de.halirutan.mathematica.refactoring.BatchSymbolRenamer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Measures the {@link SymbolOccurrenceIndex} on a synthetic project written to a temporary directory: building, saving
+ * and opening the index, looking up symbols and updating it after one percent of the files changed. The occurrences
+ * of a sample of symbols are compared with a scan of all files by {@link BatchSymbolRenamer#findOccurrences}, which
+ * uses the same rules and is also reported as the cost of finding usages without an index. The definitions in the
+ * index are compared with the {@link DefinitionStub}s of some of the files.
+ * <p/>
+ * Usage: <code >OccurrenceIndexBenchmark [numberOfFiles]</code>, the default is 5000 files.
+ */
+public class OccurrenceIndexBenchmark {
+
+  private static final int DEFINITIONS = 12;
+  private static final int QUERIES = 2000;
+  private static final int CHECKED_QUERIES = 10;
+
+  public static void main(String[] args) throws IOException {
+    final int fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+    final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+    final File directory = FileUtil.createTempDirectory("occurrenceIndex", null);
+    try {
+      final List<File> files = new ArrayList<File>(fileCount);
+      long characters = 0;
+      for (int i = 0; i < fileCount; i++) {
+        final String source = SyntheticSources.createPackage(i, DEFINITIONS);
+        final File file = new File(directory, "Package" + i + ".m");
+        FileUtil.writeToFile(file, source);
+        files.add(file);
+        characters += source.length();
+      }
+      System.out.println(String.format("%d files, %.1f MB source", fileCount, characters / (1024.0 * 1024.0)));
+
+      final SymbolOccurrenceIndex index = new SymbolOccurrenceIndex();
+      long start = System.nanoTime();
+      int scanned = index.update(files);
+      System.out.println(String.format("%-28s %10.1f ms, %d files scanned", "build", millis(start), scanned));
+
+      final File indexFile = new File(directory, "occurrences.index");
+      start = System.nanoTime();
+      index.save(indexFile);
+      System.out.println(String.format("%-28s %10.1f ms, %.1f KB", "save", millis(start), indexFile.length() / 1024.0));
+
+      start = System.nanoTime();
+      final SymbolOccurrenceIndex loaded = SymbolOccurrenceIndex.load(indexFile);
+      System.out.println(String.format("%-28s %10.1f ms", "open", millis(start)));
+
+      final Random random = new Random(42);
+      final String[] names = new String[QUERIES];
+      names[0] = "System`Module";
+      names[1] = "System`x";
+      for (int i = 2; i < QUERIES; i++) {
+        final int file = random.nextInt(fileCount);
+        names[i] = i % 4 == 0 ? "Package" + file + "`Private`helper" + (4 + 6 * random.nextInt(2)) :
+            "Package" + file + "`func" + file + "x" + random.nextInt(DEFINITIONS);
+      }
+      boolean correct = query(loaded, names, "query");
+      correct &= compareWithScan(environment, loaded, files, names);
+
+      for (int i = 0; i < Math.max(1, fileCount / 100); i++) {
+        final int changed = random.nextInt(fileCount);
+        final File file = files.get(changed);
+        FileUtil.writeToFile(file, FileUtil.loadFile(file) + "\nPackage0`func0x1[" + changed + "];\n");
+      }
+      start = System.nanoTime();
+      scanned = loaded.update(files);
+      System.out.println(String.format("%-28s %10.1f ms, %d files scanned", "update, 1% changed", millis(start),
+          scanned));
+      names[2] = "Package0`func0x1";
+      correct &= query(loaded, names, "query after update");
+      correct &= compareWithScan(environment, loaded, files, names);
+
+      final File mergedFile = new File(directory, "merged.index");
+      start = System.nanoTime();
+      loaded.save(mergedFile);
+      System.out.println(String.format("%-28s %10.1f ms", "save merged", millis(start)));
+      final SymbolOccurrenceIndex merged = SymbolOccurrenceIndex.load(mergedFile);
+      for (String name : names) {
+        correct &= loaded.findOccurrences(name).equals(merged.findOccurrences(name));
+      }
+
+      correct &= compareDefinitions(environment, merged, files.subList(0, Math.min(200, fileCount)));
+      System.out.println("index is correct: " + correct);
+      System.exit(correct ? 0 : 1);
+    } finally {
+      FileUtil.delete(directory);
+    }
+  }
+
+  private static double millis(long start) {
+    return (System.nanoTime() - start) / 1e6;
+  }
+
+  private static boolean query(SymbolOccurrenceIndex index, String[] names, String title) throws IOException {
+    for (String name : names) {
+      index.findOccurrences(name);
+    }
+    long found = 0;
+    double slowest = 0;
+    String slowestName = null;
+    final long start = System.nanoTime();
+    for (String name : names) {
+      final long queryStart = System.nanoTime();
+      found += index.findOccurrences(name).size();
+      if (millis(queryStart) > slowest) {
+        slowest = millis(queryStart);
+        slowestName = name;
+      }
+    }
+    System.out.println(String.format("%-28s %10.4f ms per symbol, %d occurrences of %d symbols", title,
+        millis(start) / names.length, found, names.length));
+    System.out.println(String.format("%-28s %10.2f ms for %s", "slowest query", slowest, slowestName));
+    final int module = index.findOccurrences(names[0]).size();
+    System.out.println(String.format("%-28s %10d occurrences", names[0], module));
+    return found > names.length;
+  }
+
+  /**
+   * Scans all files for some of the symbols like a find usages without index and compares the offsets.
+   */
+  private static boolean compareWithScan(BenchmarkEnvironment environment, SymbolOccurrenceIndex index, List<File> files,
+                                         String[] names) throws IOException {
+    final List<String> texts = new ArrayList<String>(files.size());
+    for (File file : files) {
+      texts.add(FileUtil.loadFile(file));
+    }
+    final long start = System.nanoTime();
+    boolean correct = true;
+    for (int i = 0; i < CHECKED_QUERIES; i++) {
+      final Set<String> expected = new HashSet<String>();
+      final BatchSymbolRenamer scanner = new BatchSymbolRenamer(environment.getProject(), names[i], "x");
+      for (int j = 0; j < files.size(); j++) {
+        for (int offset : scanner.findOccurrences(texts.get(j))) {
+          expected.add(files.get(j).getPath() + ":" + offset);
+        }
+      }
+      final Set<String> actual = new HashSet<String>();
+      for (SymbolOccurrence occurrence : index.findOccurrences(names[i])) {
+        actual.add(occurrence.getPath() + ":" + occurrence.getOffset());
+      }
+      if (!expected.equals(actual)) {
+        System.out.println("different occurrences for " + names[i] + ": " + expected.size() + " " + actual.size());
+        correct = false;
+      }
+    }
+    System.out.println(String.format("%-28s %10.1f ms per symbol", "scan of all files", millis(start) / CHECKED_QUERIES));
+    return correct;
+  }
+
+  private static boolean compareDefinitions(BenchmarkEnvironment environment, SymbolOccurrenceIndex index,
+                                            List<File> files) throws IOException {
+    int stubs = 0;
+    int found = 0;
+    final MathematicaStubBuilder builder = new MathematicaStubBuilder();
+    for (File file : files) {
+      final String text = FileUtil.loadFile(file);
+      for (DefinitionStub stub : builder.buildStubTree(environment.parse(file.getName(), text)).getDefinitions()) {
+        stubs++;
+        for (SymbolOccurrence occurrence : index.findOccurrences(stub.getQualifiedName())) {
+          if (occurrence.getKind() == OccurrenceKind.DEFINITION && occurrence.getOffset() == stub.getSymbolOffset() &&
+              occurrence.getPath().equals(file.getPath())) {
+            found++;
+            break;
+          }
+        }
+      }
+    }
+    System.out.println(String.format("%-28s %d of %d definition stubs", "definitions in index", found, stubs));
+    return found == stubs;
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.halirutan.mathematica.benchmark;
+
+import de.halirutan.mathematica.filetypes.SourceFile;
+import de.halirutan.mathematica.index.PackageDependencyGraph;
+import de.halirutan.mathematica.parsing.psi.stubs.CorpusDefinitionCollector;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the {@link PackageDependencyGraph} of a synthetic corpus whose packages need packages with smaller indexes.
+ * The files are shuffled, so their order does not reflect the dependencies. Three more files form a cycle and load a
+ * file which is not part of the corpus.
+ * <p/>
+ * The analysis builds the definition stubs of each file and checks that all files it depends on were analyzed before.
+ * It is run on one thread and on the given number of threads.
+ * <p/>
+ * Usage: <code >PackageDependencyBenchmark [numberOfFiles] [threads]</code>, the defaults are 2000 files and the
+ * number of processors.
+ */
+public class PackageDependencyBenchmark {
+
+  private static final int DEFINITIONS = 12;
+
+  public static void main(String[] args) {
+    final int fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    final int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+    final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+    final List<SourceFile> sources = new ArrayList<SourceFile>(fileCount + 3);
+    for (int i = 0; i < fileCount; i++) {
+      sources.add(new SourceFile("src/Package" + i + ".m", SyntheticSources.createPackage(i, DEFINITIONS)));
+    }
+    sources.add(new SourceFile("src/cycle/CycleA.m", "BeginPackage[\"CycleA`\", {\"CycleB`\"}];\nEndPackage[];\n"));
+    sources.add(new SourceFile("src/cycle/CycleB.m", "BeginPackage[\"CycleB`\"];\nNeeds[\"CycleA`\"];\nEndPackage[];\n"));
+    sources.add(new SourceFile("src/cycle/User.m", "Needs[\"CycleA`\"];\nGet[\"Missing.m\"];\n<< \"../Package0.m\";\n"));
+    Collections.shuffle(sources, new Random(42));
+
+    long start = System.nanoTime();
+    final PackageDependencyGraph graph = new PackageDependencyGraph(sources);
+    final double buildMillis = millis(start);
+    int edges = 0;
+    for (String file : graph.getFiles()) {
+      edges += graph.getDependencies(file).size();
+    }
+    final List<List<String>> waves = graph.getWaves();
+    System.out.println(String.format("%d files, %d edges, %d waves, graph built in %.1f ms", sources.size(), edges,
+        waves.size(), buildMillis));
+    final List<List<String>> cycles = graph.getCycles();
+    System.out.println("cycles: " + cycles);
+    System.out.println("unresolved in User.m: " + graph.getUnresolved("src/cycle/User.m"));
+
+    boolean correct = cycles.size() == 1 &&
+        cycles.get(0).equals(Arrays.asList("src/cycle/CycleA.m", "src/cycle/CycleB.m")) &&
+        graph.getUnresolved("src/cycle/User.m").equals(Collections.singletonList("Missing.m")) &&
+        graph.getDependencies("src/cycle/User.m").containsAll(Arrays.asList("src/cycle/CycleA.m", "src/Package0.m"));
+    correct &= waveOf(waves, "src/cycle/User.m") > waveOf(waves, "src/cycle/CycleA.m") &&
+        waveOf(waves, "src/cycle/CycleA.m") == waveOf(waves, "src/cycle/CycleB.m");
+
+    final Map<String, CharSequence> texts = new HashMap<String, CharSequence>();
+    for (SourceFile source : sources) {
+      texts.put(source.getName(), source.getText());
+    }
+    final CorpusDefinitionCollector collector = new CorpusDefinitionCollector(environment.getProject());
+    final int[] threadCounts = threads == 1 ? new int[]{1} : new int[]{1, threads};
+    for (int threadCount : threadCounts) {
+      final Set<String> finished = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+      final AtomicInteger violations = new AtomicInteger();
+      final AtomicInteger definitions = new AtomicInteger();
+      start = System.nanoTime();
+      graph.run(new PackageDependencyGraph.Analysis() {
+        @Override
+        public void analyze(@NotNull String file) {
+          for (String dependency : graph.getDependencies(file)) {
+            if (!finished.contains(dependency) && !inSameCycle(cycles, file, dependency)) {
+              violations.incrementAndGet();
+            }
+          }
+          definitions.addAndGet(collector.buildStubs(file, texts.get(file)).getDefinitions().size());
+          finished.add(file);
+        }
+      }, threadCount);
+      System.out.println(String.format("%2d threads %10.1f ms, %d definitions, %d files started too early",
+          threadCount, millis(start), definitions.get(), violations.get()));
+      correct &= violations.get() == 0 && finished.size() == sources.size();
+    }
+    System.out.println("schedule is correct: " + correct);
+    System.exit(correct ? 0 : 1);
+  }
+
+  private static int waveOf(List<List<String>> waves, String file) {
+    for (int i = 0; i < waves.size(); i++) {
+      if (waves.get(i).contains(file)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean inSameCycle(List<List<String>> cycles, String file, String other) {
+    for (List<String> cycle : cycles) {
+      if (cycle.contains(file) && cycle.contains(other)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static double millis(long start) {
+    return (System.nanoTime() - start) / 1e6;
+  }
+}
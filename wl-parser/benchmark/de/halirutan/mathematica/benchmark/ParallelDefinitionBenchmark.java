@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.benchmark;
+
+import de.halirutan.mathematica.filetypes.SourceFile;
+import de.halirutan.mathematica.parsing.psi.api.MathematicaPsiFile;
+import de.halirutan.mathematica.parsing.psi.stubs.CorpusDefinitionCollector;
+import de.halirutan.mathematica.parsing.psi.stubs.MathematicaDefinitionIndex.Definition;
+import de.halirutan.mathematica.parsing.psi.util.GlobalDefinitionCollector;
+import de.halirutan.mathematica.parsing.psi.util.GlobalDefinitionCollector.AssignmentProperty;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares collecting the definitions of a corpus in a single-threaded loop over {@link GlobalDefinitionCollector},
+ * merging the maps of the files by hand, with {@link CorpusDefinitionCollector} on 1, 2, 4, ... 32 threads. Both
+ * include parsing the files. Every run of the corpus collector must find the same definitions as the run on one
+ * thread and as many as the loop.
+ * <p/>
+ * The speedup is relative to the corpus collector on one thread. Runs with more threads than available processors
+ * are reported as well, but cannot be faster, and are marked in the output. So far the benchmark has only been run on
+ * a single processor, so the scaling up to 32 threads is not verified.
+ * <p/>
+ * Usage: <code >ParallelDefinitionBenchmark [file.m ...]</code>
+ */
+public class ParallelDefinitionBenchmark {
+
+  private static final int MAX_THREADS = 32;
+
+  public static void main(String[] args) throws IOException {
+    final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+    final List<SourceFile> sources = BenchmarkEnvironment.loadSources(args, 2000);
+    long characters = 0;
+    for (SourceFile source : sources) {
+      characters += source.getText().length();
+    }
+    final double megabytes = characters / (1024.0 * 1024.0);
+    final int processors = Runtime.getRuntime().availableProcessors();
+    System.out.println(String.format("%d files, %.1f MB source, %d available processors", sources.size(), megabytes,
+        processors));
+
+    int loopDefinitions = 0;
+    double seconds = Double.MAX_VALUE;
+    for (int run = 0; run < 3; run++) {
+      final long start = System.nanoTime();
+      final Map<String, HashSet<AssignmentProperty>> merged = new HashMap<String, HashSet<AssignmentProperty>>();
+      for (SourceFile source : sources) {
+        final MathematicaPsiFile file = environment.parse(source.getName(), source.getText());
+        for (Map.Entry<String, HashSet<AssignmentProperty>> entry :
+            new GlobalDefinitionCollector(file).getAssignments().entrySet()) {
+          final HashSet<AssignmentProperty> assignments = merged.get(entry.getKey());
+          if (assignments == null) {
+            merged.put(entry.getKey(), entry.getValue());
+          } else {
+            assignments.addAll(entry.getValue());
+          }
+        }
+      }
+      seconds = Math.min(seconds, (System.nanoTime() - start) / 1e9);
+      loopDefinitions = count(merged.values());
+    }
+    System.out.println(String.format("%-32s %8.0f ms, %8.0f files/s, %6.2f MB/s (%d definitions)",
+        "GlobalDefinitionCollector loop", seconds * 1000, sources.size() / seconds, megabytes / seconds,
+        loopDefinitions));
+
+    final CorpusDefinitionCollector collector = new CorpusDefinitionCollector(environment.getProject());
+    collector.collect(sources, processors);
+    Map<String, Collection<Definition>> reference = null;
+    double single = 0;
+    boolean correct = true;
+    for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+      seconds = Double.MAX_VALUE;
+      Map<String, Collection<Definition>> result = null;
+      for (int run = 0; run < 3; run++) {
+        final long start = System.nanoTime();
+        result = collector.collect(sources, threads);
+        seconds = Math.min(seconds, (System.nanoTime() - start) / 1e9);
+      }
+      if (reference == null) {
+        reference = result;
+        single = seconds;
+        correct = count(result.values()) == loopDefinitions;
+      } else {
+        correct &= sameDefinitions(reference, result);
+      }
+      System.out.println(String.format("CorpusDefinitionCollector %2d threads: %8.0f ms, %8.0f files/s, %6.2f MB/s, speedup %5.2f (%d symbols)%s",
+          threads, seconds * 1000, sources.size() / seconds, megabytes / seconds, single / seconds, result.size(),
+          threads > processors ? ", more threads than processors" : ""));
+    }
+    System.out.println("all runs found the same definitions: " + correct);
+    System.exit(correct ? 0 : 1);
+  }
+
+  private static int count(Collection<? extends Collection<?>> groups) {
+    int count = 0;
+    for (Collection<?> group : groups) {
+      count += group.size();
+    }
+    return count;
+  }
+
+  private static boolean sameDefinitions(Map<String, Collection<Definition>> expected,
+                                         Map<String, Collection<Definition>> actual) {
+    if (!expected.keySet().equals(actual.keySet())) {
+      return false;
+    }
+    for (Map.Entry<String, Collection<Definition>> entry : expected.entrySet()) {
+      if (!asStrings(entry.getValue()).equals(asStrings(actual.get(entry.getKey())))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static HashSet<String> asStrings(Collection<Definition> definitions) {
+    final HashSet<String> strings = new HashSet<String>();
+    for (Definition definition : definitions) {
+      strings.add(definition.toString());
+    }
+    return strings;
+  }
+}
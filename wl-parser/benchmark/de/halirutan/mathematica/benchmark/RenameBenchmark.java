@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.benchmark;
+
+import de.halirutan.mathematica.filetypes.SourceFile;
+import de.halirutan.mathematica.refactoring.BatchSymbolRenamer;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Measures the throughput of {@link BatchSymbolRenamer} on a synthetic project of 10000 packages, once for the token
+ * scan and text edit alone and once including the reparse of all changed files. Each is run with 1, 2, 4, ... threads
+ * up to the number of available processors. The reparsed files are checked to have the new text.
+ * <p/>
+ * Usage: <code >RenameBenchmark [file.m ...]</code>
+ */
+public class RenameBenchmark {
+
+  private static final String SYMBOL = "Package0`func0x1";
+  private static final String NEW_NAME = "renamedFunction";
+
+  public static void main(String[] args) throws IOException {
+    final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+    final List<SourceFile> sources = BenchmarkEnvironment.loadSources(args, 10000);
+    long characters = 0;
+    for (SourceFile source : sources) {
+      characters += source.getText().length();
+    }
+    final double megabytes = characters / (1024.0 * 1024.0);
+    System.out.println(String.format("%d files, %.1f MB source, renaming %s", sources.size(), megabytes, SYMBOL));
+
+    final BatchSymbolRenamer renamer = new BatchSymbolRenamer(environment.getProject(), SYMBOL, NEW_NAME);
+    final int processors = Runtime.getRuntime().availableProcessors();
+    boolean correct = true;
+    for (int reparse = 0; reparse < 2; reparse++) {
+      renamer.rename(sources, processors, reparse == 1);
+      for (int threads = 1; threads <= processors; threads *= 2) {
+        final long start = System.nanoTime();
+        final List<BatchSymbolRenamer.FileResult> results = renamer.rename(sources, threads, reparse == 1);
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        int changed = 0;
+        int occurrences = 0;
+        for (BatchSymbolRenamer.FileResult result : results) {
+          occurrences += result.getOccurrences().length;
+          if (result.isChanged()) {
+            changed++;
+            if (reparse == 1 && !result.getFile().getText().equals(result.getNewText())) {
+              correct = false;
+            }
+          }
+        }
+        System.out.println(String.format("%-18s %2d threads: %8.0f ms, %8.0f files/s, %6.1f MB/s (%d occurrences in %d files)",
+            reparse == 1 ? "scan+edit+reparse" : "scan+edit", threads, seconds * 1000, sources.size() / seconds,
+            megabytes / seconds, occurrences, changed));
+      }
+    }
+    System.out.println("reparsed files have the new text: " + correct);
+    System.exit(correct ? 0 : 1);
+  }
+}
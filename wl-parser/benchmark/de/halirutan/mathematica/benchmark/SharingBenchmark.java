@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.benchmark;
+
+import de.halirutan.mathematica.filetypes.SourceFile;
+import de.halirutan.mathematica.parsing.psi.api.MathematicaPsiFile;
+import de.halirutan.mathematica.parsing.snapshot.Snapshot;
+import de.halirutan.mathematica.parsing.snapshot.StructuralNode;
+import de.halirutan.mathematica.parsing.snapshot.StructuralNodeTable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reports how much memory hash-consing with {@link StructuralNodeTable} saves. The retained heap of the shared trees
+ * of all files is compared with the retained heap of unshared {@link Snapshot}s of the same files. Without arguments a
+ * corpus of generated data files with many repeated records is used.
+ * <p/>
+ * Usage: <code >SharingBenchmark [file.m ...]</code>
+ */
+public class SharingBenchmark {
+
+  public static void main(String[] args) throws IOException {
+    final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+    final List<SourceFile> sources = new ArrayList<SourceFile>();
+    if (args.length == 0) {
+      for (int i = 0; i < 20; i++) {
+        sources.add(new SourceFile("Data" + i + ".m", SyntheticSources.createDataFile(i, 1000)));
+      }
+    } else {
+      sources.addAll(BenchmarkEnvironment.loadSources(args, 0));
+    }
+    long sourceBytes = 0;
+    final List<MathematicaPsiFile> files = new ArrayList<MathematicaPsiFile>(sources.size());
+    for (SourceFile source : sources) {
+      sourceBytes += source.getText().length();
+      files.add(environment.parse(source.getName(), source.getText()));
+    }
+
+    long before = BenchmarkEnvironment.usedHeap();
+    final List<Snapshot> snapshots = new ArrayList<Snapshot>(files.size());
+    for (MathematicaPsiFile file : files) {
+      snapshots.add(Snapshot.of(file));
+    }
+    final long snapshotBytes = BenchmarkEnvironment.usedHeap() - before;
+
+    before = BenchmarkEnvironment.usedHeap();
+    final StructuralNodeTable table = new StructuralNodeTable();
+    final List<StructuralNode> shared = new ArrayList<StructuralNode>(files.size());
+    long treeNodes = 0;
+    for (MathematicaPsiFile file : files) {
+      final StructuralNode root = table.share(file);
+      shared.add(root);
+      treeNodes += root.getTreeSize();
+    }
+    final long sharedBytes = BenchmarkEnvironment.usedHeap() - before;
+
+    System.out.println(String.format("%d files, %.1f KB source", files.size(), sourceBytes / 1024.0));
+    System.out.println(String.format("nodes without whitespace and comments: %d, distinct nodes: %d (%.1f%%)",
+        treeNodes, table.size(), 100.0 * table.size() / treeNodes));
+    System.out.println(String.format("retained heap of snapshots:    %10.1f KB", snapshotBytes / 1024.0));
+    System.out.println(String.format("retained heap of shared trees: %10.1f KB", sharedBytes / 1024.0));
+
+    BenchmarkEnvironment.measure("sharing all files in a new table", 3, 10, new Runnable() {
+      @Override
+      public void run() {
+        final StructuralNodeTable fresh = new StructuralNodeTable();
+        for (MathematicaPsiFile file : files) {
+          fresh.share(file);
+        }
+      }
+    });
+    System.out.println("(" + (snapshots.size() + shared.size()) + ")");
+  }
+}
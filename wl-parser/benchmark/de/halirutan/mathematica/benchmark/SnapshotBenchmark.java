@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.benchmark;
+
+import com.intellij.psi.util.PsiTreeUtil;
+import de.halirutan.mathematica.filetypes.SourceFile;
+import de.halirutan.mathematica.parsing.psi.api.MathematicaPsiFile;
+import de.halirutan.mathematica.parsing.psi.api.Symbol;
+import de.halirutan.mathematica.parsing.snapshot.Snapshot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares taking a full snapshot of a file with editing an existing {@link Snapshot}. The sources are joined into one
+ * large file and a number of symbols are renamed one after the other. Every rename creates a new snapshot; the result
+ * is checked against the text that is expected after all renames and the first snapshot must still show the original
+ * text.
+ * <p/>
+ * Usage: <code >SnapshotBenchmark [file.m ...]</code>
+ */
+public class SnapshotBenchmark {
+
+  private static final int EDITS = 10000;
+
+  private static Snapshot ourLastSnapshot;
+
+  public static void main(String[] args) throws IOException {
+    final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+    final StringBuilder source = new StringBuilder();
+    for (SourceFile file : BenchmarkEnvironment.loadSources(args, 40)) {
+      source.append(file.getText()).append('\n');
+    }
+    final MathematicaPsiFile file = environment.parse("snapshot.m", source.toString());
+    final List<Symbol> symbols = new ArrayList<Symbol>(PsiTreeUtil.findChildrenOfType(file, Symbol.class));
+    System.out.println(String.format("%.1f KB source, %d symbols", source.length() / 1024.0, symbols.size()));
+
+    // renames keep the length of a symbol, so all offsets stay valid
+    final Random random = new Random(42);
+    final int[] offsets = new int[EDITS];
+    final String[] names = new String[EDITS];
+    final char[] expected = source.toString().toCharArray();
+    for (int i = 0; i < EDITS; i++) {
+      final Symbol symbol = symbols.get(random.nextInt(symbols.size()));
+      offsets[i] = symbol.getTextOffset();
+      final char[] name = new char[symbol.getTextLength()];
+      java.util.Arrays.fill(name, (char) ('a' + i % 26));
+      names[i] = new String(name);
+      System.arraycopy(name, 0, expected, offsets[i], name.length);
+    }
+
+    final Snapshot first = Snapshot.of(file);
+    BenchmarkEnvironment.measure("Snapshot.of whole file", 5, 20, new Runnable() {
+      @Override
+      public void run() {
+        ourLastSnapshot = Snapshot.of(file);
+      }
+    });
+
+    final double millis = BenchmarkEnvironment.measure(EDITS + " renames on snapshots", 3, 10, new Runnable() {
+      @Override
+      public void run() {
+        Snapshot snapshot = first;
+        for (int i = 0; i < EDITS; i++) {
+          snapshot = snapshot.replaceLeafText(offsets[i], names[i]);
+        }
+        ourLastSnapshot = snapshot;
+      }
+    });
+    System.out.println(String.format("%.2f microseconds per rename", millis * 1000 / EDITS));
+
+    long depth = 0;
+    for (int offset : offsets) {
+      depth += first.findLeafPath(offset).length;
+    }
+    System.out.println(String.format("%.1f nodes on the path of a rename on average", (double) depth / EDITS + 1));
+
+    final boolean originalKept = first.getText().equals(source.toString());
+    final boolean editsApplied = ourLastSnapshot.getText().equals(new String(expected));
+    System.out.println("first snapshot unchanged: " + originalKept + ", last snapshot correct: " + editsApplied +
+        ", version " + ourLastSnapshot.getVersion());
+    System.exit(originalKept && editsApplied ? 0 : 1);
+  }
+}
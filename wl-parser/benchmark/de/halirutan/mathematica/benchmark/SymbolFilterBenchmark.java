@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.halirutan.mathematica.benchmark;
+
+import com.intellij.psi.tree.IElementType;
+import de.halirutan.mathematica.filetypes.SourceFile;
+import de.halirutan.mathematica.lexer.MathematicaLexer;
+import de.halirutan.mathematica.parsing.MathematicaElementTypes;
+import de.halirutan.mathematica.parsing.psi.stubs.MathematicaDefinitionIndex;
+import de.halirutan.mathematica.parsing.psi.stubs.MathematicaFileStub;
+import de.halirutan.mathematica.parsing.psi.stubs.SymbolBloomFilter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Measures how well the {@link SymbolBloomFilter}s stored in the file stubs narrow down cross-file searches. The index
+ * of a synthetic project is built with several false-positive rates. For each rate, the size of the filters is
+ * reported together with the share of files that {@link MathematicaDefinitionIndex#getFilesMentioning(String)} skips
+ * for a sample of names and the measured false-positive rate. The files that really mention a name are found by
+ * lexing all files, which is also reported as the cost of a search without filters. Every file that mentions a name
+ * has to be among the candidates.
+ * <p/>
+ * Usage: <code >SymbolFilterBenchmark [numberOfFiles]</code>, the default is 2000 files.
+ */
+public class SymbolFilterBenchmark {
+
+  private static final double[] RATES = {0.1, 0.01, 0.001};
+  private static final int QUERIES = 500;
+
+  public static void main(String[] args) throws IOException {
+    final int fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+    final List<SourceFile> sources = SyntheticSources.createCorpus(fileCount);
+
+    long start = System.nanoTime();
+    final Map<String, Set<String>> names = new HashMap<String, Set<String>>(fileCount);
+    for (SourceFile source : sources) {
+      names.put(source.getName(), lexNames(source.getText()));
+    }
+    final double lexMillis = millis(start);
+    System.out.println(String.format("%d files, lexing all of them: %.1f ms", fileCount, lexMillis));
+
+    final Random random = new Random(42);
+    final String[] queries = new String[QUERIES];
+    for (int i = 0; i < QUERIES; i++) {
+      final List<String> fileNames = new ArrayList<String>(names.get(sources.get(random.nextInt(fileCount)).getName()));
+      queries[i] = fileNames.get(random.nextInt(fileNames.size()));
+    }
+
+    boolean correct = true;
+    for (double rate : RATES) {
+      final MathematicaDefinitionIndex index = new MathematicaDefinitionIndex(environment.getProject(), rate);
+      for (SourceFile source : sources) {
+        index.updateFile(source.getName(), 0, source.getText());
+      }
+      long bits = 0;
+      long symbols = 0;
+      for (String file : index.getFiles()) {
+        final MathematicaFileStub stub = index.getFileStub(file);
+        final SymbolBloomFilter filter = stub != null ? stub.getSymbolFilter() : null;
+        correct &= filter != null;
+        if (filter != null) {
+          bits += filter.getBitCount();
+          symbols += names.get(file).size();
+        }
+      }
+
+      final List<List<String>> results = new ArrayList<List<String>>(QUERIES);
+      start = System.nanoTime();
+      for (String name : queries) {
+        results.add(index.getFilesMentioning(name));
+      }
+      final double filterMillis = millis(start);
+
+      long candidates = 0;
+      long mentioning = 0;
+      for (int i = 0; i < QUERIES; i++) {
+        candidates += results.get(i).size();
+        final Set<String> candidateSet = new HashSet<String>(results.get(i));
+        for (Map.Entry<String, Set<String>> entry : names.entrySet()) {
+          if (entry.getValue().contains(queries[i])) {
+            mentioning++;
+            correct &= candidateSet.contains(entry.getKey());
+          }
+        }
+      }
+
+      final long total = (long) QUERIES * fileCount;
+      System.out.println(String.format(
+          "rate %-6s %5.1f bits per symbol, %6.1f KB filters, %5.1f%% of files skipped, " +
+              "false positives %.4f, %.3f ms per query",
+          rate, (double) bits / symbols, bits / 8192.0, 100.0 * (total - candidates) / total,
+          (double) (candidates - mentioning) / (total - mentioning), filterMillis / QUERIES));
+    }
+    System.out.println("filters are correct: " + correct);
+    System.exit(correct ? 0 : 1);
+  }
+
+  private static Set<String> lexNames(CharSequence text) {
+    final Set<String> names = new HashSet<String>();
+    final MathematicaLexer lexer = new MathematicaLexer();
+    lexer.start(text);
+    IElementType previous = null;
+    while (lexer.getTokenType() != null) {
+      final IElementType type = lexer.getTokenType();
+      // the tag of a message name like f::usage is not a symbol
+      if (type == MathematicaElementTypes.IDENTIFIER && previous != MathematicaElementTypes.DOUBLE_COLON) {
+        final String symbol = text.subSequence(lexer.getTokenStart(), lexer.getTokenEnd()).toString();
+        names.add(symbol.substring(symbol.lastIndexOf('`') + 1));
+      }
+      if (type != MathematicaElementTypes.WHITE_SPACE) {
+        previous = type;
+      }
+      lexer.advance();
+    }
+    return names;
+  }
+
+  private static double millis(long start) {
+    return (System.nanoTime() - start) / 1e6;
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.benchmark;
+
+import de.halirutan.mathematica.filetypes.SourceFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Creates Mathematica packages that look like typical hand written code: a package frame with <code >BeginPackage</code>
+ * and <code >Needs</code>, usage messages, function definitions with patterns and conditions, localization constructs,
+ * options, attributes, up-values and calls into other packages of the corpus. The output only depends on the
+ * arguments, so runs of a benchmark can be compared.
+ */
+public final class SyntheticSources {
+
+  private SyntheticSources() {
+  }
+
+  /**
+   * Creates a corpus of packages where each package may depend on packages with a smaller index.
+   *
+   * @param files
+   *     Number of packages
+   * @return The files with their content
+   */
+  @NotNull
+  public static List<SourceFile> createCorpus(int files) {
+    final List<SourceFile> result = new ArrayList<SourceFile>(files);
+    for (int i = 0; i < files; i++) {
+      result.add(new SourceFile("Package" + i + ".m", createPackage(i, 40)));
+    }
+    return result;
+  }
+
+  /**
+   * Creates one package with the name <code >Package{index}`</code>.
+   *
+   * @param index
+   *     Index of the package which is used in its name and to seed the generator
+   * @param definitions
+   *     Number of functions defined in the package
+   * @return The source code of the package
+   */
+  @NotNull
+  public static String createPackage(int index, int definitions) {
+    final Random random = new Random(index);
+    final StringBuilder sb = new StringBuilder(definitions * 400);
+    final String name = "Package" + index;
+    final int needs = index == 0 ? 0 : Math.min(index, 3);
+
+    sb.append("BeginPackage[\"").append(name).append("`\"");
+    if (needs > 0) {
+      sb.append(", {");
+      for (int i = 0; i < needs; i++) {
+        if (i > 0) sb.append(", ");
+        sb.append("\"Package").append(random.nextInt(index)).append("`\"");
+      }
+      sb.append("}");
+    }
+    sb.append("];\n\n");
+
+    for (int i = 0; i < definitions; i++) {
+      sb.append(function(index, i)).append("::usage = \"").append(function(index, i)).append("[x, y] computes something.\";\n");
+    }
+    sb.append("\nBegin[\"`Private`\"];\n\n");
+
+    for (int i = 0; i < definitions; i++) {
+      final String f = function(index, i);
+      switch (i % 6) {
+        case 0:
+          sb.append(f).append("[x_, y_Integer : 1] := Module[{a = x, b},\n");
+          sb.append("  b = Table[a^k + y, {k, ").append(random.nextInt(10) + 1).append("}];\n");
+          sb.append("  Total[b] /; a > 0\n];\n");
+          break;
+        case 1:
+          sb.append(f).append("[x_List, opts : OptionsPattern[]] := Block[{n = Length[x]},\n");
+          sb.append("  Map[Function[{e}, e^2 + OptionValue[\"Scale\"]], x] /. {v_Real :> Round[v], w_ -> w}\n];\n");
+          sb.append("Options[").append(f).append("] = {\"Scale\" -> 1};\n");
+          break;
+        case 2:
+          sb.append(f).append("[p : {__Real}] /; Length[p] > 2 := With[{m = Mean[p]}, Select[p, # > m &]];\n");
+          sb.append("SetAttributes[").append(f).append(", {Listable}];\n");
+          break;
+        case 3:
+          sb.append(f).append(" /: Plus[").append(f).append("[a_], ").append(f).append("[b_]] := ").append(f).append("[a + b];\n");
+          sb.append(f).append("[x_?NumericQ] := Sum[x^k / k!, {k, 0, 10}];\n");
+          break;
+        case 4:
+          sb.append("helper").append(i).append("[s_String] ^:= StringJoin[s, \"").append(f).append("\"];\n");
+          sb.append(f).append("[x_, y_] := Compile[{{t, _Real}}, t^2 + y][x];\n");
+          break;
+        default:
+          sb.append(f).append(" = <|\"a\" -> 1, \"b\" -> {1, 2, 3}[[2 ;; 3]], \"c\" -> Function[#1 + #2]|>;\n");
+          sb.append("unused").append(i).append("[x_] := x;\n");
+      }
+      if (index > 0 && random.nextBoolean()) {
+        final int other = random.nextInt(index);
+        sb.append("call").append(i).append("[x_] := Package").append(other).append("`")
+            .append(function(other, random.nextInt(definitions))).append("[x, 1];\n");
+      }
+      sb.append('\n');
+    }
+
+    sb.append("End[];\n\nEndPackage[];\n");
+    return sb.toString();
+  }
+
+  /**
+   * Creates a generated data file with many records that repeat the same keys, values and option lists, which is
+   * typical for exported data and generated packages.
+   *
+   * @param index
+   *     Index of the file which is used in the variable name and to seed the generator
+   * @param records
+   *     Number of records in the file
+   * @return The source code of the data file
+   */
+  @NotNull
+  public static String createDataFile(int index, int records) {
+    final Random random = new Random(index);
+    final String[] methods = {"Automatic", "\"Newton\"", "\"LevenbergMarquardt\""};
+    final StringBuilder sb = new StringBuilder(records * 160);
+    sb.append("(* generated data *)\n");
+    for (int i = 0; i < records; i++) {
+      sb.append("data").append(index).append("[").append(i).append("] = <|");
+      sb.append("\"key\" -> ").append(random.nextInt(3)).append(", ");
+      sb.append("\"enabled\" -> ").append(random.nextBoolean() ? "True" : "False").append(", ");
+      sb.append("\"options\" -> {Method -> ").append(methods[random.nextInt(methods.length)])
+          .append(", MaxIterations -> 100, Tolerance -> 10^-6}, ");
+      sb.append("\"values\" -> {Rule[\"key\", 0], Rule[\"min\", ").append(random.nextInt(2)).append("]}|>;\n");
+    }
+    return sb.toString();
+  }
+
+  private static String function(int index, int i) {
+    return "func" + index + "x" + i;
+  }
+}
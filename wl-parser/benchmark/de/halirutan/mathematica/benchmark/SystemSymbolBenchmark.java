@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.benchmark;
+
+import com.google.common.collect.Sets;
+import com.intellij.psi.util.PsiTreeUtil;
+import de.halirutan.mathematica.filetypes.SourceFile;
+import de.halirutan.mathematica.parsing.psi.api.MathematicaPsiFile;
+import de.halirutan.mathematica.parsing.psi.api.Symbol;
+import de.halirutan.mathematica.parsing.psi.util.LocalizationConstruct;
+import de.halirutan.mathematica.parsing.psi.util.LocalizationConstruct.ConstructType;
+import de.halirutan.mathematica.parsing.psi.util.SystemSymbolTable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares how the scoping construct of a symbol name is found: with the sets of names and the case-insensitive
+ * comparison against <code >ConstructType.toString()</code> that {@link LocalizationConstruct} used before, with a
+ * {@link HashMap}, and with the perfect hash of {@link SystemSymbolTable}. All symbol names of the corpus are looked
+ * up, and for each the kind of localization is tested like {@link
+ * de.halirutan.mathematica.parsing.psi.util.LocalVariableTable} does.
+ * <p/>
+ * Usage: <code >SystemSymbolBenchmark [file.m ...]</code>
+ */
+public class SystemSymbolBenchmark {
+
+  private static final Set<String> ourModuleLike = Sets.newHashSet("Module", "Block", "With", "DynamicModule");
+  private static final Set<String> ourFunctionLike = Sets.newHashSet("Function");
+  private static final Set<String> ourTableLike =
+      Sets.newHashSet("Table", "Sum", "Integrate", "NSum", "Plot", "Plot3D", "ContourPlot", "ContourPlot3D");
+  private static final Set<String> ourCompileLike = Sets.newHashSet("Compile");
+  private static final Set<String> ourLimitLike = Sets.newHashSet("Limit");
+  private static final Set<String> ourRuleLike = Sets.newHashSet("RuleDelayed");
+  private static final Set<String> ourManipulateLike = Sets.newHashSet("Manipulate");
+
+  private static int ourSink;
+
+  public static void main(String[] args) throws IOException {
+    final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+    final List<String> names = new ArrayList<String>();
+    for (SourceFile source : BenchmarkEnvironment.loadSources(args, 50)) {
+      final MathematicaPsiFile file = environment.parse(source.getName(), source.getText());
+      for (Symbol symbol : PsiTreeUtil.findChildrenOfType(file, Symbol.class)) {
+        names.add(symbol.getSymbolName());
+      }
+    }
+    final Map<String, ConstructType> map = new HashMap<String, ConstructType>();
+    for (ConstructType type : ConstructType.values()) {
+      for (String name : new String[]{"Module", "Block", "With", "DynamicModule", "Function", "Table", "Sum",
+          "Integrate", "NSum", "Plot", "Plot3D", "ContourPlot", "ContourPlot3D", "Compile", "Limit", "RuleDelayed",
+          "Manipulate"}) {
+        if (name.equalsIgnoreCase(type.toString())) {
+          map.put(name, type);
+        }
+      }
+    }
+    int mismatches = 0;
+    for (String name : names) {
+      if (formerType(name) != LocalizationConstruct.getType(name)) {
+        mismatches++;
+      }
+    }
+    System.out.println(names.size() + " symbols, " + SystemSymbolTable.size() + " entries in the attribute table, " +
+        mismatches + " mismatches");
+
+    BenchmarkEnvironment.measure("sets and equalsIgnoreCase", 5, 20, new Runnable() {
+      @Override
+      public void run() {
+        for (String name : names) {
+          final ConstructType type = formerType(name);
+          if (formerIsModuleLike(type) || formerIsTableLike(type)) ourSink++;
+        }
+      }
+    });
+    BenchmarkEnvironment.measure("HashMap and EnumSet", 5, 20, new Runnable() {
+      @Override
+      public void run() {
+        for (String name : names) {
+          ConstructType type = map.get(name);
+          if (type == null) type = ConstructType.NULL;
+          if (LocalizationConstruct.isModuleLike(type) || LocalizationConstruct.isTableLike(type)) ourSink++;
+        }
+      }
+    });
+    BenchmarkEnvironment.measure("SystemSymbolTable and EnumSet", 5, 20, new Runnable() {
+      @Override
+      public void run() {
+        for (String name : names) {
+          final ConstructType type = LocalizationConstruct.getType(name);
+          if (LocalizationConstruct.isModuleLike(type) || LocalizationConstruct.isTableLike(type)) ourSink++;
+        }
+      }
+    });
+    BenchmarkEnvironment.measure("SystemSymbolTable attributes", 5, 20, new Runnable() {
+      @Override
+      public void run() {
+        for (String name : names) {
+          if (SystemSymbolTable.hasAttribute(name, SystemSymbolTable.Attribute.HOLD_ALL)) ourSink++;
+        }
+      }
+    });
+    System.out.println("(" + ourSink + ")");
+  }
+
+  private static ConstructType formerType(String name) {
+    if (ourModuleLike.contains(name) || ourTableLike.contains(name) || ourCompileLike.contains(name) ||
+        ourLimitLike.contains(name) || ourRuleLike.contains(name) || ourManipulateLike.contains(name) ||
+        ourFunctionLike.contains(name)) {
+      return ConstructType.valueOf(name.toUpperCase());
+    }
+    return ConstructType.NULL;
+  }
+
+  private static boolean formerIsModuleLike(ConstructType type) {
+    for (String s : ourModuleLike) {
+      if (s.equalsIgnoreCase(type.toString())) return true;
+    }
+    return false;
+  }
+
+  private static boolean formerIsTableLike(ConstructType type) {
+    for (String s : ourTableLike) {
+      if (s.equalsIgnoreCase(type.toString())) return true;
+    }
+    return false;
+  }
+}
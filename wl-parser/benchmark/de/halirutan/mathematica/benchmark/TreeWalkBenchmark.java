@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.benchmark;
+
+import com.intellij.openapi.progress.ProgressIndicatorProvider;
+import com.intellij.psi.PsiElement;
+import de.halirutan.mathematica.filetypes.SourceFile;
+import de.halirutan.mathematica.parsing.psi.MathematicaRecursiveVisitor;
+import de.halirutan.mathematica.parsing.psi.MathematicaVisitor;
+import de.halirutan.mathematica.parsing.psi.api.MathematicaPsiFile;
+import de.halirutan.mathematica.parsing.psi.api.Symbol;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares the walk of {@link MathematicaRecursiveVisitor} with a visitor that recurses through
+ * <code >acceptChildren</code> the way MathematicaRecursiveVisitor used to, on a wide tree (one association with many
+ * rules), a deep tree (nested calls up to the nesting limit of the parser) and the normal corpus. Both visitors count
+ * the symbols they see. A third visitor also overrides {@link MathematicaRecursiveVisitor#elementFinished(PsiElement)}
+ * to show what the post-order callback costs. The measurements are repeated in alternating rounds because a single
+ * round on a busy machine is easily off by 20%.
+ * <p/>
+ * Usage: <code >TreeWalkBenchmark [file.m ...]</code>
+ */
+public class TreeWalkBenchmark {
+
+  private static final int ROUNDS = 3;
+  private static int ourSink;
+
+  public static void main(String[] args) throws IOException {
+    final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+
+    final StringBuilder wide = new StringBuilder("<|");
+    for (int i = 0; i < 50000; i++) {
+      wide.append(i == 0 ? "" : ", ").append("\"key").append(i).append("\" -> value").append(i);
+    }
+    wide.append("|>");
+
+    final StringBuilder deep = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      deep.append("f").append(i).append("[a, ");
+    }
+    deep.append("x");
+    for (int i = 0; i < 500; i++) {
+      deep.append("]");
+    }
+
+    final List<MathematicaPsiFile> corpus = new ArrayList<MathematicaPsiFile>();
+    for (SourceFile source : BenchmarkEnvironment.loadSources(args, 50)) {
+      corpus.add(environment.parse(source.getName(), source.getText()));
+    }
+
+    compare("wide", Collections.singletonList(environment.parse("wide.m", wide.toString())), 20);
+    compare("deep", Collections.singletonList(environment.parse("deep.m", deep.toString())), 2000);
+    compare("corpus", corpus, 20);
+    System.out.println("(" + ourSink + ")");
+  }
+
+  private static void compare(String name, final List<MathematicaPsiFile> files, int runs) {
+    for (int round = 1; round <= ROUNDS; round++) {
+      BenchmarkEnvironment.measure(name + " #" + round + ": acceptChildren recursion", 10, runs, new Runnable() {
+        @Override
+        public void run() {
+          for (MathematicaPsiFile file : files) {
+            file.accept(new RecursiveSymbolCounter());
+          }
+        }
+      });
+      BenchmarkEnvironment.measure(name + " #" + round + ": MathematicaRecursiveVisitor", 10, runs, new Runnable() {
+        @Override
+        public void run() {
+          for (MathematicaPsiFile file : files) {
+            file.accept(new WalkingSymbolCounter());
+          }
+        }
+      });
+      BenchmarkEnvironment.measure(name + " #" + round + ": with elementFinished", 10, runs, new Runnable() {
+        @Override
+        public void run() {
+          for (MathematicaPsiFile file : files) {
+            file.accept(new FinishingSymbolCounter());
+          }
+        }
+      });
+    }
+  }
+
+  private static class RecursiveSymbolCounter extends MathematicaVisitor {
+    @Override
+    public void visitElement(PsiElement element) {
+      ProgressIndicatorProvider.checkCanceled();
+      element.acceptChildren(this);
+    }
+
+    @Override
+    public void visitSymbol(Symbol symbol) {
+      ourSink++;
+    }
+  }
+
+  private static class WalkingSymbolCounter extends MathematicaRecursiveVisitor {
+    @Override
+    public void visitSymbol(Symbol symbol) {
+      ourSink++;
+    }
+  }
+
+  private static class FinishingSymbolCounter extends MathematicaRecursiveVisitor {
+    @Override
+    public void visitSymbol(Symbol symbol) {
+      ourSink++;
+    }
+
+    @Override
+    protected void elementFinished(PsiElement element) {
+      ourSink++;
+    }
+  }
+}
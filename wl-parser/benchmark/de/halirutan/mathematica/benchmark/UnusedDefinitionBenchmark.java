@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.halirutan.mathematica.benchmark;
+
+import com.intellij.openapi.util.io.FileUtil;
+import de.halirutan.mathematica.index.SymbolOccurrenceIndex;
+import de.halirutan.mathematica.index.UnusedDefinitionDetector;
+import de.halirutan.mathematica.parsing.psi.stubs.MathematicaDefinitionIndex;
+import de.halirutan.mathematica.parsing.psi.stubs.MathematicaDefinitionIndex.Definition;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the {@link UnusedDefinitionDetector} on a synthetic project written to a temporary directory. Besides the
+ * packages, the project contains <code >Main.m</code>, which loads <code >Helpers`</code> from a library directory on
+ * the search path, and the helpers load a second library file with <code >Get</code>. Each library file uses one
+ * function of the project that is used nowhere else.
+ * <p/>
+ * The first update checks all symbols. Then one percent of the files get a use of a symbol that was unused and the
+ * incremental update is compared with a detector that checks everything from scratch. Finally, <code >Main.m</code>
+ * stops loading the helpers, which makes the functions used by the library unused again.
+ * <p/>
+ * Usage: <code >UnusedDefinitionBenchmark [numberOfFiles]</code>, the default is 5000 files.
+ */
+public class UnusedDefinitionBenchmark {
+
+  private static final int DEFINITIONS = 12;
+
+  public static void main(String[] args) throws IOException {
+    final int fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+    final BenchmarkEnvironment environment = new BenchmarkEnvironment();
+    final File directory = FileUtil.createTempDirectory("unusedDefinitions", null);
+    try {
+      final File projectDirectory = new File(directory, "project");
+      final File libraryDirectory = new File(directory, "library");
+      final List<File> files = new ArrayList<File>(fileCount + 1);
+      long lines = 0;
+      for (int i = 0; i < fileCount; i++) {
+        final String source = SyntheticSources.createPackage(i, DEFINITIONS);
+        final File file = new File(projectDirectory, "Package" + i + ".m");
+        FileUtil.writeToFile(file, source);
+        files.add(file);
+        lines += source.split("\n").length;
+      }
+      final File main = new File(projectDirectory, "Main.m");
+      FileUtil.writeToFile(main, "<< Helpers`\nrun[] := Package0`func0x0[1, 2];\n");
+      files.add(main);
+      // the private functions unused5 and unused11 are defined in every package but never used
+      FileUtil.writeToFile(new File(libraryDirectory, "Helpers.m"),
+          "Get[\"Extra.m\"];\nhelp[x_] := Package0`Private`unused5[x];\n");
+      FileUtil.writeToFile(new File(libraryDirectory, "Extra.m"), "extra[x_] := Package1`Private`unused11[x];\n");
+      System.out.println(String.format("%d files, %d lines", files.size(), lines));
+
+      final List<File> searchPath = Collections.singletonList(libraryDirectory);
+      final UnusedDefinitionDetector detector = new UnusedDefinitionDetector(
+          new MathematicaDefinitionIndex(environment.getProject()), new SymbolOccurrenceIndex(), searchPath);
+      long start = System.nanoTime();
+      int checked = detector.update(files);
+      report("first check", start, checked, detector);
+      boolean correct = !detector.isUnreferenced("Package0`Private`unused5") &&
+          !detector.isUnreferenced("Package1`Private`unused11") &&
+          detector.isUnreferenced("Package2`Private`unused5") && detector.isUnreferenced("Global`run");
+
+      start = System.nanoTime();
+      checked = detector.update(files);
+      report("nothing changed", start, checked, detector);
+      correct &= checked == 0;
+
+      final Random random = new Random(42);
+      final int changes = Math.max(1, fileCount / 100);
+      String used = null;
+      for (int i = 0; i < changes; i++) {
+        final File file = files.get(random.nextInt(fileCount));
+        used = "Package" + random.nextInt(fileCount) + "`Private`unused5";
+        FileUtil.writeToFile(file, FileUtil.loadFile(file) + "\nlateUse[x_] := " + used + "[x];\n");
+      }
+      start = System.nanoTime();
+      checked = detector.update(files);
+      report("1% changed", start, checked, detector);
+      correct &= !detector.isUnreferenced(used);
+
+      FileUtil.writeToFile(main, "run[] := Package0`func0x0[1, 2];\n");
+      start = System.nanoTime();
+      checked = detector.update(files);
+      report("helpers not loaded", start, checked, detector);
+      correct &= detector.isUnreferenced("Package0`Private`unused5") &&
+          detector.isUnreferenced("Package1`Private`unused11");
+
+      final UnusedDefinitionDetector fresh = new UnusedDefinitionDetector(
+          new MathematicaDefinitionIndex(environment.getProject()), new SymbolOccurrenceIndex(), searchPath);
+      start = System.nanoTime();
+      checked = fresh.update(files);
+      report("check from scratch", start, checked, fresh);
+      correct &= sameDefinitions(detector.getUnusedDefinitions(), fresh.getUnusedDefinitions());
+
+      System.out.println("result is correct: " + correct);
+      System.exit(correct ? 0 : 1);
+    } finally {
+      FileUtil.delete(directory);
+    }
+  }
+
+  private static void report(String name, long start, int checked, UnusedDefinitionDetector detector) {
+    final double millis = (System.nanoTime() - start) / 1e6;
+    System.out.println(String.format("%-20s %10.1f ms, %7d symbols checked, %7d unused definitions", name, millis,
+        checked, detector.getUnusedDefinitions().size()));
+  }
+
+  private static boolean sameDefinitions(List<Definition> first, List<Definition> second) {
+    if (first.size() != second.size()) {
+      return false;
+    }
+    for (int i = 0; i < first.size(); i++) {
+      if (!first.get(i).toString().equals(second.get(i).toString())) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.filetypes;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The name and the content of a source file which is processed without a virtual file, e.g. by the tools that work on
+ * a whole corpus of files at once.
+ */
+public final class SourceFile {
+
+  private final String myName;
+  private final CharSequence myText;
+
+  /**
+   * @param name
+   *     Name or path of the file
+   * @param text
+   *     Source code of the file
+   */
+  public SourceFile(@NotNull String name, @NotNull CharSequence text) {
+    myName = name;
+    myText = text;
+  }
+
+  @NotNull
+  public String getName() {
+    return myName;
+  }
+
+  @NotNull
+  public CharSequence getText() {
+    return myText;
+  }
+
+  @Override
+  public String toString() {
+    return myName;
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.halirutan.mathematica.index;
+
+import com.intellij.lexer.Lexer;
+import com.intellij.psi.tree.IElementType;
+import de.halirutan.mathematica.lexer.MathematicaLexer;
+import de.halirutan.mathematica.lexer.PackageDirectiveParser;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static de.halirutan.mathematica.parsing.MathematicaElementTypes.*;
+
+/**
+ * Finds on token level which packages a file declares and what it loads. The directives are recognized by {@link
+ * PackageDirectiveParser}, which also drives {@link de.halirutan.mathematica.lexer.ContextTracker}:
+ * <ul >
+ *   <li ><code >BeginPackage["A`", {"B`", "C`"}]</code> declares the package <code >A`</code> which needs
+ *   <code >B`</code> and <code >C`</code>,</li>
+ *   <li ><code >Needs["B`"]</code> needs a context and <code >Needs["B`", "file.m"]</code> loads it from a file,</li>
+ *   <li ><code >Get["file.m"]</code>, <code >&lt;&lt; "file.m"</code> and <code >&lt;&lt; file.m</code> load a
+ *   file.</li>
+ * </ul>
+ * A loaded name that ends with a backquote, e.g. <code >&lt;&lt; MyPackage`</code>, is a context and is resolved to a
+ * file with {@link #resolve(String, File, List)}.
+ */
+class LoadStatementScanner {
+
+  private static final String[] CONTEXT_FILES = {".m", ".wl", "/init.m", "/Kernel/init.m"};
+
+  /**
+   * Contexts of the packages declared with <code >BeginPackage</code>
+   */
+  final List<String> myPackages = new ArrayList<String>();
+  /**
+   * Contexts needed with <code >BeginPackage</code> or <code >Needs</code>
+   */
+  final List<String> myNeededContexts = new ArrayList<String>();
+  /**
+   * File names or contexts loaded with <code >Get</code> or with the file argument of <code >Needs</code>
+   */
+  final List<String> myLoadedNames = new ArrayList<String>();
+
+  LoadStatementScanner(@NotNull CharSequence text) {
+    final PackageDirectiveParser parser = new PackageDirectiveParser() {
+      @Override
+      protected void directive(@NotNull String name, @NotNull List<String> arguments) {
+        if (arguments.isEmpty()) {
+          return;
+        }
+        final String first = arguments.get(0);
+        if ("Get".equals(name) || GET_OPERATOR.equals(name)) {
+          myLoadedNames.add(first);
+        } else if ("Needs".equals(name)) {
+          myNeededContexts.add(first);
+          if (arguments.size() > 1) {
+            myLoadedNames.add(arguments.get(1));
+          }
+        } else if ("BeginPackage".equals(name)) {
+          myPackages.add(first);
+          myNeededContexts.addAll(arguments.subList(1, arguments.size()));
+        }
+      }
+    };
+    final Lexer lexer = new MathematicaLexer();
+    lexer.start(text);
+    for (IElementType type = lexer.getTokenType(); type != null; lexer.advance(), type = lexer.getTokenType()) {
+      if (!WHITE_SPACE_OR_COMMENTS.contains(type) && type != LINE_BREAK) {
+        parser.token(type, text, lexer.getTokenStart(), lexer.getTokenEnd());
+      }
+    }
+  }
+
+  /**
+   * @return All file names and contexts the file loads, including the needed contexts
+   */
+  @NotNull
+  List<String> getLoadedNames() {
+    final List<String> names = new ArrayList<String>(myLoadedNames);
+    names.addAll(myNeededContexts);
+    return names;
+  }
+
+  /**
+   * @param context
+   *     A context like <code >A`B`</code>
+   * @return The relative paths of the files which may contain the context in the order they are tried
+   */
+  @NotNull
+  static String[] getContextFiles(@NotNull String context) {
+    final String base = context.substring(0, context.length() - 1).replace('`', '/');
+    final String[] files = new String[CONTEXT_FILES.length];
+    for (int i = 0; i < CONTEXT_FILES.length; i++) {
+      files[i] = base + CONTEXT_FILES[i];
+    }
+    return files;
+  }
+
+  /**
+   * Finds the file for a loaded name. A relative file name or a context is looked up in the directory of the loading
+   * file first and then in the directories of the search path. A context <code >A`B`</code> is found as one of
+   * <code >A/B.m</code>, <code >A/B.wl</code>, <code >A/B/init.m</code> and <code >A/B/Kernel/init.m</code>.
+   *
+   * @param name
+   *     A loaded file name or context
+   * @param directory
+   *     Directory of the loading file
+   * @param searchPath
+   *     Further directories to search
+   * @return The loaded file or null if it does not exist
+   */
+  @Nullable
+  static File resolve(@NotNull String name, @Nullable File directory, @NotNull List<File> searchPath) {
+    final String[] candidates;
+    if (name.endsWith("`")) {
+      candidates = getContextFiles(name);
+    } else {
+      final File file = new File(name);
+      if (file.isAbsolute()) {
+        return file.isFile() ? file : null;
+      }
+      candidates = new String[]{name};
+    }
+    final List<File> directories = new ArrayList<File>(searchPath.size() + 1);
+    if (directory != null) {
+      directories.add(directory);
+    }
+    directories.addAll(searchPath);
+    for (File searchDirectory : directories) {
+      for (String candidate : candidates) {
+        final File file = new File(searchDirectory, candidate);
+        if (file.isFile()) {
+          return file;
+        }
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.index;
+
+import com.intellij.lexer.Lexer;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
+import de.halirutan.mathematica.lexer.ContextTracker;
+import de.halirutan.mathematica.lexer.MathematicaLexer;
+import de.halirutan.mathematica.parsing.psi.util.HeadMatcher;
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static de.halirutan.mathematica.parsing.MathematicaElementTypes.*;
+
+/**
+ * Finds all symbol occurrences of a file on token level. Every identifier except message tags after <code >::</code>
+ * is an occurrence. It is stored with its name without context, the context it was written with, if any, and the
+ * context state of the {@link ContextTracker} at its position, which is shared by all occurrences between two package
+ * statements.
+ * <p/>
+ * The kind of an occurrence is decided from the surrounding tokens:
+ * <ul >
+ *   <li >an identifier directly followed by a blank, or by <code >:</code> when it is not the head of a blank, is a
+ *   pattern,</li>
+ *   <li >on the top level of a statement, the first identifier in front of <code >=</code>, <code >:=</code> or
+ *   <code >/:</code> is a definition; in front of <code >^=</code> and <code >^:=</code> the heads of the arguments
+ *   are. Inside <code >Options</code>, <code >Attributes</code>, <code >MessageName</code>, <code >Format</code>,
+ *   <code >N</code>, <code >Default</code>, <code >SyntaxInformation</code> and <code >HoldPattern</code> the first
+ *   identifier of the argument is used and the first argument of <code >SetAttributes</code> and
+ *   <code >SetOptions</code> is a definition as well,</li>
+ *   <li >everything else is a use.</li>
+ * </ul>
+ * A statement on the top level ends at a <code >;</code> or at a line break after a token that can end an expression.
+ * Like {@link de.halirutan.mathematica.parsing.ast.AstDefinitionCollector}, definitions inside brackets, e.g. inside
+ * <code >Module</code>, are not recognized.
+ */
+class OccurrenceScanner {
+
+  private static final TokenSet BLANKS = TokenSet.create(BLANK, BLANK_SEQUENCE, BLANK_NULL_SEQUENCE, DEFAULT);
+  private static final TokenSet OPENING = TokenSet.create(LEFT_BRACKET, LEFT_BRACE, LEFT_PAR, LEFT_ASSOCIATION);
+  private static final TokenSet CLOSING = TokenSet.create(RIGHT_BRACKET, RIGHT_BRACE, RIGHT_PAR, RIGHT_ASSOCIATION);
+  private static final TokenSet EXPRESSION_ENDS = TokenSet.orSet(CLOSING, BLANKS, TokenSet.create(IDENTIFIER,
+      NUMBER, STRING_LITERAL_END, STRINGIFIED_IDENTIFIER, SLOT, SLOT_SEQUENCE, ASSOCIATION_SLOT, FUNCTION, INCREMENT,
+      DECREMENT, EXCLAMATION_MARK, DERIVATIVE, OUT, REPEATED, REPEATED_NULL));
+  private static final HeadMatcher WRAPPERS = HeadMatcher.of("Options", "Attributes", "MessageName", "Format", "N",
+      "Default", "SyntaxInformation", "HoldPattern");
+  private static final HeadMatcher SETTERS = HeadMatcher.of("SetAttributes", "SetOptions");
+
+  final ArrayList<String> myNames = new ArrayList<String>();
+  final TIntArrayList myOffsets = new TIntArrayList();
+  final TIntArrayList myKinds = new TIntArrayList();
+  /**
+   * The absolute context an occurrence was written with or null if it was written without context
+   */
+  final ArrayList<String> myExplicitContexts = new ArrayList<String>();
+  final TIntArrayList myScopes = new TIntArrayList();
+  final ArrayList<String> myScopeContexts = new ArrayList<String>();
+  final ArrayList<List<String>> myScopePaths = new ArrayList<List<String>>();
+
+  // occurrences of the current top-level statement with their bracket depth and whether a bracket follows them
+  private final TIntArrayList myStatement = new TIntArrayList();
+  private final TIntArrayList myStatementDepths = new TIntArrayList();
+  private final TIntArrayList myStatementCalls = new TIntArrayList();
+  private boolean myInRhs = false;
+  private boolean myTagged = false;
+  private boolean mySetter = false;
+
+  OccurrenceScanner(@NotNull CharSequence text) {
+    final Lexer lexer = new MathematicaLexer();
+    lexer.start(text);
+    final ContextTracker contexts = new ContextTracker();
+    IElementType previous = null;
+    IElementType beforePrevious = null;
+    int pending = -1;
+    int depth = 0;
+    for (IElementType type = lexer.getTokenType(); type != null; lexer.advance(), type = lexer.getTokenType()) {
+      if (type == LINE_BREAK) {
+        if (depth == 0 && EXPRESSION_ENDS.contains(previous)) {
+          finishPending(pending, type, beforePrevious);
+          pending = -1;
+          endStatement();
+        }
+        continue;
+      }
+      if (WHITE_SPACE_OR_COMMENTS.contains(type)) {
+        continue;
+      }
+      if (pending != -1) {
+        finishPending(pending, type, beforePrevious);
+        pending = -1;
+      }
+      final int start = lexer.getTokenStart();
+      final int end = lexer.getTokenEnd();
+      if (type == IDENTIFIER && previous != DOUBLE_COLON) {
+        pending = addOccurrence(text, start, end, contexts);
+        if (depth == 0 && myStatement.isEmpty() && SETTERS.matches(myNames.get(pending))) {
+          mySetter = true;
+        } else if (mySetter && depth == 1) {
+          myKinds.set(pending, OccurrenceKind.DEFINITION.ordinal());
+          mySetter = false;
+        }
+        myStatement.add(pending);
+        myStatementDepths.add(depth);
+        myStatementCalls.add(0);
+      } else if (OPENING.contains(type)) {
+        if (type == LEFT_BRACKET && previous == IDENTIFIER && !myStatement.isEmpty()) {
+          myStatementCalls.set(myStatementCalls.size() - 1, 1);
+        }
+        depth++;
+      } else if (CLOSING.contains(type)) {
+        depth = Math.max(0, depth - 1);
+      } else if (depth == 0) {
+        handleTopLevel(type);
+      }
+      contexts.token(type, text, start, end);
+      beforePrevious = previous;
+      previous = type;
+    }
+    if (pending != -1) {
+      finishPending(pending, null, beforePrevious);
+    }
+  }
+
+  private int addOccurrence(CharSequence text, int start, int end, ContextTracker contexts) {
+    final String written = text.subSequence(start, end).toString();
+    final int contextEnd = written.lastIndexOf('`');
+    final int index = myNames.size();
+    myNames.add(contextEnd == -1 ? written : written.substring(contextEnd + 1));
+    myOffsets.add(start);
+    myKinds.add(OccurrenceKind.USE.ordinal());
+    if (contextEnd == -1) {
+      myExplicitContexts.add(null);
+    } else if (written.charAt(0) == '`') {
+      myExplicitContexts.add(contexts.getContext() + written.substring(1, contextEnd + 1));
+    } else {
+      myExplicitContexts.add(written.substring(0, contextEnd + 1));
+    }
+    final int lastScope = myScopeContexts.size() - 1;
+    if (lastScope == -1 || myScopeContexts.get(lastScope) != contexts.getContext() ||
+        myScopePaths.get(lastScope) != contexts.getPath()) {
+      myScopeContexts.add(contexts.getContext());
+      myScopePaths.add(contexts.getPath());
+    }
+    myScopes.add(myScopeContexts.size() - 1);
+    return index;
+  }
+
+  /**
+   * Decides whether an identifier is a pattern name once the token after it is known.
+   */
+  private void finishPending(int pending, IElementType next, IElementType beforeIdentifier) {
+    if (BLANKS.contains(next) || (next == COLON && !BLANKS.contains(beforeIdentifier))) {
+      myKinds.set(pending, OccurrenceKind.PATTERN.ordinal());
+    }
+  }
+
+  private void handleTopLevel(IElementType type) {
+    if (type == SEMICOLON) {
+      endStatement();
+      return;
+    }
+    if (myInRhs) {
+      return;
+    }
+    if (type == TAG_SET) {
+      if (!myTagged) {
+        markFirst(false);
+        myTagged = true;
+      }
+    } else if (type == SET || type == SET_DELAYED) {
+      if (!myTagged) {
+        markFirst(true);
+      }
+      myInRhs = true;
+    } else if (type == UP_SET || type == UP_SET_DELAYED) {
+      for (int i = 0; i < myStatement.size(); i++) {
+        if (myStatementDepths.get(i) == 1 && myStatementCalls.get(i) == 1) {
+          myKinds.set(myStatement.get(i), OccurrenceKind.DEFINITION.ordinal());
+        }
+      }
+      myInRhs = true;
+    }
+  }
+
+  /**
+   * Marks the first identifier on the top level of the statement which is not a pattern as definition. With
+   * <code >unwrap</code>, the first identifier inside a wrapper like <code >Options</code> is used instead.
+   */
+  private void markFirst(boolean unwrap) {
+    for (int i = 0; i < myStatement.size(); i++) {
+      final int occurrence = myStatement.get(i);
+      if (myStatementDepths.get(i) != 0 || myKinds.get(occurrence) == OccurrenceKind.PATTERN.ordinal()) {
+        continue;
+      }
+      if (unwrap && WRAPPERS.matches(myNames.get(occurrence)) && i + 1 < myStatement.size() &&
+          myStatementDepths.get(i + 1) == 1) {
+        myKinds.set(myStatement.get(i + 1), OccurrenceKind.DEFINITION.ordinal());
+      } else {
+        myKinds.set(occurrence, OccurrenceKind.DEFINITION.ordinal());
+      }
+      return;
+    }
+  }
+
+  private void endStatement() {
+    myStatement.clear();
+    myStatementDepths.clear();
+    myStatementCalls.clear();
+    myInRhs = false;
+    myTagged = false;
+    mySetter = false;
+  }
+
+  int size() {
+    return myNames.size();
+  }
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.halirutan.mathematica.index;
+
+import com.intellij.openapi.util.io.FileUtil;
+import de.halirutan.mathematica.filetypes.SourceFile;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntHashSet;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Graph of the dependencies between the files of a project. The edges are found on token level by {@link
+ * LoadStatementScanner}: a file depends on the packages it needs with <code >BeginPackage</code> or <code
+ * >Needs</code> and on the files it loads with <code >Get</code>. A needed context is resolved to the file that
+ * declares it with <code >BeginPackage</code> or, if there is none, to a file with a matching path like <code
+ * >A/B.m</code> for <code >A`B`</code>. Dependencies that are not part of the project are kept as unresolved names.
+ * <p/>
+ * The strongly connected components of the graph are computed once. A component with more than one file is a cycle.
+ * Cycles are reported by {@link #getCycles()} and are otherwise treated as a single unit whose files are analyzed one
+ * after another. {@link #getWaves()} groups the files into topological waves: a file only depends on files of earlier
+ * waves or of its own cycle. {@link #run(Analysis, int)} does not wait for whole waves but starts the analysis of a
+ * unit as soon as all units it depends on are finished.
+ */
+public class PackageDependencyGraph {
+
+  private final String[] myFiles;
+  private final TObjectIntHashMap<String> myFileIndices = new TObjectIntHashMap<String>();
+  private final List<List<String>> myPackages = new ArrayList<List<String>>();
+  private final List<List<String>> myUnresolved = new ArrayList<List<String>>();
+  private final int[][] myDependencies;
+
+  // strongly connected components in topological order, dependencies first
+  private final int[] myComponents;
+  private final List<TIntArrayList> myComponentFiles = new ArrayList<TIntArrayList>();
+  private final int[][] myComponentDependencies;
+  private final int[][] myComponentDependents;
+
+  /**
+   * Scans all files and builds the graph.
+   *
+   * @param sources
+   *     The files with their path as name and their content
+   */
+  public PackageDependencyGraph(@NotNull List<SourceFile> sources) {
+    final int count = sources.size();
+    myFiles = new String[count];
+    final List<LoadStatementScanner> scans = new ArrayList<LoadStatementScanner>(count);
+    final Map<String, Integer> declaringFiles = new HashMap<String, Integer>();
+    final Map<String, TIntArrayList> byFileName = new HashMap<String, TIntArrayList>();
+    for (int i = 0; i < count; i++) {
+      myFiles[i] = FileUtil.toSystemIndependentName(sources.get(i).getName());
+      myFileIndices.put(myFiles[i], i);
+      final LoadStatementScanner scan = new LoadStatementScanner(sources.get(i).getText());
+      scans.add(scan);
+      myPackages.add(Collections.unmodifiableList(scan.myPackages));
+      for (String context : scan.myPackages) {
+        if (!declaringFiles.containsKey(context)) {
+          declaringFiles.put(context, i);
+        }
+      }
+      final String fileName = getFileName(myFiles[i]);
+      TIntArrayList files = byFileName.get(fileName);
+      if (files == null) {
+        files = new TIntArrayList(1);
+        byFileName.put(fileName, files);
+      }
+      files.add(i);
+    }
+
+    myDependencies = new int[count][];
+    for (int i = 0; i < count; i++) {
+      final TIntHashSet dependencies = new TIntHashSet();
+      final List<String> unresolved = new ArrayList<String>();
+      for (String name : scans.get(i).getLoadedNames()) {
+        final Integer declaring = declaringFiles.get(name);
+        final int file = declaring != null ? declaring : findFile(name, myFiles[i], byFileName);
+        if (file == -1) {
+          unresolved.add(name);
+        } else if (file != i) {
+          dependencies.add(file);
+        }
+      }
+      myDependencies[i] = dependencies.toArray();
+      Arrays.sort(myDependencies[i]);
+      myUnresolved.add(unresolved);
+    }
+
+    myComponents = new int[count];
+    findComponents();
+    final int components = myComponentFiles.size();
+    myComponentDependencies = new int[components][];
+    final List<TIntArrayList> dependents = new ArrayList<TIntArrayList>(components);
+    for (int c = 0; c < components; c++) {
+      dependents.add(new TIntArrayList());
+    }
+    for (int c = 0; c < components; c++) {
+      final TIntHashSet dependencies = new TIntHashSet();
+      final TIntArrayList files = myComponentFiles.get(c);
+      for (int i = 0; i < files.size(); i++) {
+        for (int dependency : myDependencies[files.get(i)]) {
+          if (myComponents[dependency] != c) {
+            dependencies.add(myComponents[dependency]);
+          }
+        }
+      }
+      myComponentDependencies[c] = dependencies.toArray();
+      for (int dependency : myComponentDependencies[c]) {
+        dependents.get(dependency).add(c);
+      }
+    }
+    myComponentDependents = new int[components][];
+    for (int c = 0; c < components; c++) {
+      myComponentDependents[c] = dependents.get(c).toNativeArray();
+    }
+  }
+
+  private static String getFileName(String path) {
+    return path.substring(path.lastIndexOf('/') + 1);
+  }
+
+  /**
+   * Finds a loaded file or context among the project files by its path. Relative file names are resolved against the
+   * directory of the loading file first.
+   */
+  private int findFile(String name, String loadingFile, Map<String, TIntArrayList> byFileName) {
+    final String[] candidates = name.endsWith("`") ?
+        LoadStatementScanner.getContextFiles(name) : new String[]{FileUtil.toSystemIndependentName(name)};
+    final int directoryEnd = loadingFile.lastIndexOf('/');
+    for (String candidate : candidates) {
+      final TIntArrayList files = byFileName.get(getFileName(candidate));
+      if (files == null) {
+        continue;
+      }
+      final String sibling = FileUtil.toCanonicalPath(loadingFile.substring(0, directoryEnd + 1) + candidate, '/');
+      int match = -1;
+      for (int i = 0; i < files.size(); i++) {
+        final String path = myFiles[files.get(i)];
+        if (path.equals(sibling)) {
+          return files.get(i);
+        }
+        if (match == -1 && (path.equals(candidate) || path.endsWith("/" + candidate))) {
+          match = files.get(i);
+        }
+      }
+      if (match != -1) {
+        return match;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Tarjan's algorithm without recursion, so that long chains of packages cannot overflow the stack. Components are
+   * completed after all components they depend on, which gives the topological order.
+   */
+  private void findComponents() {
+    final int count = myFiles.length;
+    final int[] index = new int[count];
+    final int[] lowLink = new int[count];
+    final boolean[] onStack = new boolean[count];
+    Arrays.fill(index, -1);
+    final TIntArrayList stack = new TIntArrayList();
+    final TIntArrayList callStack = new TIntArrayList();
+    final TIntArrayList nextEdge = new TIntArrayList();
+    int nextIndex = 0;
+    for (int root = 0; root < count; root++) {
+      if (index[root] != -1) {
+        continue;
+      }
+      callStack.add(root);
+      nextEdge.add(0);
+      index[root] = lowLink[root] = nextIndex++;
+      stack.add(root);
+      onStack[root] = true;
+      while (!callStack.isEmpty()) {
+        final int top = callStack.size() - 1;
+        final int node = callStack.get(top);
+        final int edge = nextEdge.get(top);
+        if (edge < myDependencies[node].length) {
+          nextEdge.set(top, edge + 1);
+          final int next = myDependencies[node][edge];
+          if (index[next] == -1) {
+            index[next] = lowLink[next] = nextIndex++;
+            stack.add(next);
+            onStack[next] = true;
+            callStack.add(next);
+            nextEdge.add(0);
+          } else if (onStack[next]) {
+            lowLink[node] = Math.min(lowLink[node], index[next]);
+          }
+          continue;
+        }
+        callStack.remove(top);
+        nextEdge.remove(top);
+        if (top > 0) {
+          final int parent = callStack.get(top - 1);
+          lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+        }
+        if (lowLink[node] == index[node]) {
+          final TIntArrayList component = new TIntArrayList();
+          int member;
+          do {
+            member = stack.remove(stack.size() - 1);
+            onStack[member] = false;
+            myComponents[member] = myComponentFiles.size();
+            component.add(member);
+          } while (member != node);
+          component.sort();
+          myComponentFiles.add(component);
+        }
+      }
+    }
+  }
+
+  @NotNull
+  public List<String> getFiles() {
+    return Collections.unmodifiableList(Arrays.asList(myFiles));
+  }
+
+  /**
+   * @return The contexts the file declares with <code >BeginPackage</code>
+   */
+  @NotNull
+  public List<String> getPackages(@NotNull String file) {
+    return myPackages.get(getFileIndex(file));
+  }
+
+  /**
+   * @return The project files the file directly depends on
+   */
+  @NotNull
+  public List<String> getDependencies(@NotNull String file) {
+    final int[] dependencies = myDependencies[getFileIndex(file)];
+    final List<String> result = new ArrayList<String>(dependencies.length);
+    for (int dependency : dependencies) {
+      result.add(myFiles[dependency]);
+    }
+    return result;
+  }
+
+  /**
+   * @return The contexts and file names the file loads which are not part of the project
+   */
+  @NotNull
+  public List<String> getUnresolved(@NotNull String file) {
+    return Collections.unmodifiableList(myUnresolved.get(getFileIndex(file)));
+  }
+
+  private int getFileIndex(String file) {
+    final String path = FileUtil.toSystemIndependentName(file);
+    if (!myFileIndices.containsKey(path)) {
+      throw new IllegalArgumentException("Not a file of the graph: " + file);
+    }
+    return myFileIndices.get(path);
+  }
+
+  /**
+   * @return The groups of files which depend on each other in a cycle
+   */
+  @NotNull
+  public List<List<String>> getCycles() {
+    final List<List<String>> cycles = new ArrayList<List<String>>();
+    for (TIntArrayList component : myComponentFiles) {
+      if (component.size() > 1) {
+        cycles.add(getPaths(component));
+      }
+    }
+    return cycles;
+  }
+
+  /**
+   * @return The files grouped into waves. The files of a wave only depend on files of earlier waves or, in a cycle, on
+   * each other, so all files of a wave can be analyzed at the same time.
+   */
+  @NotNull
+  public List<List<String>> getWaves() {
+    final int[] waves = new int[myComponentFiles.size()];
+    final List<List<String>> result = new ArrayList<List<String>>();
+    for (int c = 0; c < waves.length; c++) {
+      for (int dependency : myComponentDependencies[c]) {
+        waves[c] = Math.max(waves[c], waves[dependency] + 1);
+      }
+      while (result.size() <= waves[c]) {
+        result.add(new ArrayList<String>());
+      }
+      result.get(waves[c]).addAll(getPaths(myComponentFiles.get(c)));
+    }
+    return result;
+  }
+
+  private List<String> getPaths(TIntArrayList files) {
+    final List<String> paths = new ArrayList<String>(files.size());
+    for (int i = 0; i < files.size(); i++) {
+      paths.add(myFiles[files.get(i)]);
+    }
+    return paths;
+  }
+
+  /**
+   * Analyzes all files on a pool of threads. The analysis of a file starts when the analyses of all files it depends
+   * on are finished, so independent packages run at the same time. The files of a cycle are analyzed one after another
+   * by the same thread. When an analysis fails, no further files are started; the analyses that are still running are
+   * interrupted and this method returns only after they have ended, by rethrowing the failure.
+   *
+   * @param analysis
+   *     The analysis of a single file
+   * @param threads
+   *     Number of threads to use
+   */
+  public void run(@NotNull final Analysis analysis, int threads) {
+    final int components = myComponentFiles.size();
+    final AtomicInteger[] waiting = new AtomicInteger[components];
+    for (int c = 0; c < components; c++) {
+      waiting[c] = new AtomicInteger(myComponentDependencies[c].length);
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final Scheduler scheduler = new Scheduler(analysis, executor, waiting);
+    InterruptedException interruption = null;
+    try {
+      for (int c = 0; c < components; c++) {
+        if (myComponentDependencies[c].length == 0) {
+          scheduler.submit(c);
+        }
+      }
+      scheduler.await(components);
+    } catch (InterruptedException e) {
+      interruption = e;
+    } finally {
+      scheduler.shutdown();
+    }
+    try {
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      interruption = e;
+    }
+    if (interruption != null) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(interruption);
+    }
+    scheduler.rethrowFailure();
+  }
+
+  /**
+   * Analyzes a component and submits the components that depend on it once their last dependency is finished. Tasks
+   * are only handed to the executor while holding the lock of the scheduler and after checking that nothing has failed
+   * and the executor is not shut down, so no task can be rejected by {@link #shutdown()}.
+   */
+  private class Scheduler {
+    private final Analysis myAnalysis;
+    private final ExecutorService myExecutor;
+    private final AtomicInteger[] myWaiting;
+    private int myFinished = 0;
+    private Throwable myFailure = null;
+
+    private Scheduler(Analysis analysis, ExecutorService executor, AtomicInteger[] waiting) {
+      myAnalysis = analysis;
+      myExecutor = executor;
+      myWaiting = waiting;
+    }
+
+    private synchronized void submit(final int component) {
+      if (myFailure != null || myExecutor.isShutdown()) {
+        return;
+      }
+      myExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            final TIntArrayList files = myComponentFiles.get(component);
+            for (int i = 0; i < files.size(); i++) {
+              myAnalysis.analyze(myFiles[files.get(i)]);
+            }
+          } catch (Throwable e) {
+            fail(e);
+            return;
+          }
+          for (int dependent : myComponentDependents[component]) {
+            if (myWaiting[dependent].decrementAndGet() == 0) {
+              submit(dependent);
+            }
+          }
+          finish();
+        }
+      });
+    }
+
+    private synchronized void finish() {
+      myFinished++;
+      notifyAll();
+    }
+
+    private synchronized void fail(Throwable failure) {
+      if (myFailure == null) {
+        myFailure = failure;
+      }
+      notifyAll();
+    }
+
+    private synchronized void await(int components) throws InterruptedException {
+      while (myFinished < components && myFailure == null) {
+        wait();
+      }
+    }
+
+    private synchronized void shutdown() {
+      myExecutor.shutdownNow();
+    }
+
+    private synchronized void rethrowFailure() {
+      if (myFailure != null) {
+        throw new RuntimeException(myFailure);
+      }
+    }
+  }
+
+  /**
+   * An analysis that is run for every file of the graph.
+   */
+  public interface Analysis {
+    void analyze(@NotNull String file) throws Exception;
+  }
+}
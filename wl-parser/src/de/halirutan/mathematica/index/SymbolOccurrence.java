@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.index;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * One occurrence of a symbol found in a {@link SymbolOccurrenceIndex}.
+ */
+public class SymbolOccurrence {
+  private final String myPath;
+  private final int myOffset;
+  private final OccurrenceKind myKind;
+
+  SymbolOccurrence(@NotNull String path, int offset, @NotNull OccurrenceKind kind) {
+    myPath = path;
+    myOffset = offset;
+    myKind = kind;
+  }
+
+  @NotNull
+  public String getPath() {
+    return myPath;
+  }
+
+  /**
+   * @return The start offset of the identifier in the file
+   */
+  public int getOffset() {
+    return myOffset;
+  }
+
+  @NotNull
+  public OccurrenceKind getKind() {
+    return myKind;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof SymbolOccurrence)) return false;
+    final SymbolOccurrence that = (SymbolOccurrence) o;
+    return myOffset == that.myOffset && myKind == that.myKind && myPath.equals(that.myPath);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * myPath.hashCode() + myOffset) + myKind.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return myPath + ":" + myOffset + ":" + myKind;
+  }
+}
@@ -0,0 +1,624 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.index;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.ArrayUtil;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntHashSet;
+import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TIntObjectProcedure;
+import gnu.trove.TObjectIntHashMap;
+import gnu.trove.TObjectLongHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.xerial.snappy.Snappy;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Inverted index from symbols to their occurrences in many files. It answers find usages for a fully qualified symbol
+ * without parsing or scanning any file. The occurrences are found on token level by {@link OccurrenceScanner} and are
+ * stored as postings of file id, offset and {@link OccurrenceKind} under the name of the symbol without context.
+ * <p/>
+ * An occurrence belongs to a qualified symbol <code >Context`name</code> with the same rules as in {@link
+ * de.halirutan.mathematica.refactoring.BatchSymbolRenamer}: when it is written with a context, that context must be
+ * equal; when it is written without context, the context must be the current context or on the context path at that
+ * position. The current context and the path are kept in a small table of scopes per file, and a posting refers to its
+ * scope by number.
+ * <p/>
+ * The index consists of two parts:
+ * <ul >
+ *   <li >the base, which is read from a file written by {@link #save(File)}. For every name it contains one block of
+ *   postings which is delta encoded and compressed with Snappy. The blocks are memory mapped and only decompressed
+ *   when a name is looked up, so loading an index reads nothing but names, files and block positions,</li>
+ *   <li >the changes since then. When a file is updated or removed, its postings in the base are masked and the new
+ *   postings are kept in memory until the next {@link #save(File)}, which merges both parts.</li>
+ * </ul>
+ * All methods are synchronized.
+ */
+public class SymbolOccurrenceIndex {
+
+  private static final int MAGIC = 0x4d4f4343;
+  private static final int VERSION = 1;
+  private static final OccurrenceKind[] KINDS = OccurrenceKind.values();
+
+  // names, contexts and file paths are enumerated in one table; the ids are stored in postings and scopes
+  private final ArrayList<String> myStrings = new ArrayList<String>();
+  private final TObjectIntHashMap<String> myStringIds = new TObjectIntHashMap<String>();
+
+  private final ArrayList<FileEntry> myFiles = new ArrayList<FileEntry>();
+  private final TObjectIntHashMap<String> myFileIds = new TObjectIntHashMap<String>();
+
+  private MappedByteBuffer myBase = null;
+  private final TObjectLongHashMap<String> myBaseBlocks = new TObjectLongHashMap<String>();
+  private final BitSet myMaskedFiles = new BitSet();
+  private ByteBuffer myBlockBuffer = null;
+
+  /**
+   * Postings which are not in the base yet: name, file id, then offset, flags and value one after the other
+   */
+  private final Map<String, TIntObjectHashMap<int[]>> myChanges = new HashMap<String, TIntObjectHashMap<int[]>>();
+
+  public SymbolOccurrenceIndex() {
+    myStrings.add(null);
+  }
+
+  /**
+   * Brings the index up to date with the given files. Files which are not in the collection anymore are removed.
+   *
+   * @param files
+   *     All files that should be indexed
+   * @return The number of files that were scanned again
+   * @throws IOException
+   *     If a file cannot be read
+   */
+  public synchronized int update(@NotNull Collection<File> files) throws IOException {
+    final Set<String> paths = new HashSet<String>(files.size());
+    int updated = 0;
+    for (File file : files) {
+      final String path = file.getPath();
+      paths.add(path);
+      final FileEntry entry = getEntry(path);
+      if (entry == null || entry.myModified != file.lastModified() || entry.myLength != file.length()) {
+        setFile(path, file.lastModified(), file.length(), FileUtil.loadFile(file));
+        updated++;
+      }
+    }
+    for (FileEntry entry : new ArrayList<FileEntry>(myFiles)) {
+      if (entry != null && !paths.contains(entry.myPath)) {
+        removeFile(entry.myPath);
+      }
+    }
+    return updated;
+  }
+
+  /**
+   * Indexes the text of a file. The text is only scanned when the stamp or the length differ from the indexed version.
+   *
+   * @return true if the file was scanned
+   */
+  public synchronized boolean updateFile(@NotNull String path, long stamp, @NotNull CharSequence text) {
+    final FileEntry entry = getEntry(path);
+    if (entry != null && entry.myModified == stamp && entry.myLength == text.length()) {
+      return false;
+    }
+    setFile(path, stamp, text.length(), text);
+    return true;
+  }
+
+  public synchronized void removeFile(@NotNull String path) {
+    final int fileId = myFileIds.get(path);
+    if (fileId == 0) {
+      return;
+    }
+    removeChanges(fileId);
+    myMaskedFiles.set(fileId);
+    myFiles.set(fileId, null);
+    myFileIds.remove(path);
+  }
+
+  @Nullable
+  private FileEntry getEntry(String path) {
+    final int fileId = myFileIds.get(path);
+    return fileId == 0 ? null : myFiles.get(fileId);
+  }
+
+  private void setFile(String path, long modified, long length, CharSequence text) {
+    final OccurrenceScanner scan = new OccurrenceScanner(text);
+    int fileId = myFileIds.get(path);
+    if (fileId == 0) {
+      if (myFiles.isEmpty()) {
+        myFiles.add(null);
+      }
+      fileId = myFiles.size();
+      myFiles.add(null);
+      myFileIds.put(path, fileId);
+    } else {
+      removeChanges(fileId);
+      myMaskedFiles.set(fileId);
+    }
+
+    final int[][] scopes = new int[scan.myScopeContexts.size()][];
+    for (int i = 0; i < scopes.length; i++) {
+      final List<String> contextPath = scan.myScopePaths.get(i);
+      scopes[i] = new int[contextPath.size() + 1];
+      scopes[i][0] = enumerate(scan.myScopeContexts.get(i));
+      for (int j = 0; j < contextPath.size(); j++) {
+        scopes[i][j + 1] = enumerate(contextPath.get(j));
+      }
+    }
+
+    final Map<String, TIntArrayList> postings = new HashMap<String, TIntArrayList>();
+    for (int i = 0; i < scan.size(); i++) {
+      final String name = scan.myNames.get(i);
+      TIntArrayList namePostings = postings.get(name);
+      if (namePostings == null) {
+        namePostings = new TIntArrayList(3);
+        postings.put(name, namePostings);
+      }
+      final String context = scan.myExplicitContexts.get(i);
+      namePostings.add(scan.myOffsets.get(i));
+      namePostings.add(scan.myKinds.get(i) << 1 | (context != null ? 1 : 0));
+      namePostings.add(context != null ? enumerate(context) : scan.myScopes.get(i));
+    }
+    for (Map.Entry<String, TIntArrayList> entry : postings.entrySet()) {
+      TIntObjectHashMap<int[]> files = myChanges.get(entry.getKey());
+      if (files == null) {
+        files = new TIntObjectHashMap<int[]>(2);
+        myChanges.put(entry.getKey(), files);
+      }
+      files.put(fileId, entry.getValue().toNativeArray());
+    }
+    myFiles.set(fileId, new FileEntry(path, modified, length, scopes, postings.keySet().toArray(new String[postings.size()])));
+  }
+
+  private void removeChanges(int fileId) {
+    final FileEntry entry = myFiles.get(fileId);
+    if (entry == null || entry.myChangedNames == null) {
+      return;
+    }
+    for (String name : entry.myChangedNames) {
+      final TIntObjectHashMap<int[]> files = myChanges.get(name);
+      if (files != null) {
+        files.remove(fileId);
+        if (files.isEmpty()) {
+          myChanges.remove(name);
+        }
+      }
+    }
+  }
+
+  private int enumerate(String value) {
+    final int id = myStringIds.get(value);
+    if (id != 0) {
+      return id;
+    }
+    myStrings.add(value);
+    myStringIds.put(value, myStrings.size() - 1);
+    return myStrings.size() - 1;
+  }
+
+  /**
+   * Finds all occurrences of a symbol.
+   *
+   * @param qualifiedName
+   *     The symbol with its full context, e.g. <code >MyPackage`f</code>
+   * @return The occurrences ordered by file and offset
+   */
+  @NotNull
+  public synchronized List<SymbolOccurrence> findOccurrences(@NotNull String qualifiedName) throws IOException {
+    final int contextEnd = qualifiedName.lastIndexOf('`');
+    if (contextEnd == -1) {
+      throw new IllegalArgumentException("The symbol has to be given with its context: " + qualifiedName);
+    }
+    final String name = qualifiedName.substring(contextEnd + 1);
+    final int contextId = myStringIds.get(qualifiedName.substring(0, contextEnd + 1));
+    final List<SymbolOccurrence> result = new ArrayList<SymbolOccurrence>();
+    if (contextId == 0) {
+      return result;
+    }
+    final TIntObjectHashMap<int[]> changes = myChanges.get(name);
+    final int[] changedFiles = changes != null ? changes.keys() : ArrayUtil.EMPTY_INT_ARRAY;
+    Arrays.sort(changedFiles);
+    int nextChange = 0;
+    if (myBase != null && myBaseBlocks.containsKey(name)) {
+      final ByteBuffer block = readBlock(myBaseBlocks.get(name));
+      int fileId = 0;
+      for (int files = readVarInt(block); files > 0; files--) {
+        fileId += readVarInt(block);
+        // both parts are ordered by file id and are merged on the fly
+        while (nextChange < changedFiles.length && changedFiles[nextChange] < fileId) {
+          addChanges(changes, changedFiles[nextChange++], contextId, result);
+        }
+        final int count = readVarInt(block);
+        final FileEntry entry = myMaskedFiles.get(fileId) ? null : myFiles.get(fileId);
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+          offset += readVarInt(block);
+          final int flags = readVarInt(block);
+          final int value = readVarInt(block);
+          if (entry != null && matches(entry, flags, value, contextId)) {
+            result.add(new SymbolOccurrence(entry.myPath, offset, KINDS[flags >> 1]));
+          }
+        }
+      }
+    }
+    while (nextChange < changedFiles.length) {
+      addChanges(changes, changedFiles[nextChange++], contextId, result);
+    }
+    return result;
+  }
+
+  /**
+   * Finds in which contexts a name occurs with a certain kind. This answers for all symbols with that name at once
+   * whether they occur, e.g. whether they are used anywhere, and reads the postings of the name only once.
+   *
+   * @param name
+   *     Name of a symbol without context
+   * @param kind
+   *     The kind of the occurrences
+   * @return All contexts <code >c</code> for which <code >c`name</code> has an occurrence of that kind
+   */
+  @NotNull
+  synchronized Set<String> findContexts(@NotNull String name, @NotNull OccurrenceKind kind) throws IOException {
+    final TIntHashSet contextIds = new TIntHashSet();
+    final TIntObjectHashMap<int[]> changes = myChanges.get(name);
+    if (changes != null) {
+      for (int fileId : changes.keys()) {
+        final int[] postings = changes.get(fileId);
+        for (int i = 0; i < postings.length; i += 3) {
+          addContexts(myFiles.get(fileId), postings[i + 1], postings[i + 2], kind, contextIds);
+        }
+      }
+    }
+    if (myBase != null && myBaseBlocks.containsKey(name)) {
+      final ByteBuffer block = readBlock(myBaseBlocks.get(name));
+      int fileId = 0;
+      for (int files = readVarInt(block); files > 0; files--) {
+        fileId += readVarInt(block);
+        final FileEntry entry = myMaskedFiles.get(fileId) ? null : myFiles.get(fileId);
+        for (int count = readVarInt(block); count > 0; count--) {
+          readVarInt(block);
+          final int flags = readVarInt(block);
+          final int value = readVarInt(block);
+          if (entry != null) {
+            addContexts(entry, flags, value, kind, contextIds);
+          }
+        }
+      }
+    }
+    final Set<String> contexts = new HashSet<String>(contextIds.size());
+    for (int id : contextIds.toArray()) {
+      contexts.add(myStrings.get(id));
+    }
+    return contexts;
+  }
+
+  private static void addContexts(FileEntry file, int flags, int value, OccurrenceKind kind, TIntHashSet contextIds) {
+    if (KINDS[flags >> 1] != kind) {
+      return;
+    }
+    if ((flags & 1) != 0) {
+      contextIds.add(value);
+    } else {
+      contextIds.addAll(file.myScopes[value]);
+    }
+  }
+
+  private void addChanges(TIntObjectHashMap<int[]> changes, int fileId, int contextId, List<SymbolOccurrence> result) {
+    final int[] postings = changes.get(fileId);
+    final FileEntry entry = myFiles.get(fileId);
+    for (int i = 0; i < postings.length; i += 3) {
+      if (matches(entry, postings[i + 1], postings[i + 2], contextId)) {
+        result.add(new SymbolOccurrence(entry.myPath, postings[i], KINDS[postings[i + 1] >> 1]));
+      }
+    }
+  }
+
+  private static boolean matches(FileEntry file, int flags, int value, int contextId) {
+    if ((flags & 1) != 0) {
+      return value == contextId;
+    }
+    for (int id : file.myScopes[value]) {
+      if (id == contextId) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Decompresses a block of the base into a reused direct buffer. Snappy reads the compressed bytes directly from the
+   * mapped file.
+   */
+  private ByteBuffer readBlock(long position) throws IOException {
+    final ByteBuffer compressed = myBase.duplicate();
+    final int start = (int) (position >>> 32);
+    compressed.position(start);
+    compressed.limit(start + (int) position);
+    final int length = Snappy.uncompressedLength(compressed);
+    if (myBlockBuffer == null || myBlockBuffer.capacity() < length) {
+      myBlockBuffer = ByteBuffer.allocateDirect(Math.max(length, 4096));
+    }
+    myBlockBuffer.clear();
+    Snappy.uncompress(compressed, myBlockBuffer);
+    return myBlockBuffer;
+  }
+
+  /**
+   * @return The names occurring in a file if it was scanned since the index was opened, otherwise null because the
+   * base is not searchable by file
+   */
+  @Nullable
+  synchronized String[] getScannedNames(@NotNull String path) {
+    final FileEntry entry = getEntry(path);
+    return entry != null ? entry.myChangedNames : null;
+  }
+
+  /**
+   * @return The number of indexed files
+   */
+  public synchronized int getFileCount() {
+    return myFileIds.size();
+  }
+
+  /**
+   * Writes the base and the changes into one new index file.
+   *
+   * @param file
+   *     The file the index is written to; it must not be the file this index was loaded from
+   * @throws IOException
+   *     If the file cannot be written
+   */
+  public synchronized void save(@NotNull File file) throws IOException {
+    // removed files are dropped, so the remaining ones get new dense ids
+    final int[] newIds = new int[myFiles.size()];
+    final List<FileEntry> files = new ArrayList<FileEntry>();
+    for (int i = 1; i < myFiles.size(); i++) {
+      if (myFiles.get(i) != null) {
+        files.add(myFiles.get(i));
+        newIds[i] = files.size();
+      }
+    }
+    final Set<String> names = new TreeSet<String>(myChanges.keySet());
+    final Object[] baseNames = myBaseBlocks.keys();
+    for (Object name : baseNames) {
+      names.add((String) name);
+    }
+
+    final ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+    final ByteArrayOutputStream header = new ByteArrayOutputStream();
+    final DataOutputStream headerOut = new DataOutputStream(header);
+    headerOut.writeInt(myStrings.size() - 1);
+    for (int i = 1; i < myStrings.size(); i++) {
+      headerOut.writeUTF(myStrings.get(i));
+    }
+    headerOut.writeInt(files.size());
+    for (FileEntry entry : files) {
+      headerOut.writeUTF(entry.myPath);
+      headerOut.writeLong(entry.myModified);
+      headerOut.writeLong(entry.myLength);
+      headerOut.writeInt(entry.myScopes.length);
+      for (int[] scope : entry.myScopes) {
+        writeVarInt(headerOut, scope.length);
+        for (int id : scope) {
+          writeVarInt(headerOut, id);
+        }
+      }
+    }
+    headerOut.writeInt(names.size());
+    final ByteArrayOutputStream block = new ByteArrayOutputStream();
+    final DataOutputStream blockOut = new DataOutputStream(block);
+    for (String name : names) {
+      final TIntObjectHashMap<int[]> postings = collectPostings(name);
+      final int[] fileIds = postings.keys();
+      Arrays.sort(fileIds);
+      block.reset();
+      writeVarInt(blockOut, fileIds.length);
+      int previousFile = 0;
+      for (int fileId : fileIds) {
+        final int[] filePostings = postings.get(fileId);
+        writeVarInt(blockOut, newIds[fileId] - previousFile);
+        previousFile = newIds[fileId];
+        writeVarInt(blockOut, filePostings.length / 3);
+        int previousOffset = 0;
+        for (int i = 0; i < filePostings.length; i += 3) {
+          writeVarInt(blockOut, filePostings[i] - previousOffset);
+          previousOffset = filePostings[i];
+          writeVarInt(blockOut, filePostings[i + 1]);
+          writeVarInt(blockOut, filePostings[i + 2]);
+        }
+      }
+      blockOut.flush();
+      final byte[] compressed = Snappy.compress(block.toByteArray());
+      headerOut.writeUTF(name);
+      headerOut.writeInt(blocks.size());
+      headerOut.writeInt(compressed.length);
+      blocks.write(compressed);
+    }
+    headerOut.flush();
+
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(header.size());
+      header.writeTo(out);
+      blocks.writeTo(out);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Collects the valid postings of a name from the base and the changes by file id.
+   */
+  private TIntObjectHashMap<int[]> collectPostings(String name) throws IOException {
+    final TIntObjectHashMap<int[]> result = new TIntObjectHashMap<int[]>();
+    if (myBase != null && myBaseBlocks.containsKey(name)) {
+      final ByteBuffer block = readBlock(myBaseBlocks.get(name));
+      int fileId = 0;
+      for (int files = readVarInt(block); files > 0; files--) {
+        fileId += readVarInt(block);
+        final int[] postings = new int[readVarInt(block) * 3];
+        int offset = 0;
+        for (int i = 0; i < postings.length; i += 3) {
+          offset += readVarInt(block);
+          postings[i] = offset;
+          postings[i + 1] = readVarInt(block);
+          postings[i + 2] = readVarInt(block);
+        }
+        if (!myMaskedFiles.get(fileId)) {
+          result.put(fileId, postings);
+        }
+      }
+    }
+    final TIntObjectHashMap<int[]> changes = myChanges.get(name);
+    if (changes != null) {
+      changes.forEachEntry(new TIntObjectProcedure<int[]>() {
+        @Override
+        public boolean execute(int fileId, int[] postings) {
+          result.put(fileId, postings);
+          return true;
+        }
+      });
+    }
+    return result;
+  }
+
+  /**
+   * Opens an index written by {@link #save(File)}. The names, files and block positions are read; the blocks stay in
+   * the file and are memory mapped. An index of another version is not read and an empty index is returned instead.
+   *
+   * @param file
+   *     The index file
+   * @return The opened index
+   * @throws IOException
+   *     If the file cannot be read
+   */
+  @NotNull
+  public static SymbolOccurrenceIndex load(@NotNull File file) throws IOException {
+    final SymbolOccurrenceIndex index = new SymbolOccurrenceIndex();
+    final int headerSize;
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return index;
+      }
+      headerSize = in.readInt();
+      final int strings = in.readInt();
+      for (int i = 0; i < strings; i++) {
+        index.enumerate(in.readUTF());
+      }
+      final int files = in.readInt();
+      index.myFiles.add(null);
+      for (int i = 0; i < files; i++) {
+        final String path = in.readUTF();
+        final long modified = in.readLong();
+        final long length = in.readLong();
+        final int[][] scopes = new int[in.readInt()][];
+        for (int j = 0; j < scopes.length; j++) {
+          scopes[j] = new int[readVarInt(in)];
+          for (int k = 0; k < scopes[j].length; k++) {
+            scopes[j][k] = readVarInt(in);
+          }
+        }
+        index.myFiles.add(new FileEntry(path, modified, length, scopes, null));
+        index.myFileIds.put(path, i + 1);
+      }
+      final int names = in.readInt();
+      for (int i = 0; i < names; i++) {
+        final String name = in.readUTF();
+        final long start = in.readInt();
+        final long length = in.readInt();
+        index.myBaseBlocks.put(name, start << 32 | length);
+      }
+    } finally {
+      in.close();
+    }
+    final RandomAccessFile blocks = new RandomAccessFile(file, "r");
+    try {
+      final long start = 12 + headerSize;
+      index.myBase = blocks.getChannel().map(FileChannel.MapMode.READ_ONLY, start, blocks.length() - start);
+    } finally {
+      blocks.close();
+    }
+    return index;
+  }
+
+  private static void writeVarInt(DataOutput out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static int readVarInt(DataInput in) throws IOException {
+    int value = 0;
+    for (int shift = 0; ; shift += 7) {
+      final int b = in.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+  }
+
+  private static int readVarInt(ByteBuffer in) {
+    int value = 0;
+    for (int shift = 0; ; shift += 7) {
+      final int b = in.get();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+  }
+
+  private static class FileEntry {
+    private final String myPath;
+    private final long myModified;
+    private final long myLength;
+    /**
+     * The current context followed by the context path for every scope of the file
+     */
+    private final int[][] myScopes;
+    /**
+     * The names this file has postings for in the changes, or null if its postings are in the base
+     */
+    private final String[] myChangedNames;
+
+    private FileEntry(String path, long modified, long length, int[][] scopes, @Nullable String[] changedNames) {
+      myPath = path;
+      myModified = modified;
+      myLength = length;
+      myScopes = scopes;
+      myChangedNames = changedNames;
+    }
+  }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.halirutan.mathematica.index;
+
+import com.intellij.openapi.util.io.FileUtil;
+import de.halirutan.mathematica.parsing.psi.stubs.DefinitionStub;
+import de.halirutan.mathematica.parsing.psi.stubs.MathematicaDefinitionIndex;
+import de.halirutan.mathematica.parsing.psi.stubs.MathematicaDefinitionIndex.Definition;
+import de.halirutan.mathematica.parsing.psi.stubs.MathematicaFileStub;
+import de.halirutan.mathematica.parsing.psi.stubs.SymbolBloomFilter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Finds the definitions of a project which are never referenced in any file. Unlike {@link
+ * de.halirutan.mathematica.parsing.psi.util.UnreferencedSymbolFilter}, which only looks at the surrounding of a
+ * symbol, it combines the definitions of all files from a {@link MathematicaDefinitionIndex} with the occurrences
+ * from a {@link SymbolOccurrenceIndex}. A defined symbol is referenced when it has at least one occurrence of kind
+ * {@link OccurrenceKind#USE}. Files that are loaded with <code >Get</code> or <code >Needs</code> are indexed as well,
+ * so that their uses count, but only definitions in the project files themselves are reported.
+ * <p/>
+ * The check runs incrementally. {@link #update(Collection)} brings both indexes up to date and checks again only the
+ * symbols whose name is mentioned in a changed, new or removed file, before or after the change. The names a file
+ * mentioned before are known when the file was scanned by this detector; otherwise they are taken from the {@link
+ * SymbolBloomFilter} of its old stub. The first update checks all symbols.
+ * <p/>
+ * A use inside the definition of the symbol itself, e.g. a recursive call, counts as reference.
+ */
+public class UnusedDefinitionDetector {
+
+  private final MathematicaDefinitionIndex myDefinitions;
+  private final SymbolOccurrenceIndex myOccurrences;
+  private final List<File> mySearchPath;
+
+  private final Set<String> myProjectFiles = new HashSet<String>();
+  /**
+   * Modification time and length of all checked files, including the loaded ones
+   */
+  private final Map<String, long[]> myStamps = new HashMap<String, long[]>();
+  private final Map<String, List<File>> myLoadedFiles = new HashMap<String, List<File>>();
+  private final Map<String, String[]> myNames = new HashMap<String, String[]>();
+  private final Set<String> myUnreferenced = new HashSet<String>();
+  private boolean myChecked = false;
+
+  /**
+   * @param definitions
+   *     The index of definitions, which may be loaded from disk
+   * @param occurrences
+   *     The index of occurrences, which may be loaded from disk
+   * @param searchPath
+   *     Directories in which loaded files are searched when they are not found next to the loading file
+   */
+  public UnusedDefinitionDetector(@NotNull MathematicaDefinitionIndex definitions,
+                                  @NotNull SymbolOccurrenceIndex occurrences, @NotNull List<File> searchPath) {
+    myDefinitions = definitions;
+    myOccurrences = occurrences;
+    mySearchPath = new ArrayList<File>(searchPath);
+  }
+
+  /**
+   * Updates the indexes with the project files and the files they load and checks all symbols which might be affected
+   * by the changes since the last update.
+   *
+   * @param projectFiles
+   *     All files of the project
+   * @return The number of qualified symbols which were checked
+   * @throws IOException
+   *     If a file cannot be read
+   */
+  public synchronized int update(@NotNull Collection<File> projectFiles) throws IOException {
+    myProjectFiles.clear();
+    final LinkedList<File> queue = new LinkedList<File>();
+    for (File file : projectFiles) {
+      final File normalized = normalize(file);
+      myProjectFiles.add(normalized.getPath());
+      queue.add(normalized);
+    }
+
+    final Map<String, File> files = new LinkedHashMap<String, File>();
+    final List<String> changed = new ArrayList<String>();
+    while (!queue.isEmpty()) {
+      final File file = queue.poll();
+      final String path = file.getPath();
+      if (files.containsKey(path)) {
+        continue;
+      }
+      files.put(path, file);
+      final long[] stamp = myStamps.get(path);
+      if (stamp == null || stamp[0] != file.lastModified() || stamp[1] != file.length()) {
+        changed.add(path);
+        myStamps.put(path, new long[]{file.lastModified(), file.length()});
+        myLoadedFiles.put(path, findLoadedFiles(file));
+      }
+      queue.addAll(myLoadedFiles.get(path));
+    }
+    for (String path : new ArrayList<String>(myStamps.keySet())) {
+      if (!files.containsKey(path)) {
+        changed.add(path);
+        myStamps.remove(path);
+        myLoadedFiles.remove(path);
+      }
+    }
+
+    // what the changed files contained before the update
+    final Set<String> touchedSymbols = new HashSet<String>();
+    final Set<String> touchedNames = new HashSet<String>();
+    final List<SymbolBloomFilter> oldFilters = new ArrayList<SymbolBloomFilter>();
+    for (String path : changed) {
+      final MathematicaFileStub stub = myDefinitions.getFileStub(path);
+      final String[] names = myNames.remove(path);
+      if (stub != null) {
+        addDefinitions(stub, touchedSymbols);
+        if (names == null && stub.getSymbolFilter() != null) {
+          oldFilters.add(stub.getSymbolFilter());
+        }
+      }
+      if (names != null) {
+        touchedNames.addAll(Arrays.asList(names));
+      }
+    }
+
+    myDefinitions.update(files.values());
+    myOccurrences.update(files.values());
+
+    for (String path : changed) {
+      final MathematicaFileStub stub = myDefinitions.getFileStub(path);
+      final String[] names = myOccurrences.getScannedNames(path);
+      if (stub != null) {
+        addDefinitions(stub, touchedSymbols);
+      }
+      if (names != null) {
+        myNames.put(path, names);
+        touchedNames.addAll(Arrays.asList(names));
+      }
+    }
+
+    final Collection<String> symbols;
+    if (!myChecked || !oldFilters.isEmpty()) {
+      symbols = collectSymbols(touchedNames, oldFilters);
+      symbols.addAll(touchedSymbols);
+    } else {
+      symbols = touchedSymbols;
+      for (String name : touchedNames) {
+        for (Definition definition : myDefinitions.getDefinitionsByName(name)) {
+          symbols.add(definition.getStub().getQualifiedName());
+        }
+      }
+    }
+    check(symbols);
+    myChecked = true;
+    return symbols.size();
+  }
+
+  /**
+   * Checks the symbols grouped by their name, so that the occurrences of a name are read once for all its contexts.
+   */
+  private void check(Collection<String> symbols) throws IOException {
+    final Map<String, List<String>> byName = new HashMap<String, List<String>>();
+    for (String symbol : symbols) {
+      final String name = symbol.substring(symbol.lastIndexOf('`') + 1);
+      List<String> sameName = byName.get(name);
+      if (sameName == null) {
+        sameName = new ArrayList<String>(1);
+        byName.put(name, sameName);
+      }
+      sameName.add(symbol);
+    }
+    for (Map.Entry<String, List<String>> entry : byName.entrySet()) {
+      final Set<String> usedContexts = myOccurrences.findContexts(entry.getKey(), OccurrenceKind.USE);
+      for (String symbol : entry.getValue()) {
+        myUnreferenced.remove(symbol);
+        final String context = symbol.substring(0, symbol.lastIndexOf('`') + 1);
+        if (!usedContexts.contains(context) && !myDefinitions.getDefinitions(symbol).isEmpty()) {
+          myUnreferenced.add(symbol);
+        }
+      }
+    }
+  }
+
+  private List<File> findLoadedFiles(File file) throws IOException {
+    final List<File> loaded = new ArrayList<File>();
+    for (String name : new LoadStatementScanner(FileUtil.loadFile(file)).getLoadedNames()) {
+      final File resolved = LoadStatementScanner.resolve(name, file.getParentFile(), mySearchPath);
+      if (resolved != null) {
+        loaded.add(normalize(resolved));
+      }
+    }
+    return loaded;
+  }
+
+  private static File normalize(File file) {
+    return new File(FileUtil.toCanonicalPath(file.getAbsolutePath()));
+  }
+
+  private static void addDefinitions(MathematicaFileStub stub, Set<String> symbols) {
+    for (DefinitionStub definition : stub.getDefinitions()) {
+      symbols.add(definition.getQualifiedName());
+    }
+  }
+
+  /**
+   * Collects the defined symbols whose name is one of the given names or might be contained in one of the filters.
+   * Without a check so far, all symbols are collected.
+   */
+  private Set<String> collectSymbols(Set<String> names, List<SymbolBloomFilter> filters) {
+    final Set<String> symbols = new HashSet<String>();
+    for (String symbol : myDefinitions.getQualifiedNames()) {
+      final String name = symbol.substring(symbol.lastIndexOf('`') + 1);
+      boolean touched = !myChecked || names.contains(name);
+      for (int i = 0; !touched && i < filters.size(); i++) {
+        touched = filters.get(i).mightContain(name);
+      }
+      if (touched) {
+        symbols.add(symbol);
+      }
+    }
+    return symbols;
+  }
+
+  /**
+   * @param qualifiedName
+   *     A symbol with its context
+   * @return true if the symbol is defined and the last update found no use of it
+   */
+  public synchronized boolean isUnreferenced(@NotNull String qualifiedName) {
+    return myUnreferenced.contains(qualifiedName);
+  }
+
+  /**
+   * @return The definitions in project files of all symbols which are never used, ordered by file and offset
+   */
+  @NotNull
+  public synchronized List<Definition> getUnusedDefinitions() {
+    final List<Definition> result = new ArrayList<Definition>();
+    for (String symbol : myUnreferenced) {
+      for (Definition definition : myDefinitions.getDefinitions(symbol)) {
+        if (myProjectFiles.contains(definition.getPath())) {
+          result.add(definition);
+        }
+      }
+    }
+    Collections.sort(result, new Comparator<Definition>() {
+      @Override
+      public int compare(Definition o1, Definition o2) {
+        final int byPath = o1.getPath().compareTo(o2.getPath());
+        if (byPath != 0) {
+          return byPath;
+        }
+        final int offset1 = o1.getStub().getSymbolOffset();
+        final int offset2 = o2.getStub().getSymbolOffset();
+        return offset1 < offset2 ? -1 : (offset1 == offset2 ? 0 : 1);
+      }
+    });
+    return result;
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.lexer;
+
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Follows the current context and the context path through the package statements of a file on token level. Every
+ * non-whitespace token of the file has to be passed to {@link #token(IElementType, CharSequence, int, int)} in order.
+ * The directives recognized by {@link PackageDirectiveParser} are followed when their arguments are literal strings;
+ * the file starts in <code >Global`</code> with <code >System`</code> and <code >Global`</code> on the path.
+ * <p/>
+ * The list returned by {@link #getPath()} is never changed afterwards; a directive that changes the path creates a new
+ * list. Comparing the lists by identity therefore tells whether the path changed.
+ */
+public class ContextTracker extends PackageDirectiveParser {
+
+  public static final String GLOBAL_CONTEXT = "Global`";
+  public static final String SYSTEM_CONTEXT = "System`";
+
+  private String myContext = GLOBAL_CONTEXT;
+  private List<String> myPath = newPath(SYSTEM_CONTEXT, GLOBAL_CONTEXT);
+  private final LinkedList<Object[]> myStack = new LinkedList<Object[]>();
+
+  /**
+   * @return The context new symbols are created in, e.g. <code >MyPackage`Private`</code>
+   */
+  @NotNull
+  public String getContext() {
+    return myContext;
+  }
+
+  /**
+   * @return The contexts in which symbols written without context are looked up. The list must not be changed.
+   */
+  @NotNull
+  public List<String> getPath() {
+    return myPath;
+  }
+
+  private static List<String> newPath(String... contexts) {
+    final List<String> path = new ArrayList<String>(contexts.length + 2);
+    for (String context : contexts) {
+      path.add(context);
+    }
+    return path;
+  }
+
+  @Override
+  protected void directive(@NotNull String name, @NotNull List<String> arguments) {
+    final String first = arguments.isEmpty() ? null : arguments.get(0);
+    if ("BeginPackage".equals(name) && first != null) {
+      myStack.push(new Object[]{myContext, myPath, first});
+      final List<String> path = newPath(first);
+      for (int i = 1; i < arguments.size(); i++) {
+        path.add(arguments.get(i));
+      }
+      path.add(SYSTEM_CONTEXT);
+      myContext = first;
+      myPath = path;
+    } else if ("Begin".equals(name) && first != null) {
+      myStack.push(new Object[]{myContext, myPath, null});
+      myContext = first.startsWith("`") ? myContext + first.substring(1) : first;
+    } else if (("End".equals(name) || "EndPackage".equals(name)) && !myStack.isEmpty()) {
+      final Object[] state = myStack.pop();
+      myContext = (String) state[0];
+      @SuppressWarnings("unchecked") final List<String> path = (List<String>) state[1];
+      myPath = path;
+      if (state[2] != null) {
+        myPath = newPath((String) state[2]);
+        myPath.addAll(path);
+      }
+    } else if (first != null && first.endsWith("`")) {
+      // Needs, Get and << put a loaded package on the path
+      if (!myPath.contains(first)) {
+        myPath = new ArrayList<String>(myPath);
+        myPath.add(0, first);
+      }
+    }
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.lexer;
+
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static de.halirutan.mathematica.parsing.MathematicaElementTypes.*;
+
+/**
+ * Recognizes the package directives <code >BeginPackage</code>, <code >Begin</code>, <code >End</code>, <code
+ * >EndPackage</code>, <code >Needs</code>, <code >Get</code> and <code >&lt;&lt;</code> on token level. Every
+ * non-whitespace token of the file has to be passed to {@link #token(IElementType, CharSequence, int, int)} in order.
+ * When the brackets of a directive are closed, or after the name or string that follows <code >&lt;&lt;</code>,
+ * {@link #directive(String, List)} is called with the literal strings found in the arguments, including those in
+ * nested lists like the needed contexts of <code >BeginPackage["A`", {"B`", "C`"}]</code>. A string is passed as one
+ * argument with its content, even if the lexer splits it into several tokens.
+ */
+public abstract class PackageDirectiveParser {
+
+  /**
+   * Name used for <code >&lt;&lt;</code>, which loads a file like <code >Get</code>
+   */
+  public static final String GET_OPERATOR = "<<";
+
+  private String myDirective = null;
+  private int myState = 0;
+  private int myDepth = 0;
+  private StringBuilder myString = null;
+  private final List<String> myArguments = new ArrayList<String>();
+
+  /**
+   * Called for every complete directive.
+   *
+   * @param name
+   *     Name of the directive or {@link #GET_OPERATOR}
+   * @param arguments
+   *     The literal strings of the arguments in the order they appear. The list is reused for the next directive.
+   */
+  protected abstract void directive(@NotNull String name, @NotNull List<String> arguments);
+
+  public void token(IElementType type, CharSequence text, int start, int end) {
+    if (myString != null) {
+      if (type == STRING_LITERAL_END) {
+        myArguments.add(myString.toString());
+        myString = null;
+        finishIfClosed();
+      } else {
+        myString.append(text, start, end);
+      }
+      return;
+    }
+    if (type == GET) {
+      myDirective = GET_OPERATOR;
+      myState = 2;
+      myDepth = 0;
+      myArguments.clear();
+      return;
+    }
+    if (myDirective == null || myState == 0) {
+      if (type == IDENTIFIER) {
+        final String name = text.subSequence(start, end).toString();
+        if ("BeginPackage".equals(name) || "Begin".equals(name) || "End".equals(name) ||
+            "EndPackage".equals(name) || "Needs".equals(name) || "Get".equals(name)) {
+          myDirective = name;
+          myState = 1;
+          myArguments.clear();
+          return;
+        }
+      }
+      myDirective = null;
+      return;
+    }
+    if (myState == 1) {
+      // directly after the name of a directive, only its opening bracket may follow
+      if (type == LEFT_BRACKET) {
+        myState = 2;
+        myDepth = 1;
+      } else {
+        myDirective = null;
+      }
+      return;
+    }
+    if (type == STRING_LITERAL_BEGIN) {
+      myString = new StringBuilder();
+      return;
+    }
+    if (type == STRINGIFIED_IDENTIFIER) {
+      myArguments.add(text.subSequence(start, end).toString());
+    } else if (type == LEFT_BRACKET) {
+      myDepth++;
+    } else if (type == RIGHT_BRACKET) {
+      myDepth--;
+    }
+    finishIfClosed();
+  }
+
+  private void finishIfClosed() {
+    if (myDepth <= 0) {
+      final String name = myDirective;
+      myDirective = null;
+      directive(name, myArguments);
+    }
+  }
+}
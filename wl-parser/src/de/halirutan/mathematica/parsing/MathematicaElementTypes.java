@@ -27,30 +27,7 @@ import com.intellij.psi.TokenType;
 import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.tree.IFileElementType;
 import com.intellij.psi.tree.TokenSet;
-import de.halirutan.mathematica.MathematicaLanguage;
-import de.halirutan.mathematica.parsing.psi.impl.*;
-import de.halirutan.mathematica.parsing.psi.impl.arithmetic.*;
-import de.halirutan.mathematica.parsing.psi.impl.assignment.*;
-import de.halirutan.mathematica.parsing.psi.impl.comparison.*;
-import de.halirutan.mathematica.parsing.psi.impl.files.GetImpl;
-import de.halirutan.mathematica.parsing.psi.impl.files.PutAppendImpl;
-import de.halirutan.mathematica.parsing.psi.impl.files.PutImpl;
-import de.halirutan.mathematica.parsing.psi.impl.function.*;
-import de.halirutan.mathematica.parsing.psi.impl.lists.AssociationImpl;
-import de.halirutan.mathematica.parsing.psi.impl.lists.ListImpl;
-import de.halirutan.mathematica.parsing.psi.impl.lists.PartImpl;
-import de.halirutan.mathematica.parsing.psi.impl.lists.SpanImpl;
-import de.halirutan.mathematica.parsing.psi.impl.logical.AndImpl;
-import de.halirutan.mathematica.parsing.psi.impl.logical.NotImpl;
-import de.halirutan.mathematica.parsing.psi.impl.logical.OrImpl;
-import de.halirutan.mathematica.parsing.psi.impl.pattern.*;
-import de.halirutan.mathematica.parsing.psi.impl.rules.ReplaceAllImpl;
-import de.halirutan.mathematica.parsing.psi.impl.rules.ReplaceRepeatedImpl;
-import de.halirutan.mathematica.parsing.psi.impl.rules.RuleDelayedImpl;
-import de.halirutan.mathematica.parsing.psi.impl.rules.RuleImpl;
-import de.halirutan.mathematica.parsing.psi.impl.string.StringExpressionImpl;
-import de.halirutan.mathematica.parsing.psi.impl.string.StringImpl;
-import de.halirutan.mathematica.parsing.psi.impl.string.StringJoinImpl;
+import de.halirutan.mathematica.parsing.psi.stubs.MathematicaStubFileElementType;
 
 /**
  * <p> This interface provides token types which are used by the Lexer and later by the parser. Some {@link TokenSet}'s
@@ -64,7 +41,7 @@ import de.halirutan.mathematica.parsing.psi.impl.string.StringJoinImpl;
  */
 public interface MathematicaElementTypes {
 
-  IFileElementType FILE = new IFileElementType(MathematicaLanguage.INSTANCE);
+  IFileElementType FILE = MathematicaStubFileElementType.INSTANCE;
 
   IElementType WHITE_SPACE = TokenType.WHITE_SPACE;
   IElementType LINE_BREAK = new MathematicaElementType("LINE_BREAK");
@@ -296,115 +273,16 @@ public interface MathematicaElementTypes {
 
   class Factory {
 
+    /**
+     * Creates the PSI element for a node. The PSI class is taken from the {@link MathematicaOperatorTable} through an
+     * array lookup with the index of the node type, so that no chain of comparisons has to be run for every node.
+     *
+     * @param node
+     *     Node of the AST
+     * @return The PSI element wrapping the node
+     */
     public static PsiElement create(ASTNode node) {
-      IElementType type = node.getElementType();
-
-      if (type.equals(GROUP_EXPRESSION)) return new GroupImpl(node);
-      if (type.equals(FUNCTION_CALL_EXPRESSION)) return new FunctionCallImpl(node);
-
-      // Basic types
-      if (type.equals(SYMBOL_EXPRESSION)) return new SymbolImpl(node);
-      if (type.equals(STRINGIFIED_SYMBOL_EXPRESSION)) return new StringifiedSymbolImpl(node);
-      if (SLOTS.contains(type)) return new SlotImpl(node);
-      if (type.equals(NUMBER_EXPRESSION)) return new NumberImpl(node);
-      if (type.equals(STRING_LITERAL_EXPRESSION)) return new StringImpl(node);
-
-      // Arithmetic operations
-      if (type.equals(DIVIDE_EXPRESSION)) return new DivideImpl(node);
-      if (type.equals(DOT_EXPRESSION)) return new DotImpl(node);
-      if (type.equals(FACTORIAL_POSTFIX)) return new FactorialImpl(node);
-      if (type.equals(MINUS_EXPRESSION)) return new MinusImpl(node);
-      if (type.equals(PLUS_EXPRESSION)) return new PlusImpl(node);
-      if (type.equals(POWER_EXPRESSION)) return new PowerImpl(node);
-      if (type.equals(TIMES_EXPRESSION)) return new TimesImpl(node);
-      if (type.equals(UNARY_MINUS_PREFIX)) return new UnaryMinusImpl(node);
-      if (type.equals(UNARY_PLUS_PREFIX)) return new UnaryPlusImpl(node);
-
-      // Assignments
-      if (type.equals(ADD_TO_EXPRESSION)) return new AddToImpl(node);
-      if (type.equals(DECREMENT_POSTFIX)) return new DecrementImpl(node);
-      if (type.equals(DIVIDE_BY_EXPRESSION)) return new DivideByImpl(node);
-      if (type.equals(INCREMENT_POSTFIX)) return new IncrementImpl(node);
-      if (type.equals(PRE_INCREMENT_PREFIX)) return new PreIncrementImpl(node);
-      if (type.equals(PRE_DECREMENT_PREFIX)) return new PreDecrementImpl(node);
-      if (type.equals(SET_DELAYED_EXPRESSION)) return new SetDelayedImpl(node);
-      if (type.equals(SET_EXPRESSION)) return new SetImpl(node);
-      if (type.equals(SUBTRACT_FROM_EXPRESSION)) return new SubtractFromImpl(node);
-      if (type.equals(TAG_SET_EXPRESSION)) return new TagSetImpl(node);
-      if (type.equals(TAG_SET_DELAYED_EXPRESSION)) return new TagSetDelayedImpl(node);
-      if (type.equals(TAG_UNSET_EXPRESSION)) return new TagUnsetImpl(node);
-      if (type.equals(TIMES_BY_EXPRESSION)) return new TimesByImpl(node);
-      if (type.equals(UNSET_EXPRESSION)) return new UnsetImpl(node);
-      if (type.equals(UP_SET_DELAYED_EXPRESSION)) return new UpSetDelayedImpl(node);
-      if (type.equals(UP_SET_EXPRESSION)) return new UpSetImpl(node);
-
-      // Comparisons
-      if (type.equals(EQUAL_EXPRESSION)) return new EqualImpl(node);
-      if (type.equals(GREATER_EQUAL_EXPRESSION)) return new GreaterEqualImpl(node);
-      if (type.equals(GREATER_EXPRESSION)) return new GreaterImpl(node);
-      if (type.equals(LESS_EQUAL_EXPRESSION)) return new LessEqualImpl(node);
-      if (type.equals(LESS_EXPRESSION)) return new LessImpl(node);
-      if (type.equals(SAME_Q_EXPRESSION)) return new SameQImpl(node);
-      if (type.equals(UNEQUAL_EXPRESSION)) return new UnequalImpl(node);
-      if (type.equals(UNSAME_Q_EXPRESSION)) return new UnsameQImpl(node);
-
-      // File operations
-      if (type.equals(GET_PREFIX)) return new GetImpl(node);
-      if (type.equals(PUT_APPEND_EXPRESSION)) return new PutAppendImpl(node);
-      if (type.equals(PUT_EXPRESSION)) return new PutImpl(node);
-
-      // Function related
-      if (type.equals(APPLY1_EXPRESSION)) return new Apply1Impl(node);
-      if (type.equals(APPLY_EXPRESSION)) return new ApplyImpl(node);
-      if (type.equals(INFIX_CALL_EXPRESSION)) return new InfixImpl(node);
-      if (type.equals(MAP_ALL_EXPRESSION)) return new MapAllImpl(node);
-      if (type.equals(MAP_EXPRESSION)) return new MapImpl(node);
-      if (type.equals(POSTFIX_EXPRESSION)) return new PostfixImpl(node);
-      if (type.equals(PREFIX_CALL_EXPRESSION)) return new PrefixImpl(node);
-      if (type.equals(FUNCTION_POSTFIX)) return new FunctionImpl(node);
-      if (type.equals(DERIVATIVE_EXPRESSION)) return new DerivativeImpl(node);
-      if (type.equals(COMPOSITION_EXPRESSION)) return new CompositionImpl(node);
-      if (type.equals(RIGHT_COMPOSITION_EXPRESSION)) return new RightCompositionImpl(node);
-
-      // List or Association related
-      if (type.equals(LIST_EXPRESSION)) return new ListImpl(node);
-      if (type.equals(ASSOCIATION_EXPRESSION)) return new AssociationImpl(node);
-      if (type.equals(PART_EXPRESSION)) return new PartImpl(node);
-      if (type.equals(SPAN_EXPRESSION)) return new SpanImpl(node);
-
-      // Logical operations
-      if (type.equals(AND_EXPRESSION)) return new AndImpl(node);
-      if (type.equals(OR_EXPRESSION)) return new OrImpl(node);
-      if (type.equals(NOT_PREFIX)) return new NotImpl(node);
-
-      // Patterns
-      if (type.equals(ALTERNATIVE_EXPRESSION)) return new AlternativeImpl(node);
-      if (type.equals(BLANK_EXPRESSION)) return new BlankImpl(node);
-      if (type.equals(BLANK_NULL_SEQUENCE_EXPRESSION)) return new BlankNullSequenceImpl(node);
-      if (type.equals(BLANK_SEQUENCE_EXPRESSION)) return new BlankSequenceImpl(node);
-      if (type.equals(CONDITION_EXPRESSION)) return new ConditionImpl(node);
-      if (type.equals(OPTIONAL_EXPRESSION)) return new OptionalImpl(node);
-      if (type.equals(PATTERN_EXPRESSION)) return new PatternImpl(node);
-      if (type.equals(PATTERN_TEST_EXPRESSION)) return new PatternTestImpl(node);
-      if (type.equals(REPEATED_POSTFIX)) return new RepeatedImpl(node);
-      if (type.equals(REPEATED_NULL_POSTFIX)) return new RepeatedNullImpl(node);
-      if (type.equals(DEFAULT_EXPRESSION)) return new DefaultImpl(node);
-
-      // Rules
-      if (type.equals(REPLACE_ALL_EXPRESSION)) return new ReplaceAllImpl(node);
-      if (type.equals(REPLACE_REPEATED_EXPRESSION)) return new ReplaceRepeatedImpl(node);
-      if (type.equals(RULE_DELAYED_EXPRESSION)) return new RuleDelayedImpl(node);
-      if (type.equals(RULE_EXPRESSION)) return new RuleImpl(node);
-
-      // MString stuff
-      if (type.equals(STRING_EXPRESSION_EXPRESSION)) return new StringExpressionImpl(node);
-      if (type.equals(STRING_JOIN_EXPRESSION)) return new StringJoinImpl(node);
-      if (type.equals(MESSAGE_NAME_EXPRESSION)) return new MessageNameImpl(node);
-
-      if (type.equals(COMPOUND_EXPRESSION_EXPRESSION)) return new CompoundExpressionImpl(node);
-
-      // At least everything is an expression
-      return new ExpressionImpl(node);
+      return MathematicaOperatorTable.createPsi(node);
     }
   }
 }
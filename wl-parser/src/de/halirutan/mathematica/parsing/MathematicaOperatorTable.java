@@ -0,0 +1,475 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
+import de.halirutan.mathematica.parsing.prattparser.parselets.*;
+import de.halirutan.mathematica.parsing.psi.impl.*;
+import de.halirutan.mathematica.parsing.psi.impl.arithmetic.*;
+import de.halirutan.mathematica.parsing.psi.impl.assignment.*;
+import de.halirutan.mathematica.parsing.psi.impl.comparison.*;
+import de.halirutan.mathematica.parsing.psi.impl.files.GetImpl;
+import de.halirutan.mathematica.parsing.psi.impl.files.PutAppendImpl;
+import de.halirutan.mathematica.parsing.psi.impl.files.PutImpl;
+import de.halirutan.mathematica.parsing.psi.impl.function.*;
+import de.halirutan.mathematica.parsing.psi.impl.lists.AssociationImpl;
+import de.halirutan.mathematica.parsing.psi.impl.lists.ListImpl;
+import de.halirutan.mathematica.parsing.psi.impl.lists.PartImpl;
+import de.halirutan.mathematica.parsing.psi.impl.lists.SpanImpl;
+import de.halirutan.mathematica.parsing.psi.impl.logical.AndImpl;
+import de.halirutan.mathematica.parsing.psi.impl.logical.NotImpl;
+import de.halirutan.mathematica.parsing.psi.impl.logical.OrImpl;
+import de.halirutan.mathematica.parsing.psi.impl.pattern.*;
+import de.halirutan.mathematica.parsing.psi.impl.rules.ReplaceAllImpl;
+import de.halirutan.mathematica.parsing.psi.impl.rules.ReplaceRepeatedImpl;
+import de.halirutan.mathematica.parsing.psi.impl.rules.RuleDelayedImpl;
+import de.halirutan.mathematica.parsing.psi.impl.rules.RuleImpl;
+import de.halirutan.mathematica.parsing.psi.impl.string.StringExpressionImpl;
+import de.halirutan.mathematica.parsing.psi.impl.string.StringImpl;
+import de.halirutan.mathematica.parsing.psi.impl.string.StringJoinImpl;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static de.halirutan.mathematica.parsing.MathematicaElementTypes.*;
+
+/**
+ * The single place where the Mathematica operators are specified. Every row connects a lexer token with the node type
+ * that is marked in the AST, the precedence and associativity of the operator (which define the parselet used for it)
+ * and the class of the PSI element which wraps the node together with a creator that calls its constructor. The
+ * interface and the visitor method of an operator follow from the PSI implementation, because every implementation
+ * dispatches to its <code>visitXXX</code> method in its <code>accept</code>.
+ * <p/>
+ * Two things are derived from this table: the {@link de.halirutan.mathematica.parsing.prattparser.ParseletProvider}
+ * registers all parselets in the order of the rows below and {@link #createPsi(ASTNode)} creates the PSI elements
+ * through the creators of the rows, which are kept in an array indexed by {@link IElementType#getIndex()}. The latter
+ * replaces the long chain of <code>type.equals(..)</code> checks which had to be run for every node of the tree.
+ * <p/>
+ * Rows which only have a node type and a PSI class are for nodes that are created inside a parselet of another token,
+ * e.g. <code>TagSetDelayed</code> which is handled by the parselet of <code>/:</code>.
+ */
+public final class MathematicaOperatorTable {
+
+  private static final List<Entry> ourEntries = new ArrayList<Entry>();
+  private static final PsiCreator[] ourPsiCreators;
+  private static final Class<?>[] ourPsiClasses;
+  private static final String[] ourPsiNames;
+
+  static {
+    prefix(LEFT_PAR, GROUP_EXPRESSION, new GroupParselet(85), GroupImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new GroupImpl(node); } }); // Group(()
+    prefix(LEFT_BRACE, LIST_EXPRESSION, new ListParselet(82), ListImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new ListImpl(node); } }); // List({)
+    prefix(LEFT_ASSOCIATION, ASSOCIATION_EXPRESSION, new AssociationParselet(82), AssociationImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new AssociationImpl(node); } }); // Association <|"foo"->1|>
+
+    prefix(NUMBER, NUMBER_EXPRESSION, new NumberParselet(80), NumberImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new NumberImpl(node); } }); // Number(123)
+    prefix(IDENTIFIER, SYMBOL_EXPRESSION, new SymbolParselet(80), SymbolImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new SymbolImpl(node); } }); // Symbol($var)
+    prefix(STRINGIFIED_IDENTIFIER, STRINGIFIED_SYMBOL_EXPRESSION, new SymbolParselet(80), StringifiedSymbolImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new StringifiedSymbolImpl(node); } }); // Symbol($var)
+    prefix(STRING_LITERAL_BEGIN, STRING_LITERAL_EXPRESSION, new StringParselet(80), StringImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new StringImpl(node); } }); // MString(abc)
+
+    infix(DOUBLE_COLON, MESSAGE_NAME_EXPRESSION, new MessageNameParselet(78), MessageNameImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new MessageNameImpl(node); } }); // MessageName(::)
+
+    prefix(SLOT_SEQUENCE, SLOT_SEQUENCE, new SlotParselet(77), SlotImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new SlotImpl(node); } }); // ##n expressions
+    prefix(SLOT, SLOT, new SlotParselet(77), SlotImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new SlotImpl(node); } }); // #n expressions
+    prefix(ASSOCIATION_SLOT, ASSOCIATION_SLOT, new SlotParselet(77), SlotImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new SlotImpl(node); } }); // #foo123 expressions
+
+    infix(BLANK, BLANK_EXPRESSION, new BlankParselet(76), BlankImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new BlankImpl(node); } }); // Blank(_)
+    prefix(BLANK, BLANK_EXPRESSION, new PrefixBlankParselet(76), BlankImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new BlankImpl(node); } }); // Blank(_)
+    infix(BLANK_SEQUENCE, BLANK_SEQUENCE_EXPRESSION, new BlankSequenceParselet(76), BlankSequenceImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new BlankSequenceImpl(node); } }); // BlankSequence(__)
+    prefix(BLANK_SEQUENCE, BLANK_SEQUENCE_EXPRESSION, new PrefixBlankSequenceParselet(76), BlankSequenceImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new BlankSequenceImpl(node); } }); // BlankSequence(__)
+    infix(BLANK_NULL_SEQUENCE, BLANK_NULL_SEQUENCE_EXPRESSION, new BlankNullSequenceParselet(76), BlankNullSequenceImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new BlankNullSequenceImpl(node); } }); // BlankNullSequence(___)
+    prefix(BLANK_NULL_SEQUENCE, BLANK_NULL_SEQUENCE_EXPRESSION, new PrefixBlankNullSequenceParselet(76), BlankNullSequenceImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new BlankNullSequenceImpl(node); } }); // BlankNullSequence(___)
+    postfix(DEFAULT, DEFAULT_EXPRESSION, 76, DefaultImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new DefaultImpl(node); } }); // Default(_.)
+    prefix(DEFAULT, DEFAULT_EXPRESSION, new PrefixDefaultParselet(76), DefaultImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new DefaultImpl(node); } }); // Default(_.)
+
+    prefix(GET, GET_PREFIX, new PrefixGetParselet(74), GetImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new GetImpl(node); } }); // Get(<<)
+
+    infixLeft(QUESTION_MARK, PATTERN_TEST_EXPRESSION, 72, PatternTestImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new PatternTestImpl(node); } }); // PatternTest(?)
+
+    infix(LEFT_BRACKET, FUNCTION_CALL_EXPRESSION, new FunctionCallParselet(70), FunctionCallImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new FunctionCallImpl(node); } }); // FunctionCall([)
+    psi(PART_EXPRESSION, PartImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new PartImpl(node); } }); // Part([[) is created by the FunctionCall parselet
+
+    infixLeft(COMPOSITION, COMPOSITION_EXPRESSION, 69, CompositionImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new CompositionImpl(node); } }); // Composition (@*)
+    infixLeft(RIGHT_COMPOSITION, RIGHT_COMPOSITION_EXPRESSION, 69, RightCompositionImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new RightCompositionImpl(node); } }); // RightComposition (/*)
+
+    postfix(INCREMENT, INCREMENT_POSTFIX, 68, IncrementImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new IncrementImpl(node); } }); // Increment(++)
+    postfix(DECREMENT, DECREMENT_POSTFIX, 68, DecrementImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new DecrementImpl(node); } }); // Decrement(--)
+
+    prefix(INCREMENT, PRE_INCREMENT_PREFIX, 66, PreIncrementImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new PreIncrementImpl(node); } }); // PreIncrement(++)
+    prefix(DECREMENT, PRE_DECREMENT_PREFIX, 66, PreDecrementImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new PreDecrementImpl(node); } }); // PreDecrement(--)
+
+    infixRight(PREFIX_CALL, PREFIX_CALL_EXPRESSION, 64, PrefixImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new PrefixImpl(node); } }); // PrefixCall(@)
+
+    infix(INFIX_CALL, INFIX_CALL_EXPRESSION, new InfixCallParselet(62), InfixImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new InfixImpl(node); } }); // InfixCall(~)
+
+    infixRight(MAP, MAP_EXPRESSION, 60, MapImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new MapImpl(node); } }); // Map(/@)
+    infixRight(MAP_ALL, MAP_ALL_EXPRESSION, 60, MapAllImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new MapAllImpl(node); } }); // MapAll(//@)
+    infixRight(APPLY, APPLY_EXPRESSION, 60, ApplyImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new ApplyImpl(node); } }); // Apply(@@)
+    infixRight(APPLY1, APPLY1_EXPRESSION, 60, Apply1Impl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new Apply1Impl(node); } }); // Apply1(@@@)
+
+    postfix(EXCLAMATION_MARK, FACTORIAL_POSTFIX, 58, FactorialImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new FactorialImpl(node); } }); // Factorial(!)
+
+    infix(DERIVATIVE, DERIVATIVE_EXPRESSION, new DerivativeParselet(56), DerivativeImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new DerivativeImpl(node); } }); // Derivative(')
+
+    infixLeft(STRING_JOIN, STRING_JOIN_EXPRESSION, 54, StringJoinImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new StringJoinImpl(node); } }); // StringJoin(<>)
+
+    infixRight(POWER, POWER_EXPRESSION, 52, PowerImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new PowerImpl(node); } }); // Power(^)
+
+    infixLeft(NON_COMMUTATIVE_MULTIPLY, NON_COMMUTATIVE_MULTIPLY_EXPRESSION, 50, null, null); // NonCommutativeMultiply(**)
+
+    infixLeft(POINT, DOT_EXPRESSION, 48, DotImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new DotImpl(node); } }); // Dot(.)
+
+    prefix(MINUS, UNARY_MINUS_PREFIX, 46, UnaryMinusImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new UnaryMinusImpl(node); } }); // UnaryMinus(-)
+    prefix(PLUS, UNARY_PLUS_PREFIX, 46, UnaryPlusImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new UnaryPlusImpl(node); } }); // UnaryPlus(+)
+
+    infixLeft(DIVIDE, DIVIDE_EXPRESSION, 44, DivideImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new DivideImpl(node); } }); // Divide(/)
+
+    infixLeft(TIMES, TIMES_EXPRESSION, 42, TimesImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new TimesImpl(node); } }); // Times(*)
+
+    infixLeft(PLUS, PLUS_EXPRESSION, 40, PlusImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new PlusImpl(node); } }); // Plus(+)
+    infixLeft(MINUS, MINUS_EXPRESSION, 40, MinusImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new MinusImpl(node); } }); // Minus(-)
+
+    infix(SPAN, SPAN_EXPRESSION, new SpanParselet(38), SpanImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new SpanImpl(node); } }); // Span(;;)
+    prefix(SPAN, SPAN_EXPRESSION, new PrefixSpanParselet(38), SpanImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new SpanImpl(node); } }); // Span(;;)
+
+    infixLeft(EQUAL, EQUAL_EXPRESSION, 36, EqualImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new EqualImpl(node); } }); // Equal(==)
+    infixLeft(UNEQUAL, UNEQUAL_EXPRESSION, 36, UnequalImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new UnequalImpl(node); } }); // Unequal(!=)
+    infixLeft(GREATER, GREATER_EXPRESSION, 36, GreaterImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new GreaterImpl(node); } }); // Greater(>)
+    infixLeft(GREATER_EQUAL, GREATER_EQUAL_EXPRESSION, 36, GreaterEqualImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new GreaterEqualImpl(node); } }); // GreaterEqual(>=)
+    infixLeft(LESS, LESS_EXPRESSION, 36, LessImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new LessImpl(node); } }); // Less(<)
+    infixLeft(LESS_EQUAL, LESS_EQUAL_EXPRESSION, 36, LessEqualImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new LessEqualImpl(node); } }); // LessEqual(<=)
+
+    infixLeft(SAME_Q, SAME_Q_EXPRESSION, 34, SameQImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new SameQImpl(node); } }); // SameQ(===)
+    infixLeft(UNSAME_Q, UNSAME_Q_EXPRESSION, 34, UnsameQImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new UnsameQImpl(node); } }); // UnsameQ(=!=)
+
+    prefix(EXCLAMATION_MARK, NOT_PREFIX, 32, NotImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new NotImpl(node); } }); // Not(!)
+
+    infixLeft(AND, AND_EXPRESSION, 30, AndImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new AndImpl(node); } }); // And(&&)
+
+    infixLeft(OR, OR_EXPRESSION, 28, OrImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new OrImpl(node); } }); // Or(||)
+
+    postfix(REPEATED, REPEATED_POSTFIX, 26, RepeatedImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new RepeatedImpl(node); } }); // Repeated(..)
+    postfix(REPEATED_NULL, REPEATED_NULL_POSTFIX, 26, RepeatedNullImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new RepeatedNullImpl(node); } }); // RepeatedNull(...)
+
+    infixLeft(ALTERNATIVE, ALTERNATIVE_EXPRESSION, 24, AlternativeImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new AlternativeImpl(node); } }); // Alternative(|)
+
+    infixLeft(COLON, PATTERN_EXPRESSION, 22, PatternImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new PatternImpl(node); } }); // Optional(:) and Pattern(:)
+    infix(COLON, PATTERN_EXPRESSION, new PatternParselet(22), PatternImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new PatternImpl(node); } }); // Optional(:) and Pattern(:)
+    psi(OPTIONAL_EXPRESSION, OptionalImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new OptionalImpl(node); } }); // Optional(:) is created by the Pattern parselet
+
+    infixLeft(STRING_EXPRESSION, STRING_EXPRESSION_EXPRESSION, 20, StringExpressionImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new StringExpressionImpl(node); } }); // StringExpression(~~)
+
+    infixLeft(CONDITION, CONDITION_EXPRESSION, 18, ConditionImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new ConditionImpl(node); } }); // Condition(/;)
+
+    infixRight(RULE, RULE_EXPRESSION, 16, RuleImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new RuleImpl(node); } }); // Rule(->)
+    infixRight(RULE_DELAYED, RULE_DELAYED_EXPRESSION, 16, RuleDelayedImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new RuleDelayedImpl(node); } }); // RuleDelayed(:>)
+
+    infixLeft(REPLACE_ALL, REPLACE_ALL_EXPRESSION, 14, ReplaceAllImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new ReplaceAllImpl(node); } }); // ReplaceAll(/.)
+    infixLeft(REPLACE_REPEATED, REPLACE_REPEATED_EXPRESSION, 14, ReplaceRepeatedImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new ReplaceRepeatedImpl(node); } }); // ReplaceRepeated(//.)
+
+    infixRight(ADD_TO, ADD_TO_EXPRESSION, 12, AddToImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new AddToImpl(node); } }); // AddTo(+=)
+    infixRight(SUBTRACT_FROM, SUBTRACT_FROM_EXPRESSION, 12, SubtractFromImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new SubtractFromImpl(node); } }); // SubtractFrom(-=)
+    infixRight(TIMES_BY, TIMES_BY_EXPRESSION, 12, TimesByImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new TimesByImpl(node); } }); // TimesBy(*=)
+    infixRight(DIVIDE_BY, DIVIDE_BY_EXPRESSION, 12, DivideByImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new DivideByImpl(node); } }); // DivideBy(/=)
+
+    postfix(FUNCTION, FUNCTION_POSTFIX, 10, FunctionImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new FunctionImpl(node); } }); // Function(&)
+
+    infixLeft(POSTFIX, POSTFIX_EXPRESSION, 8, PostfixImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new PostfixImpl(node); } }); // Postfix(//)
+
+    infixRight(SET, SET_EXPRESSION, 6, SetImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new SetImpl(node); } }); // Set(=)
+    infixRight(SET_DELAYED, SET_DELAYED_EXPRESSION, 6, SetDelayedImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new SetDelayedImpl(node); } }); // SetDelayed(:=)
+    infixRight(UP_SET, UP_SET_EXPRESSION, 6, UpSetImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new UpSetImpl(node); } }); // UpSet(^=)
+    infixRight(UP_SET_DELAYED, UP_SET_DELAYED_EXPRESSION, 6, UpSetDelayedImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new UpSetDelayedImpl(node); } }); // UpSetDelayed(^:=)
+    infix(TAG_SET, TAG_SET_EXPRESSION, new TagSetParselet(6), TagSetImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new TagSetImpl(node); } }); // TagSet(/:)
+    psi(TAG_SET_DELAYED_EXPRESSION, TagSetDelayedImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new TagSetDelayedImpl(node); } }); // TagSetDelayed(/: :=) is created by the TagSet parselet
+    psi(TAG_UNSET_EXPRESSION, TagUnsetImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new TagUnsetImpl(node); } }); // TagUnset(/: =.) is created by the TagSet parselet
+    postfix(UNSET, UNSET_EXPRESSION, 6, UnsetImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new UnsetImpl(node); } }); // Unset(=.)
+
+    infix(PUT, PUT_EXPRESSION, new PutParselet(4), PutImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new PutImpl(node); } }); // Put(>>)
+    infix(PUT_APPEND, PUT_APPEND_EXPRESSION, new PutParselet(4), PutAppendImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new PutAppendImpl(node); } }); // PutAppend(>>>)
+
+    infix(SEMICOLON, COMPOUND_EXPRESSION_EXPRESSION, new CompoundExpressionParselet(2), CompoundExpressionImpl.class, new PsiCreator() { public PsiElement create(ASTNode node) { return new CompoundExpressionImpl(node); } }); // CompoundExpression(;)
+
+    ourPsiClasses = createPsiClasses();
+    ourPsiCreators = createPsiCreators(ourPsiClasses.length);
+    ourPsiNames = createPsiNames(ourPsiClasses);
+  }
+
+  private MathematicaOperatorTable() {
+  }
+
+  /**
+   * Provides all rows of the operator table in the order they are specified. The order is important, because a later
+   * row for the same token overrides the parselet of an earlier row.
+   *
+   * @return Unmodifiable list of the operator specifications
+   */
+  @NotNull
+  public static List<Entry> getEntries() {
+    return Collections.unmodifiableList(ourEntries);
+  }
+
+  /**
+   * Creates the PSI element for a node of the AST. The PSI class is looked up by the index of the node type which makes
+   * this a constant time operation. Nodes which have no special PSI class in the table are wrapped into an {@link
+   * ExpressionImpl}.
+   *
+   * @param node
+   *     The node for which the PSI element is created
+   * @return The newly created PSI element
+   */
+  @NotNull
+  public static PsiElement createPsi(@NotNull ASTNode node) {
+    final short index = node.getElementType().getIndex();
+    if (index >= 0 && index < ourPsiCreators.length) {
+      final PsiCreator creator = ourPsiCreators[index];
+      if (creator != null) {
+        return creator.create(node);
+      }
+    }
+    return new ExpressionImpl(node);
+  }
+
+  /**
+   * Returns the class of the PSI element which {@link #createPsi(ASTNode)} creates for a node type. This lets code that
+   * works directly on the AST decide what a node is without creating its PSI element.
+   *
+   * @param nodeType
+   *     Type of the node
+   * @return The PSI class for the type or {@link ExpressionImpl} if the type has no special class
+   */
+  @NotNull
+  public static Class<?> getPsiClass(@NotNull IElementType nodeType) {
+    final short index = nodeType.getIndex();
+    if (index >= 0 && index < ourPsiClasses.length && ourPsiClasses[index] != null) {
+      return ourPsiClasses[index];
+    }
+    return ExpressionImpl.class;
+  }
+
+  /**
+   * Returns the name which the PSI element of a node type would give in its <code >toString()</code>, e.g.
+   * <code >Plus</code> for the node of <code >a+b</code>.
+   *
+   * @param nodeType
+   *     Type of the node
+   * @return The name of the PSI element for the type
+   */
+  @NotNull
+  public static String getPsiName(@NotNull IElementType nodeType) {
+    final short index = nodeType.getIndex();
+    if (index >= 0 && index < ourPsiNames.length && ourPsiNames[index] != null) {
+      return ourPsiNames[index];
+    }
+    return nameOf(ExpressionImpl.class);
+  }
+
+  /**
+   * Collects all node types whose PSI element implements the given interface. The returned set answers for a node
+   * whether its PSI element would be e.g. a {@link de.halirutan.mathematica.parsing.psi.api.FunctionCall} in constant
+   * time.
+   *
+   * @param psiInterface
+   *     Interface or class of the PSI elements
+   * @return All node types from the table whose PSI class is assignable to <code >psiInterface</code>
+   */
+  @NotNull
+  public static TokenSet getNodeTypes(@NotNull Class<?> psiInterface) {
+    final List<IElementType> types = new ArrayList<IElementType>();
+    for (Entry entry : ourEntries) {
+      final IElementType nodeType = entry.getNodeType();
+      if (!types.contains(nodeType) && psiInterface.isAssignableFrom(getPsiClass(nodeType))) {
+        types.add(nodeType);
+      }
+    }
+    return TokenSet.create(types.toArray(new IElementType[types.size()]));
+  }
+
+  private static Class<?>[] createPsiClasses() {
+    int maxIndex = 0;
+    for (Entry entry : ourEntries) {
+      maxIndex = Math.max(maxIndex, entry.getNodeType().getIndex());
+    }
+    final Class<?>[] psiClasses = new Class<?>[maxIndex + 1];
+    for (Entry entry : ourEntries) {
+      final Class<? extends PsiElement> psiClass = entry.getPsiClass();
+      if (psiClass == null) {
+        continue;
+      }
+      final short index = entry.getNodeType().getIndex();
+      if (psiClasses[index] != null && psiClasses[index] != psiClass) {
+        throw new IllegalStateException("Node type " + entry.getNodeType() + " is bound to " +
+            psiClasses[index].getSimpleName() + " and " + psiClass.getSimpleName());
+      }
+      psiClasses[index] = psiClass;
+    }
+    return psiClasses;
+  }
+
+  /**
+   * All rows of a node type are bound to the same PSI class, which {@link #createPsiClasses()} has checked, so the
+   * creator of the first row can be used for the node type.
+   */
+  private static PsiCreator[] createPsiCreators(int length) {
+    final PsiCreator[] creators = new PsiCreator[length];
+    for (Entry entry : ourEntries) {
+      final short index = entry.getNodeType().getIndex();
+      if (entry.myPsiCreator != null && creators[index] == null) {
+        creators[index] = entry.myPsiCreator;
+      }
+    }
+    return creators;
+  }
+
+  /**
+   * The names are built like {@link ExpressionImpl#toString()} builds them from the class of the PSI element.
+   */
+  private static String[] createPsiNames(Class<?>[] psiClasses) {
+    final String[] names = new String[psiClasses.length];
+    for (int i = 0; i < psiClasses.length; i++) {
+      if (psiClasses[i] != null) {
+        names[i] = nameOf(psiClasses[i]);
+      }
+    }
+    return names;
+  }
+
+  private static String nameOf(Class<?> psiClass) {
+    final String classname = psiClass.getSimpleName();
+    return classname.endsWith("Impl") ? classname.substring(0, classname.length() - "Impl".length()) : classname;
+  }
+
+  private static void prefix(IElementType token, IElementType nodeType, PrefixParselet parselet, Class<? extends PsiElement> psiClass, PsiCreator psiCreator) {
+    ourEntries.add(new Entry(token, nodeType, parselet.getPrecedence(), Notation.PREFIX, parselet, null, psiClass, psiCreator));
+  }
+
+  private static void infix(IElementType token, IElementType nodeType, InfixParselet parselet, Class<? extends PsiElement> psiClass, PsiCreator psiCreator) {
+    ourEntries.add(new Entry(token, nodeType, parselet.getMyPrecedence(), Notation.INFIX, null, parselet, psiClass, psiCreator));
+  }
+
+  private static void prefix(IElementType token, IElementType nodeType, int precedence, Class<? extends PsiElement> psiClass, PsiCreator psiCreator) {
+    ourEntries.add(new Entry(token, nodeType, precedence, Notation.PREFIX, new PrefixOperatorParselet(precedence), null, psiClass, psiCreator));
+  }
+
+  private static void postfix(IElementType token, IElementType nodeType, int precedence, Class<? extends PsiElement> psiClass, PsiCreator psiCreator) {
+    ourEntries.add(new Entry(token, nodeType, precedence, Notation.POSTFIX, null, new PostfixOperatorParselet(precedence), psiClass, psiCreator));
+  }
+
+  private static void infixLeft(IElementType token, IElementType nodeType, int precedence, Class<? extends PsiElement> psiClass, PsiCreator psiCreator) {
+    ourEntries.add(new Entry(token, nodeType, precedence, Notation.INFIX_LEFT, null, new InfixOperatorParselet(precedence, false), psiClass, psiCreator));
+  }
+
+  private static void infixRight(IElementType token, IElementType nodeType, int precedence, Class<? extends PsiElement> psiClass, PsiCreator psiCreator) {
+    ourEntries.add(new Entry(token, nodeType, precedence, Notation.INFIX_RIGHT, null, new InfixOperatorParselet(precedence, true), psiClass, psiCreator));
+  }
+
+  private static void psi(IElementType nodeType, Class<? extends PsiElement> psiClass, PsiCreator psiCreator) {
+    ourEntries.add(new Entry(null, nodeType, 0, Notation.NONE, null, null, psiClass, psiCreator));
+  }
+
+  /**
+   * Creates the PSI element of one row. Every row has its own small creator which calls the constructor of the PSI
+   * class directly, so that no reflection is needed when the PSI tree is built.
+   */
+  private interface PsiCreator {
+    PsiElement create(ASTNode node);
+  }
+
+  /**
+   * How an operator is written. {@link #PREFIX} and {@link #INFIX} are used for operators which have their own
+   * specialised parselet, the other ones are handled by the generic operator parselets.
+   */
+  public enum Notation {
+    PREFIX, POSTFIX, INFIX, INFIX_LEFT, INFIX_RIGHT, NONE
+  }
+
+  /**
+   * One row of the operator table.
+   */
+  public static final class Entry {
+    private final IElementType myToken;
+    private final IElementType myNodeType;
+    private final int myPrecedence;
+    private final Notation myNotation;
+    private final PrefixParselet myPrefixParselet;
+    private final InfixParselet myInfixParselet;
+    private final Class<? extends PsiElement> myPsiClass;
+    private final PsiCreator myPsiCreator;
+
+    private Entry(IElementType token, IElementType nodeType, int precedence, Notation notation,
+                  PrefixParselet prefixParselet, InfixParselet infixParselet, Class<? extends PsiElement> psiClass,
+                  PsiCreator psiCreator) {
+      myToken = token;
+      myNodeType = nodeType;
+      myPrecedence = precedence;
+      myNotation = notation;
+      myPrefixParselet = prefixParselet;
+      myInfixParselet = infixParselet;
+      myPsiClass = psiClass;
+      myPsiCreator = psiCreator;
+    }
+
+    /**
+     * @return The lexer token of the operator or {@code null} if the row only specifies the PSI class of a node
+     */
+    @Nullable
+    public IElementType getToken() {
+      return myToken;
+    }
+
+    @NotNull
+    public IElementType getNodeType() {
+      return myNodeType;
+    }
+
+    public int getPrecedence() {
+      return myPrecedence;
+    }
+
+    @NotNull
+    public Notation getNotation() {
+      return myNotation;
+    }
+
+    @Nullable
+    public PrefixParselet getPrefixParselet() {
+      return myPrefixParselet;
+    }
+
+    @Nullable
+    public InfixParselet getInfixParselet() {
+      return myInfixParselet;
+    }
+
+    /**
+     * @return The PSI class for nodes of this type or {@code null} if a plain {@link ExpressionImpl} is sufficient
+     */
+    @Nullable
+    public Class<? extends PsiElement> getPsiClass() {
+      return myPsiClass;
+    }
+  }
+}
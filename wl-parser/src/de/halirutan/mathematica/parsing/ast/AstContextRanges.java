@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.ast;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.impl.source.tree.CompositeElement;
+import com.intellij.psi.tree.TokenSet;
+import de.halirutan.mathematica.lexer.ContextTracker;
+import de.halirutan.mathematica.parsing.MathematicaOperatorTable;
+import de.halirutan.mathematica.parsing.psi.api.pattern.Blank;
+import de.halirutan.mathematica.parsing.psi.api.pattern.BlankNullSequence;
+import de.halirutan.mathematica.parsing.psi.api.pattern.BlankSequence;
+import de.halirutan.mathematica.parsing.psi.util.LocalizationConstruct;
+import de.halirutan.mathematica.parsing.psi.util.LocalizationConstruct.ConstructType;
+import de.halirutan.mathematica.parsing.psi.util.SystemSymbolTable;
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static de.halirutan.mathematica.parsing.MathematicaElementTypes.WHITE_SPACE_OR_COMMENTS;
+import static de.halirutan.mathematica.parsing.psi.util.DefinitionRules.DEFINITION_TYPES;
+
+/**
+ * The contexts of a file by offset. The leaves of the AST are fed in one pass to a {@link ContextTracker}, which is
+ * the same tracker the token based indexes use, and every change of the current context or the context path starts a
+ * new range. Finding the range of an offset is a binary search over the start offsets of the ranges.
+ * <p/>
+ * Symbols written without context are qualified like Mathematica would do it: the contexts on the path are searched
+ * first and the current context is used when none of them has the symbol. What a context of the path contains is only
+ * known for packages in the same file: a symbol that is mentioned in the public part of a package, e.g. in its usage
+ * message, belongs to the package context even when it is used after <code >Begin["`Private`"]</code> or after
+ * <code >EndPackage[]</code>. Symbols that are only used as heads there, like <code >Options</code> in <code
+ * >Options[f] = ...</code>, and the names of attributes are not taken as public symbols of the package.
+ * <p/>
+ * Since there is no complete list of the built-in symbols, <code >System`</code> is decided by what the file does with
+ * a name. A name that the file creates, because it defines it, localizes it in a pattern or a scoping construct, or
+ * makes it public in a package, is looked up in the packages of the path and otherwise created in the current
+ * context. Every other name is found in <code >System`</code> when it is on the path, which is what happens to the
+ * built-in symbols the file uses.
+ * <p/>
+ * The ranges are immutable and store the modification count of the root they were built for.
+ */
+public final class AstContextRanges {
+
+  private final TIntArrayList myOffsets = new TIntArrayList();
+  private final List<String> myContexts = new ArrayList<String>();
+  private final List<List<String>> myPaths = new ArrayList<List<String>>();
+  private final Map<String, List<String>> myPublicContexts = new HashMap<String, List<String>>();
+  private final Set<String> myCreatedNames = new HashSet<String>();
+  private final int myStamp;
+
+  private AstContextRanges(int stamp) {
+    myStamp = stamp;
+  }
+
+  /**
+   * Follows the package statements of a file.
+   *
+   * @param root
+   *     Root node of the file
+   * @return The context ranges of the file
+   */
+  @NotNull
+  public static AstContextRanges build(@NotNull ASTNode root) {
+    return build(root, null);
+  }
+
+  /**
+   * Follows the package statements of a file and collects on the way the names of all symbols without their context.
+   *
+   * @param root
+   *     Root node of the file
+   * @param names
+   *     Collection the names are added to or null if they are not needed
+   * @return The context ranges of the file
+   */
+  @NotNull
+  public static AstContextRanges build(@NotNull ASTNode root, @Nullable Collection<String> names) {
+    return build(root, names, new AstDefinitionCollector(root));
+  }
+
+  /**
+   * Works like {@link #build(ASTNode, Collection)} but takes the definitions of the file from a collector that was
+   * already run on it.
+   *
+   * @param root
+   *     Root node of the file
+   * @param names
+   *     Collection the names are added to or null if they are not needed
+   * @param definitions
+   *     The definitions found in <code >root</code>
+   * @return The context ranges of the file
+   */
+  @NotNull
+  public static AstContextRanges build(@NotNull ASTNode root, @Nullable Collection<String> names,
+                                       @NotNull AstDefinitionCollector definitions) {
+    final AstContextRanges ranges = new AstContextRanges(getStamp(root));
+    ranges.myCreatedNames.addAll(definitions.getDefinitions().keySet());
+    new RangeWalker(ranges, names).walk(root);
+    return ranges;
+  }
+
+  private static int getStamp(@NotNull ASTNode root) {
+    return root instanceof CompositeElement ? ((CompositeElement) root).getModificationCount() : 0;
+  }
+
+  /**
+   * @return true if the ranges were built for the current state of <code >root</code>
+   */
+  public boolean isUpToDate(@NotNull ASTNode root) {
+    return myStamp == getStamp(root);
+  }
+
+  /**
+   * @return The number of ranges, which is one more than the number of context changes
+   */
+  public int getRangeCount() {
+    return myOffsets.size();
+  }
+
+  private int getRange(int offset) {
+    final int index = myOffsets.binarySearch(offset);
+    return index < 0 ? Math.max(0, -index - 2) : index;
+  }
+
+  /**
+   * @return The context new symbols are created in at <code >offset</code>
+   */
+  @NotNull
+  public String getContext(int offset) {
+    return myContexts.get(getRange(offset));
+  }
+
+  /**
+   * @return The context path at <code >offset</code>. The list must not be changed.
+   */
+  @NotNull
+  public List<String> getContextPath(int offset) {
+    return myPaths.get(getRange(offset));
+  }
+
+  /**
+   * Returns the context a symbol belongs to.
+   *
+   * @param text
+   *     The text of the symbol, which may contain an explicit context
+   * @param name
+   *     The name of the symbol without context
+   * @param offset
+   *     Offset of the symbol in the file
+   * @return The absolute context including the trailing backquote
+   */
+  @NotNull
+  public String getSymbolContext(@NotNull String text, @NotNull String name, int offset) {
+    final int index = getRange(offset);
+    final String context = myContexts.get(index);
+    final int contextLength = text.length() - name.length();
+    if (contextLength > 0) {
+      final String explicit = text.substring(0, contextLength);
+      return explicit.startsWith("`") ? context + explicit.substring(1) : explicit;
+    }
+    final List<String> publicContexts = myPublicContexts.get(name);
+    final boolean created = publicContexts != null || myCreatedNames.contains(name);
+    for (String pathContext : myPaths.get(index)) {
+      if (publicContexts != null && publicContexts.contains(pathContext) ||
+          !created && ContextTracker.SYSTEM_CONTEXT.equals(pathContext)) {
+        return pathContext;
+      }
+    }
+    return context;
+  }
+
+  private void addRange(int offset, String context, List<String> path) {
+    myOffsets.add(offset);
+    myContexts.add(context);
+    myPaths.add(path);
+  }
+
+  private void addPublicSymbol(String name, String context) {
+    List<String> contexts = myPublicContexts.get(name);
+    if (contexts == null) {
+      contexts = new ArrayList<String>(1);
+      myPublicContexts.put(name, contexts);
+    }
+    if (!contexts.contains(context)) {
+      contexts.add(context);
+    }
+  }
+
+  private static final TokenSet PATTERN_NAMES = TokenSet.orSet(AstNodes.PATTERNS,
+      MathematicaOperatorTable.getNodeTypes(Blank.class), MathematicaOperatorTable.getNodeTypes(BlankSequence.class),
+      MathematicaOperatorTable.getNodeTypes(BlankNullSequence.class));
+
+  // the attributes in SetAttributes[f, HoldAll] are built-in symbols and not created by a package
+  private static final Set<String> ATTRIBUTE_NAMES = new HashSet<String>();
+
+  static {
+    for (SystemSymbolTable.Attribute attribute : SystemSymbolTable.Attribute.values()) {
+      ATTRIBUTE_NAMES.add(attribute.getName());
+    }
+  }
+
+  private static class RangeWalker extends AstWalker {
+    private final AstContextRanges myRanges;
+    private final Collection<String> myNames;
+    private final ContextTracker myTracker = new ContextTracker();
+    private String myContext;
+    private List<String> myPath;
+
+    RangeWalker(AstContextRanges ranges, @Nullable Collection<String> names) {
+      myRanges = ranges;
+      myNames = names;
+      myContext = myTracker.getContext();
+      myPath = myTracker.getPath();
+      ranges.addRange(0, myContext, myPath);
+    }
+
+    @Override
+    protected boolean visitNode(@NotNull ASTNode node) {
+      if (AstNodes.isComposite(node)) {
+        if (AstNodes.isSymbol(node)) {
+          visitSymbol(node);
+        } else if (AstNodes.isFunctionCall(node)) {
+          visitFunctionCall(node);
+        }
+        return true;
+      }
+      if (WHITE_SPACE_OR_COMMENTS.contains(node.getElementType())) {
+        return false;
+      }
+      final CharSequence text = node.getChars();
+      myTracker.token(node.getElementType(), text, 0, text.length());
+      // the tracker creates a new path list whenever the path changes
+      if (myTracker.getPath() != myPath || !myTracker.getContext().equals(myContext)) {
+        myContext = myTracker.getContext();
+        myPath = myTracker.getPath();
+        myRanges.addRange(node.getTextRange().getEndOffset(), myContext, myPath);
+      }
+      return false;
+    }
+
+    private void visitSymbol(ASTNode symbol) {
+      final String name = AstNodes.getSymbolName(symbol);
+      if (myNames != null) {
+        myNames.add(name);
+      }
+      final ASTNode parent = symbol.getTreeParent();
+      final boolean firstChild = parent != null && parent.getFirstChildNode() == symbol;
+      // x in x_ or x : patt
+      if (firstChild && AstNodes.isOfType(parent, PATTERN_NAMES)) {
+        myRanges.myCreatedNames.add(name);
+      }
+      // the public part of a package is where its context is current and first on the path
+      if (!myContext.equals(ContextTracker.GLOBAL_CONTEXT) && myContext.equals(myPath.get(0)) &&
+          symbol.getTextLength() == name.length() && !(firstChild && AstNodes.isFunctionCall(parent)) &&
+          !ATTRIBUTE_NAMES.contains(name)) {
+        myRanges.addPublicSymbol(name, myContext);
+      }
+    }
+
+    /**
+     * Adds the variables of a scoping construct to the created names. Patterns in rules and definitions are handled
+     * by {@link #visitSymbol(ASTNode)}.
+     */
+    private void visitFunctionCall(ASTNode functionCall) {
+      final ASTNode head = AstNodes.getHead(functionCall);
+      if (!AstNodes.isSymbol(head)) {
+        return;
+      }
+      final ConstructType type = SystemSymbolTable.getScopingConstruct(head.getChars());
+      if (LocalizationConstruct.isModuleLike(type) || LocalizationConstruct.isCompileLike(type)) {
+        addVariables(AstNodes.getArgument(functionCall, 1));
+      } else if (LocalizationConstruct.isFunctionLike(type)) {
+        if (AstNodes.getArgument(functionCall, 2) != null) {
+          addVariables(AstNodes.getArgument(functionCall, 1));
+        }
+      } else if (LocalizationConstruct.isTableLike(type) || LocalizationConstruct.isManipulateLike(type)) {
+        for (int i = 2; AstNodes.getArgument(functionCall, i) != null; i++) {
+          addIteratorVariable(AstNodes.getArgument(functionCall, i));
+        }
+      } else if (LocalizationConstruct.isLimitLike(type)) {
+        final ASTNode rule = AstNodes.getArgument(functionCall, 2);
+        if (rule != null) {
+          addVariable(rule.getFirstChildNode());
+        }
+      }
+    }
+
+    /**
+     * Adds <code >x</code> or the symbols of <code >{x, y = 1, {z, _Real}}</code>.
+     */
+    private void addVariables(ASTNode variables) {
+      if (AstNodes.isOfType(variables, AstNodes.LISTS)) {
+        for (ASTNode child = variables.getFirstChildNode(); child != null; child = child.getTreeNext()) {
+          if (AstNodes.isOfType(child, AstNodes.LISTS)) {
+            addVariable(AstNodes.getCompositeChild(child, 0));
+          } else if (AstNodes.isOfType(child, DEFINITION_TYPES)) {
+            addVariable(child.getFirstChildNode());
+          } else {
+            addVariable(child);
+          }
+        }
+      } else {
+        addVariable(variables);
+      }
+    }
+
+    /**
+     * Adds <code >i</code> of an iterator <code >{i, 1, n}</code> or <code >{{i, 0}, 0, 1}</code>.
+     */
+    private void addIteratorVariable(ASTNode iterator) {
+      ASTNode variable = iterator;
+      while (AstNodes.isOfType(variable, AstNodes.LISTS)) {
+        variable = AstNodes.getCompositeChild(variable, 0);
+      }
+      if (variable != iterator) {
+        addVariable(variable);
+      }
+    }
+
+    private void addVariable(ASTNode variable) {
+      if (AstNodes.isSymbol(variable)) {
+        myRanges.myCreatedNames.add(AstNodes.getSymbolName(variable));
+      }
+    }
+  }
+}
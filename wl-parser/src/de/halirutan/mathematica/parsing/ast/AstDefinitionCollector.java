@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.ast;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.openapi.progress.ProgressIndicatorProvider;
+import com.intellij.psi.tree.IElementType;
+import de.halirutan.mathematica.parsing.psi.SymbolAssignmentType;
+import de.halirutan.mathematica.parsing.psi.util.DefinitionRules;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+import static de.halirutan.mathematica.parsing.MathematicaElementTypes.*;
+import static de.halirutan.mathematica.parsing.psi.SymbolAssignmentType.*;
+
+/**
+ * Collects the global definitions of a file like {@link de.halirutan.mathematica.parsing.psi.util.GlobalDefinitionCollector}
+ * does, but works on the AST only. Both take the definition heads and types and the elements that are not searched
+ * from {@link DefinitionRules}. The symbols of the left-hand sides are found with the same rules as in {@link
+ * de.halirutan.mathematica.parsing.psi.impl.assignment.SetDefinitionSymbolVisitor} and {@link
+ * de.halirutan.mathematica.parsing.psi.impl.assignment.UpSetDefinitionSymbolVisitor}. Definitions inside other
+ * definitions, inside <code >Module</code> and <code >With</code> and inside function calls without arguments are
+ * skipped.
+ * <p/>
+ * No PSI element is created, which makes this the cheaper choice for files that are only scanned once, e.g. when a
+ * whole project is indexed.
+ */
+public class AstDefinitionCollector {
+
+  private final Map<String, java.util.List<AstDefinition>> myDefinitions =
+      new LinkedHashMap<String, java.util.List<AstDefinition>>();
+
+  /**
+   * Collects the definitions below <code >root</code>, which is usually the node of a file.
+   *
+   * @param root
+   *     Node whose children are searched
+   */
+  public AstDefinitionCollector(@NotNull final ASTNode root) {
+    new AstWalker() {
+      @Override
+      protected boolean visitNode(@NotNull ASTNode node) {
+        if (node == root) {
+          return true;
+        }
+        if (!AstNodes.isComposite(node)) {
+          return false;
+        }
+        final IElementType type = node.getElementType();
+        if (DefinitionRules.DEFINITION_TYPES.contains(type)) {
+          ProgressIndicatorProvider.checkCanceled();
+          collectOperator(node);
+          return false;
+        }
+        if (AstNodes.FUNCTION_CALLS.contains(type)) {
+          final ASTNode arg1 = AstNodes.getArgument(node, 1);
+          if (arg1 == null) {
+            return false;
+          }
+          final SymbolAssignmentType assignmentType = getCallAssignmentType(node);
+          if (assignmentType != null) {
+            ProgressIndicatorProvider.checkCanceled();
+            collectFunctionCall(node, arg1, assignmentType);
+            return false;
+          }
+          return !AstNodes.matchesHead(node, DefinitionRules.NOT_DIVED_INTO);
+        }
+        return true;
+      }
+    }.walk(root);
+  }
+
+  /**
+   * @return The definitions found in the file, grouped by the symbol name without context
+   */
+  @NotNull
+  public Map<String, java.util.List<AstDefinition>> getDefinitions() {
+    return myDefinitions;
+  }
+
+  private void addDefinition(ASTNode symbol, ASTNode lhs, SymbolAssignmentType type) {
+    final String key = AstNodes.getSymbolName(symbol);
+    java.util.List<AstDefinition> definitions = myDefinitions.get(key);
+    if (definitions == null) {
+      definitions = new ArrayList<AstDefinition>(1);
+      myDefinitions.put(key, definitions);
+    }
+    definitions.add(new AstDefinition(symbol, lhs, type));
+  }
+
+  private static SymbolAssignmentType getCallAssignmentType(ASTNode functionCall) {
+    final ASTNode head = AstNodes.getHead(functionCall);
+    return AstNodes.isSymbol(head) ? DefinitionRules.getCallAssignmentType(head.getText()) : null;
+  }
+
+  private void collectOperator(ASTNode assignment) {
+    final SymbolAssignmentType type = DefinitionRules.getOperatorAssignmentType(assignment.getElementType());
+    final ASTNode lhs = assignment.getFirstChildNode();
+    if (type == SET_ASSIGNMENT || type == SET_DELAYED_ASSIGNMENT) {
+      final SetLhs setLhs = new SetLhs(lhs, type);
+      setLhs.visit(lhs);
+      final SymbolAssignmentType assignmentType = setLhs.myAssignmentType;
+      ASTNode context = lhs;
+      if (type == SET_ASSIGNMENT && (assignmentType == ATTRIBUTES_ASSIGNMENT || assignmentType == OPTIONS_ASSIGNMENT)) {
+        context = assignment.getLastChildNode();
+      }
+      for (ASTNode symbol : setLhs.mySymbols) {
+        addDefinition(symbol, context, assignmentType);
+      }
+    } else if (type == TAG_SET_ASSIGNMENT || type == TAG_SET_DELAYED_ASSIGNMENT) {
+      if (AstNodes.isSymbol(lhs)) {
+        addDefinition(lhs, assignment, type);
+      }
+    } else if (lhs != null) {
+      final UpSetLhs upSetLhs = new UpSetLhs();
+      upSetLhs.visit(lhs);
+      for (ASTNode symbol : upSetLhs.mySymbols) {
+        addDefinition(symbol, lhs, type);
+      }
+    }
+  }
+
+  private void collectFunctionCall(ASTNode functionCall, ASTNode arg1, SymbolAssignmentType type) {
+    switch (type) {
+      case SET_ASSIGNMENT:
+      case SET_DELAYED_ASSIGNMENT:
+        final SetLhs setLhs = new SetLhs(arg1, null);
+        setLhs.visit(arg1);
+        for (ASTNode symbol : setLhs.mySymbols) {
+          addDefinition(symbol, arg1, type);
+        }
+        break;
+      case UP_SET_ASSIGNMENT:
+      case UP_SET_DELAYED_ASSIGNMENT:
+        final UpSetLhs upSetLhs = new UpSetLhs();
+        upSetLhs.visit(arg1);
+        for (ASTNode symbol : upSetLhs.mySymbols) {
+          addDefinition(symbol, arg1, type);
+        }
+        break;
+      default:
+        // TagSet, TagSetDelayed, SetAttributes and SetOptions take the symbol itself as first argument
+        if (AstNodes.isSymbol(arg1)) {
+          addDefinition(arg1, functionCall, type);
+        }
+    }
+  }
+
+  /**
+   * Finds the defined symbols in the left-hand side of <code >Set</code> and <code >SetDelayed</code> following the
+   * rules of {@link de.halirutan.mathematica.parsing.psi.impl.assignment.SetDefinitionSymbolVisitor}.
+   */
+  private static class SetLhs {
+    private final LinkedHashSet<ASTNode> mySymbols = new LinkedHashSet<ASTNode>();
+    private final ASTNode myStartNode;
+    private SymbolAssignmentType myAssignmentType;
+    private boolean myFoundAssignmentType = false;
+
+    SetLhs(ASTNode startNode, SymbolAssignmentType assignmentType) {
+      myStartNode = startNode;
+      myAssignmentType = assignmentType;
+    }
+
+    void visit(ASTNode node) {
+      if (node == null) {
+        return;
+      }
+      final IElementType type = node.getElementType();
+      if (AstNodes.SYMBOLS.contains(type)) {
+        mySymbols.add(node);
+      } else if (AstNodes.FUNCTION_CALLS.contains(type)) {
+        visitFunctionCall(node);
+      } else if (AstNodes.CONDITIONS.contains(type)) {
+        visit(node.getFirstChildNode());
+      } else if (AstNodes.PATTERNS.contains(type)) {
+        visit(node.getLastChildNode());
+      } else if (AstNodes.MESSAGE_NAMES.contains(type)) {
+        final ASTNode symbol = node.getFirstChildNode();
+        if (AstNodes.isSymbol(symbol)) {
+          mySymbols.add(symbol);
+          myAssignmentType = MESSAGE_ASSIGNMENT;
+        }
+      } else if (AstNodes.GROUPS.contains(type) || AstNodes.LISTS.contains(type)) {
+        for (ASTNode child = node.getFirstChildNode(); child != null; child = child.getTreeNext()) {
+          visit(child);
+        }
+      }
+    }
+
+    private void visitFunctionCall(ASTNode functionCall) {
+      final ASTNode head = AstNodes.getHead(functionCall);
+      if (!AstNodes.isSymbol(head)) {
+        visit(head);
+        return;
+      }
+      if (AstNodes.matchesHead(functionCall, DefinitionRules.TRANSPARENT_HEADS)) {
+        visit(AstNodes.getArgument(functionCall, 1));
+      }
+      if (functionCall == myStartNode && AstNodes.matchesHead(functionCall, DefinitionRules.ASSIGNMENT_TYPE_HEADS)) {
+        if (myFoundAssignmentType) {
+          return;
+        }
+        myAssignmentType = DefinitionRules.getLhsAssignmentType(head.getText());
+        myFoundAssignmentType = true;
+        final ASTNode arg1 = AstNodes.getArgument(functionCall, 1);
+        if (arg1 != null) {
+          if (AstNodes.matchesHead(functionCall, DefinitionRules.SYMBOL_ARGUMENT_HEADS)) {
+            if (AstNodes.isSymbol(arg1)) mySymbols.add(arg1);
+          } else {
+            visit(arg1);
+          }
+        }
+      } else {
+        mySymbols.add(head);
+      }
+    }
+  }
+
+  /**
+   * Finds the defined symbols in the left-hand side of <code >UpSet</code> and <code >UpSetDelayed</code> following the
+   * rules of {@link de.halirutan.mathematica.parsing.psi.impl.assignment.UpSetDefinitionSymbolVisitor}.
+   */
+  private static class UpSetLhs {
+    private final LinkedHashSet<ASTNode> mySymbols = new LinkedHashSet<ASTNode>();
+    private boolean myZeroLevel = true;
+
+    void visit(ASTNode node) {
+      if (node == null) {
+        return;
+      }
+      final IElementType type = node.getElementType();
+      if (AstNodes.SYMBOLS.contains(type)) {
+        mySymbols.add(node);
+      } else if (AstNodes.FUNCTION_CALLS.contains(type)) {
+        if (myZeroLevel) {
+          myZeroLevel = false;
+          for (ASTNode child = AstNodes.getArgument(node, 1); child != null; child = child.getTreeNext()) {
+            if (AstNodes.isComposite(child)) visit(child);
+          }
+        } else {
+          final ASTNode head = AstNodes.getHead(node);
+          if (AstNodes.isSymbol(head)) {
+            mySymbols.add(head);
+          } else {
+            visit(head);
+          }
+        }
+      } else if (AstNodes.CONDITIONS.contains(type)) {
+        visit(node.getFirstChildNode());
+      } else if (AstNodes.PATTERNS.contains(type)) {
+        visit(node.getLastChildNode());
+      } else if (AstNodes.GROUPS.contains(type) || AstNodes.LISTS.contains(type)) {
+        for (ASTNode child = node.getFirstChildNode(); child != null; child = child.getTreeNext()) {
+          visit(child);
+        }
+      }
+    }
+  }
+
+  /**
+   * A definition found by the collector: the defined symbol, the node which the definition is attached to and the
+   * kind of the assignment.
+   */
+  public static class AstDefinition {
+    private final ASTNode mySymbol;
+    private final ASTNode myLhs;
+    private final SymbolAssignmentType myType;
+
+    AstDefinition(ASTNode symbol, ASTNode lhs, SymbolAssignmentType type) {
+      mySymbol = symbol;
+      myLhs = lhs;
+      myType = type;
+    }
+
+    @NotNull
+    public ASTNode getSymbol() {
+      return mySymbol;
+    }
+
+    public ASTNode getLhs() {
+      return myLhs;
+    }
+
+    public SymbolAssignmentType getType() {
+      return myType;
+    }
+  }
+}
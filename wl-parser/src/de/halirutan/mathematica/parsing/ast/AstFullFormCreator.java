@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.ast;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.PsiWhiteSpace;
+import com.intellij.psi.impl.source.tree.CompositeElement;
+import com.intellij.psi.impl.source.tree.CompositePsiElement;
+import com.intellij.psi.impl.source.tree.FileElement;
+import com.intellij.psi.impl.source.tree.LeafElement;
+import com.intellij.psi.tree.IElementType;
+import de.halirutan.mathematica.parsing.MathematicaElementTypes;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Creates the FullForm of a file from its AST. The output is the same as the one of {@link
+ * de.halirutan.mathematica.parsing.psi.util.FullFormCreator}, but no PSI element is created on the way. Names of
+ * operators are taken from {@link AstNodes#getName(ASTNode)}.
+ */
+public class AstFullFormCreator {
+
+  private AstFullFormCreator() {
+  }
+
+  /**
+   * Creates the FullForm of all expressions in a file.
+   *
+   * @param fileNode
+   *     The node of the file
+   * @return The FullForm of all expressions in the file
+   */
+  @NotNull
+  public static String createFullForm(@NotNull FileElement fileNode) {
+    final StringBuilder fullForm = new StringBuilder(fileNode.getTextLength());
+    new FullFormWalker(fullForm).walk(fileNode);
+    return fullForm.toString();
+  }
+
+  /**
+   * Works like the visitor in {@link de.halirutan.mathematica.parsing.psi.util.FullFormCreator}: opening parts are
+   * written when a node is visited, closing brackets when it is finished and commas in front of every printed node that
+   * follows a printed sibling.
+   */
+  private static class FullFormWalker extends AstWalker {
+
+    private final StringBuilder myFullForm;
+    private boolean myNeedsComma = false;
+
+    FullFormWalker(StringBuilder fullForm) {
+      myFullForm = fullForm;
+    }
+
+    @Override
+    protected boolean visitNode(@NotNull ASTNode node) {
+      if (node instanceof FileElement) {
+        return true;
+      }
+      if (!isPrinted(node)) {
+        return false;
+      }
+      if (myNeedsComma && !(node.getTreeParent() instanceof FileElement)) {
+        myFullForm.append(",");
+      }
+      final IElementType type = node.getElementType();
+      if (AstNodes.FUNCTION_CALLS.contains(type)) {
+        myNeedsComma = false;
+        return true;
+      }
+      if (AstNodes.SYMBOLS.contains(type)) {
+        myFullForm.append(AstNodes.getSymbolName(node));
+      } else if (AstNodes.STRINGS.contains(type) || AstNodes.NUMBERS.contains(type)) {
+        myFullForm.append(node.getText());
+      } else if (AstNodes.STRINGIFIED_SYMBOLS.contains(type)) {
+        myFullForm.append('"').append(node.getText()).append('"');
+      } else if (AstNodes.SLOTS.contains(type)) {
+        appendSlot(node);
+      } else if (AstNodes.FUNCTIONS.contains(type)) {
+        myFullForm.append("Function[");
+        myNeedsComma = false;
+        return true;
+      } else {
+        // error elements and leaves are their own PSI elements and are printed with their toString()
+        final boolean ownPsi = node instanceof CompositePsiElement || node instanceof LeafElement;
+        myFullForm.append(ownPsi ? node.toString() : AstNodes.getName(node)).append("[");
+        myNeedsComma = false;
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    protected void nodeFinished(@NotNull ASTNode node) {
+      if (node instanceof FileElement || !isPrinted(node)) {
+        return;
+      }
+      final IElementType type = node.getElementType();
+      if (!(AstNodes.SYMBOLS.contains(type) || AstNodes.STRINGS.contains(type) ||
+          AstNodes.STRINGIFIED_SYMBOLS.contains(type) || AstNodes.SLOTS.contains(type) ||
+          AstNodes.NUMBERS.contains(type))) {
+        myFullForm.append("]");
+      }
+      final ASTNode parent = node.getTreeParent();
+      if (AstNodes.isFunctionCall(parent) && node == parent.getFirstChildNode()) {
+        // the head is followed by the opening bracket of the arguments
+        myFullForm.append("[");
+        myNeedsComma = false;
+      } else {
+        myNeedsComma = !(node instanceof PsiWhiteSpace);
+      }
+    }
+
+    private void appendSlot(ASTNode slot) {
+      final IElementType type = slot.getElementType();
+      if (type == MathematicaElementTypes.SLOT) {
+        String num = slot.getText().substring(1);
+        num = num.length() > 0 ? num : "1";
+        myFullForm.append("Slot[").append(num).append("]");
+      }
+      if (type == MathematicaElementTypes.SLOT_SEQUENCE) {
+        String num = slot.getText().substring(2);
+        num = num.length() > 0 ? num : "1";
+        myFullForm.append("SlotSequence[").append(num).append("]");
+      }
+    }
+
+    /**
+     * Children of a file or of an error element are all printed, below other nodes only composite nodes and from an
+     * anonymous function only its body.
+     */
+    private static boolean isPrinted(ASTNode node) {
+      final ASTNode parent = node.getTreeParent();
+      if (parent instanceof FileElement || parent instanceof CompositePsiElement) {
+        return true;
+      }
+      if (!(node instanceof CompositeElement)) {
+        return false;
+      }
+      return !AstNodes.FUNCTIONS.contains(parent.getElementType()) || node == parent.getFirstChildNode();
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.ast;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.tree.IElementType;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashSet;
+
+/**
+ * Simple size metrics of a file computed from its AST: the number of expressions, symbols and function calls, the
+ * number of distinct symbol names, the deepest nesting of expressions and how often every node type occurs.
+ */
+public class AstMetrics {
+
+  private final TObjectIntHashMap<IElementType> myTypeCounts = new TObjectIntHashMap<IElementType>();
+  private int myExpressionCount;
+  private int mySymbolCount;
+  private int myFunctionCallCount;
+  private int myDistinctSymbolCount;
+  private int myMaxDepth;
+
+  private AstMetrics() {
+  }
+
+  /**
+   * Computes the metrics of all expressions below <code >root</code>.
+   *
+   * @param root
+   *     Usually the node of a file
+   * @return The metrics
+   */
+  @NotNull
+  public static AstMetrics compute(@NotNull final ASTNode root) {
+    final AstMetrics metrics = new AstMetrics();
+    final HashSet<String> symbolNames = new HashSet<String>();
+    new AstWalker() {
+      private int myDepth = 0;
+
+      @Override
+      protected boolean visitNode(@NotNull ASTNode node) {
+        if (node == root) {
+          return true;
+        }
+        if (!AstNodes.isComposite(node)) {
+          return false;
+        }
+        final IElementType type = node.getElementType();
+        metrics.myExpressionCount++;
+        if (!metrics.myTypeCounts.adjustValue(type, 1)) {
+          metrics.myTypeCounts.put(type, 1);
+        }
+        if (AstNodes.SYMBOLS.contains(type)) {
+          metrics.mySymbolCount++;
+          symbolNames.add(node.getText());
+        } else if (AstNodes.FUNCTION_CALLS.contains(type)) {
+          metrics.myFunctionCallCount++;
+        }
+        myDepth++;
+        metrics.myMaxDepth = Math.max(metrics.myMaxDepth, myDepth);
+        return true;
+      }
+
+      @Override
+      protected void nodeFinished(@NotNull ASTNode node) {
+        if (node != root && AstNodes.isComposite(node)) {
+          myDepth--;
+        }
+      }
+    }.walk(root);
+    metrics.myDistinctSymbolCount = symbolNames.size();
+    return metrics;
+  }
+
+  /**
+   * @return The number of composite nodes, i.e. of all expressions on all levels
+   */
+  public int getExpressionCount() {
+    return myExpressionCount;
+  }
+
+  public int getSymbolCount() {
+    return mySymbolCount;
+  }
+
+  public int getFunctionCallCount() {
+    return myFunctionCallCount;
+  }
+
+  /**
+   * @return The number of different symbol names, where symbols with a different context count as different
+   */
+  public int getDistinctSymbolCount() {
+    return myDistinctSymbolCount;
+  }
+
+  /**
+   * @return The deepest nesting of expressions where top-level expressions have depth 1
+   */
+  public int getMaxDepth() {
+    return myMaxDepth;
+  }
+
+  /**
+   * @return How many nodes of the given type were found
+   */
+  public int getCount(@NotNull IElementType type) {
+    return myTypeCounts.get(type);
+  }
+
+  @Override
+  public String toString() {
+    return "expressions: " + myExpressionCount + ", symbols: " + mySymbolCount + " (" + myDistinctSymbolCount +
+        " distinct), function calls: " + myFunctionCallCount + ", max depth: " + myMaxDepth;
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.ast;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.impl.source.tree.CompositeElement;
+import com.intellij.psi.tree.TokenSet;
+import de.halirutan.mathematica.parsing.MathematicaOperatorTable;
+import de.halirutan.mathematica.parsing.psi.api.*;
+import de.halirutan.mathematica.parsing.psi.api.Number;
+import de.halirutan.mathematica.parsing.psi.api.function.Function;
+import de.halirutan.mathematica.parsing.psi.api.lists.List;
+import de.halirutan.mathematica.parsing.psi.api.pattern.Condition;
+import de.halirutan.mathematica.parsing.psi.api.pattern.Pattern;
+import de.halirutan.mathematica.parsing.psi.api.string.MString;
+import de.halirutan.mathematica.parsing.psi.util.HeadMatcher;
+import de.halirutan.mathematica.parsing.psi.util.SymbolNameInterner;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Typed accessors for the nodes of a Mathematica AST. The kind of a node is decided by its element type through the
+ * PSI class that {@link MathematicaOperatorTable} binds to the type, so e.g. {@link #FUNCTION_CALLS} contains exactly
+ * the types whose PSI element is a {@link FunctionCall}. The accessors return the same nodes the methods of the PSI
+ * elements would return, e.g. {@link #getArgument(ASTNode, int)} behaves like {@link FunctionCall#getArgument(int)}.
+ */
+public final class AstNodes {
+
+  public static final TokenSet SYMBOLS = MathematicaOperatorTable.getNodeTypes(Symbol.class);
+  public static final TokenSet FUNCTION_CALLS = MathematicaOperatorTable.getNodeTypes(FunctionCall.class);
+  public static final TokenSet FUNCTIONS = MathematicaOperatorTable.getNodeTypes(Function.class);
+  public static final TokenSet NUMBERS = MathematicaOperatorTable.getNodeTypes(Number.class);
+  public static final TokenSet STRINGS = MathematicaOperatorTable.getNodeTypes(MString.class);
+  public static final TokenSet STRINGIFIED_SYMBOLS = MathematicaOperatorTable.getNodeTypes(StringifiedSymbol.class);
+  public static final TokenSet SLOTS = MathematicaOperatorTable.getNodeTypes(Slot.class);
+  public static final TokenSet PATTERNS = MathematicaOperatorTable.getNodeTypes(Pattern.class);
+  public static final TokenSet CONDITIONS = MathematicaOperatorTable.getNodeTypes(Condition.class);
+  public static final TokenSet MESSAGE_NAMES = MathematicaOperatorTable.getNodeTypes(MessageName.class);
+  public static final TokenSet GROUPS = MathematicaOperatorTable.getNodeTypes(Group.class);
+  public static final TokenSet LISTS = MathematicaOperatorTable.getNodeTypes(List.class);
+
+  private AstNodes() {
+  }
+
+  public static boolean isSymbol(@Nullable ASTNode node) {
+    return node != null && SYMBOLS.contains(node.getElementType());
+  }
+
+  public static boolean isFunctionCall(@Nullable ASTNode node) {
+    return node != null && FUNCTION_CALLS.contains(node.getElementType());
+  }
+
+  public static boolean isOfType(@Nullable ASTNode node, @NotNull TokenSet types) {
+    return node != null && types.contains(node.getElementType());
+  }
+
+  /**
+   * Composite nodes are the ones that {@link com.intellij.psi.PsiElement#getChildren()} returns for a Mathematica
+   * element. Tokens, whitespace and comments are leaves.
+   */
+  public static boolean isComposite(@Nullable ASTNode node) {
+    return node instanceof CompositeElement;
+  }
+
+  /**
+   * Returns the name of the node as it appears in the FullForm and in the <code >toString()</code> of its PSI element,
+   * e.g. <code >Plus</code> or <code >SetDelayed</code>.
+   */
+  @NotNull
+  public static String getName(@NotNull ASTNode node) {
+    return MathematicaOperatorTable.getPsiName(node.getElementType());
+  }
+
+  /**
+   * Counts the composite children of a node.
+   */
+  public static int getCompositeChildCount(@NotNull ASTNode node) {
+    int count = 0;
+    for (ASTNode child = node.getFirstChildNode(); child != null; child = child.getTreeNext()) {
+      if (child instanceof CompositeElement) count++;
+    }
+    return count;
+  }
+
+  /**
+   * Returns the n-th composite child of a node.
+   *
+   * @return The child or null if the node has not enough composite children
+   */
+  @Nullable
+  public static ASTNode getCompositeChild(@NotNull ASTNode node, int n) {
+    if (n < 0) {
+      return null;
+    }
+    for (ASTNode child = node.getFirstChildNode(); child != null; child = child.getTreeNext()) {
+      if (child instanceof CompositeElement && n-- == 0) {
+        return child;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the head of a function call, which is the first child of its node.
+   */
+  @Nullable
+  public static ASTNode getHead(@NotNull ASTNode functionCall) {
+    return functionCall.getFirstChildNode();
+  }
+
+  /**
+   * Works like {@link FunctionCall#getArgument(int)}: index 0 is the head and the arguments start at 1.
+   */
+  @Nullable
+  public static ASTNode getArgument(@NotNull ASTNode functionCall, int n) {
+    return getCompositeChild(functionCall, n);
+  }
+
+  /**
+   * Returns the text of a symbol including its context, e.g. <code >System`Plus</code>.
+   */
+  @NotNull
+  public static String getSymbolText(@NotNull ASTNode symbol) {
+    return symbol.getText();
+  }
+
+  /**
+   * Returns the name of a symbol without its context. Like {@link Symbol#getSymbolName()}, the name is interned.
+   */
+  @NotNull
+  public static String getSymbolName(@NotNull ASTNode symbol) {
+    final String text = symbol.getText();
+    final int contextEnd = text.lastIndexOf('`');
+    return SymbolNameInterner.intern(contextEnd == -1 ? text : text.substring(contextEnd + 1));
+  }
+
+  /**
+   * Tests whether the head of a function call is a symbol which is one of the heads of <code >heads</code>.
+   */
+  public static boolean matchesHead(@NotNull ASTNode functionCall, @NotNull HeadMatcher heads) {
+    final ASTNode head = functionCall.getFirstChildNode();
+    return isSymbol(head) && heads.matches(head.getText());
+  }
+}
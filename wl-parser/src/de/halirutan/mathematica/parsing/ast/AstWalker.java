@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.ast;
+
+import com.intellij.lang.ASTNode;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+
+/**
+ * Walks through a tree of {@link ASTNode}s in document order. It is the AST counterpart of {@link
+ * de.halirutan.mathematica.parsing.psi.MathematicaRecursiveVisitor} and uses an explicit stack as well, so deeply
+ * nested code cannot overflow the Java stack. Since no PSI element is touched, none is created while walking.
+ * <p/>
+ * {@link #visitNode(ASTNode)} is called when a node is reached and decides whether its children are walked. {@link
+ * #nodeFinished(ASTNode)} is called after the node and everything below it was handled, also for nodes whose children
+ * were skipped.
+ */
+public abstract class AstWalker {
+
+  private boolean myStopped;
+
+  /**
+   * Walks through <code >root</code> and all nodes below it.
+   *
+   * @param root
+   *     Node where the walk starts
+   */
+  public final void walk(@NotNull ASTNode root) {
+    myStopped = false;
+    if (!visitNode(root)) {
+      nodeFinished(root);
+      return;
+    }
+    // the stack holds the ancestors of parent; when the children of parent are done, its next sibling follows and
+    // the top of the stack becomes the parent again
+    final ArrayList<ASTNode> stack = new ArrayList<ASTNode>();
+    ASTNode node = root.getFirstChildNode();
+    ASTNode parent = root;
+    while (!myStopped) {
+      if (node == null) {
+        nodeFinished(parent);
+        if (parent == root) {
+          return;
+        }
+        node = parent.getTreeNext();
+        parent = stack.remove(stack.size() - 1);
+        continue;
+      }
+      if (visitNode(node)) {
+        final ASTNode firstChild = node.getFirstChildNode();
+        stack.add(parent);
+        parent = node;
+        node = firstChild;
+      } else {
+        nodeFinished(node);
+        node = node.getTreeNext();
+      }
+    }
+  }
+
+  /**
+   * Called when the walk reaches a node.
+   *
+   * @param node
+   *     The current node
+   * @return true if the children of the node should be walked
+   */
+  protected abstract boolean visitNode(@NotNull ASTNode node);
+
+  /**
+   * Called when a node and all its children were walked.
+   *
+   * @param node
+   *     The finished node
+   */
+  protected void nodeFinished(@NotNull ASTNode node) {
+  }
+
+  /**
+   * Ends the walk. No further node is visited or finished.
+   */
+  protected final void stopWalking() {
+    myStopped = true;
+  }
+}
@@ -21,20 +21,179 @@
 
 package de.halirutan.mathematica.parsing.psi;
 
+import com.intellij.lang.ASTNode;
 import com.intellij.openapi.progress.ProgressIndicatorProvider;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.impl.source.tree.TreeElement;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
+ * A visitor that walks through the whole subtree of the element it is called on. Like before, the default
+ * implementation of every <code >visitXXX</code> method descends into the children and an overriding method that does
+ * not call its super method skips the children of that element.
+ * <p/>
+ * The walk does not recurse on the Java stack. The children are reached through the first-child and next-sibling links
+ * of the AST and the open ancestors are kept on an explicit stack that is reused, so arbitrarily deep trees can be
+ * visited and no objects are allocated per node.
+ * <p/>
+ * This changes when the children are visited: calling the super method only marks the element so that the walk
+ * descends into it, and its children are visited <em>after</em> the <code >visitXXX</code> method has returned.
+ * Code placed after <code >super.visitXXX(element)</code> therefore runs before the children are visited and not
+ * after them, as it did when the walk recursed through <code >acceptChildren</code>. Only for the element the walk was
+ * started on, the children are still visited inside the super method. Work that needs the finished subtree belongs
+ * into {@link #elementFinished(PsiElement)}. Besides the usual {@link MathematicaVisitor} dispatch
+ * which acts as pre-order callback, subclasses can use
+ * <ul >
+ *   <li >{@link #elementFinished(PsiElement)} as post-order callback which is called after the subtree of a visited
+ *   element is done,</li>
+ *   <li >{@link #stopWalking()} to end the walk early.</li>
+ * </ul>
+ * Calling <code >element.accept(this)</code> or <code >element.acceptChildren(this)</code> from inside a visit method
+ * still works, but it starts a nested walk and should be replaced by calling the super method when the children of
+ * the current element are meant.
+ *
  * @author patrick (10/9/13)
  */
 public class MathematicaRecursiveVisitor extends MathematicaVisitor {
 
+  private static final ConcurrentMap<Class<?>, Boolean> ourReportsFinished = new ConcurrentHashMap<Class<?>, Boolean>();
+
+  private final boolean myReportsFinished;
+  private PsiElement myCurrent = null;
+  private boolean myDescend = false;
+  private boolean myStopped = false;
+  private int myWalkDepth = 0;
+  private TreeElement[] myStack = new TreeElement[32];
+  private int myStackSize = 0;
+
+  public MathematicaRecursiveVisitor() {
+    myReportsFinished = reportsFinished(getClass());
+  }
+
   @Override
   public void visitElement(final PsiElement element) {
     ProgressIndicatorProvider.checkCanceled();
-    element.acceptChildren(this);
+    if (element == myCurrent) {
+      myDescend = true;
+    } else {
+      walkChildren(element);
+    }
+  }
+
+  /**
+   * Called after an element and, if they were visited, all its children are done. Visitors that do not override this
+   * method don't pay for the call.
+   *
+   * @param element
+   *     The element whose subtree is finished
+   */
+  protected void elementFinished(final PsiElement element) {
   }
 
+  /**
+   * Ends the walk. No further elements are visited and no further {@link #elementFinished(PsiElement)} calls are made.
+   */
+  protected void stopWalking() {
+    myStopped = true;
+  }
+
+  private void walkChildren(final PsiElement root) {
+    final ASTNode rootNode = root.getNode();
+    if (!(rootNode instanceof TreeElement)) {
+      root.acceptChildren(this);
+      return;
+    }
+    final PsiElement outerCurrent = myCurrent;
+    final boolean outerDescend = myDescend;
+    final int stackBase = myStackSize;
+    myWalkDepth++;
+    try {
+      TreeElement node = ((TreeElement) rootNode).getFirstChildNode();
+      while (node != null) {
+        node = visitAndAdvance(node, stackBase);
+      }
+    } finally {
+      while (myStackSize > stackBase) {
+        myStack[--myStackSize] = null;
+      }
+      myCurrent = outerCurrent;
+      myDescend = outerDescend;
+      if (--myWalkDepth == 0) {
+        myStopped = false;
+      }
+    }
+  }
+
+  /**
+   * Visits one node and returns the node that comes next in pre-order, or null if the walk is done. This is kept in its
+   * own small method so that the JIT compiles and inlines it like the old recursive calls, instead of only compiling the
+   * long running loop in {@link #walkChildren(PsiElement)}. The links are followed on {@link TreeElement} directly,
+   * because the interface calls of <code >getFirstChild()</code> and <code >getNextSibling()</code> cost more than the
+   * whole bookkeeping of the walk.
+   */
+  private TreeElement visitAndAdvance(TreeElement node, final int stackBase) {
+    final PsiElement element = node.getPsi();
+    myCurrent = element;
+    myDescend = false;
+    element.accept(this);
+    myCurrent = null;
+    if (myStopped) {
+      return null;
+    }
+    if (myDescend) {
+      final TreeElement firstChild = node.getFirstChildNode();
+      if (firstChild != null) {
+        push(node);
+        return firstChild;
+      }
+    }
+    // climb up until we find a node with a next sibling, finishing every element on the way if needed
+    while (true) {
+      if (myReportsFinished) {
+        elementFinished(node.getPsi());
+        if (myStopped) {
+          return null;
+        }
+      }
+      final TreeElement next = node.getTreeNext();
+      if (next != null) {
+        return next;
+      }
+      if (myStackSize == stackBase) {
+        return null;
+      }
+      node = myStack[--myStackSize];
+    }
+  }
+
+  private void push(final TreeElement node) {
+    if (myStackSize == myStack.length) {
+      final TreeElement[] stack = new TreeElement[myStackSize * 2];
+      System.arraycopy(myStack, 0, stack, 0, myStackSize);
+      myStack = stack;
+    }
+    myStack[myStackSize++] = node;
+  }
 
+  private static boolean reportsFinished(final Class<?> visitorClass) {
+    Boolean result = ourReportsFinished.get(visitorClass);
+    if (result == null) {
+      result = Boolean.FALSE;
+      for (Class<?> c = visitorClass; c != MathematicaRecursiveVisitor.class; c = c.getSuperclass()) {
+        for (Method method : c.getDeclaredMethods()) {
+          if (method.getName().equals("elementFinished") &&
+              Arrays.equals(method.getParameterTypes(), new Class<?>[]{PsiElement.class})) {
+            result = Boolean.TRUE;
+          }
+        }
+      }
+      ourReportsFinished.put(visitorClass, result);
+    }
+    return result;
+  }
 }
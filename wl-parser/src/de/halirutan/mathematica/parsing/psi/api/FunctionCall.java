@@ -22,7 +22,11 @@
 package de.halirutan.mathematica.parsing.psi.api;
 
 import com.intellij.psi.PsiElement;
+import com.intellij.util.Processor;
+import de.halirutan.mathematica.parsing.psi.util.HeadMatcher;
 import de.halirutan.mathematica.parsing.psi.util.LocalizationConstruct;
+import de.halirutan.mathematica.parsing.psi.util.SymbolNameInterner;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 /**
@@ -49,7 +53,8 @@ public interface FunctionCall extends PsiElement {
   public PsiElement getHead();
 
   /**
-   * Tests whether the function call has a head the matches the argument.
+   * Tests whether the function call has a head the matches the argument. The argument is a regular expression which is
+   * compiled on every call. In analyses that run over many nodes, use {@link #matchesHead(HeadMatcher)} instead.
    *
    * @param head
    *     The head which should be tested.
@@ -57,6 +62,23 @@ public interface FunctionCall extends PsiElement {
    */
   public boolean matchesHead(String head);
 
+  /**
+   * Tests whether the head of the function call is one of the heads of a precompiled matcher.
+   *
+   * @param heads
+   *     The heads which should be tested.
+   * @return True, if the head is a symbol contained in heads.
+   */
+  public boolean matchesHead(HeadMatcher heads);
+
+  /**
+   * Returns the id of the head symbol as given by {@link SymbolNameInterner}. The id is cached and only recomputed after
+   * the function call was changed.
+   *
+   * @return The id of the head or {@link SymbolNameInterner#NO_ID} if the head is not a symbol.
+   */
+  public int getHeadId();
+
 
   /**
    * Returns the type of scoping construct, if the function call is e.g. <code >Module[..]</code>
@@ -70,9 +92,37 @@ public interface FunctionCall extends PsiElement {
    * Returns the n'th argument of a function call <code >f[arg1, arg2, ...]</code> or null, if it does not exist.
    *
    * @param n
-   *     Argument number, where 0 is the first argument.
+   *     Argument number, where 0 is the head and 1 is the first argument.
    * @return The PsiElement of the argument or null if it does not exist.
    */
   @Nullable
   PsiElement getArgument(int n);
+
+  /**
+   * Returns the number of arguments of <code >f[arg1, arg2, ...]</code>, not counting the head.
+   *
+   * @return The number of arguments
+   */
+  int argumentCount();
+
+  /**
+   * Returns the i'th argument of a function call or null, if it does not exist. Unlike {@link #getArgument(int)}, the
+   * head is not counted and 0 is the first argument. The access does not allocate and is constant time as long as the
+   * call was not changed.
+   *
+   * @param i
+   *     Argument index, where 0 is the first argument.
+   * @return The PsiElement of the argument or null if it does not exist.
+   */
+  @Nullable
+  PsiElement argumentAt(int i);
+
+  /**
+   * Feeds all arguments of the function call in order to the processor until it returns false.
+   *
+   * @param processor
+   *     Processor which is called for each argument.
+   * @return False, if the processor stopped the iteration; true otherwise.
+   */
+  boolean forEachArgument(@NotNull Processor<PsiElement> processor);
 }
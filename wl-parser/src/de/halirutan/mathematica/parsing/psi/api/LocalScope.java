@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.api;
+
+import de.halirutan.mathematica.parsing.psi.util.LocalVariableTable;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An element that can localize variables for the code inside it, like <code >Module[{x}, ..]</code> or the patterns of
+ * <code >f[x_] := ..</code>.
+ */
+public interface LocalScope extends Expression {
+
+  /**
+   * Returns the variables which are localized by this element. The table is computed once and cached until something
+   * inside the element is changed.
+   *
+   * @return The table of local variables which is empty if the element localizes nothing
+   */
+  @NotNull
+  LocalVariableTable getLocalVariables();
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.api;
+
+import de.halirutan.mathematica.parsing.psi.util.PatternSummary;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A definition or rule whose left side is a pattern, like <code >f[x_] := ..</code>, <code >g[x_] = ..</code> or
+ * <code >a_ :> ..</code>.
+ */
+public interface PatternDefinition extends Expression {
+
+  /**
+   * Returns what the left side of the definition is made of. The summary is computed once and cached until something
+   * inside the element is changed.
+   *
+   * @return The summary of the left side
+   */
+  @NotNull
+  PatternSummary getPatternSummary();
+}
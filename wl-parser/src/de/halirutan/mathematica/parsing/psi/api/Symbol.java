@@ -31,13 +31,24 @@ import de.halirutan.mathematica.parsing.psi.util.LocalizationConstruct;
 public interface Symbol extends PsiNameIdentifierOwner {
 
   /**
-   * Returns the context of a symbol which is not the correct context. It is either <code >System</code> or the explicit
-   * context in a symbols name like in <code >Global`variable</code>.
+   * Returns the context the symbol belongs to. An explicit context in the name like in <code >Global`variable</code>
+   * is used as it is; otherwise the context follows from the <code >BeginPackage</code>, <code >Begin</code>, <code
+   * >End</code> and <code >EndPackage</code> statements of the file before the symbol. A name the file never defines,
+   * localizes or makes public, like <code >Message</code> or <code >Module</code>, is found in <code >System`</code>.
+   * The result is cached until the file is changed.
    *
-   * @return Context part of a symbol name
+   * @return Absolute context of the symbol including the trailing backquote
    */
   String getMathematicaContext();
 
+  /**
+   * Returns the name of the symbol with the context of {@link #getMathematicaContext()}, e.g. <code
+   * >MyPackage`Private`helper</code>.
+   *
+   * @return Fully qualified name of the symbol
+   */
+  String getFullyQualifiedName();
+
   /**
    * Removes a possible context part from a symbol name and returns the symbol name only. <code >Global`variable</code>
    * gives therefore <code >variable</code>.
@@ -47,7 +58,16 @@ public interface Symbol extends PsiNameIdentifierOwner {
   String getSymbolName();
 
   /**
-   * Returns true if the <em>definition element</em> of this symbol was already resolved and is up to date. If this
+   * Returns the id of {@link #getSymbolName()} in the {@link de.halirutan.mathematica.parsing.psi.util.SymbolNameInterner}.
+   * Two symbols have equal names without context if and only if their ids are equal.
+   *
+   * @return Id of the symbol name without context part
+   */
+  int getSymbolNameId();
+
+  /**
+   * Returns true if the <em>definition element</em> of this symbol was already resolved and the file was not changed
+   * since then. If this
    * returns true then you can call {@link #getResolveElement()} to get the place of definition or {@link
    * #getLocalizationConstruct()} to get the type of the localization construct which is used.
    *
@@ -81,6 +101,16 @@ public interface Symbol extends PsiNameIdentifierOwner {
    */
   void setReferringElement(Symbol referringSymbol, LocalizationConstruct.ConstructType type, PsiElement localizationElement);
 
+  /**
+   * Does nothing. Symbols used to remember the symbols that were resolved to them, so that their caches could be
+   * cleared when the symbol changed. The resolve caches are now validated against the modification stamp of the file
+   * instead.
+   *
+   * @param reference
+   *     Symbol that was resolved to this symbol
+   * @deprecated The references are not tracked anymore. This method will be removed in the next release.
+   */
+  @Deprecated
   void addElementReferencingToMe(Symbol reference);
 
   public void subtreeChanged();
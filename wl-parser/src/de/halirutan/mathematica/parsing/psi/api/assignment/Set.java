@@ -21,10 +21,10 @@
 
 package de.halirutan.mathematica.parsing.psi.api.assignment;
 
-import de.halirutan.mathematica.parsing.psi.api.Expression;
+import de.halirutan.mathematica.parsing.psi.api.PatternDefinition;
 
 /**
  * @author patrick (4/14/13)
  */
-public interface Set extends Expression {
+public interface Set extends PatternDefinition {
 }
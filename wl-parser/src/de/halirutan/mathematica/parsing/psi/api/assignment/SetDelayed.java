@@ -21,11 +21,11 @@
 
 package de.halirutan.mathematica.parsing.psi.api.assignment;
 
-import de.halirutan.mathematica.parsing.psi.api.Expression;
+import de.halirutan.mathematica.parsing.psi.api.PatternDefinition;
 
 /**
  * @author patrick (4/14/13)
  */
-public interface SetDelayed extends Expression {
+public interface SetDelayed extends PatternDefinition {
 
 }
@@ -21,10 +21,10 @@
 
 package de.halirutan.mathematica.parsing.psi.api.rules;
 
-import de.halirutan.mathematica.parsing.psi.api.Expression;
+import de.halirutan.mathematica.parsing.psi.api.PatternDefinition;
 
 /**
  * @author patrick (4/14/13)
  */
-public interface RuleDelayed extends Expression {
+public interface RuleDelayed extends PatternDefinition {
 }
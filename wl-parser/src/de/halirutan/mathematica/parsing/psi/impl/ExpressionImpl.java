@@ -24,6 +24,8 @@ package de.halirutan.mathematica.parsing.psi.impl;
 import com.intellij.extapi.psi.ASTWrapperPsiElement;
 import com.intellij.lang.ASTNode;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.impl.source.tree.CompositeElement;
+import com.intellij.psi.impl.source.tree.FileElement;
 import de.halirutan.mathematica.parsing.psi.api.Expression;
 import org.jetbrains.annotations.NotNull;
 
@@ -47,15 +49,30 @@ public class ExpressionImpl extends ASTWrapperPsiElement implements Expression {
     return classname;
   }
 
-  @Override
-  public void subtreeChanged() {
-    final PsiElement[] children = getChildren();
-    for (PsiElement child : children) {
-      if (child instanceof ExpressionImpl) {
-        ((ExpressionImpl) child).subtreeChanged();
+  /**
+   * Returns the modification count of the root node of the tree this element belongs to. Every change inside a file
+   * increases it, so caches that depend on other parts of the file can store this stamp and compare it when they are
+   * read, instead of being cleared eagerly on every change.
+   * <p/>
+   * The stamp is kept by the file, see {@link MathematicaPsiFileImpl#getTreeModificationCount()}. The elements do not
+   * remember their file or root, because that would keep a whole old tree alive through any element of it. The file is
+   * found by climbing the AST, which is what <code >getContainingFile()</code> does as well. Trees that do not belong
+   * to a file use the count of their root.
+   *
+   * @return The modification stamp of the containing file
+   */
+  protected int getFileModificationStamp() {
+    CompositeElement root = (CompositeElement) getNode();
+    for (CompositeElement parent = root.getTreeParent(); parent != null; parent = parent.getTreeParent()) {
+      root = parent;
+    }
+    if (root instanceof FileElement) {
+      final PsiElement file = root.getPsi();
+      if (file instanceof MathematicaPsiFileImpl) {
+        return ((MathematicaPsiFileImpl) file).getTreeModificationCount();
       }
     }
-
+    return root.getModificationCount();
   }
 
   @Override
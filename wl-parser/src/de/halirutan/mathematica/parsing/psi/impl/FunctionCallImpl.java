@@ -22,26 +22,39 @@
 package de.halirutan.mathematica.parsing.psi.impl;
 
 import com.intellij.lang.ASTNode;
-import com.intellij.openapi.util.Key;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.ResolveState;
+import com.intellij.psi.impl.source.tree.CompositeElement;
 import com.intellij.psi.scope.PsiScopeProcessor;
+import com.intellij.util.Processor;
 import de.halirutan.mathematica.parsing.psi.MathematicaVisitor;
 import de.halirutan.mathematica.parsing.psi.api.FunctionCall;
+import de.halirutan.mathematica.parsing.psi.api.LocalScope;
 import de.halirutan.mathematica.parsing.psi.api.Symbol;
+import de.halirutan.mathematica.parsing.psi.util.HeadMatcher;
+import de.halirutan.mathematica.parsing.psi.util.LocalVariableTable;
 import de.halirutan.mathematica.parsing.psi.util.LocalizationConstruct;
+import de.halirutan.mathematica.parsing.psi.util.SymbolNameInterner;
 import org.jetbrains.annotations.NotNull;
 
-public class FunctionCallImpl extends ExpressionImpl implements FunctionCall {
+import java.util.concurrent.ConcurrentHashMap;
 
-  private final Key<Object> myScopeKey = Key.create("SCOPING_CONSTRUCT");
-  private boolean myIsUpToDate;
+public class FunctionCallImpl extends ExpressionImpl implements FunctionCall, LocalScope {
+
+  private static final ConcurrentHashMap<Class<?>, HeadMatcher> ourClassNameHeads =
+      new ConcurrentHashMap<Class<?>, HeadMatcher>();
+
+  private volatile int myHeadStamp = -1;
+  private int myHeadId = SymbolNameInterner.NO_ID;
+  private LocalizationConstruct.ConstructType myScopingConstruct = LocalizationConstruct.ConstructType.NULL;
+  private PsiElement[] myCachedChildren;
+  private volatile int myCachedChildrenStamp = -1;
+  private volatile LocalVariableTable myLocalVariables;
 
 
   public FunctionCallImpl(@NotNull ASTNode node) {
     super(node);
-    myIsUpToDate = false;
   }
 
   @Override
@@ -54,8 +67,6 @@ public class FunctionCallImpl extends ExpressionImpl implements FunctionCall {
       if (lastParent.getParent() != this) {
         return true;
       }
-      final String symbolName = ((Symbol) head).getSymbolName();
-      cacheScopingConstruct(symbolName);
       if (isScopingConstruct()) {
         return processor.execute(this, state);
       }
@@ -77,22 +88,62 @@ public class FunctionCallImpl extends ExpressionImpl implements FunctionCall {
     return false;
   }
 
+  @Override
+  public boolean matchesHead(final HeadMatcher heads) {
+    return heads.matches(getHeadId());
+  }
+
+  @Override
+  public int getHeadId() {
+    updateHeadCache();
+    return myHeadId;
+  }
+
   @Override
   public PsiElement getArgument(int n) {
-    for (PsiElement child : getChildren()) {
-      if (n > 0) {
-        n--;
-        continue;
+    final PsiElement[] children = getCachedChildren();
+    return n >= 0 && n < children.length ? children[n] : null;
+  }
+
+  @Override
+  public int argumentCount() {
+    final int length = getCachedChildren().length;
+    return length > 0 ? length - 1 : 0;
+  }
+
+  @Override
+  public PsiElement argumentAt(int i) {
+    final PsiElement[] children = getCachedChildren();
+    return i >= 0 && i + 1 < children.length ? children[i + 1] : null;
+  }
+
+  @Override
+  public boolean forEachArgument(@NotNull Processor<PsiElement> processor) {
+    final PsiElement[] children = getCachedChildren();
+    for (int i = 1; i < children.length; i++) {
+      if (!processor.process(children[i])) {
+        return false;
       }
-      return child;
     }
-    return null;
+    return true;
   }
 
-  @Override
-  public void subtreeChanged() {
-    super.subtreeChanged();
-    myIsUpToDate = false;
+  /**
+   * Returns the composite children of this element like {@link #getChildren()} does, but the array is only rebuilt when
+   * the modification count of the underlying node has changed. The returned array is shared and must not be modified.
+   *
+   * @return The cached children of this element
+   */
+  @NotNull
+  private PsiElement[] getCachedChildren() {
+    final int stamp = ((CompositeElement) getNode()).getModificationCount();
+    if (myCachedChildrenStamp == stamp) {
+      return myCachedChildren;
+    }
+    final PsiElement[] children = getChildren();
+    myCachedChildren = children;
+    myCachedChildrenStamp = stamp;
+    return children;
   }
 
   /**
@@ -106,34 +157,51 @@ public class FunctionCallImpl extends ExpressionImpl implements FunctionCall {
 
   @Override
   public boolean isScopingConstruct() {
-
-    if (!myIsUpToDate) {
-      cacheScopingConstruct();
-    }
-    LocalizationConstruct.ConstructType type = (LocalizationConstruct.ConstructType) getUserData(myScopeKey);
-    return type != null && !type.equals(LocalizationConstruct.ConstructType.NULL);
+    updateHeadCache();
+    return myScopingConstruct != LocalizationConstruct.ConstructType.NULL;
   }
 
   public LocalizationConstruct.ConstructType getScopingConstruct() {
-    if (!myIsUpToDate) {
-      cacheScopingConstruct();
+    updateHeadCache();
+    return myScopingConstruct;
+  }
+
+  /**
+   * The local variables of a scoping construct are extracted once and kept until the modification count of this node
+   * changes. Calls which are no scoping construct share the empty table.
+   */
+  @NotNull
+  @Override
+  public LocalVariableTable getLocalVariables() {
+    if (!isScopingConstruct()) {
+      return LocalVariableTable.EMPTY;
     }
-    return (LocalizationConstruct.ConstructType) getUserData(myScopeKey);
+    final int stamp = ((CompositeElement) getNode()).getModificationCount();
+    LocalVariableTable table = myLocalVariables;
+    if (table == null || !table.isUpToDate(stamp)) {
+      table = LocalVariableTable.forScopingConstruct(this, stamp);
+      myLocalVariables = table;
+    }
+    return table;
   }
 
-  private void cacheScopingConstruct() {
-    if (myIsUpToDate) return;
+  /**
+   * The head id and the scoping type only depend on the head, so they are computed again only when the modification
+   * count of this node changed. Both are kept in plain fields instead of the user data map of the element. As in
+   * {@link SymbolImpl}, the volatile stamp is written last so that other threads see consistent values.
+   */
+  private void updateHeadCache() {
+    final int stamp = ((CompositeElement) getNode()).getModificationCount();
+    if (myHeadStamp == stamp) return;
     PsiElement head = getFirstChild();
     if (head instanceof Symbol) {
-      cacheScopingConstruct(((Symbol) head).getSymbolName());
+      myHeadId = SymbolNameInterner.getId(((Symbol) head).getName());
+      myScopingConstruct = LocalizationConstruct.getType(((Symbol) head).getSymbolName());
     } else {
-      putUserData(myScopeKey, LocalizationConstruct.ConstructType.NULL);
+      myHeadId = SymbolNameInterner.NO_ID;
+      myScopingConstruct = LocalizationConstruct.ConstructType.NULL;
     }
-    myIsUpToDate = true;
-  }
-
-  private void cacheScopingConstruct(String functionName) {
-    putUserData(myScopeKey, LocalizationConstruct.getType(functionName));
+    myHeadStamp = stamp;
   }
 
   @Override
@@ -147,7 +215,11 @@ public class FunctionCallImpl extends ExpressionImpl implements FunctionCall {
 
   @Override
   public boolean headMatches(final Class<?> clazz) {
-    final String head = getFirstChild().getText();
-    return clazz.getSimpleName().matches(head);
+    HeadMatcher heads = ourClassNameHeads.get(clazz);
+    if (heads == null) {
+      heads = HeadMatcher.of(clazz.getSimpleName());
+      ourClassNameHeads.put(clazz, heads);
+    }
+    return heads.matches(getHeadId());
   }
 }
@@ -22,6 +22,7 @@
 package de.halirutan.mathematica.parsing.psi.impl;
 
 import com.intellij.extapi.psi.PsiFileBase;
+import com.intellij.lang.ASTNode;
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.psi.FileViewProvider;
 import com.intellij.psi.PsiElement;
@@ -29,7 +30,9 @@ import com.intellij.psi.ResolveState;
 import com.intellij.psi.scope.PsiScopeProcessor;
 import de.halirutan.mathematica.MathematicaLanguage;
 import de.halirutan.mathematica.filetypes.MathematicaFileType;
+import de.halirutan.mathematica.parsing.ast.AstContextRanges;
 import de.halirutan.mathematica.parsing.psi.api.MathematicaPsiFile;
+import de.halirutan.mathematica.parsing.psi.util.MathematicaElementIndex;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -37,6 +40,9 @@ import org.jetbrains.annotations.NotNull;
  */
 public class MathematicaPsiFileImpl extends PsiFileBase implements MathematicaPsiFile {
 
+  private volatile MathematicaElementIndex myElementIndex = null;
+  private volatile AstContextRanges myContextRanges = null;
+
   public MathematicaPsiFileImpl(@NotNull FileViewProvider viewProvider) {
     super(viewProvider, MathematicaLanguage.INSTANCE);
   }
@@ -49,8 +55,7 @@ public class MathematicaPsiFileImpl extends PsiFileBase implements MathematicaPs
 
   @Override
   public boolean processDeclarations(@NotNull PsiScopeProcessor processor, @NotNull ResolveState state, PsiElement lastParent, @NotNull PsiElement place) {
-    PsiElement children[] = getChildren();
-    for (PsiElement child : children) {
+    for (PsiElement child = getFirstChild(); child != null; child = child.getNextSibling()) {
       if (child.equals(lastParent)) {
         continue;
       }
@@ -59,6 +64,50 @@ public class MathematicaPsiFileImpl extends PsiFileBase implements MathematicaPs
     return true;
   }
 
+  /**
+   * Returns the modification count of the tree of this file. Every change inside the file increases it, so caches of
+   * the elements can store it and compare it when they are read. Unlike {@link #getModificationStamp()} it also changes
+   * for files that have no document.
+   *
+   * @return The modification count of the file element
+   */
+  public int getTreeModificationCount() {
+    return calcTreeElement().getModificationCount();
+  }
+
+  /**
+   * Returns the element index of this file which is built on the first call and rebuilt only when the file was changed
+   * afterwards.
+   *
+   * @return The up-to-date index of this file
+   */
+  @NotNull
+  public MathematicaElementIndex getElementIndex() {
+    MathematicaElementIndex index = myElementIndex;
+    if (index == null || !index.isUpToDate(calcTreeElement())) {
+      index = MathematicaElementIndex.build(this);
+      myElementIndex = index;
+    }
+    return index;
+  }
+
+  /**
+   * Returns the context ranges of this file which are built on the first call and rebuilt only when the file was
+   * changed afterwards.
+   *
+   * @return The up-to-date context ranges of this file
+   */
+  @NotNull
+  public AstContextRanges getContextRanges() {
+    final ASTNode root = calcTreeElement();
+    AstContextRanges ranges = myContextRanges;
+    if (ranges == null || !ranges.isUpToDate(root)) {
+      ranges = AstContextRanges.build(root);
+      myContextRanges = ranges;
+    }
+    return ranges;
+  }
+
   @Override
   public boolean headMatches(final Class clazz) {
     return clazz.isInstance(this);
@@ -24,19 +24,21 @@ package de.halirutan.mathematica.parsing.psi.impl;
 import com.intellij.lang.ASTNode;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiElementVisitor;
-import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiReference;
-import de.halirutan.mathematica.filetypes.MathematicaFileType;
+import com.intellij.psi.impl.source.tree.CompositeElement;
+import de.halirutan.mathematica.lexer.ContextTracker;
 import de.halirutan.mathematica.parsing.MathematicaElementTypes;
+import de.halirutan.mathematica.parsing.ast.AstContextRanges;
 import de.halirutan.mathematica.parsing.psi.MathematicaVisitor;
 import de.halirutan.mathematica.parsing.psi.api.Symbol;
 import de.halirutan.mathematica.parsing.psi.util.LocalizationConstruct;
+import de.halirutan.mathematica.parsing.psi.util.MathematicaPsiElementFactory;
+import de.halirutan.mathematica.parsing.psi.util.SymbolNameInterner;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.HashSet;
-
 /**
  * Implementation of Mathematica symbols which are probably the most important elements of a parse tree. Symbols in
  * Mathematica are not only the variables you use. Due to the <em>data is code</em> paradigm of Mathematica, even the
@@ -49,25 +51,25 @@ import java.util.HashSet;
  */
 public class SymbolImpl extends ExpressionImpl implements Symbol {
 
-  private final HashSet<Symbol> myReferringElements = new HashSet<Symbol>();
-  private boolean myIsUpToDate;
-  private LocalizationConstruct.ConstructType myLocalization;
-  private Symbol myDefinitionElement;
-  private PsiElement myLocalizationElement;
+  private ResolveResult myResolveResult;
+
+  private volatile int myNameStamp = -1;
+  private String myName;
+  private String mySymbolName;
+  private int mySymbolNameId;
+
+  private volatile int myContextStamp = -1;
+  private String myContext;
+  private String myQualifiedName;
 
   public SymbolImpl(@NotNull ASTNode node) {
     super(node);
-    myLocalization = LocalizationConstruct.ConstructType.NULL;
-    myDefinitionElement = null;
-    myIsUpToDate = false;
   }
 
   @Override
   public PsiElement setName(@NonNls @NotNull String name) {
     ASTNode identifierNode = getNode().findChildByType(MathematicaElementTypes.IDENTIFIER);
-    final PsiFileFactory fileFactory = PsiFileFactory.getInstance(getProject());
-    final MathematicaPsiFileImpl file = (MathematicaPsiFileImpl) fileFactory.createFileFromText("dummy.m", MathematicaFileType.INSTANCE, name);
-    ASTNode newElm = file.getFirstChild().getNode().findChildByType(MathematicaElementTypes.IDENTIFIER);
+    ASTNode newElm = MathematicaPsiElementFactory.getInstance(getProject()).createIdentifier(name);
     if (identifierNode != null && newElm != null) {
       getNode().replaceChild(identifierNode, newElm);
     }
@@ -76,33 +78,77 @@ public class SymbolImpl extends ExpressionImpl implements Symbol {
 
   @Override
   public String getName() {
-//    return MathematicaPsiUtilities.getSymbolName(this);
-    return getText();
+    updateNameCache();
+    return myName;
   }
 
   @Override
   public String getMathematicaContext() {
-//    String myName = MathematicaPsiUtilities.getSymbolName(this);
-    String myName = getName();
-    String context = "System`";
-    if (myName != null) {
-      if (myName.contains("`")) {
-        context = myName.substring(0, myName.lastIndexOf('`') + 1);
-      }
-    }
-    return context;
+    updateContextCache();
+    return myContext;
+  }
+
+  @Override
+  public String getFullyQualifiedName() {
+    updateContextCache();
+    return myQualifiedName;
   }
 
   @Override
   public String getSymbolName() {
-//    String myName = MathematicaPsiUtilities.getSymbolName(this);
-    String myName = getName();
-    if (myName == null) return "";
-    if (myName.lastIndexOf('`') == -1) {
-      return myName;
+    updateNameCache();
+    return mySymbolName;
+  }
+
+  @Override
+  public int getSymbolNameId() {
+    updateNameCache();
+    return mySymbolNameId;
+  }
+
+  /**
+   * Splits the text of the symbol into context and name. The name parts are interned and only computed again when the
+   * modification count of the node changed, which happens e.g. after {@link #setName(String)}.
+   * <p/>
+   * The volatile stamp is written after the other fields and read before them, so a thread that sees the current stamp
+   * also sees the names that belong to it. Threads that compute the cache at the same time store equal values.
+   */
+  private void updateNameCache() {
+    final int stamp = ((CompositeElement) getNode()).getModificationCount();
+    if (myNameStamp == stamp) {
+      return;
+    }
+    final String name = SymbolNameInterner.intern(getText());
+    final int contextEnd = name.lastIndexOf('`');
+    mySymbolName = contextEnd == -1 ? name : SymbolNameInterner.intern(name.substring(contextEnd + 1));
+    mySymbolNameId = SymbolNameInterner.getId(mySymbolName);
+    myName = name;
+    myNameStamp = stamp;
+  }
+
+  /**
+   * Looks up the context in the {@link AstContextRanges} of the file. Since a change anywhere before the symbol can
+   * change its context, the cache is kept until the modification count of the file changes. It is published through
+   * the volatile stamp in the same way as in {@link #updateNameCache()}.
+   */
+  private void updateContextCache() {
+    final int stamp = getFileModificationStamp();
+    if (myContextStamp == stamp) {
+      return;
+    }
+    updateNameCache();
+    final PsiFile file = getContainingFile();
+    final String context;
+    if (file instanceof MathematicaPsiFileImpl) {
+      final AstContextRanges ranges = ((MathematicaPsiFileImpl) file).getContextRanges();
+      context = ranges.getSymbolContext(myName, mySymbolName, getNode().getStartOffset());
     } else {
-      return myName.substring(myName.lastIndexOf('`') + 1, myName.length());
+      final int contextLength = myName.length() - mySymbolName.length();
+      context = contextLength == 0 ? ContextTracker.GLOBAL_CONTEXT : myName.substring(0, contextLength);
     }
+    myContext = SymbolNameInterner.intern(context);
+    myQualifiedName = SymbolNameInterner.intern(context + mySymbolName);
+    myContextStamp = stamp;
   }
 
   @Nullable
@@ -117,50 +163,58 @@ public class SymbolImpl extends ExpressionImpl implements Symbol {
     return null;
   }
 
-  @Override
-  public void subtreeChanged() {
-    for (Symbol myReferringElement : myReferringElements) {
-      myReferringElement.subtreeChanged();
-    }
-    myReferringElements.clear();
-    if (myLocalizationElement instanceof SymbolImpl) {
-      ((SymbolImpl) myLocalizationElement).subtreeChanged();
-    }
-    myIsUpToDate = false;
-    myLocalizationElement = null;
-    myLocalization = LocalizationConstruct.ConstructType.NULL;
-  }
-
+  /**
+   * The resolve cache is valid as long as nothing in the file was changed since {@link #setReferringElement(Symbol,
+   * LocalizationConstruct.ConstructType, PsiElement)} was called. Instead of clearing the caches of all affected symbols
+   * on every change, the modification stamp of the file is stored and compared when the cache is read.
+   *
+   * @return true if the cache is up to date
+   */
   public boolean cachedResolve() {
-    return myIsUpToDate;
+    return getValidResolveResult() != null;
   }
 
   public Symbol getResolveElement() {
-    if (myIsUpToDate) {
-      return myDefinitionElement;
-    }
-    return null;
+    final ResolveResult result = getValidResolveResult();
+    return result != null ? result.myDefinitionElement : null;
   }
 
   public LocalizationConstruct.ConstructType getLocalizationConstruct() {
-    if (myIsUpToDate && myLocalization != null) {
-      return myLocalization;
+    final ResolveResult result = getValidResolveResult();
+    if (result != null && result.myLocalization != null) {
+      return result.myLocalization;
     }
     return LocalizationConstruct.ConstructType.NULL;
   }
 
+  /**
+   * Caches the resolve result together with the current modification stamp of the file. The localization element is
+   * not stored since nothing reads it back.
+   */
   @Override
   public void setReferringElement(Symbol referringSymbol, LocalizationConstruct.ConstructType type, PsiElement localizationElement) {
-    myDefinitionElement = referringSymbol;
-    referringSymbol.addElementReferencingToMe(this);
-    myLocalizationElement = localizationElement;
-    myLocalization = type;
-    myIsUpToDate = true;
+    myResolveResult = new ResolveResult(referringSymbol, type, getFileModificationStamp());
   }
 
+  /**
+   * @deprecated The resolve cache does not need to know the referring symbols anymore.
+   */
+  @Deprecated
   @Override
   public void addElementReferencingToMe(Symbol reference) {
-    if (!reference.equals(this)) myReferringElements.add(reference);
+  }
+
+  @Nullable
+  private ResolveResult getValidResolveResult() {
+    final ResolveResult result = myResolveResult;
+    if (result == null) {
+      return null;
+    }
+    if (result.myStamp != getFileModificationStamp()) {
+      myResolveResult = null;
+      return null;
+    }
+    return result;
   }
 
   @Override
@@ -171,4 +225,20 @@ public class SymbolImpl extends ExpressionImpl implements Symbol {
       super.accept(visitor);
     }
   }
+
+  /**
+   * Most symbols are never resolved, so the resolve cache lives in its own object that is only created on demand. All
+   * fields are final, so the object can be handed to other threads through the plain {@link #myResolveResult} field.
+   */
+  private static final class ResolveResult {
+    private final Symbol myDefinitionElement;
+    private final LocalizationConstruct.ConstructType myLocalization;
+    private final int myStamp;
+
+    private ResolveResult(Symbol definitionElement, LocalizationConstruct.ConstructType localization, int stamp) {
+      myDefinitionElement = definitionElement;
+      myLocalization = localization;
+      myStamp = stamp;
+    }
+  }
 }
@@ -29,27 +29,21 @@ import de.halirutan.mathematica.parsing.psi.api.*;
 import de.halirutan.mathematica.parsing.psi.api.lists.List;
 import de.halirutan.mathematica.parsing.psi.api.pattern.Condition;
 import de.halirutan.mathematica.parsing.psi.api.pattern.Pattern;
+import de.halirutan.mathematica.parsing.psi.util.DefinitionRules;
+import de.halirutan.mathematica.parsing.psi.util.VisitorWorkList;
 
-import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
+ * The parts of the left-hand side are visited through a {@link VisitorWorkList} and not recursively, so that deeply
+ * nested definitions cannot overflow the stack.
+ *
  * @author patrick (7/3/14)
  */
 public class SetDefinitionSymbolVisitor extends MathematicaVisitor {
-  private static final HashMap<String, SymbolAssignmentType> ourHeadAssignmentMapping;
-  static {
-    ourHeadAssignmentMapping = new HashMap<String, SymbolAssignmentType>(6);
-    ourHeadAssignmentMapping.put("Options", SymbolAssignmentType.OPTIONS_ASSIGNMENT);
-    ourHeadAssignmentMapping.put("Attributes", SymbolAssignmentType.ATTRIBUTES_ASSIGNMENT);
-    ourHeadAssignmentMapping.put("MessageName", SymbolAssignmentType.MESSAGE_ASSIGNMENT);
-    ourHeadAssignmentMapping.put("Default", SymbolAssignmentType.DEFAULT_ASSIGNMENT);
-    ourHeadAssignmentMapping.put("Format", SymbolAssignmentType.FORMAT_ASSIGNMENT);
-    ourHeadAssignmentMapping.put("N", SymbolAssignmentType.N_ASSIGNMENT);
-    ourHeadAssignmentMapping.put("SyntaxInformation", SymbolAssignmentType.SYNTAX_INFORMATION_ASSIGNMENT);
-  }
   private final LinkedHashSet<Symbol> myUnboundSymbols = Sets.newLinkedHashSet();
+  private final VisitorWorkList myWorkList = new VisitorWorkList(this);
   private final PsiElement myStartElement;
   private SymbolAssignmentType myAssignmentType = null;
   private boolean myFoundAssignmentType = false;
@@ -86,16 +80,12 @@ public class SetDefinitionSymbolVisitor extends MathematicaVisitor {
   public void visitCondition(Condition condition) {
     PsiElement firstChild = condition.getFirstChild();
     if (firstChild != null) {
-      firstChild.accept(this);
+      myWorkList.visit(firstChild);
     }
   }
 
   private void setMyAssignmentType(final String head) {
-    if (ourHeadAssignmentMapping.containsKey(head)) {
-      myAssignmentType = ourHeadAssignmentMapping.get(head);
-    } else {
-      myAssignmentType = SymbolAssignmentType.UNKNOWN;
-    }
+    myAssignmentType = DefinitionRules.getLhsAssignmentType(head);
   }
 
   @Override
@@ -104,14 +94,14 @@ public class SetDefinitionSymbolVisitor extends MathematicaVisitor {
     if (head instanceof Symbol) {
       // The next set are symbols that are just ignored and we have to check their first argument for a symbol
       // which is defined
-      if (functionCall.matchesHead("HoldPattern|Longest|Shortest|Repeated")) {
+      if (functionCall.matchesHead(DefinitionRules.TRANSPARENT_HEADS)) {
         final PsiElement arg1 = functionCall.getArgument(1);
         if (arg1 != null) {
-          arg1.accept(this);
+          myWorkList.visit(arg1);
         }
       }
       // check if we have an assignment of the form Options[sym] = {...}
-      if (functionCall.equals(myStartElement) && functionCall.matchesHead("Options|Attributes|MessageName|Default|Format|N|SyntaxInformation")) {
+      if (functionCall.equals(myStartElement) && functionCall.matchesHead(DefinitionRules.ASSIGNMENT_TYPE_HEADS)) {
         if (myFoundAssignmentType) {
           // we already saw eg Options[..] and this cannot be handled any further
           return;
@@ -120,20 +110,21 @@ public class SetDefinitionSymbolVisitor extends MathematicaVisitor {
         myFoundAssignmentType = true;
         PsiElement arg1 = functionCall.getArgument(1);
         if (arg1 != null) {
-          if (functionCall.matchesHead("Options|Attributes|MessageName|Default|SyntaxInformation")) {
+          if (functionCall.matchesHead(DefinitionRules.SYMBOL_ARGUMENT_HEADS)) {
             if (arg1 instanceof Symbol) myUnboundSymbols.add((Symbol) arg1);
           } else {
             //if we have for instance  N[e : poly[cp_], pa_] := ... where the argument itself can be a complicated
             // patter, then we just go on with the visitor, but we remember that we already know the assignment type
-            arg1.accept(this);
+            myWorkList.visit(arg1);
           }
         }
       } else {
-        myUnboundSymbols.add((Symbol) head);
+        // visited like the argument above so that the head is added after the symbols found in the argument
+        myWorkList.visit(head);
       }
     } else {
       // situations like this (g : fff)[x_^2] := Hold[g, x] where the head contains something more complex
-      head.accept(this);
+      myWorkList.visit(head);
     }
   }
 
@@ -144,7 +135,7 @@ public class SetDefinitionSymbolVisitor extends MathematicaVisitor {
   public void visitPattern(final Pattern pattern) {
     final PsiElement lastChild = pattern.getLastChild();
     if (lastChild != null) {
-      lastChild.accept(this);
+      myWorkList.visit(lastChild);
     }
   }
 
@@ -159,12 +150,12 @@ public class SetDefinitionSymbolVisitor extends MathematicaVisitor {
 
   @Override
   public void visitGroup(Group group) {
-    group.acceptChildren(this);
+    myWorkList.visitChildren(group);
   }
 
   @Override
   public void visitList(List list) {
-    list.acceptChildren(this);
+    myWorkList.visitChildren(list);
   }
 
 
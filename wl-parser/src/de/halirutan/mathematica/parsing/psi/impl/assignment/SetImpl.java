@@ -25,16 +25,21 @@ import com.intellij.lang.ASTNode;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.ResolveState;
+import com.intellij.psi.impl.source.tree.CompositeElement;
 import com.intellij.psi.scope.PsiScopeProcessor;
 import de.halirutan.mathematica.parsing.psi.MathematicaVisitor;
 import de.halirutan.mathematica.parsing.psi.api.assignment.Set;
 import de.halirutan.mathematica.parsing.psi.impl.OperatorNameProviderImpl;
+import de.halirutan.mathematica.parsing.psi.util.PatternSummary;
 import org.jetbrains.annotations.NotNull;
 
 /**
  * @author patrick (4/14/13)
  */
 public class SetImpl extends OperatorNameProviderImpl implements Set {
+
+  private volatile PatternSummary myPatternSummary;
+
   public SetImpl(@NotNull ASTNode node) {
     super(node);
   }
@@ -47,6 +52,21 @@ public class SetImpl extends OperatorNameProviderImpl implements Set {
     return processor.execute(this, state);
   }
 
+  /**
+   * The summary of the left side is built once and kept until the modification count of the node changes.
+   */
+  @NotNull
+  @Override
+  public PatternSummary getPatternSummary() {
+    final int stamp = ((CompositeElement) getNode()).getModificationCount();
+    PatternSummary summary = myPatternSummary;
+    if (summary == null || !summary.isUpToDate(stamp)) {
+      summary = PatternSummary.create(this, stamp);
+      myPatternSummary = summary;
+    }
+    return summary;
+  }
+
   @Override
   public void accept(@NotNull PsiElementVisitor visitor) {
     if (visitor instanceof MathematicaVisitor) {
@@ -25,16 +25,25 @@ import com.intellij.lang.ASTNode;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.ResolveState;
+import com.intellij.psi.impl.source.tree.CompositeElement;
 import com.intellij.psi.scope.PsiScopeProcessor;
 import de.halirutan.mathematica.parsing.psi.MathematicaVisitor;
+import de.halirutan.mathematica.parsing.psi.api.LocalScope;
 import de.halirutan.mathematica.parsing.psi.api.assignment.TagSetDelayed;
 import de.halirutan.mathematica.parsing.psi.impl.OperatorNameProviderImpl;
+import de.halirutan.mathematica.parsing.psi.util.LocalVariableTable;
+import de.halirutan.mathematica.parsing.psi.util.LocalizationConstruct;
+import de.halirutan.mathematica.parsing.psi.util.PatternSummary;
 import org.jetbrains.annotations.NotNull;
 
 /**
  * @author patrick (4/14/13)
  */
-public class TagSetDelayedImpl extends OperatorNameProviderImpl implements TagSetDelayed {
+public class TagSetDelayedImpl extends OperatorNameProviderImpl implements TagSetDelayed, LocalScope {
+
+  private volatile LocalVariableTable myLocalVariables;
+  private volatile PatternSummary myPatternSummary;
+
   public TagSetDelayedImpl(@NotNull ASTNode node) {
     super(node);
   }
@@ -48,6 +57,37 @@ public class TagSetDelayedImpl extends OperatorNameProviderImpl implements TagSe
   }
 
 
+  /**
+   * The pattern variables are collected once and kept until the modification count of the node changes.
+   */
+  @NotNull
+  @Override
+  public LocalVariableTable getLocalVariables() {
+    final int stamp = ((CompositeElement) getNode()).getModificationCount();
+    LocalVariableTable table = myLocalVariables;
+    if (table == null || !table.isUpToDate(stamp)) {
+      table = LocalVariableTable.forPatterns(getPatternSummary(), LocalizationConstruct.ConstructType.SETDELAYEDPATTERN,
+          stamp);
+      myLocalVariables = table;
+    }
+    return table;
+  }
+
+  /**
+   * The summary of the left side is built once and kept until the modification count of the node changes.
+   */
+  @NotNull
+  @Override
+  public PatternSummary getPatternSummary() {
+    final int stamp = ((CompositeElement) getNode()).getModificationCount();
+    PatternSummary summary = myPatternSummary;
+    if (summary == null || !summary.isUpToDate(stamp)) {
+      summary = PatternSummary.create(this, stamp);
+      myPatternSummary = summary;
+    }
+    return summary;
+  }
+
   @Override
   public void accept(@NotNull PsiElementVisitor visitor) {
     if (visitor instanceof MathematicaVisitor) {
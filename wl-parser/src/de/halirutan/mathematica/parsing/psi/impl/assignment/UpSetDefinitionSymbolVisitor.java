@@ -30,15 +30,20 @@ import de.halirutan.mathematica.parsing.psi.api.Symbol;
 import de.halirutan.mathematica.parsing.psi.api.lists.List;
 import de.halirutan.mathematica.parsing.psi.api.pattern.Condition;
 import de.halirutan.mathematica.parsing.psi.api.pattern.Pattern;
+import de.halirutan.mathematica.parsing.psi.util.VisitorWorkList;
 
 import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
+ * The parts of the left-hand side are visited through a {@link VisitorWorkList} and not recursively, so that deeply
+ * nested definitions cannot overflow the stack.
+ *
  * @author patrick (7/3/14)
  */
 public class UpSetDefinitionSymbolVisitor extends MathematicaVisitor {
   private final LinkedHashSet<Symbol> myUnboundSymbols = Sets.newLinkedHashSet();
+  private final VisitorWorkList myWorkList = new VisitorWorkList(this);
   private boolean isZeroLevel = true;
 
   public Set<Symbol> getUnboundSymbols() {
@@ -49,7 +54,7 @@ public class UpSetDefinitionSymbolVisitor extends MathematicaVisitor {
   public void visitCondition(Condition condition) {
     PsiElement firstChild = condition.getFirstChild();
     if (firstChild != null) {
-      firstChild.accept(this);
+      myWorkList.visit(firstChild);
     }
   }
 
@@ -64,7 +69,7 @@ public class UpSetDefinitionSymbolVisitor extends MathematicaVisitor {
           skipHead = false;
           continue;
         }
-        child.accept(this);
+        myWorkList.visit(child);
       }
     } else {
       final PsiElement head = functionCall.getHead();
@@ -72,7 +77,7 @@ public class UpSetDefinitionSymbolVisitor extends MathematicaVisitor {
         myUnboundSymbols.add((Symbol) head);
       } else {
         // situations like this a[p:b, c, d] ^:= ... where the patterns or something else is involved.
-        head.accept(this);
+        myWorkList.visit(head);
       }
     }
   }
@@ -84,18 +89,18 @@ public class UpSetDefinitionSymbolVisitor extends MathematicaVisitor {
   public void visitPattern(final Pattern pattern) {
     final PsiElement lastChild = pattern.getLastChild();
     if (lastChild != null) {
-      lastChild.accept(this);
+      myWorkList.visit(lastChild);
     }
   }
 
   @Override
   public void visitGroup(Group group) {
-    group.acceptChildren(this);
+    myWorkList.visitChildren(group);
   }
 
   @Override
   public void visitList(List list) {
-    list.acceptChildren(this);
+    myWorkList.visitChildren(list);
   }
 
 
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.stubs;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import de.halirutan.mathematica.filetypes.MathematicaFileType;
+import de.halirutan.mathematica.filetypes.SourceFile;
+import de.halirutan.mathematica.parsing.psi.stubs.MathematicaDefinitionIndex.Definition;
+import jsr166e.ConcurrentHashMapV8;
+import jsr166e.ForkJoinPool;
+import jsr166e.RecursiveAction;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects the definitions of a whole corpus of files in parallel. The files are split between the threads of a
+ * work-stealing {@link ForkJoinPool}, so threads that finish their part early take over files of the others. Every
+ * file is parsed, turned into {@link DefinitionStub}s by {@link MathematicaStubBuilder} and released again; only the
+ * stubs, which hold names and offsets but no PSI, are kept.
+ * <p/>
+ * The definitions of a file are first grouped by their fully qualified name and then merged into one {@link
+ * ConcurrentHashMapV8}, so the threads do not wait for each other except when they add to the same symbol at the same
+ * time.
+ * <p/>
+ * How far this scales with the number of processors has not been measured yet: ParallelDefinitionBenchmark has only
+ * been run on a machine with a single processor. There it only shows that every number of threads finds the same
+ * definitions; the times of the runs with more threads than processors say nothing about the speedup.
+ */
+public class CorpusDefinitionCollector {
+
+  private static final ConcurrentHashMapV8.Fun<String, Collection<Definition>> NEW_QUEUE =
+      new ConcurrentHashMapV8.Fun<String, Collection<Definition>>() {
+        @Override
+        public Collection<Definition> apply(String key) {
+          return new ConcurrentLinkedQueue<Definition>();
+        }
+      };
+
+  private final PsiFileFactory myFileFactory;
+  private final MathematicaStubBuilder myBuilder = new MathematicaStubBuilder();
+
+  public CorpusDefinitionCollector(@NotNull Project project) {
+    myFileFactory = PsiFileFactory.getInstance(project);
+  }
+
+  /**
+   * Collects the definitions of all files.
+   *
+   * @param files
+   *     The files with their content
+   * @param parallelism
+   *     Number of threads to use
+   * @return The definitions of all files by the fully qualified name of their symbol. The order of the definitions of
+   * one symbol is not specified.
+   */
+  @NotNull
+  public ConcurrentHashMapV8<String, Collection<Definition>> collect(@NotNull List<SourceFile> files, int parallelism) {
+    final ConcurrentHashMapV8<String, Collection<Definition>> definitions =
+        new ConcurrentHashMapV8<String, Collection<Definition>>(Math.max(16, files.size() * 8));
+    final ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      pool.invoke(new CollectAction(files, 0, files.size(), definitions));
+    } finally {
+      pool.shutdown();
+    }
+    return definitions;
+  }
+
+  /**
+   * Builds the stubs of a single file.
+   *
+   * @param name
+   *     File name
+   * @param text
+   *     Source code of the file
+   * @return The root stub, which does not reference the parsed file anymore
+   */
+  @NotNull
+  public MathematicaFileStub buildStubs(@NotNull String name, @NotNull CharSequence text) {
+    final PsiFile file = myFileFactory.createFileFromText(name, MathematicaFileType.INSTANCE, text);
+    final MathematicaFileStub stub = myBuilder.buildStubTree(file);
+    stub.setPsi(null);
+    return stub;
+  }
+
+  private void collectFile(String name, CharSequence text, ConcurrentHashMapV8<String, Collection<Definition>> result) {
+    final Map<String, List<Definition>> byName = new HashMap<String, List<Definition>>();
+    for (DefinitionStub stub : buildStubs(name, text).getDefinitions()) {
+      final String qualifiedName = stub.getQualifiedName();
+      List<Definition> definitions = byName.get(qualifiedName);
+      if (definitions == null) {
+        definitions = new ArrayList<Definition>(1);
+        byName.put(qualifiedName, definitions);
+      }
+      definitions.add(new Definition(name, stub));
+    }
+    for (Map.Entry<String, List<Definition>> entry : byName.entrySet()) {
+      result.computeIfAbsent(entry.getKey(), NEW_QUEUE).addAll(entry.getValue());
+    }
+  }
+
+  /**
+   * Splits a range of files in halves until a single file is left. The halves are forked, so idle threads of the pool
+   * can steal them. The tasks are never serialized, although {@link RecursiveAction} is serializable.
+   */
+  @SuppressWarnings("serial")
+  private class CollectAction extends RecursiveAction {
+    private final List<SourceFile> myFiles;
+    private final int myStart;
+    private final int myEnd;
+    private final ConcurrentHashMapV8<String, Collection<Definition>> myResult;
+
+    private CollectAction(List<SourceFile> files, int start, int end,
+                          ConcurrentHashMapV8<String, Collection<Definition>> result) {
+      myFiles = files;
+      myStart = start;
+      myEnd = end;
+      myResult = result;
+    }
+
+    @Override
+    protected void compute() {
+      if (myEnd - myStart == 1) {
+        final SourceFile file = myFiles.get(myStart);
+        collectFile(file.getName(), file.getText(), myResult);
+      } else if (myEnd > myStart) {
+        final int middle = (myStart + myEnd) >>> 1;
+        invokeAll(new CollectAction(myFiles, myStart, middle, myResult),
+            new CollectAction(myFiles, middle, myEnd, myResult));
+      }
+    }
+  }
+}
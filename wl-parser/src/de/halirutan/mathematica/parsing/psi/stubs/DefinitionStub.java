@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.stubs;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.stubs.StubBase;
+import com.intellij.psi.stubs.StubElement;
+import com.intellij.psi.util.PsiTreeUtil;
+import de.halirutan.mathematica.parsing.psi.SymbolAssignmentType;
+import de.halirutan.mathematica.parsing.psi.api.Symbol;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Stub of one definition of a symbol, e.g. the <code >f</code> in <code >f[x_] := x^2</code>. It stores the name and
+ * the context of the symbol, the kind of assignment, the offset of the symbol and the offset of the left-hand side or
+ * the expression that was used to find the definition.
+ */
+public class DefinitionStub extends StubBase<Symbol> {
+
+  private final String myName;
+  private final String myContext;
+  private final SymbolAssignmentType myAssignmentType;
+  private final int mySymbolOffset;
+  private final int myLhsOffset;
+
+  public DefinitionStub(@Nullable StubElement<?> parent,
+                        @NotNull String name,
+                        @NotNull String context,
+                        @NotNull SymbolAssignmentType assignmentType,
+                        int symbolOffset,
+                        int lhsOffset) {
+    super(parent, MathematicaStubElementTypes.DEFINITION);
+    myName = name;
+    myContext = context;
+    myAssignmentType = assignmentType;
+    mySymbolOffset = symbolOffset;
+    myLhsOffset = lhsOffset;
+  }
+
+  /**
+   * @return The name of the defined symbol without context
+   */
+  @NotNull
+  public String getSymbolName() {
+    return myName;
+  }
+
+  /**
+   * @return The context of the symbol including the trailing backquote, e.g. <code >MyPackage`Private`</code>
+   */
+  @NotNull
+  public String getContext() {
+    return myContext;
+  }
+
+  /**
+   * @return The fully qualified name of the symbol, e.g. <code >MyPackage`f</code>
+   */
+  @NotNull
+  public String getQualifiedName() {
+    return myContext + myName;
+  }
+
+  @NotNull
+  public SymbolAssignmentType getAssignmentType() {
+    return myAssignmentType;
+  }
+
+  public int getSymbolOffset() {
+    return mySymbolOffset;
+  }
+
+  public int getLhsOffset() {
+    return myLhsOffset;
+  }
+
+  /**
+   * Finds the defining symbol in a parsed version of the file this stub was built from.
+   *
+   * @param file
+   *     The file the stub belongs to
+   * @return The symbol at the offset of the stub or null if the file was changed in the meantime
+   */
+  @Nullable
+  public Symbol findSymbol(@NotNull PsiFile file) {
+    final PsiElement leaf = file.findElementAt(mySymbolOffset);
+    final Symbol symbol = PsiTreeUtil.getParentOfType(leaf, Symbol.class, false);
+    return symbol != null && myName.equals(symbol.getSymbolName()) ? symbol : null;
+  }
+
+  @Override
+  public String toString() {
+    return myAssignmentType + ":" + getQualifiedName() + "@" + mySymbolOffset;
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.stubs;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.stubs.IStubElementType;
+import com.intellij.psi.stubs.IndexSink;
+import com.intellij.psi.stubs.StubElement;
+import com.intellij.psi.stubs.StubInputStream;
+import com.intellij.psi.stubs.StubOutputStream;
+import com.intellij.util.io.StringRef;
+import de.halirutan.mathematica.MathematicaLanguage;
+import de.halirutan.mathematica.parsing.ast.AstDefinitionCollector;
+import de.halirutan.mathematica.parsing.ast.AstDefinitionCollector.AstDefinition;
+import de.halirutan.mathematica.parsing.ast.AstNodes;
+import de.halirutan.mathematica.parsing.psi.SymbolAssignmentType;
+import de.halirutan.mathematica.parsing.psi.api.Symbol;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Element type of {@link DefinitionStub}s. Definition stubs are not created element by element from the PSI because
+ * their context depends on the package structure of the whole file; {@link MathematicaStubBuilder} creates them for a
+ * complete file instead. {@link #createStub(Symbol, StubElement)} still works for a single symbol, but it has to look
+ * at the whole file.
+ * <p/>
+ * A stub is serialized as the enumerated name and context, the ordinal of its assignment type and the two offsets,
+ * where the offset of the left-hand side is stored relative to the symbol.
+ */
+public class DefinitionStubElementType extends IStubElementType<DefinitionStub, Symbol> {
+
+  private static final SymbolAssignmentType[] ASSIGNMENT_TYPES = SymbolAssignmentType.values();
+
+  DefinitionStubElementType() {
+    super("DEFINITION", MathematicaLanguage.INSTANCE);
+  }
+
+  @Override
+  public Symbol createPsi(@NotNull DefinitionStub stub) {
+    StubElement<?> root = stub;
+    while (root.getParentStub() != null) {
+      root = root.getParentStub();
+    }
+    final Object file = root.getPsi();
+    return file instanceof PsiFile ? stub.findSymbol((PsiFile) file) : null;
+  }
+
+  /**
+   * Creates the stub of a single symbol the same way {@link MathematicaStubBuilder} does: the definitions of the file
+   * are collected from the AST and the context is the one {@link Symbol#getMathematicaContext()} finds in the context
+   * ranges of the file.
+   *
+   * @return The stub or null if the symbol is not defined at its position
+   */
+  @Nullable
+  @Override
+  public DefinitionStub createStub(@NotNull Symbol psi, @SuppressWarnings("rawtypes") StubElement parentStub) {
+    final PsiFile file = psi.getContainingFile();
+    final ASTNode fileNode = file != null ? file.getNode() : null;
+    final ASTNode symbol = psi.getNode();
+    if (fileNode == null || symbol == null) {
+      return null;
+    }
+    final String name = AstNodes.getSymbolName(symbol);
+    final List<AstDefinition> definitions = new AstDefinitionCollector(fileNode).getDefinitions().get(name);
+    if (definitions == null) {
+      return null;
+    }
+    for (AstDefinition definition : definitions) {
+      if (definition.getSymbol() == symbol) {
+        final int offset = symbol.getStartOffset();
+        final ASTNode lhs = definition.getLhs();
+        return new DefinitionStub(parentStub, name, psi.getMathematicaContext(), definition.getType(), offset,
+            lhs != null ? lhs.getStartOffset() : offset);
+      }
+    }
+    return null;
+  }
+
+  @NotNull
+  @Override
+  public String getExternalId() {
+    return "mathematica.definition";
+  }
+
+  @Override
+  public void serialize(@NotNull DefinitionStub stub, @NotNull StubOutputStream dataStream) throws IOException {
+    dataStream.writeName(stub.getSymbolName());
+    dataStream.writeName(stub.getContext());
+    dataStream.writeVarInt(stub.getAssignmentType().ordinal());
+    dataStream.writeVarInt(stub.getSymbolOffset());
+    // the left-hand side usually starts before the symbol; the rare other case is mapped to negative numbers
+    final int distance = stub.getSymbolOffset() - stub.getLhsOffset();
+    dataStream.writeVarInt(distance >= 0 ? distance << 1 : (-distance << 1) | 1);
+  }
+
+  @NotNull
+  @Override
+  public DefinitionStub deserialize(@NotNull StubInputStream dataStream,
+                                    @SuppressWarnings("rawtypes") StubElement parentStub) throws IOException {
+    final String name = StringRef.toString(dataStream.readName());
+    final String context = StringRef.toString(dataStream.readName());
+    final SymbolAssignmentType type = ASSIGNMENT_TYPES[dataStream.readVarInt()];
+    final int symbolOffset = dataStream.readVarInt();
+    final int encoded = dataStream.readVarInt();
+    final int distance = (encoded & 1) == 0 ? encoded >>> 1 : -(encoded >>> 1);
+    return new DefinitionStub(parentStub, name, context, type, symbolOffset, symbolOffset - distance);
+  }
+
+  @Override
+  public void indexStub(@NotNull DefinitionStub stub, @NotNull IndexSink sink) {
+  }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.stubs;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.stubs.StubInputStream;
+import com.intellij.psi.stubs.StubOutputStream;
+import de.halirutan.mathematica.filetypes.MathematicaFileType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Index of the definitions of many files which is kept up to date incrementally and can be stored on disk. For every
+ * file it keeps the stub tree built by {@link MathematicaStubBuilder} and the modification time and length of the file
+ * at that moment. {@link #update(Collection)} parses only files that are new or have changed since and forgets files
+ * that are gone, so after loading a saved index only the changes since the last session are parsed.
+ * <p/>
+ * Definitions are looked up by their fully qualified name, e.g. for go to definition, or by the name without context.
+ * Both are hash lookups which do not touch the files at all. The PSI of a definition can be found with {@link
+ * DefinitionStub#findSymbol(PsiFile)} after the file is opened.
+ * <p/>
+ * Searches for the usages of a symbol have to look into the files themselves. {@link #getFilesMentioning(String)} uses
+ * the {@link SymbolBloomFilter} stored with each file to rule out most files without opening them.
+ * <p/>
+ * The index is thread-safe. Updates run one at a time, but the files are read and parsed without holding the lock
+ * that queries take; only putting the finished stubs into the maps is done under that lock. So queries can run while
+ * another thread updates the index, and they see each file either before or after its update.
+ */
+public class MathematicaDefinitionIndex {
+
+  private static final int MAGIC = 0x4d444546;
+
+  private final PsiFileFactory myFileFactory;
+  private final MathematicaStubBuilder myBuilder;
+  private final Object myUpdateLock = new Object();
+  private final Map<String, FileEntry> myFiles = new HashMap<String, FileEntry>();
+  private final Map<String, List<Definition>> myQualifiedNames = new HashMap<String, List<Definition>>();
+  private final Map<String, List<Definition>> myNames = new HashMap<String, List<Definition>>();
+
+  public MathematicaDefinitionIndex(@NotNull Project project) {
+    this(project, SymbolBloomFilter.DEFAULT_FALSE_POSITIVE_RATE);
+  }
+
+  /**
+   * @param project
+   *     The project used to parse files
+   * @param falsePositiveRate
+   *     False-positive rate of the symbol filters of files that are parsed by this index
+   */
+  public MathematicaDefinitionIndex(@NotNull Project project, double falsePositiveRate) {
+    myFileFactory = PsiFileFactory.getInstance(project);
+    myBuilder = new MathematicaStubBuilder(falsePositiveRate);
+  }
+
+  /**
+   * Brings the index up to date with the given files. Files which are not in the collection anymore are removed from
+   * the index.
+   *
+   * @param files
+   *     All files that should be indexed
+   * @return The number of files which were parsed again
+   * @throws IOException
+   *     If a file could not be read
+   */
+  public int update(@NotNull Collection<File> files) throws IOException {
+    synchronized (myUpdateLock) {
+      final Set<String> paths = new HashSet<String>(files.size());
+      int updated = 0;
+      for (File file : files) {
+        final String path = file.getPath();
+        paths.add(path);
+        final FileEntry entry = getEntry(path);
+        final long modified = file.lastModified();
+        final long length = file.length();
+        if (entry == null || entry.myModified != modified || entry.myLength != length) {
+          putFile(path, createEntry(path, modified, length, FileUtil.loadFile(file)));
+          updated++;
+        }
+      }
+      for (String path : getFiles()) {
+        if (!paths.contains(path)) {
+          removeFile(path);
+        }
+      }
+      return updated;
+    }
+  }
+
+  /**
+   * Indexes the text of a file, e.g. of a document which is not saved yet. The file is parsed only when the stamp
+   * differs from the one it was indexed with.
+   *
+   * @param path
+   *     Path of the file
+   * @param stamp
+   *     A modification stamp of the text
+   * @param text
+   *     The content of the file
+   * @return true if the file was parsed
+   */
+  public boolean updateFile(@NotNull String path, long stamp, @NotNull CharSequence text) {
+    synchronized (myUpdateLock) {
+      final FileEntry entry = getEntry(path);
+      if (entry != null && entry.myModified == stamp && entry.myLength == text.length()) {
+        return false;
+      }
+      putFile(path, createEntry(path, stamp, text.length(), text));
+      return true;
+    }
+  }
+
+  public void removeFile(@NotNull String path) {
+    synchronized (myUpdateLock) {
+      synchronized (this) {
+        final FileEntry entry = myFiles.remove(path);
+        if (entry != null) {
+          removeDefinitions(path, entry.myStub);
+        }
+      }
+    }
+  }
+
+  @Nullable
+  private synchronized FileEntry getEntry(String path) {
+    return myFiles.get(path);
+  }
+
+  /**
+   * Parses a file and builds its stubs. This is the expensive part of an update and it does not hold the lock of the
+   * queries.
+   */
+  private FileEntry createEntry(String path, long modified, long length, CharSequence text) {
+    final PsiFile file = myFileFactory.createFileFromText(path, MathematicaFileType.INSTANCE, text);
+    final MathematicaFileStub stub = myBuilder.buildStubTree(file);
+    // the index must not keep the parsed files alive
+    stub.setPsi(null);
+    return new FileEntry(modified, length, stub);
+  }
+
+  private synchronized void putFile(String path, FileEntry entry) {
+    final FileEntry old = myFiles.put(path, entry);
+    if (old != null) {
+      removeDefinitions(path, old.myStub);
+    }
+    for (DefinitionStub stub : entry.myStub.getDefinitions()) {
+      final Definition definition = new Definition(path, stub);
+      addDefinition(myQualifiedNames, stub.getQualifiedName(), definition);
+      addDefinition(myNames, stub.getSymbolName(), definition);
+    }
+  }
+
+  private static void addDefinition(Map<String, List<Definition>> map, String key, Definition definition) {
+    List<Definition> definitions = map.get(key);
+    if (definitions == null) {
+      definitions = new ArrayList<Definition>(1);
+      map.put(key, definitions);
+    }
+    definitions.add(definition);
+  }
+
+  private void removeDefinitions(String path, MathematicaFileStub stub) {
+    final Set<String> qualifiedNames = new HashSet<String>();
+    final Set<String> names = new HashSet<String>();
+    for (DefinitionStub definition : stub.getDefinitions()) {
+      qualifiedNames.add(definition.getQualifiedName());
+      names.add(definition.getSymbolName());
+    }
+    removeDefinitions(myQualifiedNames, qualifiedNames, path);
+    removeDefinitions(myNames, names, path);
+  }
+
+  private static void removeDefinitions(Map<String, List<Definition>> map, Set<String> keys, String path) {
+    for (String key : keys) {
+      final List<Definition> definitions = map.get(key);
+      if (definitions == null) {
+        continue;
+      }
+      for (Iterator<Definition> iterator = definitions.iterator(); iterator.hasNext(); ) {
+        if (iterator.next().myPath.equals(path)) {
+          iterator.remove();
+        }
+      }
+      if (definitions.isEmpty()) {
+        map.remove(key);
+      }
+    }
+  }
+
+  /**
+   * @param qualifiedName
+   *     Name of a symbol including its context, e.g. <code >MyPackage`f</code>
+   * @return All definitions of the symbol in all indexed files
+   */
+  @NotNull
+  public synchronized List<Definition> getDefinitions(@NotNull String qualifiedName) {
+    return copy(myQualifiedNames.get(qualifiedName));
+  }
+
+  /**
+   * @param name
+   *     Name of a symbol without context
+   * @return All definitions of symbols with this name in any context
+   */
+  @NotNull
+  public synchronized List<Definition> getDefinitionsByName(@NotNull String name) {
+    return copy(myNames.get(name));
+  }
+
+  private static List<Definition> copy(@Nullable List<Definition> definitions) {
+    return definitions == null ? Collections.<Definition>emptyList() : new ArrayList<Definition>(definitions);
+  }
+
+  /**
+   * @return The fully qualified names of all defined symbols
+   */
+  @NotNull
+  public synchronized Set<String> getQualifiedNames() {
+    return new HashSet<String>(myQualifiedNames.keySet());
+  }
+
+  /**
+   * Finds the files which might mention a symbol by checking their symbol filters. The result contains all files
+   * which really mention it and, with the false-positive rate of the filters, some which do not.
+   *
+   * @param name
+   *     Name of a symbol without context
+   * @return The files that have to be opened to find all occurrences of the symbol
+   */
+  @NotNull
+  public synchronized List<String> getFilesMentioning(@NotNull String name) {
+    final List<String> files = new ArrayList<String>();
+    for (Map.Entry<String, FileEntry> entry : myFiles.entrySet()) {
+      if (entry.getValue().myStub.mightMention(name)) {
+        files.add(entry.getKey());
+      }
+    }
+    return files;
+  }
+
+  @NotNull
+  public synchronized Set<String> getFiles() {
+    return new HashSet<String>(myFiles.keySet());
+  }
+
+  @Nullable
+  public synchronized MathematicaFileStub getFileStub(@NotNull String path) {
+    final FileEntry entry = myFiles.get(path);
+    return entry != null ? entry.myStub : null;
+  }
+
+  /**
+   * Writes the index to a file. The names of all stubs are enumerated into a table which is stored in front of the
+   * stubs.
+   *
+   * @param file
+   *     The file the index is written to
+   * @throws IOException
+   *     If the file cannot be written
+   */
+  public void save(@NotNull File file) throws IOException {
+    final Map<String, FileEntry> files;
+    synchronized (this) {
+      files = new HashMap<String, FileEntry>(myFiles);
+    }
+    final StringTable names = new StringTable();
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final StubOutputStream stubStream = new StubOutputStream(bytes, names);
+    stubStream.writeInt(files.size());
+    for (Map.Entry<String, FileEntry> entry : files.entrySet()) {
+      final FileEntry fileEntry = entry.getValue();
+      stubStream.writeUTFFast(entry.getKey());
+      stubStream.writeLong(fileEntry.myModified);
+      stubStream.writeLong(fileEntry.myLength);
+      MathematicaStubFileElementType.INSTANCE.serialize(fileEntry.myStub, stubStream);
+    }
+    stubStream.flush();
+
+    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(MathematicaStubFileElementType.INSTANCE.getStubVersion());
+      names.write(out);
+      bytes.writeTo(out);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Reads an index that was written with {@link #save(File)}. An index that was written with another stub version
+   * cannot be used and an empty index is returned instead, which means that the next update parses all files.
+   *
+   * @param project
+   *     The project used to parse changed files later
+   * @param file
+   *     The file containing the index
+   * @return The loaded index
+   * @throws IOException
+   *     If the file cannot be read or is corrupted
+   */
+  @NotNull
+  public static MathematicaDefinitionIndex load(@NotNull Project project, @NotNull File file) throws IOException {
+    return load(project, file, SymbolBloomFilter.DEFAULT_FALSE_POSITIVE_RATE);
+  }
+
+  /**
+   * Like {@link #load(Project, File)} but files which are parsed later get symbol filters with the given
+   * false-positive rate. The loaded filters keep the rate they were built with.
+   */
+  @NotNull
+  public static MathematicaDefinitionIndex load(@NotNull Project project, @NotNull File file,
+                                                double falsePositiveRate) throws IOException {
+    final MathematicaDefinitionIndex index = new MathematicaDefinitionIndex(project, falsePositiveRate);
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != MathematicaStubFileElementType.INSTANCE.getStubVersion()) {
+        return index;
+      }
+      final StringTable names = new StringTable();
+      names.read(in);
+      final StubInputStream stubStream = new StubInputStream(in, names);
+      final int count = stubStream.readInt();
+      for (int i = 0; i < count; i++) {
+        final String path = stubStream.readUTFFast();
+        final long modified = stubStream.readLong();
+        final long length = stubStream.readLong();
+        final MathematicaFileStub stub = MathematicaStubFileElementType.INSTANCE.deserialize(stubStream, null);
+        index.putFile(path, new FileEntry(modified, length, stub));
+      }
+    } finally {
+      in.close();
+    }
+    return index;
+  }
+
+  private static class FileEntry {
+    private final long myModified;
+    private final long myLength;
+    private final MathematicaFileStub myStub;
+
+    private FileEntry(long modified, long length, MathematicaFileStub stub) {
+      myModified = modified;
+      myLength = length;
+      myStub = stub;
+    }
+  }
+
+  /**
+   * A definition found in the index together with the file it belongs to.
+   */
+  public static class Definition {
+    private final String myPath;
+    private final DefinitionStub myStub;
+
+    Definition(@NotNull String path, @NotNull DefinitionStub stub) {
+      myPath = path;
+      myStub = stub;
+    }
+
+    @NotNull
+    public String getPath() {
+      return myPath;
+    }
+
+    @NotNull
+    public DefinitionStub getStub() {
+      return myStub;
+    }
+
+    @Override
+    public String toString() {
+      return myPath + ":" + myStub;
+    }
+  }
+}
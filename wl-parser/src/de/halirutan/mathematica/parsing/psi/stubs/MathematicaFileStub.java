@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.stubs;
+
+import com.intellij.psi.stubs.PsiFileStubImpl;
+import com.intellij.psi.stubs.StubElement;
+import de.halirutan.mathematica.parsing.psi.api.MathematicaPsiFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Root of the stub tree of a Mathematica file. Its children are the {@link DefinitionStub}s of the file in the order
+ * of their offsets. It also carries a {@link SymbolBloomFilter} of all symbol names mentioned in the file.
+ */
+public class MathematicaFileStub extends PsiFileStubImpl<MathematicaPsiFile> {
+
+  private SymbolBloomFilter mySymbolFilter = null;
+
+  public MathematicaFileStub(@Nullable MathematicaPsiFile file) {
+    super(file);
+  }
+
+  @NotNull
+  @Override
+  public MathematicaStubFileElementType getType() {
+    return MathematicaStubFileElementType.INSTANCE;
+  }
+
+  /**
+   * @return All definitions of the file in the order of their offsets
+   */
+  @NotNull
+  public List<DefinitionStub> getDefinitions() {
+    final List<DefinitionStub> definitions = new ArrayList<DefinitionStub>(getChildrenStubs().size());
+    for (StubElement<?> child : getChildrenStubs()) {
+      if (child instanceof DefinitionStub) {
+        definitions.add((DefinitionStub) child);
+      }
+    }
+    return definitions;
+  }
+
+  /**
+   * @return The filter of the symbol names in the file or null if it is not known
+   */
+  @Nullable
+  public SymbolBloomFilter getSymbolFilter() {
+    return mySymbolFilter;
+  }
+
+  public void setSymbolFilter(@Nullable SymbolBloomFilter symbolFilter) {
+    mySymbolFilter = symbolFilter;
+  }
+
+  /**
+   * @param name
+   *     Name of a symbol without context
+   * @return false if the file certainly does not mention the symbol
+   */
+  public boolean mightMention(@NotNull String name) {
+    return mySymbolFilter == null || mySymbolFilter.mightContain(name);
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.stubs;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.stubs.DefaultStubBuilder;
+import de.halirutan.mathematica.parsing.ast.AstContextRanges;
+import de.halirutan.mathematica.parsing.ast.AstDefinitionCollector;
+import de.halirutan.mathematica.parsing.ast.AstDefinitionCollector.AstDefinition;
+import de.halirutan.mathematica.parsing.ast.AstNodes;
+import de.halirutan.mathematica.parsing.psi.api.MathematicaPsiFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds the stub tree of a file. The definitions are found with {@link AstDefinitionCollector} and get the context
+ * which {@link AstContextRanges} finds for them. A symbol that is mentioned in the public part of a package, e.g. in
+ * its usage message, belongs to the package context even when it is defined after <code >Begin["`Private`"]</code>.
+ * <p/>
+ * While following the contexts, the names of all symbols in the file are collected into a {@link SymbolBloomFilter}
+ * which is stored in the root stub.
+ * <p/>
+ * Everything is done on the AST, so building the stubs does not create PSI elements.
+ */
+public class MathematicaStubBuilder extends DefaultStubBuilder {
+
+  private static final Comparator<AstDefinition> OFFSET_ORDER = new Comparator<AstDefinition>() {
+    @Override
+    public int compare(AstDefinition o1, AstDefinition o2) {
+      final int offset1 = o1.getSymbol().getStartOffset();
+      final int offset2 = o2.getSymbol().getStartOffset();
+      return offset1 < offset2 ? -1 : (offset1 == offset2 ? 0 : 1);
+    }
+  };
+
+  private final double myFalsePositiveRate;
+
+  public MathematicaStubBuilder() {
+    this(SymbolBloomFilter.DEFAULT_FALSE_POSITIVE_RATE);
+  }
+
+  /**
+   * @param falsePositiveRate
+   *     False-positive rate of the symbol filters that are built
+   */
+  public MathematicaStubBuilder(double falsePositiveRate) {
+    myFalsePositiveRate = falsePositiveRate;
+  }
+
+  @Override
+  public MathematicaFileStub buildStubTree(@NotNull PsiFile file) {
+    final MathematicaFileStub root =
+        new MathematicaFileStub(file instanceof MathematicaPsiFile ? (MathematicaPsiFile) file : null);
+    final ASTNode node = file.getNode();
+    if (node == null) {
+      return root;
+    }
+    final AstDefinitionCollector collector = new AstDefinitionCollector(node);
+    final Set<String> names = new HashSet<String>();
+    final AstContextRanges contexts = AstContextRanges.build(node, names, collector);
+    final SymbolBloomFilter filter = new SymbolBloomFilter(names.size(), myFalsePositiveRate);
+    for (String name : names) {
+      filter.add(name);
+    }
+    root.setSymbolFilter(filter);
+
+    final List<AstDefinition> definitions = new ArrayList<AstDefinition>();
+    for (List<AstDefinition> symbolDefinitions : collector.getDefinitions().values()) {
+      definitions.addAll(symbolDefinitions);
+    }
+    Collections.sort(definitions, OFFSET_ORDER);
+
+    for (AstDefinition definition : definitions) {
+      final ASTNode symbol = definition.getSymbol();
+      final int offset = symbol.getStartOffset();
+      final String name = AstNodes.getSymbolName(symbol);
+      final ASTNode lhs = definition.getLhs();
+      new DefinitionStub(root, name, contexts.getSymbolContext(AstNodes.getSymbolText(symbol), name, offset),
+          definition.getType(), offset, lhs != null ? lhs.getStartOffset() : offset);
+    }
+    return root;
+  }
+
+  @Override
+  public boolean skipChildProcessingWhenBuildingStubs(@NotNull ASTNode parent, @NotNull ASTNode node) {
+    return false;
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.stubs;
+
+import com.intellij.psi.StubBuilder;
+import com.intellij.psi.stubs.IndexSink;
+import com.intellij.psi.stubs.PsiFileStub;
+import com.intellij.psi.stubs.StubElement;
+import com.intellij.psi.stubs.StubInputStream;
+import com.intellij.psi.stubs.StubOutputStream;
+import com.intellij.psi.tree.IStubFileElementType;
+import de.halirutan.mathematica.MathematicaLanguage;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Element type of the root node of every Mathematica file. Besides being the file node type returned by the parser
+ * definition, it builds and serializes the stub tree of a file. Since a file stub only contains definition stubs,
+ * {@link #serialize(MathematicaFileStub, StubOutputStream)} writes the whole tree: the number of definitions followed
+ * by each of them and the symbol filter of the file.
+ */
+public class MathematicaStubFileElementType extends IStubFileElementType<MathematicaFileStub> {
+
+  public static final MathematicaStubFileElementType INSTANCE = new MathematicaStubFileElementType();
+
+  /**
+   * Has to be increased whenever the layout of the serialized stubs or the way they are built changes.
+   */
+  private static final int STUB_VERSION = 7;
+
+  private MathematicaStubFileElementType() {
+    super("FILE", MathematicaLanguage.INSTANCE);
+  }
+
+  @Override
+  public int getStubVersion() {
+    return STUB_VERSION;
+  }
+
+  @Override
+  public StubBuilder getBuilder() {
+    return new MathematicaStubBuilder();
+  }
+
+  @NotNull
+  @Override
+  public String getExternalId() {
+    return "mathematica.file";
+  }
+
+  @Override
+  public void serialize(@NotNull MathematicaFileStub stub, @NotNull StubOutputStream dataStream) throws IOException {
+    final List<DefinitionStub> definitions = stub.getDefinitions();
+    dataStream.writeVarInt(definitions.size());
+    for (DefinitionStub definition : definitions) {
+      MathematicaStubElementTypes.DEFINITION.serialize(definition, dataStream);
+    }
+    final SymbolBloomFilter filter = stub.getSymbolFilter();
+    dataStream.writeBoolean(filter != null);
+    if (filter != null) {
+      filter.write(dataStream);
+    }
+  }
+
+  @NotNull
+  @Override
+  public MathematicaFileStub deserialize(@NotNull StubInputStream dataStream,
+                                         @SuppressWarnings("rawtypes") StubElement parentStub) throws IOException {
+    final MathematicaFileStub stub = new MathematicaFileStub(null);
+    final int count = dataStream.readVarInt();
+    for (int i = 0; i < count; i++) {
+      MathematicaStubElementTypes.DEFINITION.deserialize(dataStream, stub);
+    }
+    if (dataStream.readBoolean()) {
+      stub.setSymbolFilter(SymbolBloomFilter.read(dataStream));
+    }
+    return stub;
+  }
+
+  @Override
+  public void indexStub(@NotNull @SuppressWarnings("rawtypes") PsiFileStub stub, @NotNull IndexSink sink) {
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.stubs;
+
+import com.intellij.util.io.AbstractStringEnumerator;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Keeps the names of serialized stubs in memory. Id 0 stands for <code >null</code> as in {@link
+ * com.intellij.util.io.DataInputOutputUtil#writeNAME}, the names get the ids from 1 on. The table is written in front
+ * of the stubs that use it, so every index file carries its own names.
+ */
+class StringTable implements AbstractStringEnumerator {
+
+  private final TObjectIntHashMap<String> myIds = new TObjectIntHashMap<String>();
+  private final ArrayList<String> myNames = new ArrayList<String>();
+
+  StringTable() {
+    myNames.add(null);
+  }
+
+  @Override
+  public int enumerate(@Nullable String value) {
+    if (value == null) {
+      return 0;
+    }
+    final int id = myIds.get(value);
+    if (id != 0) {
+      return id;
+    }
+    myNames.add(value);
+    myIds.put(value, myNames.size() - 1);
+    return myNames.size() - 1;
+  }
+
+  @Nullable
+  @Override
+  public String valueOf(int idx) throws IOException {
+    if (idx < 0 || idx >= myNames.size()) {
+      throw new IOException("Unknown name id " + idx);
+    }
+    return myNames.get(idx);
+  }
+
+  void write(@NotNull DataOutput out) throws IOException {
+    out.writeInt(myNames.size() - 1);
+    for (int i = 1; i < myNames.size(); i++) {
+      out.writeUTF(myNames.get(i));
+    }
+  }
+
+  void read(@NotNull DataInput in) throws IOException {
+    final int count = in.readInt();
+    myNames.ensureCapacity(count + 1);
+    for (int i = 0; i < count; i++) {
+      enumerate(in.readUTF());
+    }
+  }
+
+  @Override
+  public void markCorrupted() {
+  }
+
+  @Override
+  public boolean isDirty() {
+    return false;
+  }
+
+  @Override
+  public void force() {
+  }
+
+  @Override
+  public void close() {
+  }
+}
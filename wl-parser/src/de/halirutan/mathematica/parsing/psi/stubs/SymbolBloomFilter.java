@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.stubs;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Bloom filter of the symbol names that appear in a file. A file whose filter does not contain a name certainly does
+ * not mention the symbol, so cross-file searches only need to open the files whose filter matches. Names are added
+ * without context.
+ * <p/>
+ * The size is chosen from the number of distinct names and the wanted false-positive rate with the usual formulas;
+ * {@link #getFalsePositiveRate(double)} turns a number of bits per symbol into that rate. The bits are kept in a
+ * <code >long[]</code> and the <code >k</code> positions of a name are derived from two 32 bit hashes as <code >h1 + i *
+ * h2</code>, computed as unsigned values in a <code >long</code> so that no position can become negative. The words
+ * are written and read as they are.
+ */
+public class SymbolBloomFilter {
+
+  public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+  private final double myFalsePositiveRate;
+  private final int myHashFunctionCount;
+  private final long[] myWords;
+  private final int myBitCount;
+
+  /**
+   * @param symbolCount
+   *     Number of distinct names that will be added
+   * @param falsePositiveRate
+   *     Probability that the filter matches a name that was not added
+   */
+  public SymbolBloomFilter(int symbolCount, double falsePositiveRate) {
+    this(falsePositiveRate, getHashFunctionCount(falsePositiveRate),
+        new long[getWordCount(Math.max(1, symbolCount), falsePositiveRate)]);
+  }
+
+  private SymbolBloomFilter(double falsePositiveRate, int hashFunctionCount, long[] words) {
+    myFalsePositiveRate = falsePositiveRate;
+    myHashFunctionCount = hashFunctionCount;
+    myWords = words;
+    myBitCount = words.length << 6;
+  }
+
+  private static int getBitsPerElement(double falsePositiveRate) {
+    return (int) Math.ceil(-Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+  }
+
+  private static int getHashFunctionCount(double falsePositiveRate) {
+    return Math.max(1, (int) Math.ceil(getBitsPerElement(falsePositiveRate) * Math.log(2)));
+  }
+
+  private static int getWordCount(int symbolCount, double falsePositiveRate) {
+    final long bitCount = (long) symbolCount * getBitsPerElement(falsePositiveRate);
+    if (bitCount > Integer.MAX_VALUE - 63) {
+      throw new IllegalArgumentException("Too many symbols for a single filter: " + symbolCount);
+    }
+    return (int) ((bitCount + 63) >>> 6);
+  }
+
+  /**
+   * Converts a number of bits per symbol into the false-positive rate that leads to this size.
+   */
+  public static double getFalsePositiveRate(double bitsPerSymbol) {
+    return Math.exp(-bitsPerSymbol * Math.log(2) * Math.log(2));
+  }
+
+  public void add(@NotNull String name) {
+    final long hash1 = name.hashCode() & 0xffffffffL;
+    final long hash2 = secondHash(name) & 0xffffffffL;
+    for (int i = 0; i < myHashFunctionCount; i++) {
+      final int bit = (int) ((hash1 + i * hash2) % myBitCount);
+      myWords[bit >>> 6] |= 1L << bit;
+    }
+  }
+
+  /**
+   * @return false if the name was certainly not added to the filter
+   */
+  public boolean mightContain(@NotNull String name) {
+    final long hash1 = name.hashCode() & 0xffffffffL;
+    final long hash2 = secondHash(name) & 0xffffffffL;
+    for (int i = 0; i < myHashFunctionCount; i++) {
+      final int bit = (int) ((hash1 + i * hash2) % myBitCount);
+      if ((myWords[bit >>> 6] & 1L << bit) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * FNV-1a hash of the name. It is made odd so that the positions of a name never collapse onto one bit.
+   */
+  private static int secondHash(String name) {
+    int hash = 0x811c9dc5;
+    for (int i = 0; i < name.length(); i++) {
+      hash = (hash ^ name.charAt(i)) * 0x01000193;
+    }
+    return hash | 1;
+  }
+
+  public int getBitCount() {
+    return myBitCount;
+  }
+
+  public double getFalsePositiveRate() {
+    return myFalsePositiveRate;
+  }
+
+  public void write(@NotNull DataOutput out) throws IOException {
+    out.writeDouble(myFalsePositiveRate);
+    out.writeByte(myHashFunctionCount);
+    out.writeInt(myWords.length);
+    for (long word : myWords) {
+      out.writeLong(word);
+    }
+  }
+
+  @NotNull
+  public static SymbolBloomFilter read(@NotNull DataInput in) throws IOException {
+    final double falsePositiveRate = in.readDouble();
+    final int hashFunctionCount = in.readUnsignedByte();
+    final int wordCount = in.readInt();
+    if (hashFunctionCount == 0 || wordCount <= 0 || wordCount > Integer.MAX_VALUE >>> 6) {
+      throw new IOException("Corrupted symbol filter");
+    }
+    final long[] words = new long[wordCount];
+    for (int i = 0; i < wordCount; i++) {
+      words[i] = in.readLong();
+    }
+    return new SymbolBloomFilter(falsePositiveRate, hashFunctionCount, words);
+  }
+}
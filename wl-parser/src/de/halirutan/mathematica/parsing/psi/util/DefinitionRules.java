@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.util;
+
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
+import de.halirutan.mathematica.parsing.psi.SymbolAssignmentType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+
+import static de.halirutan.mathematica.parsing.MathematicaElementTypes.*;
+import static de.halirutan.mathematica.parsing.psi.SymbolAssignmentType.*;
+
+/**
+ * The rules that decide what counts as a global definition. They are shared by {@link GlobalDefinitionCollector},
+ * which works on PSI, and {@link de.halirutan.mathematica.parsing.ast.AstDefinitionCollector}, which works on the AST,
+ * so both find the same definitions:
+ * <ul >
+ *   <li >the operators and function calls that define a symbol and the kind of assignment each of them makes,</li>
+ *   <li >the elements whose children are not searched: other definitions, <code >Module</code>, <code >With</code>
+ *   and function calls without arguments,</li>
+ *   <li >the heads on the left-hand side of <code >Set</code> like <code >Options[f] = ...</code> that change the kind
+ *   of the assignment, which {@link de.halirutan.mathematica.parsing.psi.impl.assignment.SetDefinitionSymbolVisitor}
+ *   uses as well.</li>
+ * </ul>
+ */
+public final class DefinitionRules {
+
+  /**
+   * The operator forms of the definitions
+   */
+  public static final TokenSet DEFINITION_TYPES = TokenSet.create(SET_EXPRESSION, SET_DELAYED_EXPRESSION,
+      TAG_SET_EXPRESSION, TAG_SET_DELAYED_EXPRESSION, UP_SET_EXPRESSION, UP_SET_DELAYED_EXPRESSION);
+  /**
+   * The heads of the function call forms of the definitions, including <code >SetAttributes</code> and <code
+   * >SetOptions</code>
+   */
+  public static final HeadMatcher DEFINITION_HEADS = HeadMatcher.of("Set", "SetDelayed", "TagSet", "TagSetDelayed",
+      "UpSet", "UpSetDelayed", "SetAttributes", "SetOptions");
+  /**
+   * Heads of function calls which are not definitions but whose children are not searched either
+   */
+  public static final HeadMatcher NOT_DIVED_INTO = HeadMatcher.of("Module", "With");
+
+  /**
+   * Heads on a left-hand side that are skipped, the defined symbol is in their first argument
+   */
+  public static final HeadMatcher TRANSPARENT_HEADS = HeadMatcher.of("HoldPattern", "Longest", "Shortest", "Repeated");
+  /**
+   * Heads on a left-hand side that define a property of the symbol in their first argument instead of the head
+   */
+  public static final HeadMatcher ASSIGNMENT_TYPE_HEADS =
+      HeadMatcher.of("Options", "Attributes", "MessageName", "Default", "Format", "N", "SyntaxInformation");
+  /**
+   * The {@link #ASSIGNMENT_TYPE_HEADS} whose first argument has to be the symbol itself and not a pattern
+   */
+  public static final HeadMatcher SYMBOL_ARGUMENT_HEADS =
+      HeadMatcher.of("Options", "Attributes", "MessageName", "Default", "SyntaxInformation");
+
+  private static final HeadMatcher[] CALL_HEADS = {HeadMatcher.of("Set"), HeadMatcher.of("SetDelayed"),
+      HeadMatcher.of("TagSet"), HeadMatcher.of("TagSetDelayed"), HeadMatcher.of("UpSet"),
+      HeadMatcher.of("UpSetDelayed"), HeadMatcher.of("SetAttributes"), HeadMatcher.of("SetOptions")};
+  private static final SymbolAssignmentType[] CALL_TYPES = {SET_ASSIGNMENT, SET_DELAYED_ASSIGNMENT, TAG_SET_ASSIGNMENT,
+      TAG_SET_DELAYED_ASSIGNMENT, UP_SET_ASSIGNMENT, UP_SET_DELAYED_ASSIGNMENT, ATTRIBUTES_ASSIGNMENT,
+      OPTIONS_ASSIGNMENT};
+
+  private static final HashMap<String, SymbolAssignmentType> ourHeadAssignmentMapping;
+
+  static {
+    ourHeadAssignmentMapping = new HashMap<String, SymbolAssignmentType>(7);
+    ourHeadAssignmentMapping.put("Options", OPTIONS_ASSIGNMENT);
+    ourHeadAssignmentMapping.put("Attributes", ATTRIBUTES_ASSIGNMENT);
+    ourHeadAssignmentMapping.put("MessageName", MESSAGE_ASSIGNMENT);
+    ourHeadAssignmentMapping.put("Default", DEFAULT_ASSIGNMENT);
+    ourHeadAssignmentMapping.put("Format", FORMAT_ASSIGNMENT);
+    ourHeadAssignmentMapping.put("N", N_ASSIGNMENT);
+    ourHeadAssignmentMapping.put("SyntaxInformation", SYNTAX_INFORMATION_ASSIGNMENT);
+  }
+
+  private DefinitionRules() {
+  }
+
+  /**
+   * @param type
+   *     Element type of an operator
+   * @return The kind of assignment the operator makes, or null if it is not one of the {@link #DEFINITION_TYPES}
+   */
+  @Nullable
+  public static SymbolAssignmentType getOperatorAssignmentType(@NotNull IElementType type) {
+    if (type == SET_EXPRESSION) return SET_ASSIGNMENT;
+    if (type == SET_DELAYED_EXPRESSION) return SET_DELAYED_ASSIGNMENT;
+    if (type == TAG_SET_EXPRESSION) return TAG_SET_ASSIGNMENT;
+    if (type == TAG_SET_DELAYED_EXPRESSION) return TAG_SET_DELAYED_ASSIGNMENT;
+    if (type == UP_SET_EXPRESSION) return UP_SET_ASSIGNMENT;
+    if (type == UP_SET_DELAYED_EXPRESSION) return UP_SET_DELAYED_ASSIGNMENT;
+    return null;
+  }
+
+  /**
+   * @param headId
+   *     Id of the head of a function call from {@link SymbolNameInterner}
+   * @return The kind of assignment the function call makes, or null if its head is not one of the {@link
+   * #DEFINITION_HEADS}
+   */
+  @Nullable
+  public static SymbolAssignmentType getCallAssignmentType(int headId) {
+    for (int i = 0; i < CALL_HEADS.length; i++) {
+      if (CALL_HEADS[i].matches(headId)) {
+        return CALL_TYPES[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param head
+   *     Name of the head of a function call
+   * @return The kind of assignment the function call makes, or null if its head is not one of the {@link
+   * #DEFINITION_HEADS}
+   */
+  @Nullable
+  public static SymbolAssignmentType getCallAssignmentType(@NotNull String head) {
+    for (int i = 0; i < CALL_HEADS.length; i++) {
+      if (CALL_HEADS[i].matches(head)) {
+        return CALL_TYPES[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param head
+   *     Name of one of the {@link #ASSIGNMENT_TYPE_HEADS} on a left-hand side
+   * @return The kind of assignment, e.g. {@link SymbolAssignmentType#OPTIONS_ASSIGNMENT} for <code
+   * >Options[f] = ...</code>, or {@link SymbolAssignmentType#UNKNOWN} for other heads
+   */
+  @NotNull
+  public static SymbolAssignmentType getLhsAssignmentType(@NotNull String head) {
+    final SymbolAssignmentType type = ourHeadAssignmentMapping.get(head);
+    return type != null ? type : UNKNOWN;
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.util;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import de.halirutan.mathematica.parsing.psi.api.FunctionCall;
+import de.halirutan.mathematica.parsing.psi.api.LocalScope;
+import de.halirutan.mathematica.parsing.psi.api.MathematicaPsiFile;
+import de.halirutan.mathematica.parsing.psi.api.PatternDefinition;
+import de.halirutan.mathematica.parsing.psi.api.Symbol;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Support for reading one parsed file from several threads at once.
+ * <p/>
+ * A file is <em>frozen</em> when it is not changed anymore while other threads read it. In this mode the following
+ * can run concurrently on the same tree: resolving with {@link LocalDefinitionResolveProcessor} and {@link
+ * GlobalDefinitionResolveProcessor}, {@link FullFormCreator}, {@link GlobalDefinitionCollector} and all methods of the
+ * PSI interfaces that only read. This works because the lazy caches of the PSI are published safely:
+ * <ul >
+ *   <li >the name and context caches of symbols and the head and child caches of function calls write their values
+ *   before a volatile stamp and read the stamp first,</li>
+ *   <li >resolve results of symbols are immutable objects,</li>
+ *   <li >the {@link LocalVariableTable} of a scoping construct, the {@link PatternSummary} of a definition and the
+ *   {@link MathematicaElementIndex} and {@link de.halirutan.mathematica.parsing.ast.AstContextRanges} of a file are
+ *   immutable objects which carry the modification count they were built for and are kept in volatile fields,</li>
+ *   <li >the utilities keep their state in instances instead of static fields, and the symbol name interner is thread
+ *   safe.</li>
+ * </ul>
+ * Writing the caches from several threads at once is harmless because every thread computes the same values. Still,
+ * calling {@link #freeze(PsiFile)} once after parsing fills them up front, so that the concurrent readers neither
+ * race for them nor contend for the PSI lock when wrappers are created.
+ * <p/>
+ * Changing a file while it is read by other threads is not supported. The caller has to make sure that all readers
+ * are done before the next change and that they are started after the change is complete.
+ */
+public final class FrozenPsi {
+
+  private FrozenPsi() {
+  }
+
+  /**
+   * Creates the PSI for every node of the file and fills the lazy caches: names and contexts of symbols, heads of
+   * function calls, local variable tables of scoping constructs, pattern summaries of definitions and the element index
+   * and context ranges of the file. The file must not be changed afterwards while other threads read it.
+   *
+   * @param file
+   *     The parsed file
+   * @return The file itself
+   */
+  @NotNull
+  public static <T extends PsiFile> T freeze(@NotNull T file) {
+    file.getTextLength();
+    PsiElement element = file.getFirstChild();
+    while (element != null) {
+      element.getNode().getStartOffset();
+      if (element instanceof Symbol) {
+        final Symbol symbol = (Symbol) element;
+        symbol.getSymbolNameId();
+        // builds the context ranges of the file with the first symbol
+        symbol.getFullyQualifiedName();
+      } else if (element instanceof FunctionCall) {
+        final FunctionCall functionCall = (FunctionCall) element;
+        functionCall.getHeadId();
+        functionCall.argumentCount();
+        functionCall.isScopingConstruct();
+      }
+      if (element instanceof LocalScope) {
+        ((LocalScope) element).getLocalVariables();
+      }
+      if (element instanceof PatternDefinition) {
+        ((PatternDefinition) element).getPatternSummary();
+      }
+
+      PsiElement next = element.getFirstChild();
+      while (next == null && element != file) {
+        next = element.getNextSibling();
+        if (next == null) {
+          element = element.getParent();
+        }
+      }
+      element = next;
+    }
+    if (file instanceof MathematicaPsiFile) {
+      MathematicaElementIndex.of(file);
+    }
+    return file;
+  }
+}
@@ -3,9 +3,11 @@ package de.halirutan.mathematica.parsing.psi.util;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiWhiteSpace;
+import com.intellij.psi.impl.source.tree.CompositeElement;
+import com.intellij.psi.impl.source.tree.CompositePsiElement;
 import com.intellij.psi.tree.IElementType;
 import de.halirutan.mathematica.parsing.MathematicaElementTypes;
-import de.halirutan.mathematica.parsing.psi.MathematicaVisitor;
+import de.halirutan.mathematica.parsing.psi.MathematicaRecursiveVisitor;
 import de.halirutan.mathematica.parsing.psi.api.*;
 import de.halirutan.mathematica.parsing.psi.api.Number;
 import de.halirutan.mathematica.parsing.psi.api.function.Function;
@@ -17,70 +19,81 @@ import de.halirutan.mathematica.parsing.psi.api.string.MString;
 public class FullFormCreator {
 
 
-  private static StringBuilder myFullFormString;
-
+  /**
+   * Creates the FullForm of a file. Every call uses its own buffer, so the method can be called from several threads at
+   * once.
+   *
+   * @param file
+   *     File to convert
+   * @return The FullForm of all expressions in the file
+   */
   public static String createFullForm(MathematicaPsiFile file) {
-    myFullFormString = new StringBuilder(file.getTextLength());
-    FullFormVisitor visitor = new FullFormVisitor();
+    final StringBuilder fullFormString = new StringBuilder(file.getTextLength());
+    FullFormVisitor visitor = new FullFormVisitor(fullFormString);
     file.accept(visitor);
-    return myFullFormString.toString();
+    return fullFormString.toString();
   }
 
-  static class FullFormVisitor extends MathematicaVisitor {
+  /**
+   * Writes the FullForm while {@link MathematicaRecursiveVisitor} walks the tree. Opening parts are written when an
+   * element is visited and closing brackets when it is finished. Commas are written in front of every printed element
+   * that follows a printed sibling; {@link #myNeedsComma} tracks this for the current level, which works because a
+   * sibling is always finished before the next one is visited and children start with a fresh flag.
+   */
+  static class FullFormVisitor extends MathematicaRecursiveVisitor {
 
-    @Override
-    public void visitFile(final PsiFile file) {
-      file.acceptChildren(this);
+    private final StringBuilder myFullFormString;
+    private boolean myNeedsComma = false;
+
+    FullFormVisitor(StringBuilder fullFormString) {
+      myFullFormString = fullFormString;
     }
 
     @Override
     public void visitElement(final PsiElement element) {
-      super.visitElement(element);
-      final String head = element.toString();
-      final PsiElement[] children = element.getChildren();
-      myFullFormString.append(head).append("[");
-      for (int i = 0; i < children.length; i++) {
-        PsiElement child = children[i];
-        child.accept(this);
-        if (i != children.length-1 && !(child instanceof PsiWhiteSpace) && child.getNextSibling() != null) {
-          myFullFormString.append(",");
-        }
-      }
-      myFullFormString.append("]");
+      if (element instanceof PsiFile) {
+        super.visitElement(element);
+        return;
+      }
+      if (startElement(element)) {
+        myFullFormString.append(element.toString()).append("[");
+        descend(element);
+      }
     }
 
     @Override
     public void visitFunctionCall(final FunctionCall functionCall) {
-      functionCall.getHead().accept(this);
-      myFullFormString.append("[");
-      final PsiElement[] children = functionCall.getChildren();
-      for (int num = 1; num < children.length; num++) {
-        PsiElement child = children[num];
-        child.accept(this);
-        if (num != children.length - 1 && !(child instanceof PsiWhiteSpace)) {
-          myFullFormString.append(",");
-        }
-      }
-      myFullFormString.append("]");
+      if (startElement(functionCall)) {
+        descend(functionCall);
+      }
     }
 
     @Override
     public void visitSymbol(final Symbol symbol) {
-      myFullFormString.append(symbol.getSymbolName());
+      if (startElement(symbol)) {
+        myFullFormString.append(symbol.getSymbolName());
+      }
     }
 
     @Override
     public void visitString(final MString string) {
-      myFullFormString.append(string.getText());
+      if (startElement(string)) {
+        myFullFormString.append(string.getText());
+      }
     }
 
     @Override
     public void visitStringifiedSymbol(final StringifiedSymbol stringifiedSymbol) {
-      myFullFormString.append('"').append(stringifiedSymbol.getText()).append('"');
+      if (startElement(stringifiedSymbol)) {
+        myFullFormString.append('"').append(stringifiedSymbol.getText()).append('"');
+      }
     }
 
     @Override
     public void visitSlot(final Slot slot) {
+      if (!startElement(slot)) {
+        return;
+      }
       final IElementType elementType = slot.getNode().getElementType();
       if (elementType == MathematicaElementTypes.SLOT) {
         String num = slot.getText().substring(1);
@@ -92,21 +105,74 @@ public class FullFormCreator {
         num = num.length() > 0 ? num : "1";
         myFullFormString.append("SlotSequence[").append(num).append("]");
       }
-
-
-
     }
 
     @Override
     public void visitFunction(final Function function) {
-      myFullFormString.append("Function[");
-      function.getFirstChild().accept(this);
-      myFullFormString.append(']');
+      if (startElement(function)) {
+        myFullFormString.append("Function[");
+        descend(function);
+      }
     }
 
     @Override
     public void visitNumber(final Number number) {
-      myFullFormString.append(number.getText());
+      if (startElement(number)) {
+        myFullFormString.append(number.getText());
+      }
+    }
+
+    @Override
+    protected void elementFinished(final PsiElement element) {
+      if (!isPrinted(element)) {
+        return;
+      }
+      if (element instanceof FunctionCall || element instanceof Function || !(element instanceof Symbol ||
+          element instanceof MString || element instanceof StringifiedSymbol || element instanceof Slot ||
+          element instanceof Number)) {
+        myFullFormString.append("]");
+      }
+      final PsiElement parent = element.getParent();
+      if (parent instanceof FunctionCall && element == parent.getFirstChild()) {
+        // the head is followed by the opening bracket of the arguments
+        myFullFormString.append("[");
+        myNeedsComma = false;
+      } else {
+        myNeedsComma = !(element instanceof PsiWhiteSpace);
+      }
+    }
+
+    /**
+     * Checks whether an element is printed and writes the comma that separates it from its previous sibling.
+     */
+    private boolean startElement(final PsiElement element) {
+      if (!isPrinted(element)) {
+        return false;
+      }
+      if (myNeedsComma && !(element.getParent() instanceof PsiFile)) {
+        myFullFormString.append(",");
+      }
+      return true;
+    }
+
+    private void descend(final PsiElement element) {
+      myNeedsComma = false;
+      super.visitElement(element);
+    }
+
+    /**
+     * Children of a file or of an error element are all printed. Below other elements, only composite elements are
+     * printed, and from an anonymous function only its body. This follows what getChildren() returns for the parent.
+     */
+    private static boolean isPrinted(final PsiElement element) {
+      final PsiElement parent = element.getParent();
+      if (parent instanceof PsiFile || parent instanceof CompositePsiElement) {
+        return true;
+      }
+      if (!(element.getNode() instanceof CompositeElement)) {
+        return false;
+      }
+      return !(parent instanceof Function) || element == parent.getFirstChild();
     }
   }
 
@@ -24,7 +24,8 @@ package de.halirutan.mathematica.parsing.psi.util;
 import com.intellij.openapi.progress.ProgressIndicatorProvider;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
-import de.halirutan.mathematica.parsing.psi.MathematicaRecursiveVisitor;
+import com.intellij.psi.search.PsiElementProcessor;
+import de.halirutan.mathematica.parsing.psi.MathematicaVisitor;
 import de.halirutan.mathematica.parsing.psi.SymbolAssignmentType;
 import de.halirutan.mathematica.parsing.psi.api.FunctionCall;
 import de.halirutan.mathematica.parsing.psi.api.Symbol;
@@ -40,16 +41,31 @@ import java.util.Map;
 import static de.halirutan.mathematica.parsing.psi.SymbolAssignmentType.*;
 
 /**
+ * Collects all global definitions of a file. Instead of walking through the whole file, the assignments are taken from
+ * the {@link MathematicaElementIndex} of the file. Like before, definitions which are inside another definition or
+ * inside <code >Module</code> and <code >With</code> are not collected. What counts as a definition is decided by
+ * {@link DefinitionRules}.
+ *
  * @author patrick (1/6/14)
  */
 public class GlobalDefinitionCollector {
 
   private Map<String, HashSet<AssignmentProperty>> myAssignments;
 
-  public GlobalDefinitionCollector(PsiFile startElement) {
+  public GlobalDefinitionCollector(final PsiFile startElement) {
     myAssignments = new HashMap<String, HashSet<AssignmentProperty>>();
     final CollectorVisitor myVisitor = new CollectorVisitor();
-    startElement.accept(myVisitor);
+    MathematicaElementIndex.of(startElement).process(DefinitionRules.DEFINITION_TYPES, DefinitionRules.DEFINITION_HEADS,
+        new PsiElementProcessor<PsiElement>() {
+          @Override
+          public boolean execute(@NotNull PsiElement element) {
+            ProgressIndicatorProvider.checkCanceled();
+            if (!isHidden(element, startElement)) {
+              element.accept(myVisitor);
+            }
+            return true;
+          }
+        });
   }
 
   @NotNull
@@ -70,31 +86,48 @@ public class GlobalDefinitionCollector {
     assignment.add(new AssignmentProperty(symbol, lhs, type));
   }
 
-  private class CollectorVisitor extends MathematicaRecursiveVisitor {
+  /**
+   * Tests whether a definition is inside an element whose children are not searched for definitions. These are other
+   * definitions, <code >Module</code> and <code >With</code> and function calls without arguments.
+   */
+  private static boolean isHidden(PsiElement element, PsiFile file) {
+    for (PsiElement parent = element.getParent(); parent != null && parent != file; parent = parent.getParent()) {
+      if (DefinitionRules.DEFINITION_TYPES.contains(parent.getNode().getElementType())) {
+        return true;
+      }
+      if (parent instanceof FunctionCall) {
+        final FunctionCall functionCall = (FunctionCall) parent;
+        if (functionCall.getArgument(1) == null || functionCall.matchesHead(DefinitionRules.DEFINITION_HEADS) ||
+            functionCall.matchesHead(DefinitionRules.NOT_DIVED_INTO)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private class CollectorVisitor extends MathematicaVisitor {
 
     @Override
     public void visitSetDelayed(final SetDelayed setDelayed) {
       final PsiElement lhs = setDelayed.getFirstChild();
-      SetDefinitionSymbolVisitor visitor = new SetDefinitionSymbolVisitor(lhs, SET_DELAYED_ASSIGNMENT);
-      lhs.accept(visitor);
-      final java.util.Set<Symbol> unboundSymbols = visitor.getUnboundSymbols();
-      for (Symbol symbol : unboundSymbols) {
-        addAssignment(symbol, lhs, visitor.getAssignmentType());
+      final PatternSummary summary = setDelayed.getPatternSummary();
+      for (Symbol symbol : summary.getDefinedSymbols()) {
+        addAssignment(symbol, lhs, summary.getAssignmentType());
       }
     }
 
     @Override
     public void visitSet(final Set set) {
       final PsiElement lhs = set.getFirstChild();
-      SetDefinitionSymbolVisitor visitor = new SetDefinitionSymbolVisitor(lhs, SET_ASSIGNMENT);
-      lhs.accept(visitor);
-      final java.util.Set<Symbol> unboundSymbols = visitor.getUnboundSymbols();
-      for (Symbol symbol : unboundSymbols) {
+      final PatternSummary summary = set.getPatternSummary();
+      final SymbolAssignmentType assignmentType = summary.getAssignmentType();
+      for (Symbol symbol : summary.getDefinedSymbols()) {
         PsiElement context = lhs;
-        if (visitor.getAssignmentType() == ATTRIBUTES_ASSIGNMENT || visitor.getAssignmentType() == OPTIONS_ASSIGNMENT) {
+        if (assignmentType == ATTRIBUTES_ASSIGNMENT || assignmentType == OPTIONS_ASSIGNMENT) {
           context = set.getLastChild();
         }
-        addAssignment(symbol, context, visitor.getAssignmentType());
+        addAssignment(symbol, context, assignmentType);
       }
     }
 
@@ -143,37 +176,32 @@ public class GlobalDefinitionCollector {
     @Override
     public void visitFunctionCall(final FunctionCall functionCall) {
       final PsiElement arg1 = functionCall.getArgument(1);
-      if (arg1 != null) {
-        if (functionCall.matchesHead("Set|SetDelayed")) {
-          SetDefinitionSymbolVisitor visitor = new SetDefinitionSymbolVisitor(arg1);
-          arg1.accept(visitor);
-          final java.util.Set<Symbol> symbols = visitor.getUnboundSymbols();
-          for (Symbol symbol : symbols) {
-            addAssignment(symbol, arg1,functionCall.matchesHead("Set") ? SET_ASSIGNMENT : SET_DELAYED_ASSIGNMENT);
-          }
-        } else if (functionCall.matchesHead("TagSet|TagSetDelayed")) {
-          if (arg1 instanceof Symbol) {
-            addAssignment((Symbol) arg1, functionCall,
-                functionCall.matchesHead("TagSet") ? TAG_SET_ASSIGNMENT : TAG_SET_DELAYED_ASSIGNMENT);
-          }
-        } else if (functionCall.matchesHead("UpSet|UpSetDelayed")) {
-          UpSetDefinitionSymbolVisitor visitor = new UpSetDefinitionSymbolVisitor();
-          arg1.accept(visitor);
-          for (Symbol symbol : visitor.getUnboundSymbols()) {
-            addAssignment(symbol, arg1, functionCall.matchesHead("UpSet") ? UP_SET_ASSIGNMENT : UP_SET_DELAYED_ASSIGNMENT);
+      final SymbolAssignmentType type = DefinitionRules.getCallAssignmentType(functionCall.getHeadId());
+      if (arg1 == null || type == null) {
+        return;
+      }
+      switch (type) {
+        case SET_ASSIGNMENT:
+        case SET_DELAYED_ASSIGNMENT:
+          SetDefinitionSymbolVisitor setVisitor = new SetDefinitionSymbolVisitor(arg1);
+          arg1.accept(setVisitor);
+          for (Symbol symbol : setVisitor.getUnboundSymbols()) {
+            addAssignment(symbol, arg1, type);
           }
-        } else if (functionCall.matchesHead("SetAttributes")) {
-          if (arg1 instanceof Symbol) {
-            addAssignment((Symbol) arg1, functionCall, ATTRIBUTES_ASSIGNMENT);
+          break;
+        case UP_SET_ASSIGNMENT:
+        case UP_SET_DELAYED_ASSIGNMENT:
+          UpSetDefinitionSymbolVisitor upSetVisitor = new UpSetDefinitionSymbolVisitor();
+          arg1.accept(upSetVisitor);
+          for (Symbol symbol : upSetVisitor.getUnboundSymbols()) {
+            addAssignment(symbol, arg1, type);
           }
-        } else if (functionCall.matchesHead("SetOptions")) {
+          break;
+        default:
+          // TagSet, TagSetDelayed, SetAttributes and SetOptions take the symbol itself as first argument
           if (arg1 instanceof Symbol) {
-            addAssignment((Symbol) arg1, functionCall, OPTIONS_ASSIGNMENT);
+            addAssignment((Symbol) arg1, functionCall, type);
           }
-        } else if (!functionCall.matchesHead("Module|With")) {
-          ProgressIndicatorProvider.checkCanceled();
-          functionCall.acceptChildren(this);
-        }
       }
     }
   }
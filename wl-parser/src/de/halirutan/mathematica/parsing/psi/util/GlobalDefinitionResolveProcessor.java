@@ -22,8 +22,10 @@
 package de.halirutan.mathematica.parsing.psi.util;
 
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
 import com.intellij.psi.search.PsiElementProcessor;
 import de.halirutan.mathematica.parsing.psi.api.FunctionCall;
+import de.halirutan.mathematica.parsing.psi.api.PatternDefinition;
 import de.halirutan.mathematica.parsing.psi.api.Symbol;
 import de.halirutan.mathematica.parsing.psi.api.assignment.*;
 import de.halirutan.mathematica.parsing.psi.impl.assignment.SetDefinitionSymbolVisitor;
@@ -35,7 +37,12 @@ import org.jetbrains.annotations.Nullable;
  * @author patrick (1/6/14)
  */
 @SuppressWarnings("BooleanMethodNameMustStartWithQuestion")
-public class GlobalDefinitionResolveProcessor implements PsiElementProcessor {
+public class GlobalDefinitionResolveProcessor implements PsiElementProcessor<PsiElement> {
+  private static final HeadMatcher SET_HEADS = HeadMatcher.of("Set", "SetDelayed");
+  private static final HeadMatcher TAG_SET_HEADS = HeadMatcher.of("TagSet", "TagSetDelayed");
+  private static final HeadMatcher UP_SET_HEADS = HeadMatcher.of("UpSet", "UpSetDelayed");
+  private static final HeadMatcher ATTRIBUTE_HEADS = HeadMatcher.of("SetAttributes", "SetOptions");
+
   private final Symbol myStartElement;
   private PsiElement myReferringSymbol;
 
@@ -44,10 +51,24 @@ public class GlobalDefinitionResolveProcessor implements PsiElementProcessor {
     this.myReferringSymbol = null;
   }
 
+  /**
+   * Searches the definition of the symbol in a file. The result is the same as processing all elements of the file with
+   * {@link com.intellij.psi.util.PsiTreeUtil#processElements(PsiElement, PsiElementProcessor)}, but only the
+   * assignments found in the {@link MathematicaElementIndex} of the file are looked at.
+   *
+   * @param file
+   *     File to search
+   * @return false if a definition was found, true otherwise
+   */
+  public boolean processFile(@NotNull PsiFile file) {
+    return MathematicaElementIndex.of(file).process(
+        DefinitionRules.DEFINITION_TYPES, DefinitionRules.DEFINITION_HEADS, this);
+  }
+
   @Override
   public boolean execute(@NotNull PsiElement element) {
     if (element instanceof Set || element instanceof SetDelayed) {
-      return visitSetDefinition(element.getFirstChild());
+      return visitDefinedSymbols(((PatternDefinition) element).getPatternSummary().getDefinedSymbols());
     }
 
     if (element instanceof TagSet || element instanceof TagSetDelayed) {
@@ -59,13 +80,13 @@ public class GlobalDefinitionResolveProcessor implements PsiElementProcessor {
 
     if (element instanceof FunctionCall) {
       final PsiElement lhs = ((FunctionCall) element).getArgument(1);
-      if (((FunctionCall) element).matchesHead("Set|SetDelayed")) {
+      if (((FunctionCall) element).matchesHead(SET_HEADS)) {
         return visitSetDefinition(lhs);
-      } else if (((FunctionCall) element).matchesHead("TagSet|TagSetDelayed")) {
+      } else if (((FunctionCall) element).matchesHead(TAG_SET_HEADS)) {
         return visitTagSetDefinition(lhs);
-      } else if (((FunctionCall) element).matchesHead("UpSet|UpSetDelayed")) {
+      } else if (((FunctionCall) element).matchesHead(UP_SET_HEADS)) {
         return visitUpSetDefinition(lhs);
-      } else if (((FunctionCall) element).matchesHead("SetAttributes|SetOptions") && lhs instanceof Symbol) {
+      } else if (((FunctionCall) element).matchesHead(ATTRIBUTE_HEADS) && lhs instanceof Symbol) {
         return visitSymbol((Symbol) lhs);
       }
     }
@@ -80,7 +101,7 @@ public class GlobalDefinitionResolveProcessor implements PsiElementProcessor {
    * @return true if the names are equal
    */
   private boolean visitSymbol(final Symbol symbol) {
-    if (myStartElement.getSymbolName().equals(symbol.getSymbolName())) {
+    if (myStartElement.getSymbolNameId() == symbol.getSymbolNameId()) {
       myReferringSymbol = symbol;
       return false;
     }
@@ -94,7 +115,7 @@ public class GlobalDefinitionResolveProcessor implements PsiElementProcessor {
       lhs.accept(definitionVisitor);
       final java.util.Set<Symbol> definitionSymbols = definitionVisitor.getUnboundSymbols();
       for (Symbol next : definitionSymbols) {
-        if (next.getSymbolName().equals(myStartElement.getSymbolName())) {
+        if (next.getSymbolNameId() == myStartElement.getSymbolNameId()) {
           myReferringSymbol = next;
           return false;
         }
@@ -107,23 +128,31 @@ public class GlobalDefinitionResolveProcessor implements PsiElementProcessor {
    * TagSet should be trivial. In f /: g[a,b,..,f,..] = .., f is always expected to be a symbol.
    */
   private boolean visitTagSetDefinition(final PsiElement defSymbol) {
-    if (defSymbol instanceof Symbol && ((Symbol) defSymbol).getSymbolName().matches(myStartElement.getSymbolName())) {
+    if (defSymbol instanceof Symbol && ((Symbol) defSymbol).getSymbolNameId() == myStartElement.getSymbolNameId()) {
       myReferringSymbol = defSymbol;
       return false;
     }
     return true;
   }
 
+  /**
+   * Used for the function call form <code >Set[lhs, rhs]</code>. The operator forms take the defined symbols from the
+   * cached {@link PatternSummary}.
+   */
   private boolean visitSetDefinition(final PsiElement lhs) {
     if (lhs != null) {
       SetDefinitionSymbolVisitor definitionVisitor = new SetDefinitionSymbolVisitor(lhs);
       lhs.accept(definitionVisitor);
-      final java.util.Set<Symbol> definitionSymbols = definitionVisitor.getUnboundSymbols();
-      for (Symbol next : definitionSymbols) {
-        if (next.getSymbolName().equals(myStartElement.getSymbolName())) {
-          myReferringSymbol = next;
-          return false;
-        }
+      return visitDefinedSymbols(definitionVisitor.getUnboundSymbols());
+    }
+    return true;
+  }
+
+  private boolean visitDefinedSymbols(final Iterable<Symbol> definitionSymbols) {
+    for (Symbol next : definitionSymbols) {
+      if (next.getSymbolNameId() == myStartElement.getSymbolNameId()) {
+        myReferringSymbol = next;
+        return false;
       }
     }
     return true;
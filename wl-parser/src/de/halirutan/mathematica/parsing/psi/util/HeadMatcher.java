@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.util;
+
+import de.halirutan.mathematica.parsing.psi.api.FunctionCall;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * A fixed set of function heads like <code >Set</code> and <code >SetDelayed</code>. The names are turned into ids of
+ * the {@link SymbolNameInterner} once when the matcher is created, so testing a function call is a comparison of its
+ * cached head id against a few integers. Matchers should be created once and kept in static fields:
+ * <pre >
+ *   private static final HeadMatcher SET_HEADS = HeadMatcher.of("Set", "SetDelayed");
+ *   ...
+ *   if (functionCall.matchesHead(SET_HEADS)) { ... }
+ * </pre>
+ * Like the former regular expression matching, the head has to be a symbol which is written exactly as given, so
+ * <code >System`Set</code> is not matched by <code >Set</code>.
+ */
+public final class HeadMatcher {
+
+  private final int[] myIds;
+  private final String[] myNames;
+
+  private HeadMatcher(String[] names) {
+    // the interned names are kept because the ids are only valid while their names are referenced
+    myNames = new String[names.length];
+    myIds = new int[names.length];
+    for (int i = 0; i < names.length; i++) {
+      myNames[i] = SymbolNameInterner.intern(names[i]);
+      myIds[i] = SymbolNameInterner.getId(myNames[i]);
+    }
+  }
+
+  /**
+   * Creates a matcher for the given head names.
+   *
+   * @param names
+   *     Names of the heads which should be matched
+   * @return The matcher
+   */
+  @NotNull
+  public static HeadMatcher of(@NotNull String... names) {
+    return new HeadMatcher(names);
+  }
+
+  /**
+   * Tests an interned symbol id against the heads of this matcher.
+   *
+   * @param id
+   *     Id of a symbol name from {@link SymbolNameInterner}
+   * @return true if the id belongs to one of the heads
+   */
+  public boolean matches(int id) {
+    if (id == SymbolNameInterner.NO_ID) {
+      return false;
+    }
+    for (int myId : myIds) {
+      if (myId == id) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Tests a name against the heads of this matcher.
+   *
+   * @param name
+   *     Name of a symbol
+   * @return true if the name is one of the heads
+   */
+  public boolean matches(@NotNull String name) {
+    for (String myName : myNames) {
+      if (myName.equals(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Tests whether the head of a function call is one of the heads of this matcher.
+   *
+   * @param functionCall
+   *     Function call to test
+   * @return true if the head is a symbol that is one of the heads
+   */
+  public boolean matches(@NotNull FunctionCall functionCall) {
+    return matches(functionCall.getHeadId());
+  }
+
+  /**
+   * @return The ids of the heads, used by {@link MathematicaElementIndex} for lookups
+   */
+  int[] getIds() {
+    return myIds;
+  }
+
+  @Override
+  public String toString() {
+    return "HeadMatcher" + Arrays.toString(myNames);
+  }
+}
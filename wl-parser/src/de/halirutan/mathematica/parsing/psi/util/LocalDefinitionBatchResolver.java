@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.util;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import de.halirutan.mathematica.parsing.psi.MathematicaRecursiveVisitor;
+import de.halirutan.mathematica.parsing.psi.api.FunctionCall;
+import de.halirutan.mathematica.parsing.psi.api.LocalScope;
+import de.halirutan.mathematica.parsing.psi.api.Slot;
+import de.halirutan.mathematica.parsing.psi.api.Symbol;
+import de.halirutan.mathematica.parsing.psi.util.LocalizationConstruct.ConstructType;
+import de.halirutan.mathematica.parsing.psi.api.assignment.SetDelayed;
+import de.halirutan.mathematica.parsing.psi.api.assignment.TagSetDelayed;
+import de.halirutan.mathematica.parsing.psi.api.function.Function;
+import de.halirutan.mathematica.parsing.psi.api.rules.RuleDelayed;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntObjectHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves all symbols of a file to their local definitions in one walk through the file. The result for every symbol
+ * is the same that {@link LocalDefinitionResolveProcessor} finds when it is run with a tree walk up from the symbol, and
+ * it is stored with {@link Symbol#setReferringElement(Symbol, ConstructType, PsiElement)}.
+ * <p/>
+ * Resolving every symbol with its own walk up costs one step for each enclosing element and the file itself loops
+ * through all its top-level expressions for each symbol. Here, the {@link LocalVariableTable} of a scoping element is
+ * read once when the walk enters it. For every symbol name, the bindings of the scopes that are currently open form a stack so that the
+ * innermost binding is found in constant time. Scopes are
+ * <ul >
+ * <li >function calls like <code >Module</code>, <code >Function</code>, <code >Table</code>, <code >Compile</code>,
+ * <code >Limit</code> and <code >Manipulate</code> (see {@link LocalizationConstruct}),</li>
+ * <li >the patterns of <code >SetDelayed</code>, <code >TagSetDelayed</code> and <code >RuleDelayed</code>,</li>
+ * <li >anonymous functions <code >body&amp;</code> and <code >Function[body]</code> to which slots like <code >#1</code> are
+ * bound.</li>
+ * </ul>
+ * Symbols which have no local definition get an empty resolve result, so after {@link #resolve()} every symbol of the
+ * file has a cached result.
+ */
+public class LocalDefinitionBatchResolver {
+
+  private final PsiFile myFile;
+  private final TIntObjectHashMap<Binding> myBindings = new TIntObjectHashMap<Binding>();
+  private final List<Scope> myScopes = new ArrayList<Scope>();
+  private final List<PsiElement> mySlotScopes = new ArrayList<PsiElement>();
+  private final Map<Slot, PsiElement> mySlotFunctions = new IdentityHashMap<Slot, PsiElement>();
+  private int mySymbolCount;
+  private int myLocalSymbolCount;
+
+  public LocalDefinitionBatchResolver(@NotNull PsiFile file) {
+    myFile = file;
+  }
+
+  /**
+   * Resolves all symbols of a file and fills their resolve caches.
+   *
+   * @param file
+   *     The file to resolve
+   * @return The resolver which holds the slot bindings and counts
+   */
+  @NotNull
+  public static LocalDefinitionBatchResolver resolveFile(@NotNull PsiFile file) {
+    final LocalDefinitionBatchResolver resolver = new LocalDefinitionBatchResolver(file);
+    resolver.resolve();
+    return resolver;
+  }
+
+  /**
+   * Walks once through the file and stores the local definition of every symbol in its resolve cache.
+   */
+  public void resolve() {
+    myBindings.clear();
+    myScopes.clear();
+    mySlotScopes.clear();
+    mySlotFunctions.clear();
+    mySymbolCount = 0;
+    myLocalSymbolCount = 0;
+    myFile.accept(new ResolveVisitor());
+  }
+
+  /**
+   * Returns the anonymous function a slot belongs to. This is the innermost <code >body&amp;</code> or
+   * <code >Function[body]</code> around the slot.
+   *
+   * @param slot
+   *     A slot of the resolved file
+   * @return The function or null if the slot is not inside a function
+   */
+  @Nullable
+  public PsiElement getFunction(@NotNull Slot slot) {
+    return mySlotFunctions.get(slot);
+  }
+
+  @NotNull
+  public Map<Slot, PsiElement> getSlotFunctions() {
+    return Collections.unmodifiableMap(mySlotFunctions);
+  }
+
+  public int getSymbolCount() {
+    return mySymbolCount;
+  }
+
+  /**
+   * @return The number of symbols that were resolved to a local definition
+   */
+  public int getLocalSymbolCount() {
+    return myLocalSymbolCount;
+  }
+
+  private void openScope(PsiElement element, LocalVariableTable variables, PsiElement localization) {
+    final Scope scope = new Scope(element);
+    for (Symbol variable : variables.getVariables()) {
+      final int id = variable.getSymbolNameId();
+      myBindings.put(id, new Binding(variable, variables.getType(), localization, myBindings.get(id)));
+      scope.myNameIds.add(id);
+    }
+    myScopes.add(scope);
+  }
+
+  private void closeScopes(PsiElement element) {
+    while (!myScopes.isEmpty() && myScopes.get(myScopes.size() - 1).myElement == element) {
+      final Scope scope = myScopes.remove(myScopes.size() - 1);
+      for (int i = 0; i < scope.myNameIds.size(); i++) {
+        final int id = scope.myNameIds.get(i);
+        final Binding shadowed = myBindings.get(id).myShadowed;
+        if (shadowed == null) {
+          myBindings.remove(id);
+        } else {
+          myBindings.put(id, shadowed);
+        }
+      }
+    }
+    if (!mySlotScopes.isEmpty() && mySlotScopes.get(mySlotScopes.size() - 1) == element) {
+      mySlotScopes.remove(mySlotScopes.size() - 1);
+    }
+  }
+
+  private class ResolveVisitor extends MathematicaRecursiveVisitor {
+
+    @Override
+    public void visitFunctionCall(FunctionCall functionCall) {
+      if (functionCall.getHead() instanceof Symbol && functionCall.isScopingConstruct()) {
+        openScope(functionCall, ((LocalScope) functionCall).getLocalVariables(), functionCall.getFirstChild());
+        if (functionCall.getScopingConstruct() == ConstructType.FUNCTION && functionCall.argumentCount() == 1) {
+          mySlotScopes.add(functionCall);
+        }
+      }
+      visitElement(functionCall);
+    }
+
+    @Override
+    public void visitSetDelayed(SetDelayed setDelayed) {
+      openPatternScope((LocalScope) setDelayed);
+    }
+
+    @Override
+    public void visitTagSetDelayed(TagSetDelayed tagSetDelayed) {
+      openPatternScope((LocalScope) tagSetDelayed);
+    }
+
+    @Override
+    public void visitRuleDelayed(RuleDelayed ruleDelayed) {
+      openPatternScope((LocalScope) ruleDelayed);
+    }
+
+    @Override
+    public void visitFunction(Function function) {
+      mySlotScopes.add(function);
+      visitElement(function);
+    }
+
+    @Override
+    public void visitSlot(Slot slot) {
+      if (!mySlotScopes.isEmpty()) {
+        mySlotFunctions.put(slot, mySlotScopes.get(mySlotScopes.size() - 1));
+      }
+    }
+
+    @Override
+    public void visitSymbol(Symbol symbol) {
+      mySymbolCount++;
+      final Binding binding = myBindings.get(symbol.getSymbolNameId());
+      if (binding != null) {
+        myLocalSymbolCount++;
+        symbol.setReferringElement(binding.mySymbol, binding.myType, binding.myLocalization);
+      } else {
+        symbol.setReferringElement(null, ConstructType.NULL, null);
+      }
+    }
+
+    @Override
+    protected void elementFinished(PsiElement element) {
+      closeScopes(element);
+    }
+
+    private void openPatternScope(LocalScope element) {
+      openScope(element, element.getLocalVariables(), element);
+      visitElement(element);
+    }
+  }
+
+  private static class Scope {
+    private final PsiElement myElement;
+    private final TIntArrayList myNameIds = new TIntArrayList(2);
+
+    private Scope(PsiElement element) {
+      myElement = element;
+    }
+  }
+
+  /**
+   * The binding of a name in one scope. Bindings of the same name in outer scopes are linked through {@link
+   * #myShadowed}.
+   */
+  private static class Binding {
+    private final Symbol mySymbol;
+    private final ConstructType myType;
+    private final PsiElement myLocalization;
+    private final Binding myShadowed;
+
+    private Binding(Symbol symbol, ConstructType type, PsiElement localization, Binding shadowed) {
+      mySymbol = symbol;
+      myType = type;
+      myLocalization = localization;
+      myShadowed = shadowed;
+    }
+  }
+}
@@ -21,22 +21,17 @@
 
 package de.halirutan.mathematica.parsing.psi.util;
 
-import com.google.common.collect.Lists;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.ResolveState;
 import com.intellij.psi.scope.BaseScopeProcessor;
 import com.intellij.psi.scope.PsiScopeProcessor;
 import com.intellij.psi.util.PsiTreeUtil;
 import de.halirutan.mathematica.parsing.psi.api.FunctionCall;
+import de.halirutan.mathematica.parsing.psi.api.LocalScope;
 import de.halirutan.mathematica.parsing.psi.api.Symbol;
-import de.halirutan.mathematica.parsing.psi.api.assignment.SetDelayed;
-import de.halirutan.mathematica.parsing.psi.api.assignment.TagSetDelayed;
-import de.halirutan.mathematica.parsing.psi.api.rules.RuleDelayed;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.List;
-
 /**
  * Provides the functionality of resolving local references. This means, this class takes care to find out where a local
  * variable was defined and it can be used to find all references of a variable inside a scope. "Local" in this context
@@ -91,6 +86,9 @@ public class LocalDefinitionResolveProcessor extends BaseScopeProcessor {
    * >TagSetDelayed</code>.
    * <p/>
    * Finally, <code >RuleDelayed</code> constructs are checked.
+   * <p/>
+   * All of these elements are a {@link LocalScope} and cache their variables in a {@link LocalVariableTable}, so
+   * checking an element is a single hash lookup instead of extracting and comparing all its variables again.
    *
    * @param element
    *     Element to check for defining the {@link #myStartElement}.
@@ -100,71 +98,15 @@ public class LocalDefinitionResolveProcessor extends BaseScopeProcessor {
    */
   @Override
   public boolean execute(@NotNull PsiElement element, ResolveState state) {
-    if (element instanceof FunctionCall) {
-      final FunctionCall functionCall = (FunctionCall) element;
-      if (functionCall.isScopingConstruct()) {
-        List<Symbol> vars = Lists.newArrayList();
-        final LocalizationConstruct.ConstructType scopingConstruct = functionCall.getScopingConstruct();
-
-        if (LocalizationConstruct.isFunctionLike(scopingConstruct)) {
-          vars = MathematicaPsiUtilities.getLocalFunctionVariables(functionCall);
-        }
-
-        if (LocalizationConstruct.isModuleLike(scopingConstruct)) {
-          vars = MathematicaPsiUtilities.getLocalModuleLikeVariables(functionCall);
-        }
-
-        if (LocalizationConstruct.isTableLike(scopingConstruct)) {
-          vars = MathematicaPsiUtilities.getLocalTableLikeVariables(functionCall);
-        }
-
-        if (LocalizationConstruct.isManipulateLike(scopingConstruct)) {
-          vars = MathematicaPsiUtilities.getLocalManipulateLikeVariables(functionCall);
-        }
-
-        if (LocalizationConstruct.isCompileLike(scopingConstruct)) {
-          vars = MathematicaPsiUtilities.getLocalCompileLikeVariables(functionCall);
-        }
-
-        if (LocalizationConstruct.isLimitLike(scopingConstruct)) {
-          vars = MathematicaPsiUtilities.getLocalLimitVariables(functionCall);
-        }
-
-        for (Symbol v : vars) {
-          if (v.getSymbolName().equals(myStartElement.getSymbolName())) {
-            myReferringSymbol = v;
-            myLocalizationSymbol = element.getFirstChild();
-            myLocalization = scopingConstruct;
-            return false;
-          }
-        }
-      }
-    } else if (element instanceof SetDelayed || element instanceof TagSetDelayed) {
-
-      MathematicaPatternVisitor patternVisitor = new MathematicaPatternVisitor();
-      element.accept(patternVisitor);
-      for (Symbol p : patternVisitor.getPatternSymbols()) {
-        if (p.getSymbolName().equals(myStartElement.getSymbolName())) {
-          myReferringSymbol = p;
-          myLocalization = LocalizationConstruct.ConstructType.SETDELAYEDPATTERN;
-          myLocalizationSymbol = element;
-          return false;
-        }
+    if (element instanceof LocalScope) {
+      final LocalVariableTable variables = ((LocalScope) element).getLocalVariables();
+      final Symbol variable = variables.get(myStartElement.getSymbolNameId());
+      if (variable != null) {
+        myReferringSymbol = variable;
+        myLocalization = variables.getType();
+        myLocalizationSymbol = element instanceof FunctionCall ? element.getFirstChild() : element;
+        return false;
       }
-    } else if (element instanceof RuleDelayed) {
-      MathematicaPatternVisitor patternVisitor = new MathematicaPatternVisitor();
-      element.accept(patternVisitor);
-
-      for (Symbol symbol : patternVisitor.getPatternSymbols()) {
-        if (symbol.getSymbolName().equals(myStartElement.getSymbolName())) {
-          myReferringSymbol = symbol;
-          myLocalization = LocalizationConstruct.ConstructType.RULEDELAYED;
-          myLocalizationSymbol = element;
-          return false;
-        }
-      }
-
-
     }
     return true;
   }
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.util;
+
+import de.halirutan.mathematica.parsing.psi.api.FunctionCall;
+import de.halirutan.mathematica.parsing.psi.api.Symbol;
+import de.halirutan.mathematica.parsing.psi.util.LocalizationConstruct.ConstructType;
+import gnu.trove.TIntObjectHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The local variables of one scoping element, hashed by the id of their symbol name. When several variables have the
+ * same name, the first one is kept, which is the one {@link LocalDefinitionResolveProcessor} used to find by comparing
+ * the variables one after another.
+ * <p/>
+ * A table is immutable. It stores the modification count of the node it was built for, so that the element which
+ * caches it can tell whether it has to build a new one.
+ */
+public final class LocalVariableTable {
+
+  public static final LocalVariableTable EMPTY = new LocalVariableTable(ConstructType.NULL, -1);
+
+  private final TIntObjectHashMap<Symbol> myVariables = new TIntObjectHashMap<Symbol>(4);
+  private final List<Symbol> myOrderedVariables = new ArrayList<Symbol>(4);
+  private final ConstructType myType;
+  private final int myStamp;
+
+  private LocalVariableTable(ConstructType type, int stamp) {
+    myType = type;
+    myStamp = stamp;
+  }
+
+  /**
+   * Builds the table for a function call like <code >Module</code>, <code >Table</code> or <code >Compile</code>.
+   *
+   * @param functionCall
+   *     The scoping function call
+   * @param stamp
+   *     Modification count of the node of the function call
+   * @return The new table or {@link #EMPTY} if the call localizes nothing
+   */
+  @NotNull
+  public static LocalVariableTable forScopingConstruct(@NotNull FunctionCall functionCall, int stamp) {
+    final ConstructType type = functionCall.getScopingConstruct();
+    List<Symbol> variables = Collections.emptyList();
+    if (LocalizationConstruct.isFunctionLike(type)) {
+      variables = MathematicaPsiUtilities.getLocalFunctionVariables(functionCall);
+    } else if (LocalizationConstruct.isModuleLike(type)) {
+      variables = MathematicaPsiUtilities.getLocalModuleLikeVariables(functionCall);
+    } else if (LocalizationConstruct.isTableLike(type)) {
+      variables = MathematicaPsiUtilities.getLocalTableLikeVariables(functionCall);
+    } else if (LocalizationConstruct.isManipulateLike(type)) {
+      variables = MathematicaPsiUtilities.getLocalManipulateLikeVariables(functionCall);
+    } else if (LocalizationConstruct.isCompileLike(type)) {
+      variables = MathematicaPsiUtilities.getLocalCompileLikeVariables(functionCall);
+    } else if (LocalizationConstruct.isLimitLike(type)) {
+      variables = MathematicaPsiUtilities.getLocalLimitVariables(functionCall);
+    }
+    return create(variables, type, stamp);
+  }
+
+  /**
+   * Builds the table of the pattern variables of <code >SetDelayed</code>, <code >TagSetDelayed</code> or
+   * <code >RuleDelayed</code>.
+   *
+   * @param summary
+   *     The summary of the left side of the delayed assignment or rule
+   * @param type
+   *     {@link ConstructType#SETDELAYEDPATTERN} or {@link ConstructType#RULEDELAYED}
+   * @param stamp
+   *     Modification count of the node of the element
+   * @return The new table
+   */
+  @NotNull
+  public static LocalVariableTable forPatterns(@NotNull PatternSummary summary, @NotNull ConstructType type, int stamp) {
+    return create(summary.getPatternSymbols(), type, stamp);
+  }
+
+  private static LocalVariableTable create(Iterable<Symbol> variables, ConstructType type, int stamp) {
+    final LocalVariableTable table = new LocalVariableTable(type, stamp);
+    for (Symbol variable : variables) {
+      final int id = variable.getSymbolNameId();
+      if (!table.myVariables.containsKey(id)) {
+        table.myVariables.put(id, variable);
+        table.myOrderedVariables.add(variable);
+      }
+    }
+    return table.myVariables.isEmpty() && type == ConstructType.NULL ? EMPTY : table;
+  }
+
+  /**
+   * @return true if the table was built for the given modification count
+   */
+  public boolean isUpToDate(int stamp) {
+    return myStamp == stamp;
+  }
+
+  /**
+   * Looks up the variable with the given name.
+   *
+   * @param nameId
+   *     Id of the symbol name from {@link Symbol#getSymbolNameId()}
+   * @return The declaring symbol or null if no variable has this name
+   */
+  @Nullable
+  public Symbol get(int nameId) {
+    return myVariables.get(nameId);
+  }
+
+  /**
+   * @return The variables in the order they are declared, one per name
+   */
+  @NotNull
+  public List<Symbol> getVariables() {
+    return Collections.unmodifiableList(myOrderedVariables);
+  }
+
+  /**
+   * @return The kind of localization, e.g. {@link ConstructType#MODULE}
+   */
+  @NotNull
+  public ConstructType getType() {
+    return myType;
+  }
+
+  public int size() {
+    return myOrderedVariables.size();
+  }
+
+  public boolean isEmpty() {
+    return myOrderedVariables.isEmpty();
+  }
+}
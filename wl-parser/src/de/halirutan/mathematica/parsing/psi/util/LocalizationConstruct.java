@@ -21,94 +21,63 @@
 
 package de.halirutan.mathematica.parsing.psi.util;
 
-import com.google.common.collect.Sets;
-
+import java.util.EnumSet;
 import java.util.Set;
 
+import static de.halirutan.mathematica.parsing.psi.util.LocalizationConstruct.ConstructType.*;
+
 /**
+ * Tells which function calls localize variables and of which kind they are. The scoping construct of a head is taken
+ * from the {@link SystemSymbolTable} and the kinds are sets of {@link ConstructType}, so none of the tests compares
+ * strings.
+ *
  * @author patrick (7/24/13)
  */
 public class LocalizationConstruct {
 
-  private static final Set<String> myModuleLike = Sets.newHashSet("Module", "Block", "With", "DynamicModule");
-  private static final Set<String> myFunctionLike = Sets.newHashSet("Function");
-  private static final Set<String> myTableLike = Sets.newHashSet("Table", "Sum", "Integrate", "NSum", "Plot", "Plot3D", "ContourPlot", "ContourPlot3D");
-  private static final Set<String> myCompileLike = Sets.newHashSet("Compile");
-  private static final Set<String> myLimitLike = Sets.newHashSet("Limit");
-  private static final Set<String> myRuleLike = Sets.newHashSet("RuleDelayed");
-  private static final Set<String> myManipulateLike = Sets.newHashSet("Manipulate");
+  private static final Set<ConstructType> myModuleLike = EnumSet.of(MODULE, BLOCK, WITH, DYNAMICMODULE);
+  private static final Set<ConstructType> myFunctionLike = EnumSet.of(FUNCTION);
+  private static final Set<ConstructType> myTableLike =
+      EnumSet.of(TABLE, SUM, INTEGRATE, NSUM, PLOT, PLOT3D, CONTOURPLOT, CONTOURPLOT3D);
+  private static final Set<ConstructType> myCompileLike = EnumSet.of(COMPILE);
+  private static final Set<ConstructType> myLimitLike = EnumSet.of(LIMIT);
+  private static final Set<ConstructType> myRuleLike = EnumSet.of(RULEDELAYED);
+  private static final Set<ConstructType> myManipulateLike = EnumSet.of(MANIPULATE);
 
   public static boolean isLocalizationConstruct(String elementName) {
-    return myModuleLike.contains(elementName) ||
-        myTableLike.contains(elementName) ||
-        myCompileLike.contains(elementName) ||
-        myLimitLike.contains(elementName) ||
-        myRuleLike.contains(elementName) ||
-        myManipulateLike.contains(elementName) ||
-        myFunctionLike.contains(elementName);
+    return SystemSymbolTable.getScopingConstruct(elementName) != NULL;
   }
 
   public static boolean isModuleLike(ConstructType scopingConstruct) {
-    for (String s : myModuleLike) {
-      if (s.equalsIgnoreCase(scopingConstruct.toString()))
-        return true;
-    }
-    return false;
+    return myModuleLike.contains(scopingConstruct);
   }
 
   public static boolean isTableLike(ConstructType scopingConstruct) {
-    for (String s : myTableLike) {
-      if (s.equalsIgnoreCase(scopingConstruct.toString()))
-        return true;
-    }
-    return false;
+    return myTableLike.contains(scopingConstruct);
   }
 
   public static boolean isCompileLike(ConstructType scopingConstruct) {
-    for (String s : myCompileLike) {
-      if (s.equalsIgnoreCase(scopingConstruct.toString()))
-        return true;
-    }
-    return false;
+    return myCompileLike.contains(scopingConstruct);
   }
 
   public static boolean isManipulateLike(ConstructType scopingConstruct) {
-    for (String s : myManipulateLike) {
-      if (s.equalsIgnoreCase(scopingConstruct.toString()))
-        return true;
-    }
-    return false;
+    return myManipulateLike.contains(scopingConstruct);
   }
 
   public static boolean isRuleLike(ConstructType scopingConstruct) {
-    for (String s : myRuleLike) {
-      if (s.equalsIgnoreCase(scopingConstruct.toString()))
-        return true;
-    }
-    return false;
+    return myRuleLike.contains(scopingConstruct);
   }
 
   public static boolean isLimitLike(ConstructType scopingConstruct) {
-    for (String s : myLimitLike) {
-      if (s.equalsIgnoreCase(scopingConstruct.toString()))
-        return true;
-    }
-    return false;
+    return myLimitLike.contains(scopingConstruct);
   }
 
   public static boolean isFunctionLike(ConstructType scopingConstruct) {
-    for (String s : myFunctionLike) {
-      if (s.equalsIgnoreCase(scopingConstruct.toString()))
-        return true;
-    }
-    return false;
+    return myFunctionLike.contains(scopingConstruct);
   }
 
   public static ConstructType getType(String name) {
-    if (isLocalizationConstruct(name)) {
-      return ConstructType.valueOf(name.toUpperCase());
-    }
-    return ConstructType.NULL;
+    return SystemSymbolTable.getScopingConstruct(name);
   }
 
   public enum ConstructType {
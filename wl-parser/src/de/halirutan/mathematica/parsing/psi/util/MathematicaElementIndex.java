@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.util;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.impl.source.tree.CompositeElement;
+import com.intellij.psi.search.PsiElementProcessor;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
+import de.halirutan.mathematica.parsing.psi.api.FunctionCall;
+import de.halirutan.mathematica.parsing.psi.impl.MathematicaPsiFileImpl;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TIntObjectIterator;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An index of all composite elements of a file by their element type and, for function calls, by the interned name of
+ * their head. Questions like "where are all <code >SetDelayed</code>" or "where are all calls to <code >Module</code>"
+ * are answered by a lookup instead of a walk through the whole file. The index is built in one pass the first time it
+ * is requested through {@link #of(PsiFile)} and is kept by the file until the file is changed. Therefore, when several
+ * analyses run on the same file, the tree is walked only once.
+ * <p/>
+ * An index is immutable and can be shared between threads. All lists and processing methods return the elements in
+ * the order in which they appear in the file, which is the pre-order of the tree.
+ */
+public final class MathematicaElementIndex {
+
+  private static final int[] NO_POSITIONS = new int[0];
+
+  private final int myStamp;
+  private final PsiElement[] myElements;
+  private final TIntObjectHashMap<int[]> myTypePositions;
+  private final TIntObjectHashMap<int[]> myHeadPositions;
+
+  private MathematicaElementIndex(int stamp, PsiElement[] elements, TIntObjectHashMap<int[]> typePositions,
+                                  TIntObjectHashMap<int[]> headPositions) {
+    myStamp = stamp;
+    myElements = elements;
+    myTypePositions = typePositions;
+    myHeadPositions = headPositions;
+  }
+
+  /**
+   * Returns the index of a file. For Mathematica files the index is cached in the file and only rebuilt after the file
+   * was changed. For other files a new index is built on every call.
+   *
+   * @param file
+   *     File to index
+   * @return An up-to-date index of the file
+   */
+  @NotNull
+  public static MathematicaElementIndex of(@NotNull PsiFile file) {
+    if (file instanceof MathematicaPsiFileImpl) {
+      return ((MathematicaPsiFileImpl) file).getElementIndex();
+    }
+    return build(file);
+  }
+
+  /**
+   * Walks through the whole file and collects its composite elements. This is used by the caching in {@link
+   * MathematicaPsiFileImpl} and should not be called directly; use {@link #of(PsiFile)} instead.
+   *
+   * @param file
+   *     File to index
+   * @return A new index of the file
+   */
+  @NotNull
+  public static MathematicaElementIndex build(@NotNull PsiFile file) {
+    final ASTNode root = file.getNode();
+    final int stamp = getStamp(root);
+    final ArrayList<PsiElement> elements = new ArrayList<PsiElement>();
+    final TIntObjectHashMap<TIntArrayList> typePositions = new TIntObjectHashMap<TIntArrayList>();
+    final TIntObjectHashMap<TIntArrayList> headPositions = new TIntObjectHashMap<TIntArrayList>();
+
+    ASTNode node = root.getFirstChildNode();
+    while (node != null) {
+      if (node instanceof CompositeElement) {
+        final PsiElement element = node.getPsi();
+        final int position = elements.size();
+        elements.add(element);
+        add(typePositions, node.getElementType().getIndex(), position);
+        if (element instanceof FunctionCall) {
+          final int headId = ((FunctionCall) element).getHeadId();
+          if (headId != SymbolNameInterner.NO_ID) {
+            add(headPositions, headId, position);
+          }
+        }
+        final ASTNode firstChild = node.getFirstChildNode();
+        if (firstChild != null) {
+          node = firstChild;
+          continue;
+        }
+      }
+      while (node != null && node.getTreeNext() == null) {
+        node = node.getTreeParent();
+        if (node == root) {
+          node = null;
+        }
+      }
+      if (node != null) {
+        node = node.getTreeNext();
+      }
+    }
+    return new MathematicaElementIndex(stamp, elements.toArray(new PsiElement[elements.size()]),
+        toArrays(typePositions), toArrays(headPositions));
+  }
+
+  /**
+   * Tests whether the index still describes the given file tree.
+   *
+   * @param root
+   *     The root node of the file
+   * @return true if the file was not changed since the index was built
+   */
+  public boolean isUpToDate(@NotNull ASTNode root) {
+    return myStamp == getStamp(root);
+  }
+
+  /**
+   * @return The number of indexed elements
+   */
+  public int size() {
+    return myElements.length;
+  }
+
+  /**
+   * Returns all elements of a type.
+   *
+   * @param type
+   *     Element type, e.g. <code >MathematicaElementTypes.SET_DELAYED_EXPRESSION</code>
+   * @return The elements in the order of the file
+   */
+  @NotNull
+  public List<PsiElement> getElements(@NotNull IElementType type) {
+    final int[] positions = getPositions(myTypePositions, type.getIndex());
+    if (positions.length == 0) {
+      return Collections.emptyList();
+    }
+    final List<PsiElement> result = new ArrayList<PsiElement>(positions.length);
+    for (int position : positions) {
+      result.add(myElements[position]);
+    }
+    return result;
+  }
+
+  /**
+   * Returns all function calls whose head is one of the given symbols.
+   *
+   * @param heads
+   *     Heads of the function calls
+   * @return The function calls in the order of the file
+   */
+  @NotNull
+  public List<FunctionCall> getFunctionCalls(@NotNull HeadMatcher heads) {
+    final List<FunctionCall> result = new ArrayList<FunctionCall>();
+    process(TokenSet.EMPTY, heads, new PsiElementProcessor<PsiElement>() {
+      @Override
+      public boolean execute(@NotNull PsiElement element) {
+        result.add((FunctionCall) element);
+        return true;
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Runs a processor over all elements which either have one of the given types or are function calls with one of the
+   * given heads. The elements are processed in the order of the file, so stopping early finds the same element a
+   * processor would find by walking through the whole tree.
+   *
+   * @param types
+   *     Element types to process
+   * @param heads
+   *     Heads of function calls to process
+   * @param processor
+   *     Processor which is called for every matching element
+   * @return false if the processor stopped the processing, true otherwise
+   */
+  public boolean process(@NotNull TokenSet types, @NotNull HeadMatcher heads,
+                         @NotNull PsiElementProcessor<PsiElement> processor) {
+    final List<int[]> lists = new ArrayList<int[]>();
+    for (IElementType type : types.getTypes()) {
+      addIfNotEmpty(lists, getPositions(myTypePositions, type.getIndex()));
+    }
+    for (int headId : heads.getIds()) {
+      addIfNotEmpty(lists, getPositions(myHeadPositions, headId));
+    }
+
+    // merge the sorted position lists; an element can be in two of them when it is a function call that has a
+    // requested type and a requested head
+    final int[] cursors = new int[lists.size()];
+    int last = -1;
+    while (true) {
+      int next = Integer.MAX_VALUE;
+      int list = -1;
+      for (int i = 0; i < cursors.length; i++) {
+        final int[] positions = lists.get(i);
+        while (cursors[i] < positions.length && positions[cursors[i]] <= last) {
+          cursors[i]++;
+        }
+        if (cursors[i] < positions.length && positions[cursors[i]] < next) {
+          next = positions[cursors[i]];
+          list = i;
+        }
+      }
+      if (list == -1) {
+        return true;
+      }
+      cursors[list]++;
+      last = next;
+      if (!processor.execute(myElements[next])) {
+        return false;
+      }
+    }
+  }
+
+  private static int getStamp(@NotNull ASTNode root) {
+    return root instanceof CompositeElement ? ((CompositeElement) root).getModificationCount() : 0;
+  }
+
+  private static void add(TIntObjectHashMap<TIntArrayList> map, int key, int position) {
+    TIntArrayList positions = map.get(key);
+    if (positions == null) {
+      positions = new TIntArrayList(4);
+      map.put(key, positions);
+    }
+    positions.add(position);
+  }
+
+  private static void addIfNotEmpty(List<int[]> lists, int[] positions) {
+    if (positions.length > 0) {
+      lists.add(positions);
+    }
+  }
+
+  private static int[] getPositions(TIntObjectHashMap<int[]> map, int key) {
+    final int[] positions = map.get(key);
+    return positions == null ? NO_POSITIONS : positions;
+  }
+
+  private static TIntObjectHashMap<int[]> toArrays(TIntObjectHashMap<TIntArrayList> map) {
+    final TIntObjectHashMap<int[]> result = new TIntObjectHashMap<int[]>(map.size());
+    for (TIntObjectIterator<TIntArrayList> iterator = map.iterator(); iterator.hasNext(); ) {
+      iterator.advance();
+      result.put(iterator.key(), iterator.value().toNativeArray());
+    }
+    return result;
+  }
+}
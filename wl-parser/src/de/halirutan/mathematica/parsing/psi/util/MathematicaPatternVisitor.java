@@ -21,9 +21,11 @@
 
 package de.halirutan.mathematica.parsing.psi.util;
 
-import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.intellij.lang.ASTNode;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
 import de.halirutan.mathematica.parsing.psi.MathematicaVisitor;
 import de.halirutan.mathematica.parsing.psi.api.FunctionCall;
 import de.halirutan.mathematica.parsing.psi.api.Group;
@@ -33,26 +35,58 @@ import de.halirutan.mathematica.parsing.psi.api.assignment.TagSet;
 import de.halirutan.mathematica.parsing.psi.api.assignment.TagSetDelayed;
 import de.halirutan.mathematica.parsing.psi.api.pattern.*;
 import de.halirutan.mathematica.parsing.psi.api.rules.RuleDelayed;
+import de.halirutan.mathematica.parsing.psi.util.PatternSummary.BlankInfo;
 
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
+import static de.halirutan.mathematica.parsing.MathematicaElementTypes.*;
+
 /**
+ * Collects the pattern symbols of a definition or rule. Besides the symbols, the blanks with their head constraints
+ * and the conditions and pattern tests are recorded, which is what {@link PatternSummary} is made of.
+ * <p/>
+ * The parts of a pattern are visited through a {@link VisitorWorkList} and not recursively, so that deeply nested
+ * patterns cannot overflow the stack. Whether a part is inside an <code >Optional</code> is the state that is handed
+ * down to the parts below it.
+ *
  * @author patrick (10/10/13)
  */
 public class MathematicaPatternVisitor extends MathematicaVisitor {
 
-  private final Set<Symbol> myPatternSymbols = Sets.newHashSet();
+  static final HeadMatcher DIVE_IN_FIRST_CHILD =
+      HeadMatcher.of("Longest", "Shortest", "Repeated", "Optional", "PatternTest", "Condition");
+  static final HeadMatcher DO_NOT_DIVE_IN = HeadMatcher.of("Verbatim");
+  private static final HeadMatcher OPTIONAL = HeadMatcher.of("Optional");
+  private static final TokenSet BLANK_TOKENS = TokenSet.create(BLANK, BLANK_SEQUENCE, BLANK_NULL_SEQUENCE, DEFAULT);
+
+  private final Set<Symbol> myPatternSymbols = Sets.newLinkedHashSet();
   private final LinkedHashSet<Symbol> myUnboundSymbols = Sets.newLinkedHashSet();
-  private final List<String> myDiveInFirstChild = Lists.newArrayList("Longest", "Shortest", "Repeated", "Optional", "PatternTest", "Condition");
-  private final List<String> myDoNotDiveIn = Lists.newArrayList("Verbatim");
+  private final List<BlankInfo> myBlanks = new ArrayList<BlankInfo>();
+  private final List<PsiElement> myConditions = new ArrayList<PsiElement>();
+  private final VisitorWorkList myWorkList = new VisitorWorkList(this);
   private Assignment myAssignmentType = Assignment.NONE_;
 
   public Set<Symbol> getPatternSymbols() {
     return myPatternSymbols;
   }
 
+  /**
+   * @return The blanks in the order they appear
+   */
+  public List<BlankInfo> getBlanks() {
+    return myBlanks;
+  }
+
+  /**
+   * @return The conditions <code >patt /; test</code> and pattern tests <code >patt ? test</code>
+   */
+  public List<PsiElement> getConditions() {
+    return myConditions;
+  }
+
   public Assignment getAssignmentType() {
     return myAssignmentType;
   }
@@ -63,6 +97,9 @@ public class MathematicaPatternVisitor extends MathematicaVisitor {
 
   @Override
   public void visitBlank(Blank blank) {
+    if (!(blank.getParent() instanceof Pattern && blank.getNode().findChildByType(BLANK) == null)) {
+      addBlank(blank);
+    }
     if (blank.getFirstChild() instanceof Symbol) {
       myPatternSymbols.add((Symbol) blank.getFirstChild());
     }
@@ -70,6 +107,7 @@ public class MathematicaPatternVisitor extends MathematicaVisitor {
 
   @Override
   public void visitBlankSequence(BlankSequence blankSequence) {
+    addBlank(blankSequence);
     if (blankSequence.getFirstChild() instanceof Symbol) {
       myPatternSymbols.add((Symbol) blankSequence.getFirstChild());
     }
@@ -77,34 +115,78 @@ public class MathematicaPatternVisitor extends MathematicaVisitor {
 
   @Override
   public void visitBlankNullSequence(BlankNullSequence blankNullSequence) {
+    addBlank(blankNullSequence);
     if (blankNullSequence.getFirstChild() instanceof Symbol) {
       myPatternSymbols.add((Symbol) blankNullSequence.getFirstChild());
     }
   }
 
+  @Override
+  public void visitDefault(Default aDefault) {
+    addBlank(aDefault);
+    visitElement(aDefault);
+  }
+
+  /**
+   * Records a blank like <code >x_h</code>, <code >__h</code> or <code >x_.</code>. The symbol in front of the blank
+   * token is the name, the symbol after it the head.
+   */
+  private void addBlank(PsiElement blank) {
+    Symbol name = null;
+    String head = null;
+    IElementType kind = null;
+    for (ASTNode child = blank.getNode().getFirstChildNode(); child != null; child = child.getTreeNext()) {
+      if (BLANK_TOKENS.contains(child.getElementType())) {
+        kind = child.getElementType();
+      } else if (child.getPsi() instanceof Symbol) {
+        if (kind == null) {
+          name = (Symbol) child.getPsi();
+        } else {
+          head = ((Symbol) child.getPsi()).getSymbolName();
+        }
+      }
+    }
+    if (kind != null) {
+      myBlanks.add(new BlankInfo(name, kind, head, myWorkList.getState() || kind == DEFAULT));
+    }
+  }
+
   @Override
   public void visitOptional(Optional optional) {
     PsiElement firstChild = optional.getFirstChild();
     if (firstChild != null) {
-      firstChild.accept(this);
+      myWorkList.visit(firstChild, true);
     }
   }
 
   @Override
   public void visitCondition(Condition condition) {
+    myConditions.add(condition);
     PsiElement firstChild = condition.getFirstChild();
     if (firstChild != null) {
-      firstChild.accept(this);
+      myWorkList.visit(firstChild);
     }
   }
 
+  @Override
+  public void visitPatternTest(PatternTest patternTest) {
+    myConditions.add(patternTest);
+    visitElement(patternTest);
+  }
+
   @Override
   public void visitPattern(Pattern pattern) {
     PsiElement firstChild = pattern.getFirstChild();
     if (firstChild instanceof Symbol) {
       myPatternSymbols.add((Symbol) firstChild);
     }
-    pattern.getLastChild().accept(this);
+    // x_h is parsed as a pattern containing the blank token, followed by a blank which holds only the head
+    if (pattern.getNode().findChildByType(BLANK) != null) {
+      final PsiElement head = pattern.getLastChild() != null ? pattern.getLastChild().getFirstChild() : null;
+      myBlanks.add(new BlankInfo(firstChild instanceof Symbol ? (Symbol) firstChild : null, BLANK,
+          head instanceof Symbol ? ((Symbol) head).getSymbolName() : null, myWorkList.getState()));
+    }
+    myWorkList.visit(pattern.getLastChild());
   }
 
   @Override
@@ -113,41 +195,41 @@ public class MathematicaPatternVisitor extends MathematicaVisitor {
     if (head instanceof Symbol) {
       myUnboundSymbols.add((Symbol) head);
       final String functionName = ((Symbol) head).getSymbolName();
-      if (myDiveInFirstChild.contains(functionName)) {
-        List<PsiElement> args = MathematicaPsiUtilities.getArguments(functionCall);
-        if (args.size() > 0) {
-          args.get(0).accept(this);
+      if (DIVE_IN_FIRST_CHILD.matches(functionName)) {
+        final PsiElement arg1 = functionCall.argumentAt(0);
+        if (arg1 != null) {
+          myWorkList.visit(arg1, myWorkList.getState() || OPTIONAL.matches(functionName));
         }
-      } else if (!myDoNotDiveIn.contains(functionName)) {
-        functionCall.acceptChildren(this);
+      } else if (!DO_NOT_DIVE_IN.matches(functionName)) {
+        myWorkList.visitChildren(functionCall);
       }
     } else {
-      functionCall.acceptChildren(this);
+      myWorkList.visitChildren(functionCall);
     }
   }
 
   @Override
   public void visitGroup(Group group) {
-    group.acceptChildren(this);
+    myWorkList.visitChildren(group);
   }
 
   @Override
   public void visitList(de.halirutan.mathematica.parsing.psi.api.lists.List list) {
-    list.acceptChildren(this);
+    myWorkList.visitChildren(list);
   }
 
   @Override
   public void visitSetDelayed(SetDelayed setDelayed) {
     final PsiElement lhs = setDelayed.getFirstChild();
     myAssignmentType = Assignment.SET_DELAYED_;
-    lhs.accept(this);
+    myWorkList.visit(lhs);
   }
 
   @Override
   public void visitSet(de.halirutan.mathematica.parsing.psi.api.assignment.Set set) {
     final PsiElement lhs = set.getFirstChild();
     myAssignmentType = Assignment.SET_;
-    lhs.accept(this);
+    myWorkList.visit(lhs);
   }
 
   @Override
@@ -167,7 +249,7 @@ public class MathematicaPatternVisitor extends MathematicaVisitor {
     }
     final PsiElement pattern = MathematicaPsiUtilities.getNextSiblingSkippingWhitespace(operator);
     if (pattern != null) {
-      pattern.accept(this);
+      myWorkList.visit(pattern);
     }
   }
 
@@ -193,7 +275,7 @@ public class MathematicaPatternVisitor extends MathematicaVisitor {
     }
     final PsiElement pattern = MathematicaPsiUtilities.getNextSiblingSkippingWhitespace(operator);
     if (pattern != null) {
-      pattern.accept(this);
+      myWorkList.visit(pattern);
     }
   }
 
@@ -201,12 +283,12 @@ public class MathematicaPatternVisitor extends MathematicaVisitor {
   public void visitRuleDelayed(RuleDelayed ruleDelayed) {
     final PsiElement lhs = ruleDelayed.getFirstChild();
     myAssignmentType = Assignment.NONE_;
-    lhs.accept(this);
+    myWorkList.visit(lhs);
   }
 
   @Override
   public void visitElement(PsiElement element) {
-    element.acceptChildren(this);
+    myWorkList.visitChildren(element);
   }
 
   public enum Assignment {SET_, SET_DELAYED_, TAG_SET_, TAG_SET_DELAYED_, NONE_}
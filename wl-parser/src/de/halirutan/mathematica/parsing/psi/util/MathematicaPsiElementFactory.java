@@ -21,30 +21,79 @@
 
 package de.halirutan.mathematica.parsing.psi.util;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.intellij.lang.ASTFactory;
+import com.intellij.lang.ASTNode;
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.PsiElementFactory;
 import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.impl.source.DummyHolderFactory;
+import com.intellij.psi.impl.source.IdentityCharTable;
+import com.intellij.psi.impl.source.tree.CompositeElement;
+import com.intellij.psi.impl.source.tree.TreeElement;
 import com.intellij.util.IncorrectOperationException;
 import de.halirutan.mathematica.filetypes.MathematicaFileType;
 import de.halirutan.mathematica.parsing.psi.api.Expression;
+import de.halirutan.mathematica.parsing.psi.api.FunctionCall;
 import de.halirutan.mathematica.parsing.psi.api.MathematicaPsiFile;
+import de.halirutan.mathematica.parsing.psi.api.Number;
 import de.halirutan.mathematica.parsing.psi.api.Symbol;
+import de.halirutan.mathematica.parsing.psi.api.string.MString;
 import org.jetbrains.annotations.NotNull;
 
+import static de.halirutan.mathematica.parsing.MathematicaElementTypes.*;
+
 /**
+ * Creates PSI elements from code. Symbols, numbers, strings and function calls with a symbol head are built directly
+ * from tree elements as long as their text is simple enough to know the tokens without running the lexer, e.g. a
+ * symbol name like <code >Global`x$1</code> or a number like <code >1.5</code>. Everything else is parsed in a dummy
+ * file. Parsed expressions are kept as templates in a small cache and a copy of the template is returned when the same
+ * text is requested again.
+ * <p/>
+ * The factory of a project should be obtained through {@link #getInstance(Project)} so that all callers share the
+ * template cache. All created elements live in their own dummy holder and can be inserted into a file.
+ *
  * @author patrick (7/10/14)
  */
 public class MathematicaPsiElementFactory {
 
   public static final String DUMMY_FILE_NAME = "dummy.m";
+  private static final Key<MathematicaPsiElementFactory> INSTANCE_KEY = Key.create("MathematicaPsiElementFactory");
+  private static final int MAX_TEMPLATES = 256;
+
   private Project myProject;
+  private final Cache<String, TreeElement> myTemplates = CacheBuilder.newBuilder().maximumSize(MAX_TEMPLATES).build();
 
   public MathematicaPsiElementFactory(final Project project) {
     this.myProject = project;
   }
 
+  /**
+   * Returns the factory that is shared by all callers in a project.
+   *
+   * @param project
+   *     The project
+   * @return The factory of the project
+   */
+  @NotNull
+  public static MathematicaPsiElementFactory getInstance(@NotNull Project project) {
+    MathematicaPsiElementFactory factory = project.getUserData(INSTANCE_KEY);
+    if (factory == null) {
+      synchronized (INSTANCE_KEY) {
+        factory = project.getUserData(INSTANCE_KEY);
+        if (factory == null) {
+          factory = new MathematicaPsiElementFactory(project);
+          project.putUserData(INSTANCE_KEY, factory);
+        }
+      }
+    }
+    return factory;
+  }
+
   /**
    * Taken from here {@link com.intellij.psi.impl.PsiJavaParserFacadeImpl}
    *
@@ -58,16 +107,32 @@ public class MathematicaPsiElementFactory {
     return (MathematicaPsiFile) PsiFileFactory.getInstance(myProject).createFileFromText(DUMMY_FILE_NAME, type, code);
   }
 
+  /**
+   * Creates the first expression of a piece of code. The code is parsed only the first time; later calls with the same
+   * text copy the cached tree.
+   *
+   * @param expr
+   *     Code of the expression
+   * @return The first expression of the code
+   */
   public Expression createExpressionFromText(@NotNull String expr) {
-    final PsiElement exprFile = createDummyFile(expr).getFirstChild();
-    if (exprFile != null && exprFile instanceof Expression) {
-      return (Expression) exprFile;
+    TreeElement template = myTemplates.getIfPresent(expr);
+    if (template == null) {
+      final PsiElement exprFile = createDummyFile(expr).getFirstChild();
+      if (exprFile == null || !(exprFile instanceof Expression)) {
+        throw new IncorrectOperationException("The supplied string is not a valid Mathematica expression.");
+      }
+      template = (TreeElement) exprFile.getNode();
+      myTemplates.put(expr, template);
     }
-    throw new IncorrectOperationException("The supplied string is not a valid Mathematica expression.");
+    return (Expression) wrap((TreeElement) template.clone());
   }
 
   @NotNull
   public Symbol createSymbol(@NotNull String symbolName) {
+    if (isSymbolName(symbolName)) {
+      return (Symbol) wrap(createSymbolNode(symbolName));
+    }
     final PsiElement symbol = createDummyFile(symbolName).getFirstChild();
     if (symbol != null && symbol instanceof Symbol) {
       return (Symbol) symbol;
@@ -75,6 +140,163 @@ public class MathematicaPsiElementFactory {
     throw new IncorrectOperationException("The supplied string is not a valid Mathematica Symbol.");
   }
 
+  /**
+   * Creates the identifier token of a symbol, which is what {@link Symbol#setName(String)} puts into the tree.
+   *
+   * @param symbolName
+   *     Name of the symbol, possibly with context
+   * @return The identifier node or null if the name is not a symbol name
+   */
+  public ASTNode createIdentifier(@NotNull String symbolName) {
+    if (isSymbolName(symbolName)) {
+      return ASTFactory.leaf(IDENTIFIER, symbolName);
+    }
+    final PsiElement element = createDummyFile(symbolName).getFirstChild();
+    return element == null ? null : element.getNode().findChildByType(IDENTIFIER);
+  }
+
+  /**
+   * Creates a number.
+   *
+   * @param number
+   *     Text of the number like <code >42</code>, <code >2.5</code> or <code >16^^FF</code>
+   * @return The number
+   */
+  @NotNull
+  public Number createNumber(@NotNull String number) {
+    if (isSimpleNumber(number)) {
+      final CompositeElement node = ASTFactory.composite(NUMBER_EXPRESSION);
+      node.rawAddChildren(ASTFactory.leaf(NUMBER, number));
+      return (Number) wrap(node);
+    }
+    final PsiElement element = createExpressionFromText(number);
+    if (element instanceof Number) {
+      return (Number) element;
+    }
+    throw new IncorrectOperationException("The supplied string is not a valid Mathematica Number.");
+  }
+
+  /**
+   * Creates a string literal.
+   *
+   * @param content
+   *     Text between the quotes as it is written in code, i.e. with escape sequences like <code >\"</code>
+   * @return The string
+   */
+  @NotNull
+  public MString createString(@NotNull String content) {
+    if (content.indexOf('"') == -1 && content.indexOf('\\') == -1) {
+      final CompositeElement node = ASTFactory.composite(STRING_LITERAL_EXPRESSION);
+      node.rawAddChildren(ASTFactory.leaf(STRING_LITERAL_BEGIN, "\""));
+      if (!content.isEmpty()) {
+        node.rawAddChildren(ASTFactory.leaf(STRING_LITERAL, content));
+      }
+      node.rawAddChildren(ASTFactory.leaf(STRING_LITERAL_END, "\""));
+      return (MString) wrap(node);
+    }
+    final PsiElement element = createExpressionFromText("\"" + content + "\"");
+    if (element instanceof MString) {
+      return (MString) element;
+    }
+    throw new IncorrectOperationException("The supplied string is not a valid Mathematica String.");
+  }
+
+  /**
+   * Creates a function call <code >head[arg1, arg2, ...]</code>. The arguments are copied, so they can be elements of
+   * another file.
+   *
+   * @param head
+   *     Name of the head symbol
+   * @param arguments
+   *     Arguments of the call
+   * @return The function call
+   */
+  @NotNull
+  public FunctionCall createFunctionCall(@NotNull String head, @NotNull PsiElement... arguments) {
+    if (!isSymbolName(head)) {
+      throw new IncorrectOperationException("The head of a function call has to be a symbol name.");
+    }
+    final CompositeElement node = ASTFactory.composite(FUNCTION_CALL_EXPRESSION);
+    node.rawAddChildren(createSymbolNode(head));
+    node.rawAddChildren(ASTFactory.leaf(LEFT_BRACKET, "["));
+    for (int i = 0; i < arguments.length; i++) {
+      if (i > 0) {
+        node.rawAddChildren(ASTFactory.leaf(COMMA, ","));
+        node.rawAddChildren(ASTFactory.leaf(WHITE_SPACE, " "));
+      }
+      node.rawAddChildren((TreeElement) ((TreeElement) arguments[i].getNode()).clone());
+    }
+    node.rawAddChildren(ASTFactory.leaf(RIGHT_BRACKET, "]"));
+    return (FunctionCall) wrap(node);
+  }
+
+  private PsiElement wrap(@NotNull TreeElement element) {
+    DummyHolderFactory.createHolder(PsiManager.getInstance(myProject), element, null, IdentityCharTable.INSTANCE);
+    return element.getPsi();
+  }
+
+  private static TreeElement createSymbolNode(String name) {
+    final CompositeElement node = ASTFactory.composite(SYMBOL_EXPRESSION);
+    node.rawAddChildren(ASTFactory.leaf(IDENTIFIER, name));
+    return node;
+  }
+
+  /**
+   * Tests whether a name is lexed as one identifier: symbols made of letters, digits and <code >$</code> which don't
+   * start with a digit, separated by context marks. Named characters like <code >\[Alpha]</code> are left to the
+   * lexer.
+   *
+   * @param name
+   *     Name of a symbol, possibly with context
+   * @return True if the name is a plain symbol name
+   */
+  public static boolean isSymbolName(@NotNull String name) {
+    final int length = name.length();
+    int i = length > 0 && name.charAt(0) == '`' ? 1 : 0;
+    while (true) {
+      if (i >= length || !isIdentifierStart(name.charAt(i))) {
+        return false;
+      }
+      i++;
+      while (i < length && isIdentifierPart(name.charAt(i))) {
+        i++;
+      }
+      if (i == length) {
+        return true;
+      }
+      if (name.charAt(i) != '`') {
+        return false;
+      }
+      i++;
+    }
+  }
+
+  private static boolean isIdentifierStart(char c) {
+    return c == '$' || Character.isLetter(c);
+  }
+
+  private static boolean isIdentifierPart(char c) {
+    return c == '$' || Character.isLetterOrDigit(c);
+  }
+
+  /**
+   * Tests for integers and decimal numbers like <code >42</code>, <code >4.</code> or <code >.5</code>.
+   */
+  static boolean isSimpleNumber(@NotNull String number) {
+    final int point = number.indexOf('.');
+    final int integerDigits = point == -1 ? number.length() : point;
+    final int fractionDigits = point == -1 ? 0 : number.length() - point - 1;
+    if (integerDigits + fractionDigits == 0) {
+      return false;
+    }
+    for (int i = 0; i < number.length(); i++) {
+      final char c = number.charAt(i);
+      if (i != point && (c < '0' || c > '9')) {
+        return false;
+      }
+    }
+    return true;
+  }
 
   /*
   This is another comment
@@ -94,9 +94,6 @@ public class MathematicaPsiUtilities {
     //noinspection OverlyComplexAnonymousInnerClass
     PsiElementVisitor patternVisitor = new PsiRecursiveElementVisitor() {
 
-      private final List<String> myDiveInFirstChild = Lists.newArrayList("Longest", "Shortest", "Repeated", "Optional", "PatternTest", "Condition");
-      private final List<String> myDoNotDiveIn = Lists.newArrayList("Verbatim");
-
       @Override
       public void visitElement(PsiElement element) {
         if (element instanceof Blank ||
@@ -120,12 +117,12 @@ public class MathematicaPsiUtilities {
         } else if (element instanceof FunctionCall) {
           PsiElement head = element.getFirstChild();
           final String name = head.getNode().getText();
-          if (myDiveInFirstChild.contains(name)) {
+          if (MathematicaPatternVisitor.DIVE_IN_FIRST_CHILD.matches(name)) {
             List<PsiElement> args = getArguments(element);
             if (args.size() > 0) {
               args.get(0).accept(this);
             }
-          } else if (!myDoNotDiveIn.contains(name)) {
+          } else if (!MathematicaPatternVisitor.DO_NOT_DIVE_IN.matches(name)) {
             element.acceptChildren(this);
           }
         } else {
@@ -404,17 +401,14 @@ public class MathematicaPsiUtilities {
    */
   @NotNull
   public static List<PsiElement> getArguments(@Nullable PsiElement func) {
-    List<PsiElement> allArguments = Lists.newLinkedList();
     if (!(func instanceof FunctionCall)) {
-      return allArguments;
+      return Lists.newArrayList();
     }
-    boolean skipHead = true;
-    for (PsiElement child : func.getChildren()) {
-      if (skipHead) {
-        skipHead = false;
-        continue;
-      }
-      allArguments.add(child);
+    final FunctionCall call = (FunctionCall) func;
+    final int count = call.argumentCount();
+    List<PsiElement> allArguments = Lists.newArrayListWithCapacity(count);
+    for (int i = 0; i < count; i++) {
+      allArguments.add(call.argumentAt(i));
     }
     return allArguments;
   }
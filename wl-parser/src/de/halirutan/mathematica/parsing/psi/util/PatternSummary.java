@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.util;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.tree.IElementType;
+import de.halirutan.mathematica.parsing.psi.SymbolAssignmentType;
+import de.halirutan.mathematica.parsing.psi.api.FunctionCall;
+import de.halirutan.mathematica.parsing.psi.api.Symbol;
+import de.halirutan.mathematica.parsing.psi.api.assignment.Set;
+import de.halirutan.mathematica.parsing.psi.api.assignment.SetDelayed;
+import de.halirutan.mathematica.parsing.psi.api.assignment.TagSet;
+import de.halirutan.mathematica.parsing.psi.api.assignment.TagSetDelayed;
+import de.halirutan.mathematica.parsing.psi.api.pattern.*;
+import de.halirutan.mathematica.parsing.psi.impl.assignment.SetDefinitionSymbolVisitor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static de.halirutan.mathematica.parsing.MathematicaElementTypes.*;
+
+/**
+ * Everything the analyses need to know about the left side of one definition or rule: the pattern symbols, the blanks
+ * with their head constraints, the conditions and how many arguments a call has to have to match. Before, resolving,
+ * collecting definitions and computing the local variables walked the same left side each with its own visitor.
+ * <p/>
+ * A summary is immutable. Like {@link LocalVariableTable}, it stores the modification count of the node it was built
+ * for, so that the definition which caches it can tell whether it has to build a new one.
+ */
+public final class PatternSummary {
+
+  /**
+   * Returned by {@link #getMaxArgumentCount()} when a call can have any number of arguments.
+   */
+  public static final int UNBOUNDED = -1;
+
+  private static final HeadMatcher TRANSPARENT_HEADS = HeadMatcher.of("HoldPattern", "Condition", "PatternTest");
+  private static final HeadMatcher OPTIONAL_HEADS = HeadMatcher.of("Optional", "RepeatedNull");
+  private static final HeadMatcher SEQUENCE_HEADS = HeadMatcher.of("Repeated", "RepeatedNull", "Alternatives");
+
+  private final List<Symbol> myPatternSymbols;
+  private final List<BlankInfo> myBlanks;
+  private final List<PsiElement> myConditions;
+  private final List<Symbol> myDefinedSymbols;
+  private final SymbolAssignmentType myAssignmentType;
+  private final int myMinArgumentCount;
+  private final int myMaxArgumentCount;
+  private final int myStamp;
+
+  private PatternSummary(List<Symbol> patternSymbols, List<BlankInfo> blanks, List<PsiElement> conditions,
+                         List<Symbol> definedSymbols, SymbolAssignmentType assignmentType, int[] arity, int stamp) {
+    myPatternSymbols = patternSymbols;
+    myBlanks = blanks;
+    myConditions = conditions;
+    myDefinedSymbols = definedSymbols;
+    myAssignmentType = assignmentType;
+    myMinArgumentCount = arity[0];
+    myMaxArgumentCount = arity[1];
+    myStamp = stamp;
+  }
+
+  /**
+   * Builds the summary for a definition.
+   *
+   * @param definition
+   *     A <code >Set</code>, <code >SetDelayed</code>, <code >TagSet</code>, <code >TagSetDelayed</code> or <code
+   *     >RuleDelayed</code> element
+   * @param stamp
+   *     Modification count of the node of the definition
+   * @return The new summary
+   */
+  @NotNull
+  public static PatternSummary create(@NotNull PsiElement definition, int stamp) {
+    final MathematicaPatternVisitor patternVisitor = new MathematicaPatternVisitor();
+    definition.accept(patternVisitor);
+
+    List<Symbol> definedSymbols = Collections.emptyList();
+    SymbolAssignmentType assignmentType = null;
+    PsiElement lhs = definition.getFirstChild();
+    if (definition instanceof Set || definition instanceof SetDelayed) {
+      assignmentType = definition instanceof Set ?
+          SymbolAssignmentType.SET_ASSIGNMENT : SymbolAssignmentType.SET_DELAYED_ASSIGNMENT;
+      if (lhs != null) {
+        final SetDefinitionSymbolVisitor visitor = new SetDefinitionSymbolVisitor(lhs, assignmentType);
+        lhs.accept(visitor);
+        definedSymbols = new ArrayList<Symbol>(visitor.getUnboundSymbols());
+        assignmentType = visitor.getAssignmentType();
+      }
+    } else if (definition instanceof TagSet || definition instanceof TagSetDelayed) {
+      assignmentType = definition instanceof TagSet ?
+          SymbolAssignmentType.TAG_SET_ASSIGNMENT : SymbolAssignmentType.TAG_SET_DELAYED_ASSIGNMENT;
+      if (lhs instanceof Symbol) {
+        definedSymbols = Collections.singletonList((Symbol) lhs);
+      }
+      // the pattern of tag /: pattern := .. comes after the operator
+      lhs = lhs == null ? null : MathematicaPsiUtilities.getNextSiblingSkippingWhitespace(lhs);
+      lhs = lhs == null ? null : MathematicaPsiUtilities.getNextSiblingSkippingWhitespace(lhs);
+    }
+
+    return new PatternSummary(
+        Collections.unmodifiableList(new ArrayList<Symbol>(patternVisitor.getPatternSymbols())),
+        Collections.unmodifiableList(patternVisitor.getBlanks()),
+        Collections.unmodifiableList(patternVisitor.getConditions()),
+        Collections.unmodifiableList(definedSymbols),
+        assignmentType,
+        getArity(isPlainDefinition(assignmentType) ? lhs : null),
+        stamp);
+  }
+
+  /**
+   * Definitions like <code >Options[f] = ..</code> or <code >f::usage = ..</code> are not called with arguments.
+   */
+  private static boolean isPlainDefinition(@Nullable SymbolAssignmentType assignmentType) {
+    return assignmentType == null ||
+        assignmentType == SymbolAssignmentType.SET_ASSIGNMENT ||
+        assignmentType == SymbolAssignmentType.SET_DELAYED_ASSIGNMENT ||
+        assignmentType == SymbolAssignmentType.TAG_SET_ASSIGNMENT ||
+        assignmentType == SymbolAssignmentType.TAG_SET_DELAYED_ASSIGNMENT;
+  }
+
+  /**
+   * Computes the range of argument counts of the call on the left side. Conditions and <code >HoldPattern</code> around
+   * the call are skipped.
+   */
+  private static int[] getArity(@Nullable PsiElement lhs) {
+    while (lhs instanceof Condition || lhs instanceof PatternTest ||
+        lhs instanceof FunctionCall && ((FunctionCall) lhs).matchesHead(TRANSPARENT_HEADS)) {
+      lhs = lhs instanceof FunctionCall ? ((FunctionCall) lhs).getArgument(1) : lhs.getFirstChild();
+    }
+    if (!(lhs instanceof FunctionCall)) {
+      return new int[]{UNBOUNDED, UNBOUNDED};
+    }
+    final FunctionCall call = (FunctionCall) lhs;
+    int min = 0;
+    int max = 0;
+    for (int i = 0; i < call.argumentCount(); i++) {
+      final int[] count = getArgumentCount(call.argumentAt(i));
+      min += count[0];
+      max = max == UNBOUNDED || count[1] == UNBOUNDED ? UNBOUNDED : max + count[1];
+    }
+    return new int[]{min, max};
+  }
+
+  /**
+   * Returns how many arguments of a call a single pattern argument can match. Alternatives and repeated patterns are
+   * not looked into and may match any number of arguments.
+   */
+  private static int[] getArgumentCount(@Nullable PsiElement argument) {
+    if (argument instanceof BlankSequence || argument instanceof Repeated) {
+      return new int[]{1, UNBOUNDED};
+    }
+    if (argument instanceof BlankNullSequence || argument instanceof RepeatedNull || argument instanceof Alternative) {
+      return new int[]{0, UNBOUNDED};
+    }
+    if (argument instanceof Optional || argument instanceof Default) {
+      return new int[]{0, 1};
+    }
+    if (argument instanceof Condition || argument instanceof PatternTest) {
+      return getArgumentCount(argument.getFirstChild());
+    }
+    if (argument instanceof Pattern && argument.getNode().findChildByType(COLON) != null) {
+      // p:patt matches what patt matches
+      return getArgumentCount(argument.getLastChild());
+    }
+    if (argument instanceof FunctionCall) {
+      final FunctionCall call = (FunctionCall) argument;
+      if (call.matchesHead(SEQUENCE_HEADS)) {
+        return new int[]{call.matchesHead(OPTIONAL_HEADS) ? 0 : 1, UNBOUNDED};
+      }
+      if (call.matchesHead(OPTIONAL_HEADS)) {
+        return new int[]{0, 1};
+      }
+      if (call.matchesHead(TRANSPARENT_HEADS)) {
+        return getArgumentCount(call.getArgument(1));
+      }
+    }
+    return new int[]{1, 1};
+  }
+
+  /**
+   * @return The symbols which are named in patterns like <code >x_</code> or <code >x:{__}</code>, in the order they
+   * appear
+   */
+  @NotNull
+  public List<Symbol> getPatternSymbols() {
+    return myPatternSymbols;
+  }
+
+  /**
+   * @return The blanks in the order they appear
+   */
+  @NotNull
+  public List<BlankInfo> getBlanks() {
+    return myBlanks;
+  }
+
+  /**
+   * @return The conditions <code >patt /; test</code> and pattern tests <code >patt ? test</code> of the left side
+   */
+  @NotNull
+  public List<PsiElement> getConditions() {
+    return myConditions;
+  }
+
+  /**
+   * @return The symbols which get a definition, e.g. <code >f</code> in <code >f[x_] := ..</code>. Empty for rules.
+   */
+  @NotNull
+  public List<Symbol> getDefinedSymbols() {
+    return myDefinedSymbols;
+  }
+
+  /**
+   * @return The kind of definition like {@link SymbolAssignmentType#OPTIONS_ASSIGNMENT} for <code >Options[f] =
+   * ..</code> or null for rules
+   */
+  @Nullable
+  public SymbolAssignmentType getAssignmentType() {
+    return myAssignmentType;
+  }
+
+  /**
+   * @return The smallest number of arguments a call needs to match the left side or {@link #UNBOUNDED} if the left side
+   * is not a call
+   */
+  public int getMinArgumentCount() {
+    return myMinArgumentCount;
+  }
+
+  /**
+   * @return The largest number of arguments a call can have to match the left side or {@link #UNBOUNDED}
+   */
+  public int getMaxArgumentCount() {
+    return myMaxArgumentCount;
+  }
+
+  /**
+   * Tests whether a call with the given number of arguments can match the left side. When the left side is no call,
+   * nothing is known and the result is always true.
+   */
+  public boolean acceptsArgumentCount(int count) {
+    return myMinArgumentCount == UNBOUNDED ||
+        count >= myMinArgumentCount && (myMaxArgumentCount == UNBOUNDED || count <= myMaxArgumentCount);
+  }
+
+  /**
+   * @return true if the summary was built for the given modification count
+   */
+  public boolean isUpToDate(int stamp) {
+    return myStamp == stamp;
+  }
+
+  /**
+   * A blank like <code >x_Integer</code>, <code >__</code> or <code >y_.</code>.
+   */
+  public static final class BlankInfo {
+    private final Symbol myName;
+    private final IElementType myKind;
+    private final String myHead;
+    private final boolean myOptional;
+
+    BlankInfo(@Nullable Symbol name, @NotNull IElementType kind, @Nullable String head, boolean optional) {
+      myName = name;
+      myKind = kind;
+      myHead = head;
+      myOptional = optional;
+    }
+
+    /**
+     * @return The pattern symbol in front of the blank or null if the blank has no name
+     */
+    @Nullable
+    public Symbol getName() {
+      return myName;
+    }
+
+    /**
+     * @return One of the tokens <code >BLANK</code>, <code >BLANK_SEQUENCE</code>, <code >BLANK_NULL_SEQUENCE</code>
+     * or <code >DEFAULT</code>
+     */
+    @NotNull
+    public IElementType getKind() {
+      return myKind;
+    }
+
+    /**
+     * @return The head the matched expression is required to have like <code >Integer</code> in <code >_Integer</code>
+     * or null if any head is allowed
+     */
+    @Nullable
+    public String getHead() {
+      return myHead;
+    }
+
+    /**
+     * @return true if the blank is inside <code >Optional</code> or has a default value
+     */
+    public boolean isOptional() {
+      return myOptional;
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.util;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.MapMaker;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Maps symbol names to small integer ids. Every name gets its id when it is seen for the first time, so that two
+ * symbols have the same name if and only if they have the same id. This lets analyses compare names with
+ * <code >==</code> instead of comparing strings or matching regular expressions.
+ * <p/>
+ * Names are interned weakly: a name and its id are only kept as long as the interned String instance is referenced
+ * from somewhere else, e.g. from the cache of a symbol or from a {@link HeadMatcher}. This keeps the tables from
+ * growing with every name that was ever parsed in a long running process. The consequence is that an id stays valid
+ * only as long as its interned name is held; code that keeps an id has to keep the name returned by {@link
+ * #intern(String)} as well. Reads do not take a lock.
+ * <p/>
+ * Ids are only meaningful inside one running process and must not be persisted.
+ */
+public final class SymbolNameInterner {
+
+  /**
+   * Id which never belongs to any name. It is used e.g. for function calls whose head is not a symbol.
+   */
+  public static final int NO_ID = -1;
+
+  private static final Interner<String> ourNames = Interners.newWeakInterner();
+  // weak keys are compared by identity, which is right because only interned instances are used as keys
+  private static final ConcurrentMap<String, Integer> ourIds = new MapMaker().weakKeys().makeMap();
+  private static final AtomicInteger ourNextId = new AtomicInteger();
+
+  private SymbolNameInterner() {
+  }
+
+  /**
+   * Returns the id of a name and creates a new one if the name was not seen before. The id stays the same only as long
+   * as the interned instance of the name is referenced.
+   *
+   * @param name
+   *     Symbol name including a possible context
+   * @return The id of the name
+   */
+  public static int getId(@NotNull String name) {
+    final String interned = ourNames.intern(name);
+    final Integer id = ourIds.get(interned);
+    return id != null ? id : register(interned);
+  }
+
+  /**
+   * Returns the id of a name only if it was already registered.
+   *
+   * @param name
+   *     Symbol name including a possible context
+   * @return The id of the name or {@link #NO_ID}
+   */
+  public static int findId(@NotNull String name) {
+    final Integer id = ourIds.get(ourNames.intern(name));
+    return id != null ? id : NO_ID;
+  }
+
+  /**
+   * Returns the interned instance of a name. Equal names give the same String instance as long as one of them is
+   * referenced.
+   *
+   * @param name
+   *     Symbol name including a possible context
+   * @return The interned name
+   */
+  @NotNull
+  public static String intern(@NotNull String name) {
+    return ourNames.intern(name);
+  }
+
+  private static int register(String interned) {
+    final Integer id = ourNextId.getAndIncrement();
+    final Integer existing = ourIds.putIfAbsent(interned, id);
+    return existing != null ? existing : id;
+  }
+}
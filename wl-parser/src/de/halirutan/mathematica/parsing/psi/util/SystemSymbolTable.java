@@ -0,0 +1,470 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.util;
+
+import de.halirutan.mathematica.parsing.psi.util.LocalizationConstruct.ConstructType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static de.halirutan.mathematica.parsing.psi.util.LocalizationConstruct.ConstructType.*;
+
+/**
+ * Immutable lookup of the attributes of built-in symbols and, for scoping constructs like <code >Module</code> or
+ * <code >Table</code>, of the kind of localization. The table is built once from the entries below when the class is
+ * loaded.
+ * <p/>
+ * The entries are the symbols whose attributes or scoping this plugin needs to know about, not the symbols of
+ * <code >System`</code>. A name that is missing simply has no attributes and does not localize variables; whether an
+ * unqualified name is built in is decided by {@link de.halirutan.mathematica.parsing.ast.AstContextRanges} from what
+ * the file does with it.
+ * <p/>
+ * Names are found through a perfect hash in the way of the compress, hash and displace scheme: the name is hashed into
+ * a bucket, and the displacement stored for the bucket selects a second hash which puts every name of the table into
+ * its own slot. Both hashes are mixed from the hash code of the name, which symbol names as strings have cached. A
+ * lookup therefore reads one slot and compares one name. It works on any {@link CharSequence}, so the text of a token
+ * can be looked up without creating a string.
+ */
+public final class SystemSymbolTable {
+
+  /**
+   * Attributes of built-in symbols as given by <code >Attributes[sym]</code>. Each attribute is one bit of the mask
+   * returned by {@link #getAttributes(CharSequence)}.
+   */
+  public enum Attribute {
+    CONSTANT("Constant"), FLAT("Flat"), HOLD_ALL("HoldAll"), HOLD_ALL_COMPLETE("HoldAllComplete"),
+    HOLD_FIRST("HoldFirst"), HOLD_REST("HoldRest"), LISTABLE("Listable"), LOCKED("Locked"), N_HOLD_ALL("NHoldAll"),
+    N_HOLD_FIRST("NHoldFirst"), N_HOLD_REST("NHoldRest"), NUMERIC_FUNCTION("NumericFunction"),
+    ONE_IDENTITY("OneIdentity"), ORDERLESS("Orderless"), PROTECTED("Protected"), READ_PROTECTED("ReadProtected"),
+    SEQUENCE_HOLD("SequenceHold");
+
+    private final String myName;
+
+    Attribute(String name) {
+      myName = name;
+    }
+
+    /**
+     * @return The name of the attribute in Mathematica, e.g. <code >HoldAll</code>
+     */
+    @NotNull
+    public String getName() {
+      return myName;
+    }
+
+    public int getMask() {
+      return 1 << ordinal();
+    }
+  }
+
+  /**
+   * Each entry is the name of a symbol followed by its attributes. The scoping constructs are given separately in
+   * {@link #SCOPING_CONSTRUCTS}.
+   */
+  private static final String[] ENTRIES = {
+      "Abort Protected",
+      "Abs Listable NumericFunction Protected",
+      "AbsoluteTiming HoldAll Protected",
+      "AddTo HoldFirst Protected",
+      "Alternatives Protected",
+      "And Flat HoldAll OneIdentity Protected",
+      "Append Protected",
+      "AppendTo HoldFirst Protected",
+      "Apply Protected",
+      "ArcCos Listable NumericFunction Protected",
+      "ArcSin Listable NumericFunction Protected",
+      "ArcTan Listable NumericFunction Protected",
+      "Array Protected",
+      "Association HoldAllComplete Protected",
+      "Attributes HoldAll Listable Protected",
+      "Begin Protected",
+      "BeginPackage Protected",
+      "Blank Protected",
+      "BlankNullSequence Protected",
+      "BlankSequence Protected",
+      "Block HoldAll Protected",
+      "Break Protected",
+      "Cases Protected",
+      "Catch HoldFirst Protected",
+      "Ceiling Listable NumericFunction Protected",
+      "Check HoldAll Protected",
+      "Clear HoldAll Protected",
+      "ClearAll HoldAll Locked Protected",
+      "Compile HoldAll Protected",
+      "Complement Protected",
+      "Complex Protected",
+      "Composition Flat OneIdentity Protected",
+      "CompoundExpression HoldAll Protected ReadProtected",
+      "Condition HoldAll Protected",
+      "ConstantArray Protected",
+      "Continue Protected",
+      "ContourPlot HoldAll Protected ReadProtected",
+      "ContourPlot3D HoldAll Protected ReadProtected",
+      "Cos Listable NumericFunction Protected",
+      "Count Protected",
+      "D Protected ReadProtected",
+      "Decrement HoldFirst Protected ReadProtected",
+      "Default Protected",
+      "Delete Protected",
+      "Det Protected",
+      "DivideBy HoldFirst Protected",
+      "Do HoldAll Protected",
+      "Dot Flat OneIdentity Protected",
+      "Drop Protected",
+      "Dynamic HoldFirst Protected ReadProtected",
+      "DynamicModule HoldAll Protected",
+      "E Constant Locked Protected ReadProtected",
+      "End Protected",
+      "EndPackage Protected",
+      "Equal Protected",
+      "Evaluate Protected",
+      "Exp Listable NumericFunction Protected",
+      "Expand Protected",
+      "False Locked Protected",
+      "First Protected",
+      "FixedPoint Protected",
+      "Flatten Protected",
+      "Floor Listable NumericFunction Protected",
+      "Fold Protected",
+      "FoldList Protected",
+      "For HoldAll Protected",
+      "Format Protected",
+      "FreeQ Protected",
+      "Function HoldAll Protected",
+      "Get Protected",
+      "Greater Protected",
+      "GreaterEqual Protected",
+      "Head Protected",
+      "Hold HoldAll Protected",
+      "HoldComplete HoldAllComplete Protected",
+      "HoldForm HoldAll Protected",
+      "HoldPattern HoldAll Protected",
+      "I Locked Protected ReadProtected",
+      "Identity Protected",
+      "If HoldRest Protected",
+      "Increment HoldFirst Protected ReadProtected",
+      "Insert Protected",
+      "Integer Protected",
+      "IntegerQ Protected",
+      "Integrate Protected ReadProtected",
+      "Intersection Flat OneIdentity Protected",
+      "Inverse Protected",
+      "Join Flat OneIdentity Protected",
+      "Last Protected",
+      "Length Protected",
+      "Less Protected",
+      "LessEqual Protected",
+      "Limit Protected ReadProtected",
+      "List Locked Protected",
+      "Log Listable NumericFunction Protected",
+      "Longest Protected",
+      "Manipulate HoldAll Protected ReadProtected",
+      "Map Protected",
+      "MapIndexed Protected",
+      "MapThread Protected",
+      "MatchQ Protected",
+      "Max Flat NumericFunction OneIdentity Orderless Protected",
+      "MessageName HoldFirst Protected",
+      "Min Flat NumericFunction OneIdentity Orderless Protected",
+      "Mod Listable NumericFunction Protected",
+      "Module HoldAll Protected",
+      "Most Protected",
+      "N Protected",
+      "Needs Protected",
+      "Nest Protected",
+      "NestList Protected",
+      "NIntegrate HoldAll Protected",
+      "Not Protected",
+      "NSum HoldAll Protected",
+      "Null Locked Protected",
+      "NumericQ Protected",
+      "Optional Protected",
+      "Options Protected",
+      "Or Flat HoldAll OneIdentity Protected",
+      "Part NHoldRest Protected ReadProtected",
+      "Partition Protected",
+      "Pattern HoldFirst Protected",
+      "PatternTest HoldRest Protected",
+      "Pi Constant Locked Protected ReadProtected",
+      "Plot HoldAll Protected ReadProtected",
+      "Plot3D HoldAll Protected ReadProtected",
+      "Plus Flat Listable NumericFunction OneIdentity Orderless Protected",
+      "Position Protected",
+      "Power Listable NumericFunction OneIdentity Protected",
+      "PreDecrement HoldFirst Protected ReadProtected",
+      "PreIncrement HoldFirst Protected ReadProtected",
+      "Prepend Protected",
+      "PrependTo HoldFirst Protected",
+      "Print Protected",
+      "Quiet HoldAll Protected",
+      "Range Listable Protected",
+      "Rational Protected",
+      "Real Protected",
+      "Repeated Protected",
+      "RepeatedNull Protected",
+      "Replace Protected",
+      "ReplaceAll Protected",
+      "ReplacePart Protected",
+      "ReplaceRepeated Protected",
+      "Rest Protected",
+      "Return Protected",
+      "Reverse Protected",
+      "Round Listable NumericFunction Protected",
+      "Rule Protected SequenceHold",
+      "RuleDelayed HoldRest Protected SequenceHold",
+      "SameQ Protected",
+      "Scan Protected",
+      "Select Protected",
+      "Sequence Protected",
+      "Set HoldFirst Protected SequenceHold",
+      "SetAttributes HoldFirst Protected",
+      "SetDelayed HoldAll Protected SequenceHold",
+      "SetOptions Protected",
+      "Shortest Protected",
+      "Sin Listable NumericFunction Protected",
+      "Slot NHoldAll Protected",
+      "SlotSequence NHoldAll Protected",
+      "Sort Protected",
+      "Sqrt Listable NumericFunction Protected",
+      "String Protected",
+      "StringJoin Flat OneIdentity Protected",
+      "StringLength Listable Protected",
+      "SubtractFrom HoldFirst Protected",
+      "Sum HoldAll Protected ReadProtected",
+      "Switch HoldRest Protected",
+      "Symbol Locked Protected",
+      "Table HoldAll Protected",
+      "TagSet HoldAll Protected SequenceHold",
+      "TagSetDelayed HoldAll Protected SequenceHold",
+      "Take Protected",
+      "Tan Listable NumericFunction Protected",
+      "Thread Protected",
+      "Throw Protected",
+      "Times Flat Listable NumericFunction OneIdentity Orderless Protected",
+      "TimesBy HoldFirst Protected",
+      "Timing HoldAll Protected",
+      "ToExpression Protected",
+      "ToString Protected",
+      "Total Protected",
+      "Trace HoldAll Protected",
+      "Transpose Protected",
+      "True Locked Protected",
+      "Unequal Protected",
+      "Unevaluated HoldAllComplete Protected",
+      "Union Flat OneIdentity Protected",
+      "UnsameQ Protected",
+      "UpSet HoldFirst Protected SequenceHold",
+      "UpSetDelayed HoldAll Protected SequenceHold",
+      "Verbatim Protected",
+      "Which HoldAll Protected",
+      "While HoldAll Protected",
+      "With HoldAll Protected"
+  };
+
+  /**
+   * The symbols which localize variables. The names used to be kept in several sets in {@link LocalizationConstruct}.
+   */
+  private static final Object[] SCOPING_CONSTRUCTS = {
+      "Module", MODULE, "Block", BLOCK, "With", WITH, "DynamicModule", DYNAMICMODULE, "Function", FUNCTION,
+      "Table", TABLE, "Sum", SUM, "Integrate", INTEGRATE, "NSum", NSUM, "Plot", PLOT, "Plot3D", PLOT3D,
+      "ContourPlot", CONTOURPLOT, "ContourPlot3D", CONTOURPLOT3D, "Compile", COMPILE, "Limit", LIMIT,
+      "RuleDelayed", RULEDELAYED, "Manipulate", MANIPULATE
+  };
+
+  private static final int BUCKET_SIZE = 4;
+  private static final int MAX_DISPLACEMENT = 1 << 20;
+
+  private static final String[] ourNames;
+  private static final int[] ourAttributes;
+  private static final ConstructType[] ourScopingConstructs;
+  private static final int[] ourDisplacements;
+
+  static {
+    final Map<String, ConstructType> scoping = new HashMap<String, ConstructType>();
+    for (int i = 0; i < SCOPING_CONSTRUCTS.length; i += 2) {
+      scoping.put((String) SCOPING_CONSTRUCTS[i], (ConstructType) SCOPING_CONSTRUCTS[i + 1]);
+    }
+    final Map<String, Integer> attributeMasks = new HashMap<String, Integer>();
+    for (Attribute attribute : Attribute.values()) {
+      attributeMasks.put(attribute.getName(), attribute.getMask());
+    }
+
+    final int size = ENTRIES.length;
+    final int slotCount = size + size / 4 + 1;
+    final int bucketCount = (size + BUCKET_SIZE - 1) / BUCKET_SIZE;
+    ourNames = new String[slotCount];
+    ourAttributes = new int[slotCount];
+    ourScopingConstructs = new ConstructType[slotCount];
+    ourDisplacements = new int[bucketCount];
+
+    final List<List<String[]>> buckets = new ArrayList<List<String[]>>(bucketCount);
+    for (int i = 0; i < bucketCount; i++) {
+      buckets.add(new ArrayList<String[]>(BUCKET_SIZE));
+    }
+    for (String entry : ENTRIES) {
+      final String[] parts = entry.split(" ");
+      buckets.get(index(hash(parts[0].hashCode(), 0), bucketCount)).add(parts);
+    }
+    // the large buckets are placed first while most slots are still free
+    final Integer[] order = new Integer[bucketCount];
+    for (int i = 0; i < bucketCount; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return buckets.get(o2).size() - buckets.get(o1).size();
+      }
+    });
+
+    for (int bucket : order) {
+      final List<String[]> entries = buckets.get(bucket);
+      if (entries.isEmpty()) {
+        break;
+      }
+      final int[] slots = new int[entries.size()];
+      int displacement = 0;
+      boolean placed = false;
+      while (!placed) {
+        if (++displacement > MAX_DISPLACEMENT) {
+          throw new IllegalStateException("Names with equal hash codes in bucket " + bucket);
+        }
+        placed = true;
+        for (int i = 0; i < entries.size() && placed; i++) {
+          slots[i] = index(hash(entries.get(i)[0].hashCode(), displacement), slotCount);
+          placed = ourNames[slots[i]] == null;
+          for (int j = 0; j < i && placed; j++) {
+            placed = slots[j] != slots[i];
+          }
+        }
+      }
+      ourDisplacements[bucket] = displacement;
+      for (int i = 0; i < entries.size(); i++) {
+        final String[] parts = entries.get(i);
+        int mask = 0;
+        for (int j = 1; j < parts.length; j++) {
+          final Integer attribute = attributeMasks.get(parts[j]);
+          if (attribute == null) {
+            throw new IllegalStateException("Unknown attribute " + parts[j] + " of " + parts[0]);
+          }
+          mask |= attribute;
+        }
+        final ConstructType construct = scoping.get(parts[0]);
+        ourNames[slots[i]] = parts[0];
+        ourAttributes[slots[i]] = mask;
+        ourScopingConstructs[slots[i]] = construct != null ? construct : NULL;
+      }
+    }
+  }
+
+  private SystemSymbolTable() {
+  }
+
+  /**
+   * Computes the same value as {@link String#hashCode()}, which strings cache, so that symbol names are not hashed
+   * again on every lookup.
+   */
+  private static int hashCode(CharSequence name) {
+    if (name instanceof String) {
+      return name.hashCode();
+    }
+    int hash = 0;
+    for (int i = 0; i < name.length(); i++) {
+      hash = 31 * hash + name.charAt(i);
+    }
+    return hash;
+  }
+
+  /**
+   * Mixes the hash code with the displacement so that different displacements give independent hashes.
+   */
+  private static int hash(int hashCode, int displacement) {
+    int hash = hashCode ^ displacement * 0x9e3779b9;
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    return hash ^ hash >>> 16;
+  }
+
+  private static int index(int hash, int length) {
+    return (hash & Integer.MAX_VALUE) % length;
+  }
+
+  /**
+   * @return The slot of the name or -1 if it is not a symbol of the table
+   */
+  private static int find(@NotNull CharSequence name) {
+    final int hashCode = hashCode(name);
+    final int displacement = ourDisplacements[index(hash(hashCode, 0), ourDisplacements.length)];
+    if (displacement == 0) {
+      return -1;
+    }
+    final int slot = index(hash(hashCode, displacement), ourNames.length);
+    final String candidate = ourNames[slot];
+    return candidate != null && candidate.contentEquals(name) ? slot : -1;
+  }
+
+  /**
+   * @param name
+   *     Name of a symbol without context
+   * @return The attributes as mask of {@link Attribute#getMask()} or 0 if the symbol is not in the table
+   */
+  public static int getAttributes(@NotNull CharSequence name) {
+    final int slot = find(name);
+    return slot == -1 ? 0 : ourAttributes[slot];
+  }
+
+  /**
+   * @param name
+   *     Name of a symbol without context
+   * @param attribute
+   *     The attribute to test
+   * @return true if the symbol is in the table and has the attribute
+   */
+  public static boolean hasAttribute(@NotNull CharSequence name, @NotNull Attribute attribute) {
+    return (getAttributes(name) & attribute.getMask()) != 0;
+  }
+
+  /**
+   * @param name
+   *     Name of a symbol without context
+   * @return The kind of localization of the symbol or {@link ConstructType#NULL} if it does not localize variables
+   */
+  @NotNull
+  public static ConstructType getScopingConstruct(@NotNull CharSequence name) {
+    final int slot = find(name);
+    return slot == -1 ? NULL : ourScopingConstructs[slot];
+  }
+
+  /**
+   * @return The number of symbols with attributes or scoping in the table
+   */
+  public static int size() {
+    return ENTRIES.length;
+  }
+}
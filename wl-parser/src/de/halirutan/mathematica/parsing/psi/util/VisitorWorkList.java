@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.psi.util;
+
+import com.intellij.psi.PsiElement;
+import de.halirutan.mathematica.parsing.psi.MathematicaVisitor;
+
+/**
+ * Lets a {@link MathematicaVisitor} which only descends into selected parts of an element do this without recursing on
+ * the Java stack. Instead of calling <code >element.accept(this)</code> from inside a visit method, the visitor calls
+ * {@link #visit(PsiElement)} and the element is put on a worklist. The elements are visited in the same order as the
+ * recursive calls visited them: everything scheduled during one visit method is visited before the siblings of the
+ * current element, in the order it was scheduled.
+ * <p/>
+ * The difference to the recursion is that the elements scheduled inside a visit method are visited after that method
+ * has returned. Visitors whose methods keep state across a call to <code >accept</code>, like a flag that is set before
+ * and reset after it, can hand such a flag down to the scheduled elements with {@link #visit(PsiElement, boolean)}
+ * and read it back through {@link #getState()}.
+ */
+public final class VisitorWorkList {
+
+  private final MathematicaVisitor myVisitor;
+  private PsiElement[] myElements = new PsiElement[16];
+  private boolean[] myStates = new boolean[16];
+  private int mySize = 0;
+  private boolean myRunning = false;
+  private boolean myState = false;
+
+  public VisitorWorkList(MathematicaVisitor visitor) {
+    myVisitor = visitor;
+  }
+
+  /**
+   * Visits an element with the state of the element that is currently visited.
+   *
+   * @param element
+   *     The element to visit
+   */
+  public void visit(PsiElement element) {
+    visit(element, myState);
+  }
+
+  /**
+   * Visits an element. When this is called from outside a visit, the element and everything that is scheduled below it
+   * is visited before this method returns.
+   *
+   * @param element
+   *     The element to visit
+   * @param state
+   *     The state which {@link #getState()} returns while the element is visited
+   */
+  public void visit(PsiElement element, boolean state) {
+    push(element, state);
+    if (myRunning) {
+      return;
+    }
+    final boolean outerState = myState;
+    myRunning = true;
+    try {
+      while (mySize > 0) {
+        mySize--;
+        final PsiElement next = myElements[mySize];
+        myElements[mySize] = null;
+        myState = myStates[mySize];
+        final int scheduledStart = mySize;
+        next.accept(myVisitor);
+        reverse(scheduledStart, mySize);
+      }
+    } finally {
+      while (mySize > 0) {
+        myElements[--mySize] = null;
+      }
+      myState = outerState;
+      myRunning = false;
+    }
+  }
+
+  /**
+   * Visits all children of an element like <code >element.acceptChildren(visitor)</code> does.
+   *
+   * @param element
+   *     The element whose children are visited
+   */
+  public void visitChildren(PsiElement element) {
+    for (PsiElement child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+      visit(child);
+    }
+  }
+
+  /**
+   * @return The state the currently visited element was scheduled with or <code >false</code> outside a visit
+   */
+  public boolean getState() {
+    return myState;
+  }
+
+  private void push(PsiElement element, boolean state) {
+    if (mySize == myElements.length) {
+      final PsiElement[] elements = new PsiElement[mySize * 2];
+      final boolean[] states = new boolean[mySize * 2];
+      System.arraycopy(myElements, 0, elements, 0, mySize);
+      System.arraycopy(myStates, 0, states, 0, mySize);
+      myElements = elements;
+      myStates = states;
+    }
+    myElements[mySize] = element;
+    myStates[mySize] = state;
+    mySize++;
+  }
+
+  /**
+   * The elements scheduled by one visit were pushed in their order, so they are reversed to be popped in that order.
+   */
+  private void reverse(int from, int to) {
+    for (int i = from, j = to - 1; i < j; i++, j--) {
+      final PsiElement element = myElements[i];
+      myElements[i] = myElements[j];
+      myElements[j] = element;
+      final boolean state = myStates[i];
+      myStates[i] = myStates[j];
+      myStates[j] = state;
+    }
+  }
+}
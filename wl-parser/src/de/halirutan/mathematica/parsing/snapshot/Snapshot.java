@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.snapshot;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.impl.source.tree.TreeElement;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An immutable version of the syntax tree of a file. A snapshot is created once from the AST of a file with {@link
+ * #of(PsiFile)} and afterwards every edit creates a new snapshot. The new snapshot copies only the nodes on the path from
+ * the root to the changed subtree and shares everything else with the old snapshot. Readers that hold a snapshot see a
+ * consistent tree without any locking, no matter how many edits arrive in the meantime.
+ * <p/>
+ * The cost of an edit is proportional to the depth of the change: every node on the path gets a new child array, and
+ * nodes with many children, like the file itself, keep their children in chunks of limited size so that only a few
+ * small arrays are copied. This is much cheaper than a copy of the whole file as done by
+ * <code >BlockSupportImpl.getFileCopy</code>.
+ * <p/>
+ * A path is an array of child indices starting at the root. The empty path denotes the root itself.
+ */
+public final class Snapshot {
+
+  private final SnapshotNode myRoot;
+  private final int myVersion;
+
+  private Snapshot(@NotNull SnapshotNode root, int version) {
+    myRoot = root;
+    myVersion = version;
+  }
+
+  /**
+   * Creates the first snapshot of a file.
+   *
+   * @param file
+   *     File to take the snapshot of
+   * @return The snapshot with version 0
+   */
+  @NotNull
+  public static Snapshot of(@NotNull PsiFile file) {
+    return new Snapshot(SnapshotNode.of(file.getNode()), 0);
+  }
+
+  @NotNull
+  public SnapshotNode getRoot() {
+    return myRoot;
+  }
+
+  /**
+   * @return The number of edits that lead from the first snapshot to this one
+   */
+  public int getVersion() {
+    return myVersion;
+  }
+
+  @NotNull
+  public String getText() {
+    return myRoot.getText();
+  }
+
+  public int getTextLength() {
+    return myRoot.getTextLength();
+  }
+
+  /**
+   * Returns the node at the end of a path.
+   *
+   * @param path
+   *     Child indices from the root
+   * @return The node the path points to
+   */
+  @NotNull
+  public SnapshotNode getNode(@NotNull int[] path) {
+    SnapshotNode node = myRoot;
+    for (int index : path) {
+      node = node.getChild(index);
+    }
+    return node;
+  }
+
+  /**
+   * Finds the path to the leaf that contains an offset.
+   *
+   * @param offset
+   *     Offset in the text of the snapshot
+   * @return The path to the leaf or null if the offset is outside the text
+   */
+  @Nullable
+  public int[] findLeafPath(int offset) {
+    if (offset < 0 || offset >= myRoot.getTextLength()) {
+      return null;
+    }
+    int[] path = new int[8];
+    int depth = 0;
+    SnapshotNode node = myRoot;
+    int start = 0;
+    while (!node.isLeaf()) {
+      final int index = node.findChildAt(offset - start);
+      start += node.getChildOffset(index);
+      if (depth == path.length) {
+        final int[] larger = new int[depth * 2];
+        System.arraycopy(path, 0, larger, 0, depth);
+        path = larger;
+      }
+      path[depth++] = index;
+      node = node.getChild(index);
+    }
+    final int[] result = new int[depth];
+    System.arraycopy(path, 0, result, 0, depth);
+    return result;
+  }
+
+  /**
+   * Returns the start offset of the node at the end of a path.
+   *
+   * @param path
+   *     Child indices from the root
+   * @return The offset of the node in the text of the snapshot
+   */
+  public int getStartOffset(@NotNull int[] path) {
+    int offset = 0;
+    SnapshotNode node = myRoot;
+    for (int index : path) {
+      offset += node.getChildOffset(index);
+      node = node.getChild(index);
+    }
+    return offset;
+  }
+
+  /**
+   * Creates a new snapshot where the node at the end of a path is replaced. Only the nodes on the path are copied.
+   *
+   * @param path
+   *     Child indices from the root
+   * @param replacement
+   *     The new node
+   * @return The new snapshot
+   */
+  @NotNull
+  public Snapshot replace(@NotNull int[] path, @NotNull SnapshotNode replacement) {
+    final SnapshotNode[] ancestors = new SnapshotNode[path.length];
+    SnapshotNode node = myRoot;
+    for (int i = 0; i < path.length; i++) {
+      ancestors[i] = node;
+      node = node.getChild(path[i]);
+    }
+    SnapshotNode result = replacement;
+    for (int i = path.length - 1; i >= 0; i--) {
+      result = ancestors[i].withChild(path[i], result);
+    }
+    return new Snapshot(result, myVersion + 1);
+  }
+
+  /**
+   * Creates a new snapshot where the text of the leaf at an offset is replaced. The token type of the leaf is kept, so
+   * this is meant for edits like renaming a symbol.
+   *
+   * @param offset
+   *     Offset inside the leaf
+   * @param text
+   *     New text of the leaf
+   * @return The new snapshot
+   */
+  @NotNull
+  public Snapshot replaceLeafText(int offset, @NotNull String text) {
+    final int[] path = findLeafPath(offset);
+    if (path == null) {
+      throw new IndexOutOfBoundsException("Offset " + offset + " is outside of the text");
+    }
+    return replace(path, SnapshotNode.leaf(getNode(path).getElementType(), text));
+  }
+
+  /**
+   * Brings a change of the mutable AST into a new snapshot. The changed node must belong to the file this snapshot was
+   * taken from and the change must be restricted to its subtree, which is the case for the changed element that the
+   * platform reports after a PSI modification. Only the changed subtree is converted; the path to it is found by the
+   * start offsets of the node and its ancestors, which the change does not move.
+   *
+   * @param changed
+   *     The node whose subtree was changed
+   * @return The new snapshot
+   */
+  @NotNull
+  public Snapshot update(@NotNull ASTNode changed) {
+    int depth = 0;
+    for (ASTNode node = changed; node.getTreeParent() != null; node = node.getTreeParent()) {
+      depth++;
+    }
+    final ASTNode[] ancestors = new ASTNode[depth + 1];
+    ASTNode node = changed;
+    for (int i = depth; i >= 0; i--) {
+      ancestors[i] = node;
+      node = node.getTreeParent();
+    }
+    final int[] path = new int[depth];
+    SnapshotNode parent = myRoot;
+    for (int i = 0; i < depth; i++) {
+      final int index = parent.findFirstChildStartingAt(getStartOffsetInParent(ancestors[i + 1])) +
+          countEmptySiblingsBefore(ancestors[i + 1]);
+      path[i] = index;
+      parent = parent.getChild(index);
+    }
+    return replace(path, SnapshotNode.of(changed));
+  }
+
+  /**
+   * The start offsets of the ancestors of a changed node are not affected by the change, so they lead to the same
+   * children in the snapshot. {@link TreeElement} caches its offset, other nodes have to compute it from the root.
+   */
+  private static int getStartOffsetInParent(@NotNull ASTNode node) {
+    if (node instanceof TreeElement) {
+      return ((TreeElement) node).getStartOffsetInParent();
+    }
+    return node.getStartOffset() - node.getTreeParent().getStartOffset();
+  }
+
+  /**
+   * Empty siblings share their start offset with the node, so they are the only ones that cannot be told apart by
+   * offset.
+   */
+  private static int countEmptySiblingsBefore(@NotNull ASTNode node) {
+    int count = 0;
+    for (ASTNode sibling = node.getTreePrev(); sibling != null && sibling.getTextLength() == 0;
+         sibling = sibling.getTreePrev()) {
+      count++;
+    }
+    return count;
+  }
+}
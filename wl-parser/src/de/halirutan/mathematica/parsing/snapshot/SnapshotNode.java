@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.snapshot;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.impl.source.tree.CompositeElement;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable node of a {@link Snapshot}. A node is either a leaf which carries the text of a token or a composite
+ * node with an array of children. Nodes don't know their parent or their offset in the file, because the same node
+ * instance is shared between all snapshots which contain the subtree unchanged. Offsets are computed from the text
+ * lengths while going down from the root.
+ * <p/>
+ * Nodes are never changed after construction and all fields are final, so they can be read from any thread. Nodes with
+ * many children store them in a small tree of chunks which is not visible from the outside; replacing a child then
+ * only copies the chunks on the way to it.
+ */
+public final class SnapshotNode {
+
+  private static final SnapshotNode[] NO_CHILDREN = new SnapshotNode[0];
+
+  /**
+   * Nodes with more children than this keep them in a tree of chunks, so replacing one child of a node like a file with
+   * thousands of statements copies a few small arrays instead of one large one.
+   */
+  private static final int CHUNK_SIZE = 32;
+
+  /**
+   * Element type of the node or null for the internal chunks of a wide node which are never handed out.
+   */
+  private final IElementType myType;
+  private final String myText;
+  private final SnapshotNode[] myChildren;
+  private final int myTextLength;
+  private final int myChildCount;
+
+  private SnapshotNode(@Nullable IElementType type, @Nullable String text, @NotNull SnapshotNode[] children) {
+    myType = type;
+    myText = text;
+    myChildren = children;
+    if (text != null) {
+      myTextLength = text.length();
+      myChildCount = 0;
+    } else {
+      int length = 0;
+      int count = 0;
+      for (SnapshotNode child : children) {
+        length += child.myTextLength;
+        count += child.myType == null ? child.myChildCount : 1;
+      }
+      myTextLength = length;
+      myChildCount = count;
+    }
+  }
+
+  private static SnapshotNode create(@NotNull IElementType type, @NotNull SnapshotNode[] children) {
+    SnapshotNode[] level = children;
+    while (level.length > CHUNK_SIZE) {
+      final SnapshotNode[] chunks = new SnapshotNode[(level.length + CHUNK_SIZE - 1) / CHUNK_SIZE];
+      for (int i = 0; i < chunks.length; i++) {
+        final int start = i * CHUNK_SIZE;
+        final SnapshotNode[] chunk = new SnapshotNode[Math.min(CHUNK_SIZE, level.length - start)];
+        System.arraycopy(level, start, chunk, 0, chunk.length);
+        chunks[i] = new SnapshotNode(null, null, chunk);
+      }
+      level = chunks;
+    }
+    return new SnapshotNode(type, null, level);
+  }
+
+  private static boolean isChunked(SnapshotNode[] children) {
+    return children.length > 0 && children[0].myType == null;
+  }
+
+  /**
+   * Creates a leaf node.
+   *
+   * @param type
+   *     Token type of the leaf
+   * @param text
+   *     Text of the token
+   * @return The new leaf
+   */
+  @NotNull
+  public static SnapshotNode leaf(@NotNull IElementType type, @NotNull String text) {
+    return new SnapshotNode(type, text, NO_CHILDREN);
+  }
+
+  /**
+   * Creates a composite node.
+   *
+   * @param type
+   *     Element type of the node
+   * @param children
+   *     Children of the node, the array is copied
+   * @return The new node
+   */
+  @NotNull
+  public static SnapshotNode composite(@NotNull IElementType type, @NotNull SnapshotNode... children) {
+    return create(type, children.length == 0 ? NO_CHILDREN : children.clone());
+  }
+
+  /**
+   * Converts an AST subtree into snapshot nodes. The tree is walked without recursion, so the depth of the tree is not
+   * limited by the Java stack.
+   *
+   * @param root
+   *     Root of the subtree
+   * @return The snapshot of the subtree
+   */
+  @NotNull
+  public static SnapshotNode of(@NotNull ASTNode root) {
+    if (!(root instanceof CompositeElement)) {
+      return leaf(root.getElementType(), root.getText());
+    }
+    final List<ASTNode> parents = new ArrayList<ASTNode>();
+    final List<List<SnapshotNode>> children = new ArrayList<List<SnapshotNode>>();
+    parents.add(root);
+    children.add(new ArrayList<SnapshotNode>());
+    ASTNode node = root.getFirstChildNode();
+    while (true) {
+      if (node == null) {
+        final int top = parents.size() - 1;
+        final ASTNode parent = parents.remove(top);
+        final List<SnapshotNode> parentChildren = children.remove(top);
+        final SnapshotNode finished = create(parent.getElementType(),
+            parentChildren.isEmpty() ? NO_CHILDREN : parentChildren.toArray(new SnapshotNode[parentChildren.size()]));
+        if (top == 0) {
+          return finished;
+        }
+        children.get(top - 1).add(finished);
+        node = parent.getTreeNext();
+      } else if (node instanceof CompositeElement) {
+        parents.add(node);
+        children.add(new ArrayList<SnapshotNode>());
+        node = node.getFirstChildNode();
+      } else {
+        children.get(children.size() - 1).add(leaf(node.getElementType(), node.getText()));
+        node = node.getTreeNext();
+      }
+    }
+  }
+
+  @NotNull
+  public IElementType getElementType() {
+    return myType;
+  }
+
+  public boolean isLeaf() {
+    return myText != null;
+  }
+
+  public int getChildCount() {
+    return myChildCount;
+  }
+
+  @NotNull
+  public SnapshotNode getChild(int index) {
+    if (index < 0 || index >= myChildCount) {
+      throw new IndexOutOfBoundsException("Index " + index + ", child count " + myChildCount);
+    }
+    SnapshotNode[] children = myChildren;
+    while (isChunked(children)) {
+      for (SnapshotNode chunk : children) {
+        if (index < chunk.myChildCount) {
+          children = chunk.myChildren;
+          break;
+        }
+        index -= chunk.myChildCount;
+      }
+    }
+    return children[index];
+  }
+
+  /**
+   * Returns the offset of a child relative to the start of this node.
+   *
+   * @param index
+   *     Index of the child
+   * @return The sum of the text lengths of all children before the given one
+   */
+  public int getChildOffset(int index) {
+    int offset = 0;
+    SnapshotNode[] children = myChildren;
+    while (isChunked(children)) {
+      for (SnapshotNode chunk : children) {
+        if (index < chunk.myChildCount) {
+          children = chunk.myChildren;
+          break;
+        }
+        index -= chunk.myChildCount;
+        offset += chunk.myTextLength;
+      }
+    }
+    for (int i = 0; i < index; i++) {
+      offset += children[i].myTextLength;
+    }
+    return offset;
+  }
+
+  /**
+   * Finds the child that contains an offset.
+   *
+   * @param offset
+   *     Offset relative to the start of this node, must be smaller than the text length
+   * @return The index of the child
+   */
+  public int findChildAt(int offset) {
+    if (offset < 0 || offset >= myTextLength) {
+      throw new IndexOutOfBoundsException("Offset " + offset + ", text length " + myTextLength);
+    }
+    int index = 0;
+    SnapshotNode[] children = myChildren;
+    while (true) {
+      final boolean chunked = isChunked(children);
+      for (SnapshotNode child : children) {
+        if (offset < child.myTextLength) {
+          if (!chunked) {
+            return index;
+          }
+          children = child.myChildren;
+          break;
+        }
+        offset -= child.myTextLength;
+        index += chunked ? child.myChildCount : 1;
+      }
+    }
+  }
+
+  /**
+   * Finds the first child that starts at an offset. Children of length zero that lie directly before the child
+   * containing the offset start there as well, so they are included.
+   *
+   * @param offset
+   *     Offset relative to the start of this node, may be the text length to find the empty children at the end
+   * @return The index of the first child starting at the offset, or the child count if there is none
+   */
+  public int findFirstChildStartingAt(int offset) {
+    int index = offset < myTextLength ? findChildAt(offset) : myChildCount;
+    while (index > 0 && getChild(index - 1).myTextLength == 0) {
+      index--;
+    }
+    return index;
+  }
+
+  public int getTextLength() {
+    return myTextLength;
+  }
+
+  /**
+   * Returns the text of the node. For composite nodes the text is assembled from the leaves on every call.
+   *
+   * @return The text of the subtree
+   */
+  @NotNull
+  public String getText() {
+    if (myText != null) {
+      return myText;
+    }
+    final StringBuilder builder = new StringBuilder(myTextLength);
+    appendText(builder);
+    return builder.toString();
+  }
+
+  /**
+   * Appends the text of the subtree to a builder. The leaves are collected without recursion.
+   *
+   * @param builder
+   *     Builder to append to
+   */
+  public void appendText(@NotNull StringBuilder builder) {
+    if (myText != null) {
+      builder.append(myText);
+      return;
+    }
+    final List<SnapshotNode> stack = new ArrayList<SnapshotNode>();
+    stack.add(this);
+    while (!stack.isEmpty()) {
+      final SnapshotNode node = stack.remove(stack.size() - 1);
+      if (node.myText != null) {
+        builder.append(node.myText);
+      } else {
+        for (int i = node.myChildren.length - 1; i >= 0; i--) {
+          stack.add(node.myChildren[i]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns a copy of this composite node where one child is replaced. All other children are shared.
+   *
+   * @param index
+   *     Index of the child to replace
+   * @param child
+   *     The new child
+   * @return The new node
+   */
+  @NotNull
+  public SnapshotNode withChild(int index, @NotNull SnapshotNode child) {
+    if (myText != null) {
+      throw new IllegalStateException("A leaf has no children");
+    }
+    if (getChild(index) == child) {
+      return this;
+    }
+    return new SnapshotNode(myType, null, replaceChild(myChildren, index, child));
+  }
+
+  private static SnapshotNode[] replaceChild(SnapshotNode[] children, int index, SnapshotNode child) {
+    final SnapshotNode[] result = children.clone();
+    if (!isChunked(children)) {
+      result[index] = child;
+      return result;
+    }
+    for (int i = 0; i < children.length; i++) {
+      final SnapshotNode chunk = children[i];
+      if (index < chunk.myChildCount) {
+        result[i] = new SnapshotNode(null, null, replaceChild(chunk.myChildren, index, child));
+        return result;
+      }
+      index -= chunk.myChildCount;
+    }
+    throw new IndexOutOfBoundsException();
+  }
+
+  @Override
+  public String toString() {
+    return myText != null ? myType + "('" + myText + "')" : myType + "[" + myChildCount + "]";
+  }
+}
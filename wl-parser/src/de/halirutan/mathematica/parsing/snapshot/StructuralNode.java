@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.snapshot;
+
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A read-only node of a hash-consed syntax tree. Such trees are created by a {@link StructuralNodeTable} which leaves
+ * out whitespace and comments and makes sure that structurally identical subtrees are represented by the same instance.
+ * An expression like <code >"key" -> 0</code> that appears thousands of times in a data file is therefore stored once.
+ * <p/>
+ * Every node has a 64 bit fingerprint which is computed from the names of the element types and the texts of the
+ * tokens only. It is the same in every run of the program and for every table, so it can be used as stable identity
+ * of a subtree, e.g. as key in a persistent cache. Within one table, two nodes are structurally equal exactly when
+ * they are the same instance.
+ */
+public final class StructuralNode {
+
+  private static final StructuralNode[] NO_CHILDREN = new StructuralNode[0];
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final IElementType myType;
+  private final String myText;
+  private final StructuralNode[] myChildren;
+  private final long myFingerprint;
+  private final long myTreeSize;
+
+  StructuralNode(@NotNull IElementType type, @Nullable String text, @NotNull StructuralNode[] children) {
+    myType = type;
+    myText = text;
+    myChildren = children.length == 0 ? NO_CHILDREN : children;
+    long hash = hash(FNV_OFFSET, type.toString());
+    long size = 1;
+    if (text != null) {
+      hash = hash(hash ^ 1, text);
+    }
+    for (StructuralNode child : myChildren) {
+      hash = (hash ^ child.myFingerprint) * FNV_PRIME;
+      size += child.myTreeSize;
+    }
+    myFingerprint = finish(hash);
+    myTreeSize = size;
+  }
+
+  @NotNull
+  public IElementType getElementType() {
+    return myType;
+  }
+
+  public boolean isLeaf() {
+    return myText != null;
+  }
+
+  /**
+   * @return The text of a leaf or null for composite nodes
+   */
+  @Nullable
+  public String getText() {
+    return myText;
+  }
+
+  public int getChildCount() {
+    return myChildren.length;
+  }
+
+  @NotNull
+  public StructuralNode getChild(int index) {
+    return myChildren[index];
+  }
+
+  /**
+   * @return The stable fingerprint of the subtree
+   */
+  public long getFingerprint() {
+    return myFingerprint;
+  }
+
+  /**
+   * @return The number of nodes the subtree would have without sharing
+   */
+  public long getTreeSize() {
+    return myTreeSize;
+  }
+
+  /**
+   * Structural equality for nodes whose children are already shared instances, which is how the table compares new
+   * nodes with the ones it knows.
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof StructuralNode)) return false;
+    final StructuralNode other = (StructuralNode) o;
+    if (myFingerprint != other.myFingerprint || myType != other.myType || myChildren.length != other.myChildren.length) {
+      return false;
+    }
+    if (myText == null ? other.myText != null : !myText.equals(other.myText)) {
+      return false;
+    }
+    for (int i = 0; i < myChildren.length; i++) {
+      if (myChildren[i] != other.myChildren[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (myFingerprint ^ (myFingerprint >>> 32));
+  }
+
+  @Override
+  public String toString() {
+    return myText != null ? myType + "('" + myText + "')" : myType + Arrays.toString(myChildren);
+  }
+
+  private static long hash(long hash, String text) {
+    for (int i = 0; i < text.length(); i++) {
+      hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+    }
+    return hash;
+  }
+
+  private static long finish(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
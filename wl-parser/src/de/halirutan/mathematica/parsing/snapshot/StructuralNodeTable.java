@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.parsing.snapshot;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.impl.source.tree.CompositeElement;
+import de.halirutan.mathematica.parsing.MathematicaElementTypes;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Creates hash-consed {@link StructuralNode} trees. All trees created through one table share their structurally
+ * identical subtrees, no matter whether they appear in the same file or in different files. Whitespace and comments are
+ * left out, so <code >f[a,b]</code> and <code >f[a, (* note *) b]</code> end up as the same node.
+ * <p/>
+ * The table is thread-safe and can be filled from several threads. It keeps every node it has seen, so it should live
+ * as long as the trees created by it are used and be dropped together with them.
+ */
+public class StructuralNodeTable {
+
+  private final ConcurrentMap<StructuralNode, StructuralNode> myNodes =
+      new ConcurrentHashMap<StructuralNode, StructuralNode>();
+
+  /**
+   * Creates the shared tree of a file.
+   *
+   * @param file
+   *     File to convert
+   * @return The root of the shared tree
+   */
+  @NotNull
+  public StructuralNode share(@NotNull PsiFile file) {
+    return share(file.getNode());
+  }
+
+  /**
+   * Creates the shared tree of an AST subtree. The tree is converted bottom-up without recursion and every new node is
+   * replaced by an equal node that is already in the table.
+   *
+   * @param root
+   *     Root of the subtree
+   * @return The root of the shared tree
+   */
+  @NotNull
+  public StructuralNode share(@NotNull ASTNode root) {
+    if (!(root instanceof CompositeElement)) {
+      return intern(new StructuralNode(root.getElementType(), root.getText(), new StructuralNode[0]));
+    }
+    final List<ASTNode> parents = new ArrayList<ASTNode>();
+    final List<List<StructuralNode>> children = new ArrayList<List<StructuralNode>>();
+    parents.add(root);
+    children.add(new ArrayList<StructuralNode>());
+    ASTNode node = root.getFirstChildNode();
+    while (true) {
+      if (node == null) {
+        final int top = parents.size() - 1;
+        final ASTNode parent = parents.remove(top);
+        final List<StructuralNode> parentChildren = children.remove(top);
+        final StructuralNode finished = intern(new StructuralNode(parent.getElementType(), null,
+            parentChildren.toArray(new StructuralNode[parentChildren.size()])));
+        if (top == 0) {
+          return finished;
+        }
+        children.get(top - 1).add(finished);
+        node = parent.getTreeNext();
+      } else if (node instanceof CompositeElement) {
+        parents.add(node);
+        children.add(new ArrayList<StructuralNode>());
+        node = node.getFirstChildNode();
+      } else {
+        if (!MathematicaElementTypes.WHITE_SPACE_OR_COMMENTS.contains(node.getElementType())) {
+          children.get(children.size() - 1).add(
+              intern(new StructuralNode(node.getElementType(), node.getText(), new StructuralNode[0])));
+        }
+        node = node.getTreeNext();
+      }
+    }
+  }
+
+  /**
+   * @return The number of distinct nodes in the table
+   */
+  public int size() {
+    return myNodes.size();
+  }
+
+  private StructuralNode intern(StructuralNode node) {
+    final StructuralNode existing = myNodes.putIfAbsent(node, node);
+    return existing == null ? node : existing;
+  }
+}
@@ -0,0 +1,5 @@
+/**
+ * Provides an immutable, persistent representation of the syntax tree. A snapshot of a file can be read by any number
+ * of threads without locking, while edits create new snapshots that share all unchanged subtrees with the old one.
+ */
+package de.halirutan.mathematica.parsing.snapshot;
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2015 Patrick Scheibe
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package de.halirutan.mathematica.refactoring;
+
+import com.intellij.lexer.Lexer;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.tree.IElementType;
+import de.halirutan.mathematica.filetypes.MathematicaFileType;
+import de.halirutan.mathematica.filetypes.SourceFile;
+import de.halirutan.mathematica.lexer.ContextTracker;
+import de.halirutan.mathematica.lexer.MathematicaLexer;
+import de.halirutan.mathematica.parsing.psi.util.MathematicaPsiElementFactory;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static de.halirutan.mathematica.parsing.MathematicaElementTypes.*;
+
+/**
+ * Renames a symbol in many files at once. Instead of resolving references in the PSI and calling {@link
+ * de.halirutan.mathematica.parsing.psi.api.Symbol#setName(String)} for each of them, every file is scanned once on
+ * token level. All occurrences in a file are replaced in one pass over its text and the file is parsed again once,
+ * and only if it was changed. Files are processed in parallel.
+ * <p/>
+ * The symbol is given with its full context, e.g. <code >MyPackage`myFunction</code>. While scanning, the current
+ * context and the context path are followed through <code >BeginPackage</code>, <code >Begin</code>, <code >End</code>,
+ * <code >EndPackage</code>, <code >Needs</code>, <code >Get</code> and <code >&lt;&lt;</code> with literal string
+ * arguments, starting with <code >Global`</code>. An identifier is an occurrence when
+ * <ul >
+ *   <li >it is written with the full context of the symbol or, starting with a context mark, relative to the current
+ *   context, or</li>
+ *   <li >it is written without context, has the name of the symbol and the context of the symbol is the current
+ *   context or on the context path.</li>
+ * </ul>
+ * Like in Mathematica, the last rule can be wrong when a symbol with the same name exists in two contexts of the path;
+ * the scan does not know which symbols were created before. Message tags after <code >::</code> and strings are never
+ * renamed. When an occurrence carries a context, only the name after the last context mark is replaced.
+ */
+public class BatchSymbolRenamer {
+
+  private final Project myProject;
+  private final String myQualifiedName;
+  private final String myContext;
+  private final String myName;
+  private final String myNewName;
+
+  /**
+   * @param project
+   *     Project that is used to parse the renamed files
+   * @param qualifiedName
+   *     Symbol with its full context like <code >MyPackage`myFunction</code>
+   * @param newName
+   *     New name of the symbol without context. It has to be a plain symbol name as tested by {@link
+   *     MathematicaPsiElementFactory#isSymbolName(String)}, otherwise the renamed files would not parse again.
+   */
+  public BatchSymbolRenamer(@NotNull Project project, @NotNull String qualifiedName, @NotNull String newName) {
+    final int contextEnd = qualifiedName.lastIndexOf('`');
+    if (contextEnd <= 0 || contextEnd == qualifiedName.length() - 1) {
+      throw new IllegalArgumentException("The symbol has to be given with its context: " + qualifiedName);
+    }
+    if (!MathematicaPsiElementFactory.isSymbolName(newName) || newName.indexOf('`') != -1) {
+      throw new IllegalArgumentException("The new name has to be a symbol name without context: " + newName);
+    }
+    myProject = project;
+    myQualifiedName = qualifiedName;
+    myContext = qualifiedName.substring(0, contextEnd + 1);
+    myName = qualifiedName.substring(contextEnd + 1);
+    myNewName = newName;
+  }
+
+  /**
+   * Finds all occurrences of the symbol in a text.
+   *
+   * @param text
+   *     Source code of a file
+   * @return The start offsets of the identifiers that are occurrences of the symbol
+   */
+  @NotNull
+  public int[] findOccurrences(@NotNull CharSequence text) {
+    final int[] ranges = findOccurrenceRanges(text);
+    final int[] result = new int[ranges.length / 2];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = ranges[2 * i];
+    }
+    return result;
+  }
+
+  /**
+   * Scans the tokens of a text and returns start and end offset of every occurrence one after the other.
+   */
+  private int[] findOccurrenceRanges(CharSequence text) {
+    final Lexer lexer = new MathematicaLexer();
+    lexer.start(text);
+    final ContextTracker contexts = new ContextTracker();
+    int[] ranges = new int[16];
+    int count = 0;
+    IElementType previous = null;
+    for (IElementType type = lexer.getTokenType(); type != null; lexer.advance(), type = lexer.getTokenType()) {
+      if (WHITE_SPACE_OR_COMMENTS.contains(type)) {
+        continue;
+      }
+      final int start = lexer.getTokenStart();
+      final int end = lexer.getTokenEnd();
+      if (type == IDENTIFIER && previous != DOUBLE_COLON && isOccurrence(text, start, end, contexts)) {
+        if (count == ranges.length) {
+          final int[] larger = new int[count * 2];
+          System.arraycopy(ranges, 0, larger, 0, count);
+          ranges = larger;
+        }
+        ranges[count++] = start;
+        ranges[count++] = end;
+      }
+      contexts.token(type, text, start, end);
+      previous = type;
+    }
+    final int[] result = new int[count];
+    System.arraycopy(ranges, 0, result, 0, count);
+    return result;
+  }
+
+  /**
+   * Renames the symbol in one file.
+   *
+   * @param name
+   *     File name
+   * @param text
+   *     Source code of the file
+   * @param reparse
+   *     Whether a changed file should be parsed into a new PSI file
+   * @return The result for this file
+   */
+  @NotNull
+  public FileResult rename(@NotNull String name, @NotNull CharSequence text, boolean reparse) {
+    final int[] ranges = findOccurrenceRanges(text);
+    final int[] occurrences = new int[ranges.length / 2];
+    if (occurrences.length == 0) {
+      return new FileResult(name, occurrences, null, null);
+    }
+    final StringBuilder builder = new StringBuilder(text.length() + occurrences.length * myNewName.length());
+    int copied = 0;
+    for (int i = 0; i < occurrences.length; i++) {
+      occurrences[i] = ranges[2 * i];
+      // every occurrence ends with the old name, with or without context in front of it
+      final int nameStart = ranges[2 * i + 1] - myName.length();
+      builder.append(text, copied, nameStart).append(myNewName);
+      copied = ranges[2 * i + 1];
+    }
+    builder.append(text, copied, text.length());
+    final String newText = builder.toString();
+    final PsiFile file = reparse ?
+        PsiFileFactory.getInstance(myProject).createFileFromText(name, MathematicaFileType.INSTANCE, newText) : null;
+    return new FileResult(name, occurrences, newText, file);
+  }
+
+  /**
+   * Renames the symbol in all files. The files are distributed over a pool of threads.
+   *
+   * @param files
+   *     The files with their content
+   * @param threads
+   *     Number of threads to use
+   * @param reparse
+   *     Whether changed files should be parsed into new PSI files
+   * @return The results in the order of the files
+   */
+  @NotNull
+  public List<FileResult> rename(@NotNull List<SourceFile> files, int threads, final boolean reparse) {
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Future<FileResult>> futures = new ArrayList<Future<FileResult>>(files.size());
+      for (final SourceFile file : files) {
+        futures.add(executor.submit(new Callable<FileResult>() {
+          @Override
+          public FileResult call() throws Exception {
+            return rename(file.getName(), file.getText(), reparse);
+          }
+        }));
+      }
+      final List<FileResult> results = new ArrayList<FileResult>(files.size());
+      for (Future<FileResult> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private boolean isOccurrence(CharSequence text, int start, int end, ContextTracker contexts) {
+    final int length = end - start;
+    if (length < myName.length() || !endsWithName(text, end)) {
+      return false;
+    }
+    if (length == myName.length()) {
+      return myContext.equals(contexts.getContext()) || contexts.getPath().contains(myContext);
+    }
+    if (text.charAt(end - myName.length() - 1) != '`') {
+      return false;
+    }
+    final String written = text.subSequence(start, end).toString();
+    if (written.charAt(0) == '`') {
+      return myQualifiedName.equals(contexts.getContext() + written.substring(1));
+    }
+    return myQualifiedName.equals(written);
+  }
+
+  private boolean endsWithName(CharSequence text, int end) {
+    final int offset = end - myName.length();
+    for (int i = 0; i < myName.length(); i++) {
+      if (text.charAt(offset + i) != myName.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The result of the rename in one file.
+   */
+  public static class FileResult {
+    private final String myName;
+    private final int[] myOccurrences;
+    private final String myNewText;
+    private final PsiFile myFile;
+
+    FileResult(String name, int[] occurrences, String newText, PsiFile file) {
+      myName = name;
+      myOccurrences = occurrences;
+      myNewText = newText;
+      myFile = file;
+    }
+
+    @NotNull
+    public String getName() {
+      return myName;
+    }
+
+    /**
+     * @return The start offsets of the renamed identifiers in the original text
+     */
+    @NotNull
+    public int[] getOccurrences() {
+      return myOccurrences;
+    }
+
+    public boolean isChanged() {
+      return myNewText != null;
+    }
+
+    /**
+     * @return The new text of the file or null if nothing was renamed
+     */
+    @Nullable
+    public String getNewText() {
+      return myNewText;
+    }
+
+    /**
+     * @return The reparsed file or null if the file was not changed or not reparsed
+     */
+    @Nullable
+    public PsiFile getFile() {
+      return myFile;
+    }
+  }
+}
@@ -0,0 +1,4 @@
+/**
+ * Provides refactorings that work on many files at once, like renaming a symbol throughout a whole project.
+ */
+package de.halirutan.mathematica.refactoring;